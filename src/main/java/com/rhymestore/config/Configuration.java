@@ -22,6 +22,10 @@
 
 package com.rhymestore.config;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.Properties;
 
 import org.slf4j.Logger;
@@ -58,18 +62,123 @@ public class Configuration
 	 */
 	public static final String WORDPARSER_PROPERTY = "rhymestore.wordparser.class";
 
+	/** Name of the property that holds the supported languages, starting with the primary one. */
+	public static final String LANGUAGES_PROPERTY = "rhymestore.wordparser.languages";
+
+	/** Prefix of the properties that hold the {@link WordParser} class of each language. */
+	public static final String WORDPARSER_LANGUAGE_PREFIX = "rhymestore.wordparser.";
+
+	/** Name of the property that holds the parser used to build the lexicon. */
+	public static final String LEXICON_PARSER_PROPERTY = "rhymestore.wordparser.lexicon.parser";
+
+	/** Name of the property that holds the path to the lexicon file. */
+	public static final String LEXICON_FILE_PROPERTY = "rhymestore.wordparser.lexicon.file";
+
 	/** Name of the property that holds the default rhymes to use. */
 	public static final String DEFAULT_RHYME_PROPERTY = "rhymestore.wordparser.default";
 
+	/** Name of the property that holds the default rhymes for the English language. */
+	public static final String ENGLISH_DEFAULT_RHYME_PROPERTY = "rhymestore.wordparser.en.default";
+
+	/** Name of the property that holds the path to the English phoneme dictionary. */
+	public static final String ENGLISH_DICTIONARY_PROPERTY = "rhymestore.wordparser.en.dictionary";
+
 	/** Name of the property that holds the default rhymes URI. */
 	public static final String DEFAULT_RHYMES_URI_PROPERTY = "rhymestore.store.rhymes.defaulturi";
 
+	/** Name of the property that holds the trailing tokens skipped by the tokenizer. */
+	public static final String TOKENIZER_SKIP_PROPERTY = "rhymestore.tokenizer.skip";
+
+	/** Name of the property that holds the syllables indexed in the compound rhymes. */
+	public static final String COMPOUND_SYLLABLES_PROPERTY = "rhymestore.store.compound.syllables";
+
+	/** Name of the property that holds the seconds between index sweeper runs. */
+	public static final String SWEEPER_INTERVAL_PROPERTY = "rhymestore.store.sweeper.interval";
+
+	/** Name of the property that holds the entries to check on each index sweeper run. */
+	public static final String SWEEPER_BATCH_PROPERTY = "rhymestore.store.sweeper.batch";
+
+	/** Name of the property that holds the seconds between usage counter flushes. */
+	public static final String USAGE_INTERVAL_PROPERTY = "rhymestore.store.usage.interval";
+
+	/** Prefix of the Twitter properties, that can be overridden for each account. */
+	public static final String TWITTER_PREFIX = "rhymestore.twitter.";
+
+	/** Name of the property that holds the names of the hosted Twitter accounts. */
+	public static final String TWITTER_ACCOUNTS_PROPERTY = "rhymestore.twitter.accounts";
+
+	/** Name of the property that holds the maximum pending Twitter API calls. */
+	public static final String QUEUE_CAPACITY_PROPERTY = "rhymestore.twitter.queue.capacity";
+
+	/** Name of the property that holds the seconds a Twitter API call can wait. */
+	public static final String QUEUE_MAX_AGE_PROPERTY = "rhymestore.twitter.queue.maxage";
+
+	/** Name of the property that holds the policy to use when the queue is full. */
+	public static final String QUEUE_SHED_POLICY_PROPERTY = "rhymestore.twitter.queue.shed";
+
+	/**
+	 * Name of the property that holds the seconds to collapse the Twitter API
+	 * calls with the same key.
+	 */
+	public static final String QUEUE_COALESCE_WINDOW_PROPERTY = "rhymestore.twitter.queue.coalesce";
+
+	/** Name of the property that holds the attempts to execute a Twitter API call. */
+	public static final String RETRY_ATTEMPTS_PROPERTY = "rhymestore.twitter.retry.attempts";
+
+	/** Name of the property that holds the seconds before the first retry. */
+	public static final String RETRY_DELAY_PROPERTY = "rhymestore.twitter.retry.delay";
+
+	/** Name of the property that holds the maximum seconds between retries. */
+	public static final String RETRY_MAX_DELAY_PROPERTY = "rhymestore.twitter.retry.maxdelay";
+
+	/** Name of the property that holds the number of statuses expected in each seen window. */
+	public static final String SEEN_CAPACITY_PROPERTY = "rhymestore.twitter.seen.capacity";
+
+	/** Name of the property that holds the seconds the processed statuses are remembered. */
+	public static final String SEEN_WINDOW_PROPERTY = "rhymestore.twitter.seen.window";
+
+	/** Name of the property that enables sharing the processed statuses through Redis. */
+	public static final String SEEN_SHARED_PROPERTY = "rhymestore.twitter.seen.shared";
+
+	/** Name of the property that holds the seconds between refreshes of the bot identity. */
+	public static final String IDENTITY_INTERVAL_PROPERTY = "rhymestore.twitter.identity.interval";
+
+	/** Name of the property that holds the replies to each user in each throttling window. */
+	public static final String THROTTLE_LIMIT_PROPERTY = "rhymestore.twitter.throttle.limit";
+
+	/** Name of the property that holds the seconds of each throttling window. */
+	public static final String THROTTLE_WINDOW_PROPERTY = "rhymestore.twitter.throttle.window";
+
+	/** Name of the property that holds the counters of each row of the throttling sketches. */
+	public static final String THROTTLE_WIDTH_PROPERTY = "rhymestore.twitter.throttle.width";
+
+	/** Name of the property that enables sharing the reply counts through Redis. */
+	public static final String THROTTLE_SHARED_PROPERTY = "rhymestore.twitter.throttle.shared";
+
+	/** Prefix of the reply pipeline properties, such as <code>lookup.workers</code>. */
+	public static final String PIPELINE_PREFIX = "rhymestore.twitter.pipeline.";
+
+	/** Name of the property that holds the maximum replies waiting in each pipeline stage. */
+	public static final String PIPELINE_CAPACITY_PROPERTY = "rhymestore.twitter.pipeline.capacity";
+
+	/** Name of the property that holds the seconds between reply pipeline latency reports. */
+	public static final String PIPELINE_REPORT_PROPERTY = "rhymestore.twitter.pipeline.report";
+
+	/** Name of the property that holds the maximum pages of mentions read after a reconnect. */
+	public static final String BACKFILL_PAGES_PROPERTY = "rhymestore.twitter.backfill.pages";
+
+	/** Name of the property that holds the seconds between configuration file checks. */
+	public static final String RELOAD_INTERVAL_PROPERTY = "rhymestore.config.reload.interval";
+
 	/** The singleton instance of the configuration object. */
-	private static Configuration instance;
+	private static volatile Configuration instance;
 
 	/** The configuration properties. */
 	private Properties properties;
 
+	/** The modification time of the configuration file when it was loaded. */
+	private long lastModified;
+
 	/**
 	 * Private constructor. This class should ot be instantiated.
 	 */
@@ -80,36 +189,169 @@ public class Configuration
 
 	/**
 	 * Gets the configuration properties.
+	 * <p>
+	 * The returned properties must not be modified. When the configuration is
+	 * reloaded, a new object is returned, so components that support hot
+	 * reload can detect the change comparing the references.
 	 * 
 	 * @return The configuration properties.
 	 */
 	public static Properties getConfiguration()
 	{
-		if (instance == null)
+		Configuration current = instance;
+
+		if (current == null)
+		{
+			synchronized (Configuration.class)
+			{
+				if (instance == null)
+				{
+					instance = load();
+				}
+
+				current = instance;
+			}
+		}
+
+		return current.properties;
+	}
+
+	/**
+	 * Reloads the configuration file.
+	 * <p>
+	 * Only the components that support hot reload, such as the default rhymes,
+	 * use the new values. The rest keep the values they were created with.
+	 * 
+	 * @throws ConfigurationException If the configuration file cannot be read.
+	 */
+	public static synchronized void reload()
+	{
+		instance = load();
+	}
+
+	/**
+	 * Reloads the configuration file if it has been modified since it was
+	 * loaded.
+	 * 
+	 * @return Boolean indicating if the configuration has been reloaded.
+	 * @throws ConfigurationException If the configuration file cannot be read.
+	 */
+	public static synchronized boolean reloadIfModified()
+	{
+		getConfiguration();
+
+		if (getLastModified() == instance.lastModified)
 		{
-			instance = new Configuration();
+			return false;
+		}
+
+		reload();
+		return true;
+	}
+
+	/**
+	 * Loads the configuration file.
+	 * 
+	 * @return The loaded configuration.
+	 * @throws ConfigurationException If the configuration file cannot be read.
+	 */
+	private static Configuration load()
+	{
+		Configuration configuration = new Configuration();
+
+		LOGGER.debug("Loading configuration from {}", CONFIG_FILE);
 
-			LOGGER.debug("Loading configuration from {}", CONFIG_FILE);
+		// Load properties
+		ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		configuration.properties = new Properties();
+		configuration.lastModified = getLastModified();
 
-			// Load properties
-			ClassLoader cl = Thread.currentThread().getContextClassLoader();
-			instance.properties = new Properties();
+		try
+		{
+			InputStream in = cl.getResourceAsStream(CONFIG_FILE);
 
 			try
 			{
-				instance.properties.load(cl.getResourceAsStream(CONFIG_FILE));
+				configuration.properties.load(in);
 			}
-			catch (Exception ex)
+			finally
 			{
-				throw new ConfigurationException(
-						"Could not load configuration file: " + ex.getMessage());
+				in.close();
 			}
+		}
+		catch (Exception ex)
+		{
+			throw new ConfigurationException(
+					"Could not load configuration file: " + ex.getMessage());
+		}
+
+		LOGGER.debug("Loaded {} configuration properties",
+				configuration.properties.size());
+
+		return configuration;
+	}
 
-			LOGGER.debug("Loaded {} configuration properties",
-					instance.properties.size());
+	/**
+	 * Gets the modification time of the configuration file.
+	 * 
+	 * @return The modification time of the configuration file, or
+	 *         <code>0</code> if it is not known.
+	 */
+	private static long getLastModified()
+	{
+		ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		URL url = cl.getResource(CONFIG_FILE);
+
+		if (url == null)
+		{
+			return 0;
+		}
+
+		try
+		{
+			URLConnection conn = url.openConnection();
+			conn.setUseCaches(false);
+			long lastModified = conn.getLastModified();
+
+			// Release the underlying file
+			conn.getInputStream().close();
+
+			return lastModified;
+		}
+		catch (IOException ex)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Get the configuration value for the given property name in the given
+	 * Twitter account.
+	 * <p>
+	 * A Twitter property such as <code>rhymestore.twitter.queue.capacity</code>
+	 * can be overridden for an account with
+	 * <code>rhymestore.twitter.&lt;account&gt;.queue.capacity</code>.
+	 * 
+	 * @param account The name of the account, or <code>null</code> for the
+	 *            global value.
+	 * @return The value for the given property in the account, or the global
+	 *         one if it is not overridden.
+	 */
+	public static String getAccountConfigValue(final String account,
+			final String propertyName)
+	{
+		if (account != null && propertyName.startsWith(TWITTER_PREFIX))
+		{
+			String value = getConfigValue(TWITTER_PREFIX + account + "."
+					+ propertyName.substring(TWITTER_PREFIX.length()));
+
+			if (value != null)
+			{
+				return value;
+			}
 		}
 
-		return instance.properties;
+		return getConfigValue(propertyName);
 	}
 
 	/**
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.config;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the configuration file for changes periodically, and reloads it when it changes.
+ * <p>
+ * Both the web application and the Twitter listener process run it, so the settings read at use
+ * time, such as the default rhymes, can be changed without restarting them.
+ * 
+ * @author Ignasi Barrera
+ * @see Configuration#reloadIfModified()
+ */
+public class ConfigurationReloader implements Runnable
+{
+	/** The logger. */
+	private static final Logger LOGGER = LoggerFactory
+			.getLogger(ConfigurationReloader.class);
+
+	/** The default number of seconds between configuration file checks. */
+	private static final long DEFAULT_INTERVAL = 60;
+
+	/** The scheduler service. */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Starts checking the configuration file with the configured interval.
+	 */
+	public void start()
+	{
+		String value = Configuration
+				.getConfigValue(Configuration.RELOAD_INTERVAL_PROPERTY);
+		long interval = value == null ? DEFAULT_INTERVAL : Long.parseLong(value
+				.trim());
+
+		LOGGER.info("Checking the configuration file every {} seconds",
+				interval);
+
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		scheduler.scheduleWithFixedDelay(this, interval, interval,
+				TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops checking the configuration file.
+	 */
+	public void shutdown()
+	{
+		if (scheduler != null)
+		{
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Reloads the configuration file if it has changed.
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			if (Configuration.reloadIfModified())
+			{
+				LOGGER.info("Reloaded the configuration file");
+			}
+		}
+		catch (Exception ex)
+		{
+			// Keep the reloader scheduled
+			LOGGER.error("Could not reload the configuration file", ex);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * The pool of default rhymes of a language, used when no rhyme is found.
+ * <p>
+ * Rhymes are configured in the properties that start with the given prefix, and are served in
+ * rotation in the order of the property names. The pool can be used concurrently without locks,
+ * and it is rebuilt when the {@link Configuration} is reloaded.
+ * 
+ * @author Ignasi Barrera
+ */
+public final class DefaultRhymes
+{
+    /** The prefix of the properties that hold the default rhymes. */
+    private final String propertyPrefix;
+
+    /** The current rhymes, and the configuration they have been read from. */
+    private final AtomicReference<Pool> pool = new AtomicReference<Pool>();
+
+    /** The number of rhymes served, used to rotate them. */
+    private final AtomicInteger served = new AtomicInteger();
+
+    /**
+     * Creates the pool of the default rhymes configured with the given prefix.
+     * 
+     * @param propertyPrefix The prefix of the properties that hold the default rhymes.
+     */
+    public DefaultRhymes(final String propertyPrefix)
+    {
+        this.propertyPrefix = propertyPrefix;
+    }
+
+    /**
+     * Gets the next default rhyme.
+     * 
+     * @return The next default rhyme.
+     * @throws ConfigurationException If there are no default rhymes configured.
+     */
+    public String next()
+    {
+        String[] rhymes = getPool().rhymes;
+
+        if (rhymes.length == 0)
+        {
+            throw new ConfigurationException("There are no default rhymes configured in ["
+                + propertyPrefix + "*]");
+        }
+
+        // Keep the index positive when the counter overflows
+        int index = (served.getAndIncrement() & Integer.MAX_VALUE) % rhymes.length;
+        return rhymes[index];
+    }
+
+    /**
+     * Gets the default rhyme at the given position of the rotation.
+     * 
+     * @param index The position of the rhyme.
+     * @return The default rhyme.
+     */
+    public String get(final int index)
+    {
+        return getPool().rhymes[index];
+    }
+
+    /**
+     * Gets the number of default rhymes.
+     * 
+     * @return The number of default rhymes.
+     */
+    public int size()
+    {
+        return getPool().rhymes.length;
+    }
+
+    /**
+     * Gets the current pool, reading it again if the configuration has been reloaded.
+     * 
+     * @return The current pool.
+     */
+    private Pool getPool()
+    {
+        Properties configuration = Configuration.getConfiguration();
+        Pool current = pool.get();
+
+        if (current == null || current.configuration != configuration)
+        {
+            Pool updated = new Pool(configuration, propertyPrefix);
+
+            // If another thread has already updated it, any of both is up to date
+            pool.compareAndSet(current, updated);
+            current = updated;
+        }
+
+        return current;
+    }
+
+    /**
+     * An immutable snapshot of the default rhymes.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static final class Pool
+    {
+        /** The configuration the rhymes have been read from. */
+        private final Properties configuration;
+
+        /** The default rhymes. */
+        private final String[] rhymes;
+
+        /**
+         * Reads the default rhymes from the given configuration.
+         * 
+         * @param configuration The configuration.
+         * @param propertyPrefix The prefix of the properties that hold the default rhymes.
+         */
+        public Pool(final Properties configuration, final String propertyPrefix)
+        {
+            List<String> names = new ArrayList<String>();
+
+            for (String name : configuration.stringPropertyNames())
+            {
+                if (name.startsWith(propertyPrefix))
+                {
+                    names.add(name);
+                }
+            }
+
+            Collections.sort(names);
+
+            this.configuration = configuration;
+            this.rhymes = new String[names.size()];
+
+            for (int i = 0; i < rhymes.length; i++)
+            {
+                rhymes[i] = configuration.getProperty(names.get(i));
+            }
+        }
+    }
+}
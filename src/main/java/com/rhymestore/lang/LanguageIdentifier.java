@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Identifies the language of a text.
+ * <p>
+ * The language declared by the author is used when it is one of the known languages. Otherwise
+ * the text is classified with a naive Bayes model of character trigrams, trained with the sample
+ * text of each language found in the <code>lang/&lt;language&gt;.txt</code> classpath
+ * resource. Trigrams are hashed into a fixed number of features, so classifying a text does not
+ * allocate any memory.
+ * 
+ * @author Ignasi Barrera
+ * @see WordParserRegistry
+ */
+public class LanguageIdentifier
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LanguageIdentifier.class);
+
+    /** The classpath folder with the sample text of each language. */
+    private static final String PROFILES_PATH = "lang/";
+
+    /** The number of hashed trigram features. */
+    private static final int FEATURES = 1 << 14;
+
+    /** The languages that can be identified. */
+    private final Collection<String> languages;
+
+    /** The language used when the text cannot be classified. */
+    private final String defaultLanguage;
+
+    /** The log probability of each feature, by language. */
+    private final Map<String, float[]> profiles = new LinkedHashMap<String, float[]>();
+
+    /**
+     * Creates an identifier for the given languages, loading their sample text.
+     * 
+     * @param languages The languages that can be identified.
+     * @param defaultLanguage The language used when the text cannot be classified.
+     */
+    public LanguageIdentifier(final Collection<String> languages, final String defaultLanguage)
+    {
+        this.languages = languages;
+        this.defaultLanguage = defaultLanguage;
+
+        // There is no need to classify if there is only one language
+        if (languages.size() > 1)
+        {
+            for (String language : languages)
+            {
+                String sample = loadSample(language);
+
+                if (sample == null)
+                {
+                    LOGGER.warn("There is no sample text for language {}", language);
+                }
+                else
+                {
+                    train(language, sample);
+                }
+            }
+        }
+    }
+
+    /**
+     * Identifies the language of the given text.
+     * 
+     * @param declared The language declared by the author of the text, if any.
+     * @param text The text.
+     * @return The language of the text.
+     */
+    public String identify(final String declared, final CharSequence text)
+    {
+        if (languages.size() == 1)
+        {
+            return defaultLanguage;
+        }
+
+        String language = normalize(declared);
+
+        if (language != null && languages.contains(language))
+        {
+            return language;
+        }
+
+        return text == null ? defaultLanguage : classify(text);
+    }
+
+    /**
+     * Classifies the given text.
+     * 
+     * @param text The text to classify.
+     * @return The most likely language of the text.
+     */
+    /* package */String classify(final CharSequence text)
+    {
+        String best = defaultLanguage;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (Map.Entry<String, float[]> profile : profiles.entrySet())
+        {
+            float[] weights = profile.getValue();
+            double score = 0;
+            int features = 0;
+            char c1 = ' ';
+            char c2 = ' ';
+
+            for (int i = 0; i <= text.length(); i++)
+            {
+                char c3 = i < text.length() ? normalize(text.charAt(i)) : ' ';
+
+                // Collapse the separators
+                if (c3 == ' ' && c2 == ' ')
+                {
+                    continue;
+                }
+
+                if (c1 != ' ' || c2 != ' ')
+                {
+                    score += weights[feature(c1, c2, c3)];
+                    features++;
+                }
+
+                c1 = c2;
+                c2 = c3;
+            }
+
+            if (features > 0 && score > bestScore)
+            {
+                best = profile.getKey();
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Trains the model of the given language with the given sample text.
+     * 
+     * @param language The language.
+     * @param sample The sample text.
+     */
+    private void train(final String language, final String sample)
+    {
+        int[] counts = new int[FEATURES];
+        int total = 0;
+        char c1 = ' ';
+        char c2 = ' ';
+
+        for (int i = 0; i <= sample.length(); i++)
+        {
+            char c3 = i < sample.length() ? normalize(sample.charAt(i)) : ' ';
+
+            if (c3 == ' ' && c2 == ' ')
+            {
+                continue;
+            }
+
+            if (c1 != ' ' || c2 != ' ')
+            {
+                counts[feature(c1, c2, c3)]++;
+                total++;
+            }
+
+            c1 = c2;
+            c2 = c3;
+        }
+
+        // Laplace smoothing, so unseen trigrams do not discard the language
+        float[] weights = new float[FEATURES];
+
+        for (int i = 0; i < FEATURES; i++)
+        {
+            weights[i] = (float) Math.log((counts[i] + 1.0) / (total + FEATURES));
+        }
+
+        profiles.put(language, weights);
+    }
+
+    private static String loadSample(final String language)
+    {
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        InputStream in = cl.getResourceAsStream(PROFILES_PATH + language + ".txt");
+
+        if (in == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            Reader reader = new InputStreamReader(in, "UTF-8");
+            StringBuilder sample = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read = 0;
+
+            while ((read = reader.read(buffer)) != -1)
+            {
+                sample.append(buffer, 0, read);
+            }
+
+            return sample.toString();
+        }
+        catch (IOException ex)
+        {
+            LOGGER.warn("Could not read the sample text for language {}", language);
+            return null;
+        }
+        finally
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException ex)
+            {
+                // Ignore
+            }
+        }
+    }
+
+    private static int feature(final char c1, final char c2, final char c3)
+    {
+        int h = (c1 * 31 + c2) * 31 + c3;
+        return (h ^ h >>> 14) & FEATURES - 1;
+    }
+
+    private static char normalize(final char c)
+    {
+        return Character.isLetter(c) ? Character.toLowerCase(c) : ' ';
+    }
+
+    /**
+     * Normalizes the given language code.
+     * 
+     * @param language The language code, optionally with the region.
+     * @return The lower case language code, without the region.
+     */
+    private static String normalize(final String language)
+    {
+        if (language == null)
+        {
+            return null;
+        }
+
+        int region = language.indexOf('-') >= 0 ? language.indexOf('-') : language.indexOf('_');
+        return (region < 0 ? language : language.substring(0, region)).toLowerCase();
+    }
+}
@@ -0,0 +1,514 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A precompiled, memory mapped table with the analysis of a list of known words.
+ * <p>
+ * The words are indexed with a minimal perfect hash built with the <i>hash and displace</i>
+ * algorithm: the words are first grouped in buckets, and each bucket stores the seed that
+ * places all its words in free slots of the table. Looking up a word needs two hashes, a read of
+ * the seed and a read of the slot, and the stored word is compared to discard unknown words that
+ * are hashed to the same slot.
+ * <p>
+ * The file is made of a header, the bucket seeds, the slot offsets and the entries, each one with
+ * the word, the stress type and the rhyme part. Nothing but the header is read into the heap.
+ * 
+ * @author Ignasi Barrera
+ * @see LexiconWordParser
+ */
+public final class Lexicon
+{
+    /** The magic number of the lexicon files. */
+    private static final int MAGIC = 0x52484c58;
+
+    /** The version of the file format. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The average number of words in each bucket. */
+    private static final int BUCKET_SIZE = 4;
+
+    /** The maximum number of seeds tried for each bucket. */
+    private static final int MAX_SEED = 1 << 20;
+
+    /** The maximum length, in bytes, of the stored words and rhymes. */
+    private static final int MAX_LENGTH = 255;
+
+    /** The class of the parser that built the lexicon. */
+    private final String parser;
+
+    /** The version of the parser that built the lexicon. */
+    private final int version;
+
+    /** The number of words. */
+    private final int size;
+
+    /** The number of buckets. */
+    private final int buckets;
+
+    /** The position of the bucket seeds. */
+    private final int seedsOffset;
+
+    /** The position of the slot offsets. */
+    private final int slotsOffset;
+
+    /** The position of the entries. */
+    private final int entriesOffset;
+
+    /** The contents of the lexicon. */
+    private final ByteBuffer buffer;
+
+    private Lexicon(final ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+        {
+            throw new IOException("Not a lexicon file or unsupported format");
+        }
+
+        byte[] parserName = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(parserName);
+
+        this.parser = new String(parserName, "UTF-8");
+        this.version = buffer.getInt();
+        this.size = buffer.getInt();
+        this.buckets = buffer.getInt();
+        this.seedsOffset = buffer.position();
+        this.slotsOffset = seedsOffset + buckets * 4;
+        this.entriesOffset = slotsOffset + size * 4;
+    }
+
+    /**
+     * Maps the given lexicon file into memory.
+     * 
+     * @param file The lexicon file.
+     * @return The lexicon.
+     * @throws IOException If the file cannot be read or is not a valid lexicon.
+     */
+    public static Lexicon open(final File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return new Lexicon(buffer);
+        }
+        finally
+        {
+            // The mapping remains valid after the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Analyzes the given words and writes the lexicon file.
+     * 
+     * @param wordParser The parser used to analyze the words.
+     * @param words The words to add to the lexicon.
+     * @param file The lexicon file to write.
+     * @return The number of words in the lexicon.
+     * @throws IOException If the file cannot be written.
+     */
+    public static int write(final WordParser wordParser, final Iterable<String> words,
+        final File file) throws IOException
+    {
+        List<byte[]> keys = new ArrayList<byte[]>();
+        List<byte[]> entries = new ArrayList<byte[]>();
+        Set<String> distinct = new LinkedHashSet<String>();
+
+        for (String word : words)
+        {
+            distinct.add(word);
+        }
+
+        for (String word : distinct)
+        {
+            byte[] entry = entry(wordParser, word);
+
+            if (entry != null)
+            {
+                keys.add(word.getBytes("UTF-8"));
+                entries.add(entry);
+            }
+        }
+
+        int size = keys.size();
+        int buckets = Math.max(1, (size + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        int[] seeds = new int[buckets];
+        int[] slots = place(keys, buckets, seeds);
+
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try
+        {
+            byte[] parserName = wordParser.getClass().getName().getBytes("UTF-8");
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeShort(parserName.length);
+            out.write(parserName);
+            out.writeInt(wordParser.getVersion());
+            out.writeInt(size);
+            out.writeInt(buckets);
+
+            for (int seed : seeds)
+            {
+                out.writeInt(seed);
+            }
+
+            // Entries are written in slot order, so each slot points to its own entry
+            int[] offsets = new int[size];
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+            for (int slot = 0; slot < size; slot++)
+            {
+                offsets[slot] = data.size();
+                data.write(entries.get(slots[slot]));
+            }
+
+            for (int offset : offsets)
+            {
+                out.writeInt(offset);
+            }
+
+            data.writeTo(out);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return size;
+    }
+
+    /**
+     * Finds the given word in the lexicon.
+     * 
+     * @param word The word to find.
+     * @return The position of the entry of the word, or <code>-1</code> if the word is unknown.
+     */
+    public int find(final String word)
+    {
+        if (size == 0)
+        {
+            return -1;
+        }
+
+        int seed = buffer.getInt(seedsOffset + index(hash(word, 0), buckets) * 4);
+        int slot = index(hash(word, seed), size);
+        int entry = entriesOffset + buffer.getInt(slotsOffset + slot * 4);
+
+        return matches(word, entry) ? entry : -1;
+    }
+
+    /**
+     * Gets the rhyme part of the given entry.
+     * 
+     * @param entry The position of the entry.
+     * @return The rhyme part of the word.
+     */
+    public String getRhyme(final int entry)
+    {
+        int rhyme = entry + 1 + (buffer.get(entry) & 0xFF) + 1;
+        return decode(rhyme + 1, buffer.get(rhyme) & 0xFF);
+    }
+
+    /**
+     * Gets the stress type of the given entry.
+     * 
+     * @param entry The position of the entry.
+     * @return The stress type of the word.
+     */
+    public StressType getStressType(final int entry)
+    {
+        return StressType.values()[buffer.get(entry + 1 + (buffer.get(entry) & 0xFF))];
+    }
+
+    public String getParser()
+    {
+        return parser;
+    }
+
+    public int getVersion()
+    {
+        return version;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Analyzes the given word and builds its entry.
+     * 
+     * @param wordParser The parser used to analyze the word.
+     * @param word The word to analyze.
+     * @return The entry, or <code>null</code> if the word cannot be stored.
+     * @throws IOException If the entry cannot be built.
+     */
+    private static byte[] entry(final WordParser wordParser, final String word)
+        throws IOException
+    {
+        byte[] key = word.getBytes("UTF-8");
+        byte[] rhyme = wordParser.phoneticRhymePart(word).getBytes("UTF-8");
+
+        // Supplementary characters are not supported when comparing the stored words
+        if (key.length == 0 || key.length > MAX_LENGTH || rhyme.length > MAX_LENGTH
+            || word.length() != word.codePointCount(0, word.length()))
+        {
+            return null;
+        }
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        entry.write(key.length);
+        entry.write(key);
+        entry.write(wordParser.stressType(word).ordinal());
+        entry.write(rhyme.length);
+        entry.write(rhyme);
+
+        return entry.toByteArray();
+    }
+
+    /**
+     * Finds the seed of each bucket that places all the words in different slots.
+     * 
+     * @param keys The words.
+     * @param buckets The number of buckets.
+     * @param seeds The array where the seed of each bucket is stored.
+     * @return The index of the word placed in each slot.
+     * @throws IOException If the words cannot be placed.
+     */
+    private static int[] place(final List<byte[]> keys, final int buckets, final int[] seeds)
+        throws IOException
+    {
+        int size = keys.size();
+        final List<List<Integer>> grouped = new ArrayList<List<Integer>>();
+        List<String> words = new ArrayList<String>(size);
+
+        for (int i = 0; i < buckets; i++)
+        {
+            grouped.add(new ArrayList<Integer>());
+        }
+
+        for (int i = 0; i < size; i++)
+        {
+            String word = new String(keys.get(i), "UTF-8");
+            words.add(word);
+            grouped.get(index(hash(word, 0), buckets)).add(i);
+        }
+
+        // Place the largest buckets first, while there are more free slots
+        Integer[] order = new Integer[buckets];
+        for (int i = 0; i < buckets; i++)
+        {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(final Integer b1, final Integer b2)
+            {
+                return grouped.get(b2).size() - grouped.get(b1).size();
+            }
+        });
+
+        int[] slots = new int[size];
+        boolean[] used = new boolean[size];
+        int[] candidate = new int[size];
+
+        for (Integer bucket : order)
+        {
+            List<Integer> members = grouped.get(bucket);
+
+            if (members.isEmpty())
+            {
+                break;
+            }
+
+            int seed = 0;
+
+            while (!fits(words, members, seed, used, candidate))
+            {
+                if (++seed == MAX_SEED)
+                {
+                    throw new IOException("Could not place the words of the lexicon");
+                }
+            }
+
+            seeds[bucket] = seed;
+
+            for (int i = 0; i < members.size(); i++)
+            {
+                used[candidate[i]] = true;
+                slots[candidate[i]] = members.get(i);
+            }
+        }
+
+        return slots;
+    }
+
+    private static boolean fits(final List<String> words, final List<Integer> members,
+        final int seed, final boolean[] used, final int[] candidate)
+    {
+        for (int i = 0; i < members.size(); i++)
+        {
+            int slot = index(hash(words.get(members.get(i)), seed), used.length);
+
+            if (used[slot])
+            {
+                return false;
+            }
+
+            for (int j = 0; j < i; j++)
+            {
+                if (candidate[j] == slot)
+                {
+                    return false;
+                }
+            }
+
+            candidate[i] = slot;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if the given entry holds the given word.
+     * 
+     * @param word The word.
+     * @param entry The position of the entry.
+     * @return Boolean indicating if the entry holds the word.
+     */
+    private boolean matches(final String word, final int entry)
+    {
+        int end = entry + 1 + (buffer.get(entry) & 0xFF);
+        int position = entry + 1;
+
+        for (int i = 0; i < word.length(); i++)
+        {
+            if (position >= end)
+            {
+                return false;
+            }
+
+            int b = buffer.get(position++) & 0xFF;
+            int c;
+
+            if (b < 0x80)
+            {
+                c = b;
+            }
+            else if (b < 0xE0)
+            {
+                c = (b & 0x1F) << 6 | buffer.get(position++) & 0x3F;
+            }
+            else
+            {
+                c = (b & 0x0F) << 12 | (buffer.get(position++) & 0x3F) << 6
+                    | buffer.get(position++) & 0x3F;
+            }
+
+            if (c != word.charAt(i))
+            {
+                return false;
+            }
+        }
+
+        return position == end;
+    }
+
+    private String decode(final int position, final int length)
+    {
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = buffer.get(position + i);
+        }
+
+        try
+        {
+            return new String(bytes, "UTF-8");
+        }
+        catch (IOException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int index(final int hash, final int size)
+    {
+        return (int) ((hash & 0xFFFFFFFFL) % size);
+    }
+
+    /**
+     * Hashes the given word with the given seed.
+     * 
+     * @param word The word to hash.
+     * @param seed The seed.
+     * @return The hash of the word.
+     */
+    private static int hash(final String word, final int seed)
+    {
+        int h = 0x811C9DC5 ^ seed * 0x9E3779B9;
+
+        for (int i = 0; i < word.length(); i++)
+        {
+            h = (h ^ word.charAt(i)) * 0x01000193;
+        }
+
+        // Final mix to spread the bits of short words
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a {@link Lexicon} from a dictionary file with one word per line.
+ * <p>
+ * Usage: <code>LexiconBuilder &lt;dictionary&gt; &lt;lexicon&gt; [parser class]</code>. If no
+ * parser class is given, the rules of the configured {@link WordParser} are used.
+ * 
+ * @author Ignasi Barrera
+ * @see LexiconWordParser
+ */
+public class LexiconBuilder
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LexiconBuilder.class);
+
+    /** The parser used to analyze the words. */
+    private final WordParser wordParser;
+
+    /**
+     * Creates a builder that analyzes the words with the given parser.
+     * 
+     * @param wordParser The parser used to analyze the words.
+     */
+    public LexiconBuilder(final WordParser wordParser)
+    {
+        this.wordParser = wordParser instanceof LexiconWordParser ? ((LexiconWordParser) wordParser)
+            .getDelegate() : wordParser;
+    }
+
+    /**
+     * Builds the lexicon with the words in the given dictionary.
+     * 
+     * @param dictionary The dictionary file, with one word per line.
+     * @param lexicon The lexicon file to write.
+     * @return The number of words in the lexicon.
+     * @throws IOException If the dictionary cannot be read or the lexicon cannot be written.
+     */
+    public int build(final File dictionary, final File lexicon) throws IOException
+    {
+        List<String> words = new ArrayList<String>();
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(new FileInputStream(dictionary), "UTF-8"));
+
+        try
+        {
+            String line = null;
+
+            while ((line = reader.readLine()) != null)
+            {
+                String word = line.trim();
+
+                // Ignore comments and lines with more than one word
+                if (word.length() > 0 && !word.startsWith("#") && word.indexOf(' ') < 0)
+                {
+                    words.add(word);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        int size = Lexicon.write(wordParser, words, lexicon);
+
+        LOGGER.info("Built lexicon {} with {} words using {} version {}", new Object[] {lexicon,
+            size, wordParser.getClass().getName(), wordParser.getVersion()});
+
+        return size;
+    }
+
+    /**
+     * Builds a lexicon.
+     * 
+     * @param args The dictionary file, the lexicon file and, optionally, the parser class.
+     */
+    public static void main(final String... args)
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: LexiconBuilder <dictionary> <lexicon> [parser class]");
+            System.exit(1);
+        }
+
+        WordParser wordParser =
+            args.length > 2 ? WordParserFactory.newWordParser(args[2]) : WordParserFactory
+                .getWordParser();
+
+        try
+        {
+            new LexiconBuilder(wordParser).build(new File(args[0]), new File(args[1]));
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not build the lexicon: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+
+/**
+ * {@link WordParser} that looks up the known words in a precompiled {@link Lexicon}, and uses
+ * the rules of another parser for the rest of words.
+ * <p>
+ * The lexicon must have been built with the same version of the parser it wraps. It is mapped the
+ * first time a word is analyzed and, if it cannot be loaded or it is outdated, all the words are
+ * analyzed with the rules.
+ * 
+ * @author Ignasi Barrera
+ * @see LexiconBuilder
+ */
+public class LexiconWordParser implements WordParser
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LexiconWordParser.class);
+
+    /** The parser used for the words not in the lexicon. */
+    private final WordParser delegate;
+
+    /** The lexicon file. */
+    private final File file;
+
+    /** The lexicon, or <code>null</code> if it could not be loaded. */
+    private volatile Lexicon lexicon;
+
+    /** Indicates if the lexicon has been loaded. */
+    private volatile boolean loaded;
+
+    /**
+     * Creates a parser using the lexicon and the parser in the configuration.
+     */
+    public LexiconWordParser()
+    {
+        this(WordParserFactory.newWordParser(Configuration
+            .getRequiredConfigValue(Configuration.LEXICON_PARSER_PROPERTY)), new File(
+            Configuration.getRequiredConfigValue(Configuration.LEXICON_FILE_PROPERTY)));
+    }
+
+    /**
+     * Creates a parser using the given lexicon and parser.
+     * 
+     * @param delegate The parser used for the words not in the lexicon.
+     * @param file The lexicon file.
+     */
+    public LexiconWordParser(final WordParser delegate, final File file)
+    {
+        this.delegate = delegate;
+        this.file = file;
+    }
+
+    @Override
+    public String phoneticRhymePart(final String word)
+    {
+        Lexicon lex = getLexicon();
+        int entry = lex == null ? -1 : lex.find(word);
+        return entry < 0 ? delegate.phoneticRhymePart(word) : lex.getRhyme(entry);
+    }
+
+    @Override
+    public StressType stressType(final String word)
+    {
+        Lexicon lex = getLexicon();
+        int entry = lex == null ? -1 : lex.find(word);
+        return entry < 0 ? delegate.stressType(word) : lex.getStressType(entry);
+    }
+
+    @Override
+    public boolean rhyme(final String word1, final String word2)
+    {
+        return delegate.rhyme(word1, word2);
+    }
+
+    @Override
+    public boolean isLetter(final char letter)
+    {
+        return delegate.isLetter(letter);
+    }
+
+    @Override
+    public boolean isWord(final String text)
+    {
+        return delegate.isWord(text);
+    }
+
+    @Override
+    public int getVersion()
+    {
+        return delegate.getVersion();
+    }
+
+    @Override
+    public String getDefaultRhyme()
+    {
+        return delegate.getDefaultRhyme();
+    }
+
+    /**
+     * Gets the parser used for the words not in the lexicon.
+     * 
+     * @return The parser used for the words not in the lexicon.
+     */
+    public WordParser getDelegate()
+    {
+        return delegate;
+    }
+
+    /**
+     * Maps the lexicon the first time it is used.
+     * 
+     * @return The lexicon, or <code>null</code> if it cannot be used.
+     */
+    private Lexicon getLexicon()
+    {
+        if (!loaded)
+        {
+            synchronized (this)
+            {
+                if (!loaded)
+                {
+                    lexicon = load();
+                    loaded = true;
+                }
+            }
+        }
+
+        return lexicon;
+    }
+
+    private Lexicon load()
+    {
+        try
+        {
+            Lexicon lex = Lexicon.open(file);
+
+            if (!lex.getParser().equals(delegate.getClass().getName())
+                || lex.getVersion() != delegate.getVersion())
+            {
+                LOGGER.warn("Ignoring lexicon {} built with {} version {}", new Object[] {file,
+                    lex.getParser(), lex.getVersion()});
+                return null;
+            }
+
+            LOGGER.info("Loaded lexicon {} with {} words", file, lex.size());
+
+            return lex;
+        }
+        catch (IOException ex)
+        {
+            LOGGER.warn("Could not load lexicon {}: {}", file, ex.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+/**
+ * The result of the analysis of a word with a {@link WordParser}.
+ * 
+ * @author Ignasi Barrera
+ * @see WordAnalyzer
+ */
+public class WordAnalysis
+{
+    /** The analyzed word. */
+    private final String word;
+
+    /** The phonetic rhyme part of the word. */
+    private final String rhyme;
+
+    /** The stress type of the word. */
+    private final StressType type;
+
+    /**
+     * Creates a new analysis.
+     * 
+     * @param word The analyzed word.
+     * @param rhyme The phonetic rhyme part of the word.
+     * @param type The stress type of the word.
+     */
+    public WordAnalysis(final String word, final String rhyme, final StressType type)
+    {
+        this.word = word;
+        this.rhyme = rhyme;
+        this.type = type;
+    }
+
+    public String getWord()
+    {
+        return word;
+    }
+
+    public String getRhyme()
+    {
+        return rhyme;
+    }
+
+    public StressType getType()
+    {
+        return type;
+    }
+
+    @Override
+    public String toString()
+    {
+        return word + " (" + rhyme + ", " + type + ")";
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Analyzes words with a {@link WordParser}, one by one or in batches.
+ * <p>
+ * Batches are deduplicated before being analyzed, so each distinct word is parsed once, and can be
+ * split in chunks that are analyzed in parallel by an {@link ExecutorService}. The
+ * <code>WordParser</code> must be safe to use from several threads.
+ * 
+ * @author Ignasi Barrera
+ * @see WordAnalysis
+ */
+public class WordAnalyzer
+{
+    /** The default number of distinct words analyzed by each task. */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    /** The parser used to analyze the words. */
+    private final WordParser wordParser;
+
+    /** The number of distinct words analyzed by each task. */
+    private final int chunkSize;
+
+    /**
+     * Creates an analyzer for the given parser.
+     * 
+     * @param wordParser The parser used to analyze the words.
+     */
+    public WordAnalyzer(final WordParser wordParser)
+    {
+        this(wordParser, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates an analyzer for the given parser.
+     * 
+     * @param wordParser The parser used to analyze the words.
+     * @param chunkSize The number of distinct words analyzed by each task.
+     */
+    public WordAnalyzer(final WordParser wordParser, final int chunkSize)
+    {
+        this.wordParser = wordParser;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Analyzes the given word.
+     * 
+     * @param word The word to analyze.
+     * @return The analysis of the word.
+     */
+    public WordAnalysis analyze(final CharSequence word)
+    {
+        String value = word.toString();
+        return new WordAnalysis(value, wordParser.phoneticRhymePart(value), wordParser
+            .stressType(value));
+    }
+
+    /**
+     * Analyzes the given words in the current thread.
+     * 
+     * @param words The words to analyze.
+     * @return The analysis of each word, in the same order.
+     */
+    public List<WordAnalysis> analyzeAll(final List< ? extends CharSequence> words)
+    {
+        List<String> distinct = new ArrayList<String>();
+        int[] positions = deduplicate(words, distinct);
+        WordAnalysis[] analyzed = new WordAnalysis[distinct.size()];
+
+        analyze(distinct, 0, distinct.size(), analyzed);
+
+        return collect(positions, analyzed);
+    }
+
+    /**
+     * Analyzes the given words, splitting the work in chunks that are run in the given executor.
+     * 
+     * @param words The words to analyze.
+     * @param executor The executor used to run the chunks.
+     * @return The analysis of each word, in the same order.
+     * @throws InterruptedException If the current thread is interrupted while waiting for the
+     *             results.
+     */
+    public List<WordAnalysis> analyzeAll(final List< ? extends CharSequence> words,
+        final ExecutorService executor) throws InterruptedException
+    {
+        final List<String> distinct = new ArrayList<String>();
+        int[] positions = deduplicate(words, distinct);
+        final WordAnalysis[] analyzed = new WordAnalysis[distinct.size()];
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+
+        for (int from = 0; from < distinct.size(); from += chunkSize)
+        {
+            final int start = from;
+            final int end = Math.min(from + chunkSize, distinct.size());
+
+            results.add(executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    analyze(distinct, start, end, analyzed);
+                    return null;
+                }
+            }));
+        }
+
+        try
+        {
+            for (Future<Void> result : results)
+            {
+                result.get();
+            }
+        }
+        catch (ExecutionException ex)
+        {
+            for (Future<Void> result : results)
+            {
+                result.cancel(true);
+            }
+
+            if (ex.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) ex.getCause();
+            }
+
+            throw new IllegalStateException("Could not analyze words", ex.getCause());
+        }
+
+        return collect(positions, analyzed);
+    }
+
+    /**
+     * Analyzes a range of words.
+     * 
+     * @param words The words to analyze.
+     * @param from The first word to analyze.
+     * @param to The index after the last word to analyze.
+     * @param analyzed The array where the analysis of each word is stored.
+     */
+    private void analyze(final List<String> words, final int from, final int to,
+        final WordAnalysis[] analyzed)
+    {
+        for (int i = from; i < to; i++)
+        {
+            analyzed[i] = analyze(words.get(i));
+        }
+    }
+
+    /**
+     * Gets the distinct words of the given list.
+     * 
+     * @param words The words to deduplicate.
+     * @param distinct The list where the distinct words are added.
+     * @return The position of each word in the list of distinct words.
+     */
+    private static int[] deduplicate(final List< ? extends CharSequence> words,
+        final List<String> distinct)
+    {
+        Map<String, Integer> seen = new HashMap<String, Integer>();
+        int[] positions = new int[words.size()];
+        int i = 0;
+
+        for (CharSequence word : words)
+        {
+            String value = word.toString();
+            Integer position = seen.get(value);
+
+            if (position == null)
+            {
+                position = distinct.size();
+                seen.put(value, position);
+                distinct.add(value);
+            }
+
+            positions[i++] = position;
+        }
+
+        return positions;
+    }
+
+    /**
+     * Builds the results of a batch.
+     * 
+     * @param positions The position of each word in the list of distinct words.
+     * @param analyzed The analysis of each distinct word.
+     * @return The analysis of each word.
+     */
+    private static List<WordAnalysis> collect(final int[] positions,
+        final WordAnalysis[] analyzed)
+    {
+        WordAnalysis[] results = new WordAnalysis[positions.length];
+
+        for (int i = 0; i < positions.length; i++)
+        {
+            results[i] = analyzed[positions[i]];
+        }
+
+        return Arrays.asList(results);
+    }
+}
@@ -70,6 +70,16 @@ public interface WordParser
      */
     public boolean isWord(final String text);
 
+    /**
+     * Gets the version of the rules used to parse the words.
+     * <p>
+     * The version must be increased every time a change in the rules modifies the rhyme part or
+     * the stress type of any word, so the rhymes indexed with older rules can be updated.
+     * 
+     * @return The version of the parsing rules.
+     */
+    public int getVersion();
+
     /**
      * Gets the default rhyme.
      * 
@@ -48,7 +48,6 @@ public class WordParserFactory
      * @return The <code>WordParser</code> to be used in the application.
      * @throws ConfigurationException If the <code>WordParser</code> cannot be created.
      */
-    @SuppressWarnings("unchecked")
     public static WordParser getWordParser() throws ConfigurationException
     {
         if (wordParser == null)
@@ -64,20 +63,33 @@ public class WordParserFactory
 
             LOGGER.info("Using WordParser: {}", className);
 
-            try
-            {
-                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-                Class< ? extends WordParser> clazz =
-                    (Class< ? extends WordParser>) Class.forName(className, true, classLoader);
-                wordParser = clazz.newInstance();
-            }
-            catch (Exception ex)
-            {
-                throw new ConfigurationException("Could not create the WordParser of class: "
-                    + className, ex);
-            }
+            wordParser = newWordParser(className);
         }
 
         return wordParser;
     }
+
+    /**
+     * Creates a new {@link WordParser} of the given class.
+     * 
+     * @param className The class of the <code>WordParser</code>.
+     * @return The new <code>WordParser</code>.
+     * @throws ConfigurationException If the <code>WordParser</code> cannot be created.
+     */
+    @SuppressWarnings("unchecked")
+    public static WordParser newWordParser(final String className) throws ConfigurationException
+    {
+        try
+        {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            Class< ? extends WordParser> clazz =
+                (Class< ? extends WordParser>) Class.forName(className, true, classLoader);
+            return clazz.newInstance();
+        }
+        catch (Exception ex)
+        {
+            throw new ConfigurationException("Could not create the WordParser of class: "
+                + className, ex);
+        }
+    }
 }
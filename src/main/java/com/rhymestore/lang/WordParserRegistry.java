@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * Holds the {@link WordParser} of each of the supported languages.
+ * <p>
+ * The languages are read from the {@link Configuration#LANGUAGES_PROPERTY} property, and the
+ * first one is the primary language, parsed with the {@link WordParser} returned by the
+ * {@link WordParserFactory}. The parser of each of the other languages is read from the
+ * <code>rhymestore.wordparser.&lt;language&gt;.class</code> property.
+ * <p>
+ * The registry is immutable once created, so the parsers can be looked up concurrently without
+ * locking.
+ * 
+ * @author Ignasi Barrera
+ * @see LanguageIdentifier
+ */
+public class WordParserRegistry
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WordParserRegistry.class);
+
+    /** The language used if none is configured. */
+    public static final String DEFAULT_LANGUAGE = "es";
+
+    /** The registry used in the application. */
+    private static volatile WordParserRegistry registry;
+
+    /** The parsers, by language. */
+    private final Map<String, WordParser> parsers;
+
+    /** The primary language. */
+    private final String primaryLanguage;
+
+    /** Identifies the language of the texts. */
+    private final LanguageIdentifier identifier;
+
+    /**
+     * Creates a registry with the given parsers.
+     * 
+     * @param parsers The parsers, by language. The first one is the primary language.
+     */
+    public WordParserRegistry(final Map<String, WordParser> parsers)
+    {
+        if (parsers.isEmpty())
+        {
+            throw new IllegalArgumentException("At least one language is required");
+        }
+
+        this.parsers = Collections.unmodifiableMap(new LinkedHashMap<String, WordParser>(parsers));
+        this.primaryLanguage = parsers.keySet().iterator().next();
+        this.identifier = new LanguageIdentifier(this.parsers.keySet(), primaryLanguage);
+    }
+
+    /**
+     * Gets the {@link WordParserRegistry} to be used in the application.
+     * 
+     * @return The <code>WordParserRegistry</code> to be used in the application.
+     * @throws ConfigurationException If any of the parsers cannot be created.
+     */
+    public static WordParserRegistry getRegistry() throws ConfigurationException
+    {
+        WordParserRegistry current = registry;
+
+        if (current == null)
+        {
+            synchronized (WordParserRegistry.class)
+            {
+                current = registry;
+
+                if (current == null)
+                {
+                    current = load();
+                    registry = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Creates the registry with the configured languages.
+     * 
+     * @return The registry.
+     * @throws ConfigurationException If any of the parsers cannot be created.
+     */
+    private static WordParserRegistry load() throws ConfigurationException
+    {
+        String value = Configuration.getConfigValue(Configuration.LANGUAGES_PROPERTY);
+        String[] languages = value == null ? new String[] {DEFAULT_LANGUAGE} : value.split(",");
+        Map<String, WordParser> parsers = new LinkedHashMap<String, WordParser>();
+
+        for (String language : languages)
+        {
+            String code = language.trim().toLowerCase();
+
+            if (code.length() == 0)
+            {
+                continue;
+            }
+
+            String className = Configuration.getConfigValue(getParserProperty(code));
+
+            if (className != null)
+            {
+                parsers.put(code, WordParserFactory.newWordParser(className));
+            }
+            else if (parsers.isEmpty())
+            {
+                parsers.put(code, WordParserFactory.getWordParser());
+            }
+            else
+            {
+                throw new ConfigurationException(getParserProperty(code) + " property not defined");
+            }
+
+            LOGGER.info("Using {} for language {}", parsers.get(code).getClass().getName(), code);
+        }
+
+        return new WordParserRegistry(parsers);
+    }
+
+    /**
+     * Gets the name of the property that holds the parser class of the given language.
+     * 
+     * @param language The language.
+     * @return The name of the property.
+     */
+    public static String getParserProperty(final String language)
+    {
+        return Configuration.WORDPARSER_LANGUAGE_PREFIX + language + ".class";
+    }
+
+    /**
+     * Gets the parser of the given language.
+     * 
+     * @param language The language.
+     * @return The parser of the given language, or the parser of the primary language if the
+     *         given language is not supported.
+     */
+    public WordParser getWordParser(final String language)
+    {
+        WordParser wordParser = language == null ? null : parsers.get(language);
+        return wordParser == null ? parsers.get(primaryLanguage) : wordParser;
+    }
+
+    /**
+     * Identifies the language of the given text.
+     * 
+     * @param declared The language declared by the author of the text, if any.
+     * @param text The text.
+     * @return One of the supported languages.
+     */
+    public String identify(final String declared, final CharSequence text)
+    {
+        return identifier.identify(declared, text);
+    }
+
+    public Set<String> getLanguages()
+    {
+        return parsers.keySet();
+    }
+
+    public String getPrimaryLanguage()
+    {
+        return primaryLanguage;
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * Extracts the last word of a text.
+ * <p>
+ * The text is scanned backwards from its end, skipping the trailing tokens that are not part of
+ * the sentence (such as links, mentions or emoticons) according to the configured {@link Rule}s.
+ * The word is located by its offsets in the original text, so no copies are made unless the word
+ * itself is requested.
+ * 
+ * @author Ignasi Barrera
+ * @see WordUtils#getLastWord(String)
+ */
+public class WordTokenizer
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WordTokenizer.class);
+
+    /** The prefixes of the links. */
+    private static final String[] URL_PREFIXES = {"http://", "https://", "www."};
+
+    /** The zero width joiner used in emoji sequences. */
+    private static final char ZERO_WIDTH_JOINER = '\u200D';
+
+    /** The {@link WordTokenizer} used in the application. */
+    private static WordTokenizer tokenizer;
+
+    /** The rules used to skip the trailing tokens. */
+    private final Set<Rule> rules;
+
+    /**
+     * The rules used to skip the trailing tokens of a text.
+     */
+    public static enum Rule
+    {
+        /** Skip links. */
+        URLS,
+
+        /** Skip user mentions. */
+        MENTIONS,
+
+        /** Skip hashtags. */
+        HASHTAGS,
+
+        /** Skip tokens made only of emoji and symbols. */
+        EMOJI,
+
+        /** Skip tokens made only of punctuation marks. */
+        PUNCTUATION;
+    }
+
+    /**
+     * Creates a tokenizer that skips the trailing tokens matching the given rules.
+     * 
+     * @param rules The rules used to skip the trailing tokens.
+     */
+    public WordTokenizer(final Set<Rule> rules)
+    {
+        this.rules = rules.isEmpty() ? EnumSet.noneOf(Rule.class) : EnumSet.copyOf(rules);
+    }
+
+    /**
+     * Gets the {@link WordTokenizer} to be used in the application.
+     * <p>
+     * The rules are read from the {@link Configuration#TOKENIZER_SKIP_PROPERTY} property, and
+     * default to all of them but {@link Rule#HASHTAGS}.
+     * 
+     * @return The <code>WordTokenizer</code> to be used in the application.
+     * @throws ConfigurationException If the configured rules are not valid.
+     */
+    public static WordTokenizer getTokenizer() throws ConfigurationException
+    {
+        if (tokenizer == null)
+        {
+            String value = Configuration.getConfigValue(Configuration.TOKENIZER_SKIP_PROPERTY);
+            Set<Rule> rules = EnumSet.of(Rule.URLS, Rule.MENTIONS, Rule.EMOJI, Rule.PUNCTUATION);
+
+            if (value != null)
+            {
+                rules.clear();
+
+                for (String rule : value.split(","))
+                {
+                    if (rule.trim().length() > 0)
+                    {
+                        try
+                        {
+                            rules.add(Rule.valueOf(rule.trim().toUpperCase()));
+                        }
+                        catch (IllegalArgumentException ex)
+                        {
+                            throw new ConfigurationException("Invalid tokenizer rule: " + rule);
+                        }
+                    }
+                }
+            }
+
+            LOGGER.info("Skipping trailing tokens: {}", rules);
+
+            tokenizer = new WordTokenizer(rules);
+        }
+
+        return tokenizer;
+    }
+
+    /**
+     * Gets the last word of the given text.
+     * 
+     * @param text The text to parse.
+     * @return The last word of the given text, or an empty string if there is no word.
+     */
+    public String lastWord(final CharSequence text)
+    {
+        int end = text == null ? -1 : lastWordEnd(text);
+        return end < 0 ? "" : text.subSequence(wordStart(text, end), end).toString();
+    }
+
+    /**
+     * Gets the word before the last word of the given text.
+     * 
+     * @param text The text to parse.
+     * @return The word before the last word of the given text, or an empty string if there is
+     *         no such word.
+     */
+    public String previousWord(final CharSequence text)
+    {
+        int end = text == null ? -1 : lastWordEnd(text);
+        return end < 0 ? "" : lastWord(text.subSequence(0, wordStart(text, end)));
+    }
+
+    /**
+     * Gets the end offset of the last word of the given text.
+     * 
+     * @param text The text to parse.
+     * @return The offset after the last character of the last word, or <code>-1</code> if there
+     *         is no word.
+     */
+    public int lastWordEnd(final CharSequence text)
+    {
+        int end = text.length();
+
+        while (true)
+        {
+            while (end > 0 && isSeparator(text.charAt(end - 1)))
+            {
+                end--;
+            }
+
+            if (end == 0)
+            {
+                return -1;
+            }
+
+            int start = wordStart(text, end);
+
+            if (!skip(text, start, end))
+            {
+                return end;
+            }
+
+            end = start;
+        }
+    }
+
+    /**
+     * Gets the start offset of the word that ends at the given offset.
+     * 
+     * @param text The text to parse.
+     * @param end The offset after the last character of the word.
+     * @return The offset of the first character of the word.
+     */
+    public int wordStart(final CharSequence text, final int end)
+    {
+        int start = end;
+
+        while (start > 0 && !isSeparator(text.charAt(start - 1)))
+        {
+            start--;
+        }
+
+        return start;
+    }
+
+    /**
+     * Checks if the given token must be skipped.
+     * 
+     * @param text The text being parsed.
+     * @param start The offset of the first character of the token.
+     * @param end The offset after the last character of the token.
+     * @return Boolean indicating if the token must be skipped.
+     */
+    private boolean skip(final CharSequence text, final int start, final int end)
+    {
+        char first = text.charAt(start);
+        boolean prefixed = end - start > 1;
+
+        if (rules.contains(Rule.URLS) && isUrl(text, start, end))
+        {
+            return true;
+        }
+        if (rules.contains(Rule.MENTIONS) && prefixed && (first == '@' || first == '\uFF20'))
+        {
+            return true;
+        }
+        if (rules.contains(Rule.HASHTAGS) && prefixed && (first == '#' || first == '\uFF03'))
+        {
+            return true;
+        }
+
+        boolean emoji = false;
+
+        for (int i = start; i < end; i++)
+        {
+            char c = text.charAt(i);
+
+            if (Character.isLetterOrDigit(c))
+            {
+                return false;
+            }
+
+            emoji = emoji || isEmoji(c);
+        }
+
+        return rules.contains(emoji ? Rule.EMOJI : Rule.PUNCTUATION);
+    }
+
+    private static boolean isUrl(final CharSequence text, final int start, final int end)
+    {
+        for (String prefix : URL_PREFIXES)
+        {
+            if (end - start > prefix.length() && startsWithIgnoreCase(text, start, prefix))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean startsWithIgnoreCase(final CharSequence text, final int start,
+        final String prefix)
+    {
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            if (Character.toLowerCase(text.charAt(start + i)) != prefix.charAt(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSeparator(final char c)
+    {
+        return Character.isWhitespace(c) || Character.isSpaceChar(c);
+    }
+
+    private static boolean isEmoji(final char c)
+    {
+        if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)
+            || c == ZERO_WIDTH_JOINER)
+        {
+            return true;
+        }
+
+        switch (Character.getType(c))
+        {
+            case Character.OTHER_SYMBOL:
+            case Character.MATH_SYMBOL:
+            case Character.MODIFIER_SYMBOL:
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
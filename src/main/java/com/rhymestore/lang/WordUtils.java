@@ -22,9 +22,6 @@
 
 package com.rhymestore.lang;
 
-import java.util.Arrays;
-import java.util.List;
-
 /**
  * Utility methods to manipulate text.
  * 
@@ -37,22 +34,11 @@ public class WordUtils
      * 
      * @param sentence The sentence to parse.
      * @return The last word of the given sentence.
+     * @see WordTokenizer#getTokenizer()
      */
     public static String getLastWord(final String sentence)
     {
-        String word = "";
-
-        if (sentence != null)
-        {
-            List<String> words = Arrays.asList(sentence.split(" "));
-
-            if (words.size() > 0)
-            {
-                word = words.get(words.size() - 1);
-            }
-        }
-
-        return word;
+        return WordTokenizer.getTokenizer().lastWord(sentence);
     }
 
     /**
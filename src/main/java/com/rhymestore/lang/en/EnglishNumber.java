@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.en;
+
+/**
+ * Provides the base sound of the English numbers.
+ * <p>
+ * The base sound is the last word used to read a number. Integers can have thousands separators
+ * and are read by their last non zero group of three digits, decimal numbers are read by their
+ * last digit, and ordinals (<code>1st</code>, <code>2nd</code>, <code>3rd</code>,
+ * <code>4th</code>) by their ordinal word.
+ * 
+ * @author Ignasi Barrera
+ * @see EnglishWordParser
+ */
+public final class EnglishNumber
+{
+    /** The words of the numbers below twenty. */
+    private static final String[] UNITS = {"zero", "one", "two", "three", "four", "five", "six",
+        "seven", "eight", "nine", "ten", "eleven", "twelve", "thirteen", "fourteen", "fifteen",
+        "sixteen", "seventeen", "eighteen", "nineteen"};
+
+    /** The words of the tens. */
+    private static final String[] TENS = {null, null, "twenty", "thirty", "forty", "fifty",
+        "sixty", "seventy", "eighty", "ninety"};
+
+    /** The ordinal words of the numbers below twenty. */
+    private static final String[] ORDINAL_UNITS = {"zeroth", "first", "second", "third",
+        "fourth", "fifth", "sixth", "seventh", "eighth", "ninth", "tenth", "eleventh", "twelfth",
+        "thirteenth", "fourteenth", "fifteenth", "sixteenth", "seventeenth", "eighteenth",
+        "nineteenth"};
+
+    /** The ordinal words of the tens. */
+    private static final String[] ORDINAL_TENS = {null, null, "twentieth", "thirtieth",
+        "fortieth", "fiftieth", "sixtieth", "seventieth", "eightieth", "ninetieth"};
+
+    /** The words of the groups of three digits. */
+    private static final String[] SCALES = {null, "thousand", "million", "billion", "trillion",
+        "quadrillion", "quintillion", "sextillion", "septillion", "octillion", "nonillion",
+        "decillion"};
+
+    /** The length of a group of thousands. */
+    private static final int GROUP_LENGTH = 3;
+
+    /** The length of the ordinal suffixes. */
+    private static final int SUFFIX_LENGTH = 2;
+
+    private EnglishNumber()
+    {
+        throw new AssertionError();
+    }
+
+    /**
+     * Checks if the given text is a number that can be read.
+     * 
+     * @param number The text to check.
+     * @return Boolean indicating if the given text is a number.
+     */
+    public static boolean isNumber(final String number)
+    {
+        return locateDigits(number) != null;
+    }
+
+    /**
+     * Gets the base sound of the given number.
+     * 
+     * @param number The number.
+     * @return The last word used to read the number.
+     * @throws NumberFormatException If the given text is not a valid number.
+     */
+    public static String getBaseSound(final String number)
+    {
+        String digits = locateDigits(number);
+
+        if (digits == null)
+        {
+            throw new NumberFormatException("Not a valid number: " + number);
+        }
+
+        boolean ordinal = !Character.isDigit(number.charAt(number.length() - 1));
+        boolean decimal = number.indexOf('.') >= 0;
+
+        if (decimal)
+        {
+            return UNITS[digits.charAt(digits.length() - 1) - '0'];
+        }
+
+        // Find the last group of three digits that is not zero
+        int end = digits.length();
+        int scale = 0;
+        int group = 0;
+
+        while (end > 0)
+        {
+            int start = Math.max(0, end - GROUP_LENGTH);
+            group = Integer.parseInt(digits.substring(start, end));
+
+            if (group != 0)
+            {
+                break;
+            }
+
+            end = start;
+            scale++;
+        }
+
+        if (group == 0)
+        {
+            return ordinal ? ORDINAL_UNITS[0] : UNITS[0];
+        }
+
+        if (scale > 0)
+        {
+            return ordinal ? SCALES[scale] + "th" : SCALES[scale];
+        }
+
+        int rest = group % 100;
+
+        if (rest == 0)
+        {
+            return ordinal ? "hundredth" : "hundred";
+        }
+        else if (rest < UNITS.length)
+        {
+            return ordinal ? ORDINAL_UNITS[rest] : UNITS[rest];
+        }
+        else if (rest % 10 == 0)
+        {
+            return ordinal ? ORDINAL_TENS[rest / 10] : TENS[rest / 10];
+        }
+        else
+        {
+            return ordinal ? ORDINAL_UNITS[rest % 10] : UNITS[rest % 10];
+        }
+    }
+
+    /**
+     * Validates the given number and gets its digits.
+     * 
+     * @param number The number.
+     * @return The digits of the integer part without separators, or the digits of the decimal
+     *         part for decimal numbers, or <code>null</code> if the given text is not a number.
+     */
+    private static String locateDigits(final String number)
+    {
+        if (number == null || number.length() == 0)
+        {
+            return null;
+        }
+
+        int start = number.charAt(0) == '-' ? 1 : 0;
+        int end = number.length();
+
+        // Ordinals can only be positive integers
+        if (end - start > SUFFIX_LENGTH && !Character.isDigit(number.charAt(end - 1)))
+        {
+            if (start > 0 || !isOrdinalSuffix(number))
+            {
+                return null;
+            }
+
+            end -= SUFFIX_LENGTH;
+        }
+
+        int dot = number.indexOf('.', start);
+        if (dot >= 0)
+        {
+            // Decimal numbers are read by the digits after the dot
+            if (end != number.length() || !isGrouped(number, start, dot)
+                || !isDigits(number, dot + 1, end))
+            {
+                return null;
+            }
+
+            return number.substring(dot + 1, end);
+        }
+
+        if (!isGrouped(number, start, end))
+        {
+            return null;
+        }
+
+        String digits = number.substring(start, end).replace(",", "");
+
+        return digits.length() > GROUP_LENGTH * SCALES.length ? null : digits;
+    }
+
+    /**
+     * Checks that the given range has only digits, optionally in groups of three separated by
+     * commas.
+     */
+    private static boolean isGrouped(final String number, final int start, final int end)
+    {
+        int comma = number.indexOf(',', start);
+
+        if (comma < 0 || comma >= end)
+        {
+            return isDigits(number, start, end);
+        }
+
+        if (comma == start || comma - start > GROUP_LENGTH)
+        {
+            return false;
+        }
+
+        for (int i = comma; i < end; i += GROUP_LENGTH + 1)
+        {
+            if (i + 1 + GROUP_LENGTH > end || number.charAt(i) != ','
+                || !isDigits(number, i + 1, i + 1 + GROUP_LENGTH))
+            {
+                return false;
+            }
+        }
+
+        return isDigits(number, start, comma);
+    }
+
+    private static boolean isDigits(final String number, final int start, final int end)
+    {
+        if (start >= end || end > number.length())
+        {
+            return false;
+        }
+
+        for (int i = start; i < end; i++)
+        {
+            if (!Character.isDigit(number.charAt(i)))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks that the ordinal suffix matches the last digits of the number.
+     */
+    private static boolean isOrdinalSuffix(final String number)
+    {
+        int end = number.length();
+        String suffix = number.substring(end - SUFFIX_LENGTH).toLowerCase();
+        char last = number.charAt(end - SUFFIX_LENGTH - 1);
+        boolean teen =
+            end - SUFFIX_LENGTH >= 2 && number.charAt(end - SUFFIX_LENGTH - 2) == '1';
+
+        if (!teen && last == '1')
+        {
+            return suffix.equals("st");
+        }
+        if (!teen && last == '2')
+        {
+            return suffix.equals("nd");
+        }
+        if (!teen && last == '3')
+        {
+            return suffix.equals("rd");
+        }
+
+        return suffix.equals("th") && Character.isDigit(last);
+    }
+}
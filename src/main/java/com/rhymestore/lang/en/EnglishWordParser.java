@@ -0,0 +1,384 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.en;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.lang.DefaultRhymes;
+import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordAnalysis;
+import com.rhymestore.lang.WordParser;
+
+/**
+ * Parses English words to identify the part that is used to conform a perfect rhyme.
+ * <p>
+ * The pronunciation of the words is looked up in a {@link PhonemeDictionary}, and the rhyme part
+ * is made of the phonemes from the stressed vowel to the end of the word. Words that are not in
+ * the dictionary are analyzed as an inflection of a known word when possible, and with the
+ * {@link LetterToSound} rules otherwise.
+ * 
+ * @author Ignasi Barrera
+ * @see WordParser
+ * @see PhonemeDictionary
+ */
+public class EnglishWordParser implements WordParser
+{
+    /** The version of the parsing rules. */
+    public static final int VERSION = 1;
+
+    /** The stress types, by the number of syllables after the stressed one. */
+    private static final StressType[] STRESS_TYPES = StressType.values();
+
+    /** The phonemes after which the plural suffix is pronounced as a syllable. */
+    private static final List<String> SIBILANTS = Arrays.asList("S", "Z", "SH", "ZH", "CH", "JH");
+
+    /** The voiceless phonemes. */
+    private static final List<String> VOICELESS = Arrays.asList("P", "T", "K", "F", "TH", "S",
+        "SH", "CH");
+
+    /** The pronunciation dictionary. */
+    private final PhonemeDictionary dictionary;
+
+    /** The default rhymes for the English language. */
+    /* package */final DefaultRhymes defaultRhymes = new DefaultRhymes(
+        Configuration.ENGLISH_DEFAULT_RHYME_PROPERTY);
+
+    /**
+     * Creates a parser with the configured dictionary.
+     */
+    public EnglishWordParser()
+    {
+        this(PhonemeDictionary.getDictionary());
+    }
+
+    /**
+     * Creates a parser with the given dictionary.
+     * 
+     * @param dictionary The pronunciation dictionary.
+     */
+    public EnglishWordParser(final PhonemeDictionary dictionary)
+    {
+        super();
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public String phoneticRhymePart(final String word)
+    {
+        String normalized = normalize(word);
+        int entry = dictionary.find(normalized);
+
+        return entry >= 0 ? dictionary.getRhyme(entry) : guess(normalized).getRhyme();
+    }
+
+    @Override
+    public StressType stressType(final String word)
+    {
+        String normalized = normalize(word);
+        int entry = dictionary.find(normalized);
+
+        return entry >= 0 ? stressType(dictionary.getTrailingSyllables(entry)) : guess(
+            normalized).getType();
+    }
+
+    @Override
+    public boolean rhyme(final String word1, final String word2)
+    {
+        String rhyme1 = phoneticRhymePart(word1);
+        String rhyme2 = phoneticRhymePart(word2);
+
+        return rhyme1.equals(rhyme2);
+    }
+
+    @Override
+    public boolean isLetter(final char letter)
+    {
+        return letter >= 'a' && letter <= 'z' || letter >= 'A' && letter <= 'Z';
+    }
+
+    @Override
+    public boolean isWord(final String text)
+    {
+        String word = removeTwitterChars(removeTrailingPunctuation(text));
+
+        if (EnglishNumber.isNumber(word))
+        {
+            return true;
+        }
+
+        boolean hasLetters = false;
+
+        for (int i = 0; i < word.length(); i++)
+        {
+            char c = word.charAt(i);
+
+            if (isLetter(c))
+            {
+                hasLetters = true;
+            }
+            else if (!isApostrophe(c))
+            {
+                return false;
+            }
+        }
+
+        return hasLetters;
+    }
+
+    @Override
+    public int getVersion()
+    {
+        return VERSION;
+    }
+
+    @Override
+    public String getDefaultRhyme()
+    {
+        return defaultRhymes.next();
+    }
+
+    /**
+     * Analyzes a word that is not in the dictionary.
+     * 
+     * @param word The normalized word.
+     * @return The analysis of the word.
+     */
+    private WordAnalysis guess(final String word)
+    {
+        WordAnalysis inflected = inflect(word);
+
+        if (inflected != null)
+        {
+            return inflected;
+        }
+
+        String[] phonemes = LetterToSound.phonemes(word);
+
+        return new WordAnalysis(word, PhonemeDictionary.rhyme(phonemes),
+            stressType(PhonemeDictionary.trailingVowels(phonemes)));
+    }
+
+    /**
+     * Analyzes the given word as an inflection of a word in the dictionary.
+     * 
+     * @param word The normalized word.
+     * @return The analysis of the word, or <code>null</code> if it is not the inflection of a
+     *         known word.
+     */
+    private WordAnalysis inflect(final String word)
+    {
+        int n = word.length();
+
+        if (n > 2 && word.endsWith("'s"))
+        {
+            int entry = dictionary.find(word.substring(0, n - 2));
+            return entry < 0 ? null : suffix(word, entry, pluralSuffix(last(entry)));
+        }
+
+        if (n > 2 && word.endsWith("s"))
+        {
+            int entry = dictionary.find(word.substring(0, n - 1));
+
+            if (entry < 0 && word.endsWith("es"))
+            {
+                entry = dictionary.find(word.substring(0, n - 2));
+            }
+            if (entry < 0 && n > 3 && word.endsWith("ies"))
+            {
+                entry = dictionary.find(word.substring(0, n - 3) + "y");
+            }
+
+            return entry < 0 ? null : suffix(word, entry, pluralSuffix(last(entry)));
+        }
+
+        if (n > 3 && word.endsWith("ed"))
+        {
+            int entry = findStem(word, n - 2);
+
+            if (entry < 0 && word.endsWith("ied"))
+            {
+                entry = dictionary.find(word.substring(0, n - 3) + "y");
+            }
+
+            return entry < 0 ? null : suffix(word, entry, pastSuffix(last(entry)));
+        }
+
+        if (n > 4 && word.endsWith("ing"))
+        {
+            int entry = findStem(word, n - 3);
+            return entry < 0 ? null : suffix(word, entry, Arrays.asList("IH0", "NG"));
+        }
+
+        return null;
+    }
+
+    /**
+     * Looks up the stem of a word with a suffix that starts with a vowel.
+     * 
+     * @param word The word.
+     * @param end The position where the suffix starts.
+     * @return The entry of the stem, or <code>-1</code> if it is not in the dictionary.
+     */
+    private int findStem(final String word, final int end)
+    {
+        String base = word.substring(0, end);
+        int entry = dictionary.find(base);
+
+        // Dropped final "e", as in "making"
+        if (entry < 0)
+        {
+            entry = dictionary.find(base + "e");
+        }
+
+        // Doubled consonant, as in "running"
+        if (entry < 0 && end > 2 && word.charAt(end - 1) == word.charAt(end - 2))
+        {
+            entry = dictionary.find(word.substring(0, end - 1));
+        }
+
+        return entry;
+    }
+
+    private WordAnalysis suffix(final String word, final int entry, final List<String> suffix)
+    {
+        StringBuilder rhyme = new StringBuilder(dictionary.getRhyme(entry));
+        int trailing = dictionary.getTrailingSyllables(entry);
+
+        for (String phoneme : suffix)
+        {
+            boolean vowel = PhonemeDictionary.isVowel(phoneme);
+            rhyme.append(vowel ? phoneme.substring(0, phoneme.length() - 1).toLowerCase()
+                : phoneme.toLowerCase());
+            trailing += vowel ? 1 : 0;
+        }
+
+        return new WordAnalysis(word, rhyme.toString(), stressType(trailing));
+    }
+
+    private String last(final int entry)
+    {
+        return dictionary.getLastPhoneme(entry);
+    }
+
+    /**
+     * Gets the pronunciation of the plural suffix.
+     * 
+     * @param last The last phoneme of the stem.
+     * @return The phonemes of the suffix.
+     */
+    /* package */static List<String> pluralSuffix(final String last)
+    {
+        String phoneme = withoutStress(last);
+
+        if (SIBILANTS.contains(phoneme))
+        {
+            return Arrays.asList("IH0", "Z");
+        }
+
+        return Arrays.asList(VOICELESS.contains(phoneme) ? "S" : "Z");
+    }
+
+    /**
+     * Gets the pronunciation of the past tense suffix.
+     * 
+     * @param last The last phoneme of the stem.
+     * @return The phonemes of the suffix.
+     */
+    /* package */static List<String> pastSuffix(final String last)
+    {
+        String phoneme = withoutStress(last);
+
+        if (phoneme.equals("T") || phoneme.equals("D"))
+        {
+            return Arrays.asList("IH0", "D");
+        }
+
+        return Arrays.asList(VOICELESS.contains(phoneme) ? "T" : "D");
+    }
+
+    private static String withoutStress(final String phoneme)
+    {
+        return phoneme.length() > 0 && PhonemeDictionary.isVowel(phoneme) ? phoneme.substring(0,
+            phoneme.length() - 1) : phoneme;
+    }
+
+    private static StressType stressType(final int trailing)
+    {
+        return STRESS_TYPES[Math.min(trailing, STRESS_TYPES.length - 1)];
+    }
+
+    /**
+     * Normalizes the given word to look it up in the dictionary.
+     * 
+     * @param word The word.
+     * @return The word in lower case, without punctuation, or the base sound if it is a number.
+     */
+    private String normalize(final String word)
+    {
+        String normalized = removeTwitterChars(removeTrailingPunctuation(word));
+
+        if (EnglishNumber.isNumber(normalized))
+        {
+            return EnglishNumber.getBaseSound(normalized);
+        }
+
+        return normalized.toLowerCase().replace('’', '\'');
+    }
+
+    /**
+     * Removes the trailing punctuation from the given string.
+     * 
+     * @param str The String to parse.
+     * @return The String without the trailing punctuation.
+     */
+    private String removeTrailingPunctuation(final String str)
+    {
+        int i = str.length() - 1;
+
+        while (i >= 0 && !isLetter(str.charAt(i)) && !Character.isDigit(str.charAt(i)))
+        {
+            i--;
+        }
+
+        return str.substring(0, i + 1);
+    }
+
+    /**
+     * Removes the leading twitter char (<code>@</code> or <code>#</code>).
+     * 
+     * @param word The word.
+     * @return The word with no leading <code>@</code> nor <code>#</code>.
+     */
+    private String removeTwitterChars(final String word)
+    {
+        return word.length() > 0 && (word.charAt(0) == '@' || word.charAt(0) == '#') ? word
+            .substring(1) : word;
+    }
+
+    private static boolean isApostrophe(final char c)
+    {
+        return c == '\'' || c == '’';
+    }
+}
@@ -0,0 +1,630 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.en;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Guesses the pronunciation of the English words that are not in the {@link PhonemeDictionary}.
+ * <p>
+ * The letters are translated to ARPAbet phonemes with a small set of spelling rules, matching
+ * the longest grapheme first. The inflection suffixes (<code>-s</code>, <code>-ed</code> and
+ * <code>-ing</code>) are pronounced according to the last phoneme of the stem, and the stress is
+ * placed on the only syllable of the stem, before the stress attracting suffixes, on the first
+ * syllable of two syllable words, and on the penultimate or antepenultimate syllable of longer
+ * words depending on the weight of the penultimate one.
+ * 
+ * @author Ignasi Barrera
+ * @see EnglishWordParser
+ */
+/* package */final class LetterToSound
+{
+    /** Rule that matches anywhere in the word. */
+    private static final int ANYWHERE = 0;
+
+    /** Rule that matches only at the beginning of the word. */
+    private static final int START = 1;
+
+    /** Rule that matches only at the end of the word. */
+    private static final int END = 2;
+
+    /** Rule that does not match if followed by a vowel. */
+    private static final int NOT_BEFORE_VOWEL = 3;
+
+    /** The graphemes translated before the single letters: grapheme, phonemes and context. */
+    private static final Object[][] RULES = { //
+        {"tion", "SH AH N", ANYWHERE}, //
+        {"sion", "ZH AH N", ANYWHERE}, //
+        {"cian", "SH AH N", ANYWHERE}, //
+        {"ture", "CH ER", ANYWHERE}, //
+        {"ough", "AO", ANYWHERE}, //
+        {"augh", "AO", ANYWHERE}, //
+        {"eigh", "EY", ANYWHERE}, //
+        {"igh", "AY", ANYWHERE}, //
+        {"tch", "CH", ANYWHERE}, //
+        {"dge", "JH", ANYWHERE}, //
+        {"sch", "S K", ANYWHERE}, //
+        {"ing", "IH NG", END}, //
+        {"ear", "IH R", NOT_BEFORE_VOWEL}, //
+        {"air", "EH R", ANYWHERE}, //
+        {"are", "EH R", END}, //
+        {"ire", "AY ER", END}, //
+        {"ore", "AO R", END}, //
+        {"eer", "IH R", ANYWHERE}, //
+        {"our", "AW ER", END}, //
+        {"oe", "OW", END}, //
+        {"ch", "CH", ANYWHERE}, //
+        {"sh", "SH", ANYWHERE}, //
+        {"th", "TH", ANYWHERE}, //
+        {"ph", "F", ANYWHERE}, //
+        {"wh", "W", START}, //
+        {"ck", "K", ANYWHERE}, //
+        {"nk", "NG K", ANYWHERE}, //
+        {"ng", "NG", ANYWHERE}, //
+        {"qu", "K W", ANYWHERE}, //
+        {"gh", "G", START}, //
+        {"gh", "", ANYWHERE}, //
+        {"kn", "N", START}, //
+        {"wr", "R", START}, //
+        {"mb", "M", END}, //
+        {"ee", "IY", ANYWHERE}, //
+        {"ea", "IY", ANYWHERE}, //
+        {"oo", "UW", ANYWHERE}, //
+        {"ou", "AW", ANYWHERE}, //
+        {"ow", "OW", END}, //
+        {"ow", "AW", ANYWHERE}, //
+        {"oi", "OY", ANYWHERE}, //
+        {"oy", "OY", ANYWHERE}, //
+        {"ai", "EY", ANYWHERE}, //
+        {"ay", "EY", ANYWHERE}, //
+        {"au", "AO", ANYWHERE}, //
+        {"aw", "AO", ANYWHERE}, //
+        {"ei", "EY", ANYWHERE}, //
+        {"ey", "IY", END}, //
+        {"ey", "EY", ANYWHERE}, //
+        {"ue", "UW", ANYWHERE}, //
+        {"ew", "UW", ANYWHERE}, //
+        {"oa", "OW", ANYWHERE}, //
+        {"ar", "AA R", NOT_BEFORE_VOWEL}, //
+        {"or", "AO R", NOT_BEFORE_VOWEL}, //
+        {"er", "ER", NOT_BEFORE_VOWEL}, //
+        {"ir", "ER", NOT_BEFORE_VOWEL}, //
+        {"ur", "ER", NOT_BEFORE_VOWEL}};
+
+    /** The suffixes that attract the stress to the syllable before them. */
+    private static final String[] STRESS_SUFFIXES = {"tion", "sion", "cian", "ical", "ic",
+        "ity", "ify", "ious", "eous", "ial", "ian"};
+
+    /** The suffixes that make the vowel before them long. */
+    private static final String[] LONG_SUFFIXES = {"tion", "sion", "cian"};
+
+    /** The vowels that make a syllable heavy. */
+    private static final String LONG_VOWELS = " IY EY AY OW UW AW OY AO ER ";
+
+    /** The consonants that double before the inflection suffixes. */
+    private static final String DOUBLING_CONSONANTS = "bdgmnprt";
+
+    /** Inflection suffix of the plural and the third person. */
+    private static final int PLURAL = 1;
+
+    /** Inflection suffix of the past tense. */
+    private static final int PAST = 2;
+
+    /** Inflection suffix of the gerund. */
+    private static final int GERUND = 3;
+
+    private LetterToSound()
+    {
+        throw new AssertionError();
+    }
+
+    /**
+     * Guesses the pronunciation of the given word.
+     * 
+     * @param word The word, in lower case.
+     * @return The ARPAbet phonemes of the word, with the stress of the vowels.
+     */
+    public static String[] phonemes(final String word)
+    {
+        String w = letters(word);
+        int n = w.length();
+        int inflection = 0;
+        String stem = w;
+
+        if (word.endsWith("'s"))
+        {
+            inflection = PLURAL;
+            stem = letters(word.substring(0, word.length() - 2));
+        }
+        else if (n > 4 && w.endsWith("ies"))
+        {
+            inflection = PLURAL;
+            stem = w.substring(0, n - 3) + "y";
+        }
+        else if (n > 3 && w.endsWith("es") && endsWithSibilant(w.substring(0, n - 2)))
+        {
+            inflection = PLURAL;
+            stem = w.substring(0, n - 2);
+        }
+        else if (n > 3 && w.endsWith("s") && "sui".indexOf(w.charAt(n - 2)) < 0
+            && ("ey".indexOf(w.charAt(n - 2)) >= 0 || !isVowel(w.charAt(n - 2))))
+        {
+            inflection = PLURAL;
+            stem = w.substring(0, n - 1);
+        }
+        else if (n > 4 && w.endsWith("ied"))
+        {
+            inflection = PAST;
+            stem = w.substring(0, n - 3) + "y";
+        }
+        else if (n > 4 && w.endsWith("ed") && hasVowel(w.substring(0, n - 2)))
+        {
+            inflection = PAST;
+            stem = stem(w.substring(0, n - 2));
+        }
+        else if (n > 5 && w.endsWith("ing") && hasVowel(w.substring(0, n - 3)))
+        {
+            inflection = GERUND;
+            stem = stem(w.substring(0, n - 3));
+        }
+
+        List<String> phonemes = new ArrayList<String>();
+        List<Integer> sources = new ArrayList<Integer>();
+        translate(stem, phonemes, sources);
+        stress(stem, phonemes, sources);
+
+        String last = phonemes.isEmpty() ? "" : phonemes.get(phonemes.size() - 1);
+
+        switch (inflection)
+        {
+            case PLURAL:
+                phonemes.addAll(EnglishWordParser.pluralSuffix(last));
+                break;
+            case PAST:
+                phonemes.addAll(EnglishWordParser.pastSuffix(last));
+                break;
+            case GERUND:
+                phonemes.add("IH0");
+                phonemes.add("NG");
+                break;
+            default:
+                break;
+        }
+
+        return phonemes.toArray(new String[phonemes.size()]);
+    }
+
+    /**
+     * Gets the stem of a word without its <code>-ed</code> or <code>-ing</code> suffix.
+     * 
+     * @param base The word without the suffix.
+     * @return The stem, without the doubled consonant or with the dropped final <code>e</code>.
+     */
+    private static String stem(final String base)
+    {
+        int n = base.length();
+        char last = base.charAt(n - 1);
+
+        if (n > 2 && last == base.charAt(n - 2) && DOUBLING_CONSONANTS.indexOf(last) >= 0
+            && isVowel(base.charAt(n - 3)))
+        {
+            return base.substring(0, n - 1);
+        }
+
+        if (n > 1 && vowelGroups(base) == 1 && !isVowel(last) && "wxy".indexOf(last) < 0
+            && isVowel(base.charAt(n - 2)))
+        {
+            return base + "e";
+        }
+
+        return base;
+    }
+
+    /**
+     * Translates the letters of the given word to phonemes.
+     * 
+     * @param w The word.
+     * @param phonemes The list where the phonemes are added, without stress.
+     * @param sources The list where the position of the letters of each vowel is added.
+     */
+    private static void translate(final String w, final List<String> phonemes,
+        final List<Integer> sources)
+    {
+        int n = w.length();
+        int i = 0;
+
+        while (i < n)
+        {
+            Object[] rule = match(w, i);
+
+            if (rule != null)
+            {
+                String graphemes = (String) rule[0];
+                String translation = (String) rule[1];
+
+                if (translation.length() > 0)
+                {
+                    for (String phoneme : translation.split(" "))
+                    {
+                        add(phoneme, i, phonemes, sources);
+                    }
+                }
+
+                i += graphemes.length();
+                continue;
+            }
+
+            char c = w.charAt(i);
+            char next = i + 1 < n ? w.charAt(i + 1) : 0;
+            char previous = i > 0 ? w.charAt(i - 1) : 0;
+
+            // Final "le" after a consonant, as in "table"
+            if (c == 'l' && next == 'e' && i + 2 == n && i > 0 && !isVowel(previous))
+            {
+                add("AH", i, phonemes, sources);
+                add("L", i, phonemes, sources);
+                i += 2;
+                continue;
+            }
+
+            switch (c)
+            {
+                case 'a':
+                case 'e':
+                case 'i':
+                case 'o':
+                case 'u':
+                    vowel(w, i, phonemes, sources);
+                    break;
+                case 'y':
+                    if (i == 0 || isVowel(previous))
+                    {
+                        add(next != 0 && isVowel(next) ? "Y" : "IH", i, phonemes, sources);
+                    }
+                    else if (i == n - 1)
+                    {
+                        add(hasVowel(w.substring(0, i)) ? "IY" : "AY", i, phonemes, sources);
+                    }
+                    else
+                    {
+                        add(isMagicE(w, i) ? "AY" : "IH", i, phonemes, sources);
+                    }
+                    break;
+                case 'c':
+                    add(next == 'e' || next == 'i' || next == 'y' ? "S" : "K", i, phonemes,
+                        sources);
+                    break;
+                case 'g':
+                    add(i > 0 && (next == 'e' || next == 'i' || next == 'y') ? "JH" : "G", i,
+                        phonemes, sources);
+                    break;
+                case 'x':
+                    if (i == 0)
+                    {
+                        add("Z", i, phonemes, sources);
+                    }
+                    else
+                    {
+                        add("K", i, phonemes, sources);
+                        add("S", i, phonemes, sources);
+                    }
+                    break;
+                case 'h':
+                    if (next != 0 && isVowel(next))
+                    {
+                        add("HH", i, phonemes, sources);
+                    }
+                    break;
+                case 'j':
+                    add("JH", i, phonemes, sources);
+                    break;
+                case 'q':
+                    add("K", i, phonemes, sources);
+                    break;
+                default:
+                    // Double consonants are pronounced once
+                    if (c != previous)
+                    {
+                        add(String.valueOf(Character.toUpperCase(c)), i, phonemes, sources);
+                    }
+                    break;
+            }
+
+            i++;
+        }
+    }
+
+    private static void vowel(final String w, final int i, final List<String> phonemes,
+        final List<Integer> sources)
+    {
+        int n = w.length();
+        char c = w.charAt(i);
+
+        if (i == n - 1)
+        {
+            switch (c)
+            {
+                case 'e':
+                    // Final "e" is silent unless it is the only vowel
+                    if (!hasVowel(w.substring(0, i)))
+                    {
+                        add("IY", i, phonemes, sources);
+                    }
+                    return;
+                case 'a':
+                    add("AH", i, phonemes, sources);
+                    return;
+                case 'i':
+                    add(hasVowel(w.substring(0, i)) ? "IY" : "AY", i, phonemes, sources);
+                    return;
+                case 'o':
+                    add("OW", i, phonemes, sources);
+                    return;
+                default:
+                    add("UW", i, phonemes, sources);
+                    return;
+            }
+        }
+
+        // Vowels are long before a final "e" and, but for "i", before "-tion"
+        boolean isLong = isMagicE(w, i) || c != 'i' && startsWithAny(w, i + 1, LONG_SUFFIXES);
+
+        switch (c)
+        {
+            case 'a':
+                add(isLong ? "EY" : "AE", i, phonemes, sources);
+                break;
+            case 'e':
+                add(isLong ? "IY" : "EH", i, phonemes, sources);
+                break;
+            case 'i':
+                add(isLong ? "AY" : "IH", i, phonemes, sources);
+                break;
+            case 'o':
+                add(isLong ? "OW" : "AA", i, phonemes, sources);
+                break;
+            default:
+                add(isLong ? "UW" : "AH", i, phonemes, sources);
+                break;
+        }
+    }
+
+    /**
+     * Places the stress in the vowels of the given pronunciation.
+     * 
+     * @param w The word.
+     * @param phonemes The phonemes of the word.
+     * @param sources The position of the letters of each vowel.
+     */
+    private static void stress(final String w, final List<String> phonemes,
+        final List<Integer> sources)
+    {
+        List<Integer> vowels = new ArrayList<Integer>();
+
+        for (int i = 0; i < phonemes.size(); i++)
+        {
+            if (sources.get(i) >= 0)
+            {
+                vowels.add(i);
+            }
+        }
+
+        if (vowels.isEmpty())
+        {
+            return;
+        }
+
+        int stressed = -1;
+
+        for (String suffix : STRESS_SUFFIXES)
+        {
+            if (w.endsWith(suffix))
+            {
+                int start = w.length() - suffix.length();
+
+                for (int v = 0; v < vowels.size(); v++)
+                {
+                    if (sources.get(vowels.get(v)) < start)
+                    {
+                        stressed = v;
+                    }
+                }
+                break;
+            }
+        }
+
+        if (stressed < 0)
+        {
+            int count = vowels.size();
+
+            if (count <= 2)
+            {
+                stressed = 0;
+            }
+            else
+            {
+                stressed = isHeavy(phonemes, vowels.get(count - 2)) ? count - 2 : count - 3;
+            }
+        }
+
+        for (int v = 0; v < vowels.size(); v++)
+        {
+            int index = vowels.get(v);
+            phonemes.set(index, phonemes.get(index) + (v == stressed ? "1" : "0"));
+        }
+    }
+
+    private static boolean isHeavy(final List<String> phonemes, final int vowel)
+    {
+        if (LONG_VOWELS.contains(" " + phonemes.get(vowel) + " "))
+        {
+            return true;
+        }
+
+        int consonants = 0;
+        for (int i = vowel + 1; i < phonemes.size() && !isVowelPhoneme(phonemes.get(i)); i++)
+        {
+            consonants++;
+        }
+
+        return consonants >= 2;
+    }
+
+    private static Object[] match(final String w, final int i)
+    {
+        for (Object[] rule : RULES)
+        {
+            String graphemes = (String) rule[0];
+            int end = i + graphemes.length();
+
+            if (!w.startsWith(graphemes, i))
+            {
+                continue;
+            }
+
+            switch ((Integer) rule[2])
+            {
+                case START:
+                    if (i == 0)
+                    {
+                        return rule;
+                    }
+                    break;
+                case END:
+                    if (end == w.length())
+                    {
+                        return rule;
+                    }
+                    break;
+                case NOT_BEFORE_VOWEL:
+                    if (end == w.length() || !isVowel(w.charAt(end)) && w.charAt(end) != 'y')
+                    {
+                        return rule;
+                    }
+                    break;
+                default:
+                    return rule;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if the vowel in the given position is followed by a consonant and a final
+     * <code>e</code>, as in "make", so it is long.
+     */
+    private static boolean isMagicE(final String w, final int i)
+    {
+        int n = w.length();
+
+        // Also a single consonant before a final "le", as in "table"
+        return i + 3 == n && !isVowel(w.charAt(i + 1)) && w.charAt(i + 2) == 'e' || i + 4 == n
+            && !isVowel(w.charAt(i + 1)) && w.endsWith("le") && w.charAt(i + 1) != 'l';
+    }
+
+    private static boolean startsWithAny(final String w, final int i, final String[] prefixes)
+    {
+        for (String prefix : prefixes)
+        {
+            if (w.startsWith(prefix, i))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void add(final String phoneme, final int source, final List<String> phonemes,
+        final List<Integer> sources)
+    {
+        phonemes.add(phoneme);
+        sources.add(isVowelPhoneme(phoneme) ? source : -1);
+    }
+
+    private static boolean isVowelPhoneme(final String phoneme)
+    {
+        return "AEIOU".indexOf(phoneme.charAt(0)) >= 0;
+    }
+
+    private static boolean isVowel(final char c)
+    {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+
+    private static boolean hasVowel(final String w)
+    {
+        for (int i = 0; i < w.length(); i++)
+        {
+            if (isVowel(w.charAt(i)) || w.charAt(i) == 'y')
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int vowelGroups(final String w)
+    {
+        int groups = 0;
+
+        for (int i = 0; i < w.length(); i++)
+        {
+            if (isVowel(w.charAt(i)) && (i == 0 || !isVowel(w.charAt(i - 1))))
+            {
+                groups++;
+            }
+        }
+
+        return groups;
+    }
+
+    private static boolean endsWithSibilant(final String w)
+    {
+        return w.endsWith("s") || w.endsWith("x") || w.endsWith("z") || w.endsWith("ch")
+            || w.endsWith("sh");
+    }
+
+    /**
+     * Removes all the characters that are not lower case ASCII letters.
+     */
+    private static String letters(final String word)
+    {
+        StringBuilder letters = new StringBuilder(word.length());
+
+        for (int i = 0; i < word.length(); i++)
+        {
+            char c = word.charAt(i);
+
+            if (c >= 'a' && c <= 'z')
+            {
+                letters.append(c);
+            }
+        }
+
+        return letters.toString();
+    }
+}
@@ -0,0 +1,600 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.en;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * A pronunciation dictionary with the rhyme part of each known English word.
+ * <p>
+ * The dictionary is read from a file in the <a
+ * href="http://www.speech.cs.cmu.edu/cgi-bin/cmudict">CMU Pronouncing Dictionary</a> format:
+ * one word per line followed by its ARPAbet phonemes, with the stress of each vowel as a digit
+ * (<code>1</code> for the primary stress, <code>2</code> for the secondary one and
+ * <code>0</code> for unstressed vowels). Only the first pronunciation of each word is used.
+ * <p>
+ * Words are stored in a radix trie flattened into arrays: the children of each node are
+ * contiguous and sorted by the first character of their edge label, and the labels share a
+ * single character pool. Only the rhyme part of each pronunciation is kept, and equal rhymes are
+ * shared between words. Looking up a word walks the trie without allocating any memory.
+ * 
+ * @author Ignasi Barrera
+ * @see EnglishWordParser
+ */
+public final class PhonemeDictionary
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhonemeDictionary.class);
+
+    /** The classpath resource with the dictionary used if none is configured. */
+    public static final String DEFAULT_RESOURCE = "lang/en.dict";
+
+    /** The ARPAbet phonemes. */
+    /* package */static final String[] PHONEMES = {"AA", "AE", "AH", "AO", "AW", "AY", "B",
+        "CH", "D", "DH", "EH", "ER", "EY", "F", "G", "HH", "IH", "IY", "JH", "K", "L", "M", "N",
+        "NG", "OW", "OY", "P", "R", "S", "SH", "T", "TH", "UH", "UW", "V", "W", "Y", "Z", "ZH"};
+
+    /** Value of the nodes that do not end a word. */
+    private static final int NO_ENTRY = -1;
+
+    /** The dictionary used in the application. */
+    private static volatile PhonemeDictionary dictionary;
+
+    /** The character pool with the edge labels. */
+    private final char[] labels;
+
+    /** The offset in the pool of the label of the edge that leads to each node. */
+    private final int[] labelStart;
+
+    /** The length of the label of the edge that leads to each node. */
+    private final int[] labelLength;
+
+    /** The index of the first child of each node. */
+    private final int[] firstChild;
+
+    /** The number of children of each node. */
+    private final int[] childCount;
+
+    /** The entry of the word ending in each node, if any. */
+    private final int[] entries;
+
+    /** The rhyme part of each entry. */
+    private final String[] rhymes;
+
+    /** The number of syllables after the stressed one in each entry. */
+    private final byte[] trailing;
+
+    /** The index of the last phoneme of each entry. */
+    private final byte[] lastPhonemes;
+
+    /** The number of nodes in the trie. */
+    private int nodes;
+
+    /** The number of characters in the label pool. */
+    private int poolSize;
+
+    /**
+     * Builds the trie with the given words.
+     * 
+     * @param words The words, sorted.
+     * @param pronunciations The pronunciation of each word.
+     */
+    private PhonemeDictionary(final String[] words, final List<String[]> pronunciations)
+    {
+        int chars = 0;
+        for (String word : words)
+        {
+            chars += word.length();
+        }
+
+        // A radix trie has at most two nodes per word, plus the root
+        int maxNodes = 2 * words.length + 1;
+        labels = new char[chars];
+        labelStart = new int[maxNodes];
+        labelLength = new int[maxNodes];
+        firstChild = new int[maxNodes];
+        childCount = new int[maxNodes];
+        entries = new int[maxNodes];
+        Arrays.fill(entries, NO_ENTRY);
+
+        rhymes = new String[words.length];
+        trailing = new byte[words.length];
+        lastPhonemes = new byte[words.length];
+
+        Map<String, String> shared = new HashMap<String, String>();
+
+        for (int i = 0; i < words.length; i++)
+        {
+            String[] phonemes = pronunciations.get(i);
+            String rhyme = rhyme(phonemes);
+            String previous = shared.get(rhyme);
+
+            if (previous == null)
+            {
+                shared.put(rhyme, rhyme);
+                previous = rhyme;
+            }
+
+            rhymes[i] = previous;
+            trailing[i] = (byte) Math.min(trailingVowels(phonemes), Byte.MAX_VALUE);
+            lastPhonemes[i] = (byte) indexOf(phonemes[phonemes.length - 1]);
+        }
+
+        nodes = 1;
+        build(words, 0, 0, words.length, 0);
+    }
+
+    /**
+     * Gets the dictionary to be used in the application.
+     * <p>
+     * The dictionary is read from the file in the {@link Configuration#ENGLISH_DICTIONARY_PROPERTY}
+     * property, or from the {@link #DEFAULT_RESOURCE} if it is not set.
+     * 
+     * @return The dictionary to be used in the application.
+     * @throws ConfigurationException If the dictionary cannot be read.
+     */
+    public static PhonemeDictionary getDictionary() throws ConfigurationException
+    {
+        PhonemeDictionary current = dictionary;
+
+        if (current == null)
+        {
+            synchronized (PhonemeDictionary.class)
+            {
+                current = dictionary;
+
+                if (current == null)
+                {
+                    current = loadConfigured();
+                    dictionary = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    private static PhonemeDictionary loadConfigured() throws ConfigurationException
+    {
+        String file = Configuration.getConfigValue(Configuration.ENGLISH_DICTIONARY_PROPERTY);
+
+        try
+        {
+            InputStream in = null;
+
+            if (file != null)
+            {
+                in = new FileInputStream(new File(file));
+            }
+            else
+            {
+                ClassLoader cl = Thread.currentThread().getContextClassLoader();
+                in = cl.getResourceAsStream(DEFAULT_RESOURCE);
+
+                if (in == null)
+                {
+                    throw new ConfigurationException("Could not find the dictionary "
+                        + DEFAULT_RESOURCE);
+                }
+            }
+
+            try
+            {
+                PhonemeDictionary loaded = load(in);
+                LOGGER.info("Loaded {} words from the English dictionary", loaded.size());
+                return loaded;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new ConfigurationException("Could not read the English dictionary: "
+                + ex.getMessage());
+        }
+    }
+
+    /**
+     * Reads a dictionary in the CMU Pronouncing Dictionary format.
+     * 
+     * @param in The stream with the dictionary, encoded in UTF-8.
+     * @return The dictionary.
+     * @throws IOException If the dictionary cannot be read.
+     */
+    public static PhonemeDictionary load(final InputStream in) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        TreeMap<String, String[]> words = new TreeMap<String, String[]>();
+        int invalid = 0;
+        String line = null;
+
+        while ((line = reader.readLine()) != null)
+        {
+            line = line.trim();
+
+            if (line.length() == 0 || line.startsWith(";;;"))
+            {
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+            String word = tokens[0].toLowerCase();
+
+            // Alternate pronunciations are marked as "word(1)"
+            if (word.endsWith(")") || tokens.length < 2 || words.containsKey(word))
+            {
+                continue;
+            }
+
+            String[] phonemes = Arrays.copyOfRange(tokens, 1, tokens.length);
+
+            if (!isValid(phonemes))
+            {
+                invalid++;
+                continue;
+            }
+
+            words.put(word, phonemes);
+        }
+
+        if (invalid > 0)
+        {
+            LOGGER.warn("Ignored {} words with unknown phonemes", invalid);
+        }
+
+        return new PhonemeDictionary(words.keySet().toArray(new String[words.size()]),
+            new ArrayList<String[]>(words.values()));
+    }
+
+    /**
+     * Adds the children of the given node.
+     * 
+     * @param words The sorted words.
+     * @param node The node.
+     * @param from The first word under the node.
+     * @param to The index after the last word under the node.
+     * @param depth The length of the prefix shared by all the words under the node.
+     */
+    private void build(final String[] words, final int node, final int from, final int to,
+        final int depth)
+    {
+        int lo = from;
+
+        if (lo < to && words[lo].length() == depth)
+        {
+            entries[node] = lo++;
+        }
+
+        // Allocate all the children first, so they are contiguous
+        int first = nodes;
+        int count = 0;
+
+        for (int start = lo; start < to;)
+        {
+            int end = groupEnd(words, start, to, depth);
+            int common = commonPrefix(words[start], words[end - 1], depth);
+            int child = nodes++;
+
+            labelStart[child] = poolSize;
+            labelLength[child] = common - depth;
+            words[start].getChars(depth, common, labels, poolSize);
+            poolSize += common - depth;
+
+            count++;
+            start = end;
+        }
+
+        firstChild[node] = first;
+        childCount[node] = count;
+
+        int child = first;
+        for (int start = lo; start < to; child++)
+        {
+            int end = groupEnd(words, start, to, depth);
+            build(words, child, start, end, depth + labelLength[child]);
+            start = end;
+        }
+    }
+
+    private static int groupEnd(final String[] words, final int from, final int to,
+        final int depth)
+    {
+        char c = words[from].charAt(depth);
+        int end = from + 1;
+
+        while (end < to && words[end].charAt(depth) == c)
+        {
+            end++;
+        }
+
+        return end;
+    }
+
+    private static int commonPrefix(final String first, final String last, final int depth)
+    {
+        int max = Math.min(first.length(), last.length());
+        int i = depth + 1;
+
+        while (i < max && first.charAt(i) == last.charAt(i))
+        {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Looks up the given word.
+     * <p>
+     * The word is compared ignoring the case of the ASCII letters.
+     * 
+     * @param word The word to look up.
+     * @return The entry of the word, or <code>-1</code> if it is not in the dictionary.
+     */
+    public int find(final CharSequence word)
+    {
+        int node = 0;
+        int pos = 0;
+        int length = word.length();
+
+        while (pos < length)
+        {
+            char c = toLowerCase(word.charAt(pos));
+            int lo = firstChild[node];
+            int hi = lo + childCount[node] - 1;
+            int child = -1;
+
+            while (lo <= hi)
+            {
+                int mid = lo + hi >>> 1;
+                char label = labels[labelStart[mid]];
+
+                if (label < c)
+                {
+                    lo = mid + 1;
+                }
+                else if (label > c)
+                {
+                    hi = mid - 1;
+                }
+                else
+                {
+                    child = mid;
+                    break;
+                }
+            }
+
+            if (child < 0)
+            {
+                return NO_ENTRY;
+            }
+
+            int start = labelStart[child];
+            int n = labelLength[child];
+
+            if (pos + n > length)
+            {
+                return NO_ENTRY;
+            }
+
+            for (int i = 1; i < n; i++)
+            {
+                if (labels[start + i] != toLowerCase(word.charAt(pos + i)))
+                {
+                    return NO_ENTRY;
+                }
+            }
+
+            pos += n;
+            node = child;
+        }
+
+        return entries[node];
+    }
+
+    /**
+     * Gets the rhyme part of the given entry.
+     * 
+     * @param entry The entry returned by {@link #find(CharSequence)}.
+     * @return The phonemes from the stressed vowel to the end of the word.
+     */
+    public String getRhyme(final int entry)
+    {
+        return rhymes[entry];
+    }
+
+    /**
+     * Gets the number of syllables after the stressed one in the given entry.
+     * 
+     * @param entry The entry returned by {@link #find(CharSequence)}.
+     * @return The number of syllables after the stressed one.
+     */
+    public int getTrailingSyllables(final int entry)
+    {
+        return trailing[entry];
+    }
+
+    /**
+     * Gets the last phoneme of the given entry.
+     * 
+     * @param entry The entry returned by {@link #find(CharSequence)}.
+     * @return The last ARPAbet phoneme of the word, without stress.
+     */
+    public String getLastPhoneme(final int entry)
+    {
+        return PHONEMES[lastPhonemes[entry]];
+    }
+
+    /**
+     * Gets the number of words in the dictionary.
+     * 
+     * @return The number of words in the dictionary.
+     */
+    public int size()
+    {
+        return rhymes.length;
+    }
+
+    /**
+     * Gets the rhyme part of the given pronunciation.
+     * <p>
+     * The rhyme starts at the vowel with the last primary stress, or with the last secondary
+     * stress if there is no primary one. The stress digits are removed and the phonemes are
+     * joined in lower case.
+     * 
+     * @param phonemes The ARPAbet phonemes of the word.
+     * @return The rhyme part of the pronunciation.
+     */
+    /* package */static String rhyme(final String[] phonemes)
+    {
+        StringBuilder rhyme = new StringBuilder();
+
+        for (int i = Math.max(stressedVowel(phonemes), 0); i < phonemes.length; i++)
+        {
+            String phoneme = phonemes[i];
+            int length = isVowel(phoneme) ? phoneme.length() - 1 : phoneme.length();
+
+            for (int j = 0; j < length; j++)
+            {
+                rhyme.append(Character.toLowerCase(phoneme.charAt(j)));
+            }
+        }
+
+        return rhyme.toString();
+    }
+
+    /**
+     * Gets the number of vowels after the stressed one in the given pronunciation.
+     * 
+     * @param phonemes The ARPAbet phonemes of the word.
+     * @return The number of vowels after the stressed one.
+     */
+    /* package */static int trailingVowels(final String[] phonemes)
+    {
+        int count = 0;
+
+        for (int i = stressedVowel(phonemes) + 1; i < phonemes.length; i++)
+        {
+            if (isVowel(phonemes[i]))
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static int stressedVowel(final String[] phonemes)
+    {
+        int secondary = -1;
+        int last = -1;
+
+        for (int i = phonemes.length - 1; i >= 0; i--)
+        {
+            String phoneme = phonemes[i];
+
+            if (isVowel(phoneme))
+            {
+                char stress = phoneme.charAt(phoneme.length() - 1);
+
+                if (stress == '1')
+                {
+                    return i;
+                }
+                if (stress == '2' && secondary < 0)
+                {
+                    secondary = i;
+                }
+                if (last < 0)
+                {
+                    last = i;
+                }
+            }
+        }
+
+        return secondary >= 0 ? secondary : last;
+    }
+
+    /**
+     * Checks if the given phoneme is a vowel, with its stress digit.
+     * 
+     * @param phoneme The phoneme.
+     * @return Boolean indicating if the given phoneme is a vowel.
+     */
+    /* package */static boolean isVowel(final String phoneme)
+    {
+        char last = phoneme.charAt(phoneme.length() - 1);
+        return last >= '0' && last <= '2';
+    }
+
+    private static boolean isValid(final String[] phonemes)
+    {
+        for (String phoneme : phonemes)
+        {
+            if (indexOf(phoneme) < 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(final String phoneme)
+    {
+        String name = isVowel(phoneme) ? phoneme.substring(0, phoneme.length() - 1) : phoneme;
+        int index = Arrays.binarySearch(PHONEMES, name);
+
+        // Vowels must have the stress and consonants must not
+        if (index >= 0 && isVowel(phoneme) != "AEIOU".indexOf(name.charAt(0)) >= 0)
+        {
+            return -1;
+        }
+
+        return index;
+    }
+
+    private static char toLowerCase(final char c)
+    {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+    }
+}
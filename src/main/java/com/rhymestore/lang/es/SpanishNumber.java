@@ -23,13 +23,19 @@
 package com.rhymestore.lang.es;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * This enum provides a base sound.
+ * This enum provides the base sound of the numbers.
+ * <p>
+ * The base sound is the last word used to read a number, and is computed scanning its digits once,
+ * keeping only the last seven of them and looking up the words in precomputed tables, so numbers
+ * of any length are supported. Decimal numbers and times are read by their last group of digits,
+ * and ordinals (<code>1º</code>, <code>2ª</code>, <code>3er</code>) by their ordinal word.
  * 
- * @todo rest of multiples. Comment!
  * @author Serafin Sedano
- * @version 0.1
+ * @version 0.2
  */
 public enum SpanishNumber
 {
@@ -40,9 +46,125 @@ public enum SpanishNumber
         "70", "enta"), CIEN("100", "cien"), CIENTOS("700", "cientos"), MIL("7000", "mil"), MILLON(
         "1000000", "millón"), MILLONES("700000000", "millones");
 
+    /** The digits of the largest number that fits in a long. */
+    private static final String LONG_MAX_DIGITS = String.valueOf(Long.MAX_VALUE);
+
+    /** The number of trailing digits that determine the base sound. */
+    private static final int WINDOW_DIGITS = 7;
+
+    /** Ten to the power of {@link #WINDOW_DIGITS}. */
+    private static final int WINDOW = 10000000;
+
+    /** The separators of the groups of digits. */
+    private static final String SEPARATORS = ".,:";
+
+    /** The separator of hours and minutes. */
+    private static final char TIME_SEPARATOR = ':';
+
+    /** The length of a group of thousands. */
+    private static final int THOUSANDS_LENGTH = 3;
+
+    /** The numbers, by their digits. */
+    private static final Map<String, SpanishNumber> NUMBERS = new HashMap<String, SpanishNumber>();
+
+    /** The base sound of the numbers below one hundred. */
+    private static final String[] TENS = new String[100];
+
+    /** The masculine ordinals of the units, tens and hundreds. */
+    private static final String[][] ORDINALS = {
+        {null, "primero", "segundo", "tercero", "cuarto", "quinto", "sexto", "séptimo", "octavo",
+            "noveno"},
+        {null, "décimo", "vigésimo", "trigésimo", "cuadragésimo", "quincuagésimo", "sexagésimo",
+            "septuagésimo", "octogésimo", "nonagésimo"},
+        {null, "centésimo", "ducentésimo", "tricentésimo", "cuadringentésimo", "quingentésimo",
+            "sexcentésimo", "septingentésimo", "octingentésimo", "noningentésimo"},
+        {"milésimo", "millonésimo"}};
+
+    /** The feminine ordinals of the units, tens and hundreds. */
+    private static final String[][] FEMININE_ORDINALS = new String[ORDINALS.length][];
+
+    static
+    {
+        for (SpanishNumber n : values())
+        {
+            NUMBERS.put(n.getNumber(), n);
+        }
+
+        for (int i = 0; i < TENS.length; i++)
+        {
+            TENS[i] = i < 10 ? getWordByNumber(String.valueOf(i)) : tenners(i);
+        }
+
+        for (int i = 0; i < ORDINALS.length; i++)
+        {
+            FEMININE_ORDINALS[i] = new String[ORDINALS[i].length];
+
+            for (int j = 0; j < ORDINALS[i].length; j++)
+            {
+                String ordinal = ORDINALS[i][j];
+                FEMININE_ORDINALS[i][j] =
+                    ordinal == null ? null : ordinal.substring(0, ordinal.length() - 1) + "a";
+            }
+        }
+    }
+
+    /**
+     * The ordinal suffixes.
+     */
+    private static enum Ordinal
+    {
+        NONE(""), MASCULINE("º"), FEMININE("ª"), SHORT("er");
+
+        private final String suffix;
+
+        private Ordinal(final String suffix)
+        {
+            this.suffix = suffix;
+        }
+
+        /**
+         * Gets the ordinal suffix of the given number.
+         * 
+         * @param number The number.
+         * @return The ordinal suffix of the number.
+         */
+        public static Ordinal of(final String number)
+        {
+            for (Ordinal ordinal : values())
+            {
+                if (ordinal != NONE && number.endsWith(ordinal.suffix))
+                {
+                    return ordinal;
+                }
+            }
+
+            return NONE;
+        }
+
+        /**
+         * Gets the length of the suffix in the given number.
+         * 
+         * @param number The number.
+         * @return The length of the suffix, including the abbreviation dot.
+         */
+        public int length(final String number)
+        {
+            int length = suffix.length();
+            int dot = number.length() - length - 1;
+
+            return this != NONE && dot > 0 && number.charAt(dot) == '.' ? length + 1 : length;
+        }
+    }
+
     public static String getBaseSound(long number)
     {
-        return getBaseSound(String.valueOf(number));
+        if (number == Long.MIN_VALUE)
+        {
+            return getBaseSound(String.valueOf(number));
+        }
+
+        long n = Math.abs(number);
+        return cardinal(length(n), (int) (n % WINDOW));
     }
 
     public static String getBaseSound(BigDecimal number)
@@ -57,156 +179,266 @@ public enum SpanishNumber
             return null;
         }
 
-        number = trim(number);
-        if (new BigDecimal(number).compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0)
+        Ordinal ordinal = Ordinal.of(number);
+        long range = locate(number, ordinal);
+
+        if (range < 0)
         {
-            number = handlingValue(number);
+            throw new NumberFormatException("Not a number: " + number);
         }
-        Long n = Long.valueOf(number);
-        // no leading zeros
-        number = n.toString();
-        char[] digits = number.toCharArray();
-        switch (number.length())
+
+        int from = (int) (range >>> 32);
+        int to = (int) range;
+
+        // Scan the digits keeping only the last ones, and check if the number fits in a long
+        int length = 0;
+        int window = 0;
+        int compare = 0;
+
+        for (int i = from; i < to; i++)
         {
-            case 1:
-            {
-                return getWordByNumber(number);
-            }
-            case 2:
+            int digit = Character.digit(number.charAt(i), 10);
+
+            // Skip the thousands separators and the leading zeros
+            if (digit < 0 || length == 0 && digit == 0)
             {
-                return tenners(n);
+                continue;
             }
-            case 3:
+
+            if (compare == 0 && length < LONG_MAX_DIGITS.length())
             {
-                // es un ciento *
-                if (n % 100 == 0)
-                {
-                    // 100
-                    if (digits[0] == '1')
-                    {
-                        return getWordByNumber(n);
-                    }
-                    return getWordByNumber("700");
-                }
-                // 10 - 15
-                return tenners(Integer.parseInt(digits[1] + "" + digits[2]));
+                compare = digit - Character.digit(LONG_MAX_DIGITS.charAt(length), 10);
             }
-            case 4:
-            case 5:
+
+            window = window % (WINDOW / 10) * 10 + digit;
+            length++;
+        }
+
+        if (ordinal != Ordinal.NONE)
+        {
+            return ordinal(length, window, ordinal);
+        }
+
+        // Numbers that do not fit in a long are read by their last digits
+        if (length > LONG_MAX_DIGITS.length() || length == LONG_MAX_DIGITS.length()
+            && compare > 0)
+        {
+            if (window == 0)
             {
-                // mil
-                if (n % 1000 == 0)
-                {
-                    return getWordByNumber("7000");
-                }
-                if (n % 100 == 0)
-                {
-                    // 100
-                    if (digits[0] == 1)
-                    {
-                        return getWordByNumber(n);
-                    }
-                    return getWordByNumber(700);
-                }
-                // 10 - 15
-                return tenners(Integer.parseInt(digits[digits.length - 2] + ""
-                    + digits[digits.length - 1]));
+                return MILLONES.getWord();
             }
-            default:
-            {
-                // recursividad!
 
-                if (n % 1000000 == 0)
-                {
-                    if (n == 1000000)
-                    {
-                        return MILLON.getWord();
-                    }
-                    return MILLONES.getWord();
-                }
-                else if (n % 100000 == 0)
-                {
-                    return MIL.getWord();
-                }
-                if (number.length() == 1)
-                {
-                    return getWordByNumber(number);
-                }
-                return getBaseSound(number.substring(1));
-            }
+            length = length(window);
         }
 
+        return cardinal(length, window);
     }
 
-    private static String trim(String number2)
+    /**
+     * Checks if the given string is a number that can be read by this class.
+     * 
+     * @param number The string to check.
+     * @return Boolean indicating if the given string is a number, a decimal number, a time or an
+     *         ordinal.
+     */
+    public static boolean isNumber(final String number)
     {
-        int comma = number2.lastIndexOf(",");
-        if (comma > -1 && comma < number2.length())
+        return number != null && locate(number, Ordinal.of(number)) >= 0;
+    }
+
+    /**
+     * Locates the digits that are read in the given number.
+     * 
+     * @param number The number.
+     * @param ordinal The ordinal suffix of the number.
+     * @return The start index of the digits in the high 32 bits and the end index in the low 32
+     *         bits, or <code>-1</code> if the given string is not a valid number.
+     */
+    private static long locate(final String number, final Ordinal ordinal)
+    {
+        int start = number.startsWith("-") || number.startsWith("+") ? 1 : 0;
+        int end = number.length() - ordinal.length(number);
+        int groupLength = 0;
+        int lastSeparator = -1;
+        int previousSeparator = -1;
+        boolean thousands = true;
+        boolean mixed = false;
+
+        for (int i = start; i < end; i++)
         {
-            number2 = number2.substring(comma + 1, number2.length());
+            char c = number.charAt(i);
+
+            if (Character.isDigit(c))
+            {
+                groupLength++;
+            }
+            else if (SEPARATORS.indexOf(c) >= 0 && groupLength > 0)
+            {
+                thousands = thousands && (lastSeparator < 0 || groupLength == THOUSANDS_LENGTH);
+                mixed = mixed || lastSeparator >= 0 && number.charAt(lastSeparator) != c;
+                previousSeparator = lastSeparator;
+                lastSeparator = i;
+                groupLength = 0;
+            }
+            else
+            {
+                return -1;
+            }
         }
-        int dot = number2.lastIndexOf(".");
-        if (dot > -1 && dot < number2.length())
+
+        if (groupLength == 0)
         {
-            number2 = number2.substring(dot + 1, number2.length());
+            return -1;
         }
-        int period = number2.lastIndexOf(":");
-        if (period > -1 && period < number2.length())
+
+        thousands = thousands && (lastSeparator < 0 || groupLength == THOUSANDS_LENGTH);
+        char separator = lastSeparator < 0 ? 0 : number.charAt(lastSeparator);
+
+        // Integers, maybe with thousands separators
+        if (thousands && !mixed && separator != TIME_SEPARATOR)
         {
-            number2 = number2.substring(period + 1, number2.length());
+            return range(start, end);
         }
-        int eq = number2.lastIndexOf("=");
-        if (eq > -1 && eq < number2.length())
+
+        if (ordinal != Ordinal.NONE)
         {
-            number2 = number2.substring(eq + 1, number2.length());
+            return -1;
         }
-        if (number2.contains("+"))
+
+        // Times on the hour are read by the hour
+        if (separator == TIME_SEPARATOR && isZero(number, lastSeparator + 1, end))
         {
-            number2 = number2.replaceAll("+", "");
+            return range(previousSeparator + 1, lastSeparator);
         }
-        if (number2.contains("-"))
+
+        // Decimals and times are read by the last group of digits
+        return range(lastSeparator + 1, end);
+    }
+
+    private static long range(final int from, final int to)
+    {
+        return (long) from << 32 | to;
+    }
+
+    private static boolean isZero(final String number, final int from, final int to)
+    {
+        for (int i = from; i < to; i++)
         {
-            number2 = number2.replaceAll("-", "");
+            if (Character.digit(number.charAt(i), 10) != 0)
+            {
+                return false;
+            }
         }
-        if (number2.contains("E"))
+
+        return true;
+    }
+
+    private static int length(final long number)
+    {
+        int length = 0;
+
+        for (long n = number; n > 0; n /= 10)
         {
-            number2 = number2.replaceAll("E", "");
+            length++;
         }
-        return number2;
+
+        return length;
     }
 
-    public static String getWordByNumber(long number)
+    /**
+     * Gets the base sound of a cardinal number.
+     * 
+     * @param length The number of significant digits of the number.
+     * @param window The last {@link #WINDOW_DIGITS} digits of the number.
+     * @return The base sound of the number.
+     */
+    private static String cardinal(final int length, final int window)
     {
-        for (SpanishNumber n : values())
+        if (length == 0)
+        {
+            return CERO.getWord();
+        }
+
+        if (length > 5)
         {
-            if (n.getIntValue() == (number))
+            if (window % 1000000 == 0)
             {
-                return n.getWord();
+                return length == WINDOW_DIGITS && window == MILLON.getIntValue() ? MILLON
+                    .getWord() : MILLONES.getWord();
             }
+            if (window % 100000 == 0)
+            {
+                return MIL.getWord();
+            }
+        }
+
+        int n = window % 100000;
+
+        if (n < 100)
+        {
+            return TENS[n];
         }
-        return null;
+        if (n < 1000 && n % 100 == 0)
+        {
+            return n == CIEN.getIntValue() ? CIEN.getWord() : CIENTOS.getWord();
+        }
+        if (n >= 1000 && n % 1000 == 0)
+        {
+            return MIL.getWord();
+        }
+        if (n % 100 == 0)
+        {
+            return CIENTOS.getWord();
+        }
+
+        return TENS[n % 100];
     }
 
-    public static String getWordByNumber(String number)
+    /**
+     * Gets the base sound of an ordinal number.
+     * 
+     * @param length The number of significant digits of the number.
+     * @param window The last {@link #WINDOW_DIGITS} digits of the number.
+     * @param ordinal The ordinal suffix of the number.
+     * @return The base sound of the number.
+     */
+    private static String ordinal(final int length, final int window, final Ordinal ordinal)
     {
-        for (SpanishNumber n : values())
+        if (length == 0)
+        {
+            return CERO.getWord();
+        }
+
+        String[][] ordinals = ordinal == Ordinal.FEMININE ? FEMININE_ORDINALS : ORDINALS;
+        int units = window % 10;
+
+        // Primer and tercer drop the last vowel
+        if (ordinal == Ordinal.SHORT && (units == 1 || units == 3))
+        {
+            String word = ordinals[0][units];
+            return word.substring(0, word.length() - 1);
+        }
+
+        for (int i = 0, n = window; i < 3; i++, n /= 10)
         {
-            if (n.getNumber().equalsIgnoreCase(number))
+            if (n % 10 != 0)
             {
-                return n.getWord();
+                return ordinals[i][n % 10];
             }
         }
-        return null;
+
+        return ordinals[3][length > 6 && window % 1000000 == 0 ? 1 : 0];
     }
 
-    private static String handlingValue(String number)
+    public static String getWordByNumber(long number)
     {
-        String n = number.substring(number.length() - 7, number.length());
-        if ("0000000".equals(n))
-        {
-            return MILLONES.getNumber();
-        }
-        return n;
+        return getWordByNumber(String.valueOf(number));
+    }
+
+    public static String getWordByNumber(String number)
+    {
+        SpanishNumber n = number == null ? null : NUMBERS.get(number);
+        return n == null ? null : n.getWord();
     }
 
     private static String tenners(long n)
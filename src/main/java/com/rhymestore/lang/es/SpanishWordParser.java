@@ -22,13 +22,10 @@
 
 package com.rhymestore.lang.es;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import com.rhymestore.config.Configuration;
+import com.rhymestore.lang.DefaultRhymes;
 import com.rhymestore.lang.StressType;
 import com.rhymestore.lang.WordParser;
-import com.rhymestore.lang.WordUtils;
 
 /**
  * Parses words to identify the part that is used to conform a consonant rhyme.
@@ -39,27 +36,26 @@ import com.rhymestore.lang.WordUtils;
  */
 public class SpanishWordParser implements WordParser
 {
-	/** The default rhymes for the Spanish language. */
-	/* package */List<String> defaultRhymes;
+	/** The version of the parsing rules. */
+	public static final int VERSION = 2;
+
+	/** The scratch buffer used to build the rhymes in each thread. */
+	private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>()
+	{
+		@Override
+		protected StringBuilder initialValue()
+		{
+			return new StringBuilder();
+		}
+	};
 
-	/** The last used default rhyme. */
-	/* package */int lastUsedDefault = 0;
+	/** The default rhymes for the Spanish language. */
+	/* package */final DefaultRhymes defaultRhymes = new DefaultRhymes(
+			Configuration.DEFAULT_RHYME_PROPERTY);
 
 	public SpanishWordParser()
 	{
 		super();
-
-		defaultRhymes = new ArrayList<String>();
-
-		for (Object prop : Configuration.getConfiguration().keySet())
-		{
-			String propertyName = (String) prop;
-			if (propertyName.startsWith(Configuration.DEFAULT_RHYME_PROPERTY))
-			{
-				defaultRhymes.add(Configuration
-						.getRequiredConfigValue(propertyName));
-			}
-		}
 	}
 
 	private int letra(final char c)
@@ -733,6 +729,12 @@ public class SpanishWordParser implements WordParser
 			{
 				break;
 			}
+			// Keep the ordinal indicators of the numbers
+			if (isOrdinalIndicator(chars[i]) && i > 0
+				&& (Character.isDigit(chars[i - 1]) || chars[i - 1] == '.'))
+			{
+				break;
+			}
 			i--;
 		}
 
@@ -740,13 +742,24 @@ public class SpanishWordParser implements WordParser
 		return str.substring(0, i + 1);
 	}
 
+	/**
+	 * Checks if the given character is an ordinal indicator.
+	 * 
+	 * @param c The character to check.
+	 * @return Boolean indicating if the given character is an ordinal indicator.
+	 */
+	private boolean isOrdinalIndicator(final char c)
+	{
+		return c == 'º' || c == 'ª';
+	}
+
 	@Override
 	public StressType stressType(final String word)
 	{
 		String withoutPunctuation = removeTwitterChars(removeTrailingPunctuation(word));
 
 		// If it is a number, just translate its phonetic part
-		if (WordUtils.isNumber(withoutPunctuation))
+		if (SpanishNumber.isNumber(withoutPunctuation))
 		{
 			withoutPunctuation = SpanishNumber.getBaseSound(withoutPunctuation);
 		}
@@ -790,14 +803,15 @@ public class SpanishWordParser implements WordParser
 		String withoutPunctuation = removeTwitterChars(removeTrailingPunctuation(word));
 	
 		// If it is a number, just translate its phonetic part
-		if (WordUtils.isNumber(withoutPunctuation))
+		if (SpanishNumber.isNumber(withoutPunctuation))
 		{
 			withoutPunctuation = SpanishNumber.getBaseSound(withoutPunctuation);
 		}
 
 		String rhymePart = rhymePart(withoutPunctuation);
 
-		StringBuilder result = new StringBuilder();
+		StringBuilder result = BUFFER.get();
+		result.setLength(0);
 		char[] letters = rhymePart.toCharArray();
 
 		for (int i = 0; i < letters.length; i++)
@@ -914,6 +928,12 @@ public class SpanishWordParser implements WordParser
 		String withoutPunctuation = removeTwitterChars(removeTrailingPunctuation(text));
 		boolean negative = false;
 
+		// Decimal numbers, times and ordinals are words too
+		if (SpanishNumber.isNumber(withoutPunctuation))
+		{
+			return true;
+		}
+
 		// Ignore the sign if we are verifying a number
 		if (withoutPunctuation.startsWith("-"))
 		{
@@ -955,9 +975,15 @@ public class SpanishWordParser implements WordParser
 		return hasLetters ? !negative : true;
 	}
 
+	@Override
+	public int getVersion()
+	{
+		return VERSION;
+	}
+
 	@Override
 	public String getDefaultRhyme()
 	{
-		return defaultRhymes.get(lastUsedDefault++ % defaultRhymes.size());
+		return defaultRhymes.next();
 	}
 }
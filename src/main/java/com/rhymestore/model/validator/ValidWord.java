@@ -39,7 +39,7 @@ import org.apache.commons.lang.StringUtils;
 
 import com.rhymestore.lang.WordParser;
 import com.rhymestore.lang.WordParserFactory;
-import com.rhymestore.lang.WordUtils;
+import com.rhymestore.lang.WordTokenizer;
 
 /**
  * Validates that the given property is a valid word, as defined by the {@link WordParser}.
@@ -63,6 +63,9 @@ public @interface ValidWord
         /** The {@link WordParser} used to validate the word. */
         private WordParser wordParser;
 
+        /** The {@link WordTokenizer} used to get the last word. */
+        private WordTokenizer tokenizer;
+
         /** The validation annotation to use. */
         private ValidWord validWord;
 
@@ -70,6 +73,7 @@ public @interface ValidWord
         public void initialize(ValidWord constraintAnnotation)
         {
             wordParser = WordParserFactory.getWordParser();
+            tokenizer = WordTokenizer.getTokenizer();
             validWord = constraintAnnotation;
         }
 
@@ -81,7 +85,7 @@ public @interface ValidWord
                 return true;
             }
 
-            String lastWord = WordUtils.getLastWord(value);
+            String lastWord = tokenizer.lastWord(value);
             boolean valid = wordParser.isWord(lastWord);
 
             if (!valid)
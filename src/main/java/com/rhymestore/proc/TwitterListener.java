@@ -22,17 +22,19 @@
 
 package com.rhymestore.proc;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import twitter4j.Twitter;
 import twitter4j.TwitterException;
-import twitter4j.TwitterFactory;
-import twitter4j.TwitterStream;
-import twitter4j.TwitterStreamFactory;
 
-import com.rhymestore.config.Configuration;
-import com.rhymestore.twitter.stream.GetMentionsListener;
+import com.rhymestore.config.ConfigurationReloader;
+import com.rhymestore.lang.WordParserRegistry;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.TwitterAccount;
+import com.rhymestore.twitter.TwitterBot;
 
 /**
  * Main Twitter listener process.
@@ -44,25 +46,35 @@ public class TwitterListener
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(TwitterListener.class);
 
-    /** The Twitter API client. */
-    private Twitter twitter;
+    /** The bots of the hosted accounts. */
+    private final List<TwitterBot> bots = new ArrayList<TwitterBot>();
 
-    /** The Twitter streaming API. */
-    private TwitterStream stream;
+    /** Reloads the configuration file when it changes. */
+    private final ConfigurationReloader configReloader = new ConfigurationReloader();
 
     /**
-     * Start listening to tweets.
+     * Start listening to tweets in all the configured accounts.
      */
     public void start() throws IllegalStateException, TwitterException
     {
-        twitter = new TwitterFactory().getInstance();
-        stream = new TwitterStreamFactory().getInstance();
+        // Watch the configuration file to reload the default rhymes
+        configReloader.start();
+
+        // The replies and their engagement are tracked in this process
+        for (String language : WordParserRegistry.getRegistry().getLanguages())
+        {
+            RhymeStore.getInstance(language).getUsage().start();
+        }
 
-        LOGGER.info("Connected to Twitter as: {}", twitter.getScreenName());
+        List<TwitterAccount> accounts = TwitterAccount.getAccounts();
+        LOGGER.info("Hosting {} Twitter accounts", accounts.size());
 
-        LOGGER.info("Starting the Twitter stream listener");
-        stream.addListener(new GetMentionsListener(twitter));
-        stream.user(); // Start reading to user stream
+        for (TwitterAccount account : accounts)
+        {
+            TwitterBot bot = new TwitterBot(account);
+            bots.add(bot);
+            bot.start();
+        }
     }
 
     /**
@@ -82,18 +94,23 @@ public class TwitterListener
         @Override
         public void run()
         {
-            LOGGER.info("Disconnecting from the Twitter streaming API");
-            listener.stream.shutdown();
-
-            LOGGER.info("Disconnecting from Twitter");
-            listener.twitter.shutdown();
+            listener.configReloader.shutdown();
+
+            for (TwitterBot bot : listener.bots)
+            {
+                bot.shutdown();
+            }
+
+            // Write the pending usage counters
+            for (String language : WordParserRegistry.getRegistry().getLanguages())
+            {
+                RhymeStore.getInstance(language).getUsage().shutdown();
+            }
         }
     }
 
     public static void main(final String[] args) throws Exception
     {
-        Configuration.loadTwitterConfig();
-
         // Start the Twitter listener
         TwitterListener listener = new TwitterListener();
         listener.start();
@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+
+/**
+ * Reconciles the rhyme index in background.
+ * <p>
+ * The sweeper walks the store incrementally, checking a small batch of entries on each run. It
+ * removes the index members and id lookups that point to unexisting data, and restores the index
+ * entries of the sentences that are not indexed.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeStore
+ */
+public class IndexSweeper implements Runnable
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexSweeper.class);
+
+    /** The default number of seconds between runs. */
+    private static final long DEFAULT_INTERVAL = 10;
+
+    /** The default number of entries to check on each run. */
+    private static final int DEFAULT_BATCH_SIZE = 20;
+
+    /** The phases of a sweep pass. */
+    private static enum Phase
+    {
+        INDEXES, SENTENCES, IDS;
+    }
+
+    /** The store to sweep. */
+    private final RhymeStore store;
+
+    /** The number of seconds between runs. */
+    private final long interval;
+
+    /** The number of entries to check on each run. */
+    private final int batchSize;
+
+    /** The scheduler service. */
+    private ScheduledExecutorService scheduler;
+
+    /** The current phase of the pass. */
+    private Phase phase = Phase.INDEXES;
+
+    /** The next entry to check in the current phase. */
+    private int cursor = 0;
+
+    /** The number of checked entries. */
+    private final AtomicLong checked = new AtomicLong();
+
+    /** The number of removed entries. */
+    private final AtomicLong removed = new AtomicLong();
+
+    /** The number of repaired entries. */
+    private final AtomicLong repaired = new AtomicLong();
+
+    /** The number of completed passes. */
+    private final AtomicLong passes = new AtomicLong();
+
+    /**
+     * Creates a new sweeper for the default store using the configured throttling.
+     */
+    public IndexSweeper()
+    {
+        this(RhymeStore.getInstance());
+    }
+
+    /**
+     * Creates a new sweeper for the given store using the configured interval and batch size.
+     * 
+     * @param store The store to sweep.
+     */
+    public IndexSweeper(final RhymeStore store)
+    {
+        this(store, getConfigValue(Configuration.SWEEPER_INTERVAL_PROPERTY,
+            DEFAULT_INTERVAL), (int) getConfigValue(Configuration.SWEEPER_BATCH_PROPERTY,
+            DEFAULT_BATCH_SIZE));
+    }
+
+    /**
+     * Creates a new sweeper.
+     * 
+     * @param store The store to sweep.
+     * @param interval The number of seconds between runs.
+     * @param batchSize The number of entries to check on each run.
+     */
+    /* package */IndexSweeper(final RhymeStore store, final long interval, final int batchSize)
+    {
+        this.store = store;
+        this.interval = interval;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts the sweeper.
+     */
+    public void start()
+    {
+        LOGGER.info("Index sweeper checking {} entries every {} seconds", batchSize, interval);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Shuts down the sweeper.
+     */
+    public void shutdown()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Checks the next batch of entries.
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            sweep();
+        }
+        catch (Exception ex)
+        {
+            // Keep the sweeper scheduled
+            LOGGER.error("Could not sweep the rhyme index", ex);
+        }
+    }
+
+    /**
+     * Checks the next batch of entries of the current phase.
+     * 
+     * @return Boolean indicating if the batch completed a pass over the whole store.
+     * @throws IOException If the entries cannot be checked.
+     */
+    /* package */synchronized boolean sweep() throws IOException
+    {
+        int last = getLastEntry(phase);
+        int to = Math.min(cursor + batchSize - 1, last);
+
+        if (cursor <= to)
+        {
+            switch (phase)
+            {
+                case INDEXES:
+                    removed.addAndGet(store.sweepIndexes(cursor, to));
+                    break;
+                case SENTENCES:
+                    repaired.addAndGet(store.sweepSentences(cursor, to));
+                    break;
+                case IDS:
+                    removed.addAndGet(store.sweepIds(cursor, to));
+                    break;
+            }
+
+            checked.addAndGet(to - cursor + 1);
+        }
+
+        LOGGER.trace("Swept {} entries {} to {}", new Object[] {phase, cursor, to});
+
+        cursor = to + 1;
+
+        if (cursor <= last)
+        {
+            return false;
+        }
+
+        cursor = 0;
+
+        if (phase.ordinal() < Phase.values().length - 1)
+        {
+            phase = Phase.values()[phase.ordinal() + 1];
+            return false;
+        }
+
+        phase = Phase.INDEXES;
+        passes.incrementAndGet();
+
+        LOGGER.info("Index sweep pass {} completed: {} entries checked, {} removed, {} repaired",
+            new Object[] {passes.get(), checked.get(), removed.get(), repaired.get()});
+
+        return true;
+    }
+
+    /**
+     * Gets the last entry to check in the given phase.
+     * 
+     * @param phase The phase.
+     * @return The last entry to check.
+     * @throws IOException If the last entry cannot be read.
+     */
+    private int getLastEntry(final Phase phase) throws IOException
+    {
+        switch (phase)
+        {
+            case INDEXES:
+                return store.getLastIndexId();
+            case SENTENCES:
+                return store.getLastSentenceId() / RhymeStore.BUCKET_SIZE;
+            default:
+                return RhymeStore.ID_BUCKETS - 1;
+        }
+    }
+
+    /**
+     * Gets the numeric value of the given configuration property.
+     * 
+     * @param propertyName The name of the property.
+     * @param defaultValue The value to use if the property is not defined.
+     * @return The value of the property.
+     */
+    private static long getConfigValue(final String propertyName, final long defaultValue)
+    {
+        String value = Configuration.getConfigValue(propertyName);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    // Metrics
+
+    public long getChecked()
+    {
+        return checked.get();
+    }
+
+    public long getRemoved()
+    {
+        return removed.get();
+    }
+
+    public long getRepaired()
+    {
+        return repaired.get();
+    }
+
+    public long getPasses()
+    {
+        return passes.get();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
+
+/**
+ * Normalizes the strings used to build the keys of the store.
+ * <p>
+ * The normalized form of a string is its lower case version, without diacritics and without
+ * characters that are not ASCII letters or digits. Since most of the stored text is ASCII or
+ * Latin-1, those characters are translated with a lookup table in a single pass, falling back to
+ * the full Unicode decomposition only for the rest of characters.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeStore
+ */
+/* package */final class KeyNormalizer
+{
+    /** The number of characters translated with the lookup table. */
+    private static final int TABLE_SIZE = 256;
+
+    /** Marks the characters that are removed from the normalized string. */
+    private static final char REMOVED = 0;
+
+    /** The normalized form of each Latin-1 character. */
+    private static final char[] TABLE = new char[TABLE_SIZE];
+
+    /** The buffer used to build the normalized strings. */
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>()
+    {
+        @Override
+        protected char[] initialValue()
+        {
+            return new char[64];
+        }
+    };
+
+    static
+    {
+        // Build the table with the full normalization to make sure both produce the same output
+        for (char c = 0; c < TABLE_SIZE; c++)
+        {
+            String normalized = decompose(String.valueOf(c));
+            TABLE[c] = normalized.isEmpty() ? REMOVED : normalized.charAt(0);
+        }
+    }
+
+    private KeyNormalizer()
+    {
+        throw new AssertionError("Utility classes should not be instantiated.");
+    }
+
+    /**
+     * Normalizes the given string.
+     * 
+     * @param value The string to normalize.
+     * @return The normalized string.
+     */
+    public static String normalize(final String value)
+    {
+        int length = value.length();
+        int i = 0;
+
+        // Strings that are already normalized are returned as is
+        while (i < length && isNormalized(value.charAt(i)))
+        {
+            i++;
+        }
+
+        if (i == length)
+        {
+            return value;
+        }
+
+        char[] buffer = BUFFER.get();
+
+        if (buffer.length < length)
+        {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+
+        value.getChars(0, i, buffer, 0);
+        int size = i;
+
+        for (; i < length; i++)
+        {
+            char c = value.charAt(i);
+
+            if (c >= TABLE_SIZE)
+            {
+                // Characters out of Latin-1 may change the lower case of the previous ones
+                return decompose(value);
+            }
+
+            char normalized = TABLE[c];
+
+            if (normalized != REMOVED)
+            {
+                buffer[size++] = normalized;
+            }
+        }
+
+        return new String(buffer, 0, size);
+    }
+
+    /**
+     * Checks if the given character is not modified by the normalization.
+     * 
+     * @param c The character to check.
+     * @return Boolean indicating if the given character is not modified by the normalization.
+     */
+    private static boolean isNormalized(final char c)
+    {
+        return c >= 'a' && c <= 'z' || c >= '0' && c <= '9';
+    }
+
+    /**
+     * Normalizes the given string using the full Unicode decomposition.
+     * 
+     * @param value The string to normalize.
+     * @return The normalized string.
+     */
+    private static String decompose(final String value)
+    {
+        // To lower case
+        String token = value.toLowerCase();
+
+        // Remove diacritics
+        token = Normalizer.normalize(token, Form.NFD);
+        token = token.replaceAll("[^\\p{ASCII}]", "");
+
+        // Remove non alphanumeric characters
+        token = token.replaceAll("[^a-zA-Z0-9]", "");
+
+        return token;
+    }
+}
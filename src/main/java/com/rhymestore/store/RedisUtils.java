@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+
+import redis.clients.jedis.Jedis;
+
+import com.rhymestore.config.Configuration;
+
+/**
+ * Utility methods to work with the Redis database.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RedisUtils
+{
+    /** The environment variable with the password of the Redis database. */
+    public static final String PASSWORD_VARIABLE = "REDISPASS";
+
+    /**
+     * Creates a connection to the configured Redis database.
+     * <p>
+     * The connection is not established until {@link #connect(Jedis)} is called.
+     * 
+     * @return The Redis connection.
+     */
+    public static Jedis newConnection()
+    {
+        String host = Configuration.getRequiredConfigValue(Configuration.REDIS_HOST_PROPERTY);
+        String port = Configuration.getRequiredConfigValue(Configuration.REDIS_PORT_PROPERTY);
+        return new Jedis(host, Integer.valueOf(port));
+    }
+
+    /**
+     * Connects to the Redis database, if not connected yet, and authenticates with the password
+     * in the {@value #PASSWORD_VARIABLE} environment variable, if set.
+     * 
+     * @param redis The Redis connection.
+     * @throws UnknownHostException If the target host does not respond.
+     * @throws IOException If an error occurs while connecting.
+     */
+    public static void connect(final Jedis redis) throws UnknownHostException, IOException
+    {
+        if (!redis.isConnected())
+        {
+            redis.connect();
+
+            String password = System.getenv(PASSWORD_VARIABLE);
+            if (password != null)
+            {
+                redis.auth(password);
+            }
+        }
+    }
+}
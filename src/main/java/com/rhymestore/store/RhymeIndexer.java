@@ -0,0 +1,384 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.lang.WordUtils;
+
+/**
+ * Rebuilds the rhyme index.
+ * <p>
+ * The stored sentences are read in batches of buckets and the ones whose {@link RhymeStamp} is
+ * stale are analyzed again in parallel. The index can be either fully rebuilt in a new version of
+ * the index namespace, switching lookups to it atomically once it is complete, or updated in place
+ * moving only the stale sentences.
+ * <p>
+ * The build lock is renewed after each batch, so it expires if the indexer dies and the next
+ * rebuild takes over. A build can also be aborted at once with the <code>--abort</code> argument.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeStore
+ */
+public class RhymeIndexer
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhymeIndexer.class);
+
+    /** The number of sentence buckets to read on each batch. */
+    private static final int BATCH_BUCKETS = 10;
+
+    /** The argument used to update only the stale sentences. */
+    private static final String STALE_ARG = "--stale";
+
+    /** The argument used to abort the build of the index in progress. */
+    private static final String ABORT_ARG = "--abort";
+
+    /** The argument used to select the language of the index to rebuild. */
+    private static final String LANGUAGE_ARG = "--lang=";
+
+    /** The backend rhyme store. */
+    private final RhymeStore store;
+
+    /** The number of threads used to analyze the sentences. */
+    private final int threads;
+
+    /**
+     * Default constructor.
+     */
+    public RhymeIndexer()
+    {
+        this(RhymeStore.getInstance(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an indexer for the store of the given language.
+     * 
+     * @param language The language of the store to reindex.
+     */
+    public RhymeIndexer(final String language)
+    {
+        this(RhymeStore.getInstance(language), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an indexer for the given store.
+     * 
+     * @param store The store to reindex.
+     * @param threads The number of threads used to analyze the sentences.
+     */
+    /* package */RhymeIndexer(final RhymeStore store, final int threads)
+    {
+        this.store = store;
+        this.threads = threads;
+    }
+
+    /**
+     * Rebuilds the index of all the stored rhymes in a new version of the index.
+     * 
+     * @return The number of indexed rhymes.
+     * @throws IOException If the index cannot be rebuilt.
+     */
+    public int reindex() throws IOException
+    {
+        int version = store.startIndex();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        LOGGER.info("Building version {} of the rhyme index", version);
+
+        try
+        {
+            int indexed = 0;
+            int analyzed = 0;
+            int lastBucket = store.getLastSentenceId() / RhymeStore.BUCKET_SIZE;
+            Map<String, String> indexIds = new HashMap<String, String>();
+
+            for (int from = 0; from <= lastBucket; from += BATCH_BUCKETS)
+            {
+                int to = Math.min(from + BATCH_BUCKETS - 1, lastBucket);
+                Map<String, String> sentences = store.readBuckets(from, to);
+                Map<String, RhymeStamp> stamps = store.readStamps(from, to);
+                Map<String, RhymeStamp> stale = analyze(executor, sentences, stamps);
+
+                stamps.putAll(stale);
+                store.index(version, sentences, getIndexTokens(sentences, stamps), indexIds,
+                    stale);
+
+                indexed += sentences.size();
+                analyzed += stale.size();
+
+                LOGGER.debug("Indexed {} rhymes", indexed);
+                store.renewIndex(version);
+            }
+
+            int previous = store.switchIndex(version);
+
+            LOGGER.info("Switched to version {} of the rhyme index with {} rhymes ({} analyzed)",
+                new Object[] {version, indexed, analyzed});
+
+            // Remove the previous index and the leftovers of the abandoned builds
+            store.dropIndex(previous);
+            for (int abandoned = previous + 1; abandoned < version; abandoned++)
+            {
+                store.dropIndex(abandoned);
+            }
+
+            return indexed;
+        }
+        catch (IOException ex)
+        {
+            store.abortIndex(version);
+            throw ex;
+        }
+        catch (RuntimeException ex)
+        {
+            store.abortIndex(version);
+            throw ex;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Aborts the build of the index in progress, if any, so a new one can be started.
+     * 
+     * @return The version of the aborted build, or <code>0</code> if there was none.
+     * @throws IOException If the build cannot be aborted.
+     */
+    public int abort() throws IOException
+    {
+        int version = store.getBuildingVersion();
+
+        if (version > 0)
+        {
+            store.abortIndex(version);
+            LOGGER.info("Aborted the build of version {} of the rhyme index", version);
+        }
+
+        return version;
+    }
+
+    /**
+     * Updates in place the index entries of the rhymes that have been analyzed with an older
+     * parser.
+     * 
+     * @return The number of updated rhymes.
+     * @throws IOException If the index cannot be updated.
+     */
+    public int update() throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try
+        {
+            int updated = 0;
+            int lastBucket = store.getLastSentenceId() / RhymeStore.BUCKET_SIZE;
+
+            for (int from = 0; from <= lastBucket; from += BATCH_BUCKETS)
+            {
+                int to = Math.min(from + BATCH_BUCKETS - 1, lastBucket);
+                Map<String, String> sentences = store.readBuckets(from, to);
+                Map<String, RhymeStamp> stamps = store.readStamps(from, to);
+                Map<String, RhymeStamp> stale = analyze(executor, sentences, stamps);
+
+                // Sentences that have not been migrated yet are not stamped
+                for (String member : sentences.keySet())
+                {
+                    if (store.isLegacy(member))
+                    {
+                        stale.remove(member);
+                    }
+                }
+
+                updated += store.restamp(stale, stamps);
+            }
+
+            LOGGER.info("Updated {} stale rhymes", updated);
+
+            return updated;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Analyzes the sentences with a stale stamp, splitting the work between the available
+     * threads.
+     * 
+     * @param executor The executor used to analyze the sentences.
+     * @param sentences The sentences, by index member.
+     * @param stamps The stored stamps, by index member.
+     * @return The new stamps of the stale sentences, by index member.
+     * @throws IOException If the sentences cannot be analyzed.
+     */
+    private Map<String, RhymeStamp> analyze(final ExecutorService executor,
+        final Map<String, String> sentences, final Map<String, RhymeStamp> stamps)
+        throws IOException
+    {
+        List<String> members = new ArrayList<String>();
+        List<String> analyzable = new ArrayList<String>();
+
+        for (Map.Entry<String, String> sentence : sentences.entrySet())
+        {
+            if (!store.isCurrent(stamps.get(sentence.getKey())))
+            {
+                String word = WordUtils.getLastWord(sentence.getValue());
+
+                if (!word.isEmpty())
+                {
+                    members.add(sentence.getKey());
+                    analyzable.add(sentence.getValue());
+                }
+            }
+        }
+
+        Map<String, RhymeStamp> analyzed = new HashMap<String, RhymeStamp>();
+
+        try
+        {
+            List<RhymeStamp> results = store.stamp(analyzable, executor);
+
+            for (int i = 0; i < members.size(); i++)
+            {
+                analyzed.put(members.get(i), results.get(i));
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while analyzing rhymes");
+        }
+        catch (RuntimeException ex)
+        {
+            throw new IOException("Could not analyze rhymes: " + ex.getMessage());
+        }
+
+        return analyzed;
+    }
+
+    /**
+     * Groups the given sentences by index token.
+     * 
+     * @param sentences The sentences, by index member.
+     * @param stamps The stamps of the sentences, by index member.
+     * @return The index members, by index token.
+     */
+    private Map<String, List<String>> getIndexTokens(final Map<String, String> sentences,
+        final Map<String, RhymeStamp> stamps)
+    {
+        Map<String, List<String>> tokens = new HashMap<String, List<String>>();
+
+        for (String member : sentences.keySet())
+        {
+            RhymeStamp stamp = stamps.get(member);
+
+            if (stamp == null)
+            {
+                continue;
+            }
+
+            for (String token : store.getIndexTokens(stamp))
+            {
+                List<String> members = tokens.get(token);
+
+                if (members == null)
+                {
+                    members = new ArrayList<String>();
+                    tokens.put(token, members);
+                }
+
+                members.add(member);
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Rebuilds the index of the stored rhymes.
+     * 
+     * @param args Use <code>--stale</code> to update in place only the rhymes analyzed with an
+     *            older parser, or <code>--abort</code> to abort the build in progress left by a
+     *            failed process. Otherwise the whole index is rebuilt. Use
+     *            <code>--lang=&lt;language&gt;</code> to rebuild the index of a language other than
+     *            the primary one.
+     */
+    public static void main(final String... args)
+    {
+        boolean stale = false;
+        boolean abort = false;
+        String language = null;
+
+        for (String arg : args)
+        {
+            if (STALE_ARG.equals(arg))
+            {
+                stale = true;
+            }
+            else if (ABORT_ARG.equals(arg))
+            {
+                abort = true;
+            }
+            else if (arg.startsWith(LANGUAGE_ARG))
+            {
+                language = arg.substring(LANGUAGE_ARG.length());
+            }
+        }
+
+        try
+        {
+            RhymeIndexer indexer =
+                language == null ? new RhymeIndexer() : new RhymeIndexer(language);
+
+            if (abort)
+            {
+                indexer.abort();
+            }
+            else if (stale)
+            {
+                indexer.update();
+            }
+            else
+            {
+                indexer.reindex();
+            }
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not rebuild the rhyme index: " + ex.getMessage(), ex);
+        }
+    }
+}
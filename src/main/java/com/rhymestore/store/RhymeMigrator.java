@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility class to move the stored rhymes from the legacy layout to the current one.
+ * <p>
+ * Rhymes are migrated one by one, so the store can be used while the migration is running.
+ * Once they are migrated, the id buckets are checked against the
+ * <code>hash-max-ziplist-entries</code> of the Redis server, since the store only saves memory
+ * while they are stored compacted.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeStore
+ */
+public class RhymeMigrator
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhymeMigrator.class);
+
+    /** The number of rhymes to migrate between progress reports. */
+    private static final int REPORT_INTERVAL = 1000;
+
+    /** The backend rhyme store. */
+    private final RhymeStore store;
+
+    /**
+     * Default constructor.
+     */
+    public RhymeMigrator()
+    {
+        this(RhymeStore.getInstance());
+    }
+
+    /**
+     * Creates a migrator for the given store.
+     * 
+     * @param store The store to migrate.
+     */
+    /* package */RhymeMigrator(final RhymeStore store)
+    {
+        this.store = store;
+    }
+
+    /**
+     * Migrates all the rhymes stored with the legacy layout.
+     * 
+     * @return The number of migrated rhymes.
+     * @throws IOException If the rhymes cannot be migrated.
+     */
+    public int migrate() throws IOException
+    {
+        int lastId = store.getLastSentenceId();
+        int migrated = 0;
+
+        for (int id = 1; id <= lastId; id++)
+        {
+            if (store.migrate(id))
+            {
+                migrated++;
+            }
+
+            if (id % REPORT_INTERVAL == 0)
+            {
+                LOGGER.info("Checked {} of {} rhymes", id, lastId);
+            }
+        }
+
+        LOGGER.info("Migrated {} rhymes", migrated);
+
+        checkIdBuckets();
+
+        return migrated;
+    }
+
+    /**
+     * Checks if all the id buckets fit in the compacted hashes of the Redis server.
+     * 
+     * @return Boolean indicating if all the id buckets are stored compacted.
+     * @throws IOException If the buckets cannot be checked.
+     */
+    public boolean checkIdBuckets() throws IOException
+    {
+        int largest = store.getLargestIdBucket();
+        int maxEntries = store.getMaxZiplistEntries();
+
+        if (largest > maxEntries)
+        {
+            LOGGER.warn("The largest id bucket has {} entries and the Redis server only "
+                + "compacts hashes up to {}. Raise hash-max-ziplist-entries to save memory",
+                largest, maxEntries);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Migrates the rhymes stored with the legacy layout.
+     * 
+     * @param args No args are required.
+     */
+    public static void main(final String... args)
+    {
+        try
+        {
+            new RhymeMigrator().migrate();
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not migrate rhymes: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordParser;
+
+/**
+ * The result of the analysis of a stored sentence, stamped with the parser that produced it.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeStore
+ */
+/* package */final class RhymeStamp
+{
+    /** The separator of the fields in the stored representation. */
+    private static final String SEPARATOR = "|";
+
+    /** The class of the parser that analyzed the sentence. */
+    private final String parser;
+
+    /** The version of the parser that analyzed the sentence. */
+    private final int version;
+
+    /** The normalized rhyme part of the sentence. */
+    private final String rhyme;
+
+    /** The stress type of the rhyme. */
+    private final StressType type;
+
+    /** The normalized rhyme part of the last two words, if the sentence has a compound rhyme. */
+    private final String tail;
+
+    /**
+     * Creates a new stamp.
+     * 
+     * @param parser The class of the parser that analyzed the sentence.
+     * @param version The version of the parser that analyzed the sentence.
+     * @param rhyme The normalized rhyme part of the sentence.
+     * @param type The stress type of the rhyme.
+     */
+    public RhymeStamp(final String parser, final int version, final String rhyme,
+        final StressType type)
+    {
+        this(parser, version, rhyme, type, null);
+    }
+
+    /**
+     * Creates a new stamp with a compound rhyme.
+     * 
+     * @param parser The class of the parser that analyzed the sentence.
+     * @param version The version of the parser that analyzed the sentence.
+     * @param rhyme The normalized rhyme part of the sentence.
+     * @param type The stress type of the rhyme.
+     * @param tail The normalized rhyme part of the last two words, or <code>null</code> if the
+     *            sentence has no compound rhyme.
+     */
+    public RhymeStamp(final String parser, final int version, final String rhyme,
+        final StressType type, final String tail)
+    {
+        this.parser = parser;
+        this.version = version;
+        this.rhyme = rhyme;
+        this.type = type;
+        this.tail = tail;
+    }
+
+    /**
+     * Parses the stored representation of a stamp.
+     * 
+     * @param value The stored representation.
+     * @return The stamp or <code>null</code> if the value is <code>null</code> or is not valid.
+     */
+    public static RhymeStamp valueOf(final String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        String[] fields = value.split("\\" + SEPARATOR, -1);
+
+        // The compound rhyme is only present in the stamps that have one
+        if (fields.length != 4 && fields.length != 5)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new RhymeStamp(fields[0], Integer.parseInt(fields[1]), fields[3], StressType
+                .valueOf(fields[2]), fields.length == 5 ? fields[4] : null);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the stamp was produced by the given parser, with its current rules.
+     * 
+     * @param wordParser The parser.
+     * @return Boolean indicating if the stamp is up to date.
+     */
+    public boolean isCurrent(final WordParser wordParser)
+    {
+        return version == wordParser.getVersion()
+            && parser.equals(wordParser.getClass().getName());
+    }
+
+    public String getParser()
+    {
+        return parser;
+    }
+
+    public int getVersion()
+    {
+        return version;
+    }
+
+    public String getRhyme()
+    {
+        return rhyme;
+    }
+
+    public StressType getType()
+    {
+        return type;
+    }
+
+    public String getTail()
+    {
+        return tail;
+    }
+
+    @Override
+    public String toString()
+    {
+        String value = parser + SEPARATOR + version + SEPARATOR + type.name() + SEPARATOR + rhyme;
+        return tail == null ? value : value + SEPARATOR + tail;
+    }
+}
@@ -24,30 +24,73 @@ package com.rhymestore.store;
 
 import java.io.IOException;
 import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.net.UnknownHostException;
-import java.text.Normalizer;
-import java.text.Normalizer.Form;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPipeline;
 
 import com.rhymestore.config.Configuration;
+import com.rhymestore.lang.LexiconWordParser;
 import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordAnalysis;
+import com.rhymestore.lang.WordAnalyzer;
 import com.rhymestore.lang.WordParser;
-import com.rhymestore.lang.WordParserFactory;
-import com.rhymestore.lang.WordUtils;
+import com.rhymestore.lang.WordParserRegistry;
+import com.rhymestore.lang.WordTokenizer;
 
 /**
  * Manages the Redis database to store and search rhymes.
+ * <p>
+ * Sentences are stored as raw UTF-8 text in Redis hashes, each one holding up to
+ * {@link #BUCKET_SIZE} sentences, and the token to id lookups are bucketed in hashes by the
+ * prefix of the token sum. This way Redis can use its compact hash encoding and the per-key
+ * overhead is shared by many sentences. Keep <code>hash-max-ziplist-entries</code> above
+ * {@link #BUCKET_SIZE} and <code>hash-max-ziplist-value</code> above the maximum sentence size
+ * in the Redis configuration to benefit from it. The id lookups are spread over a fixed number
+ * of {@link #ID_BUCKETS} hashes, so they stay compact up to about
+ * <code>ID_BUCKETS * hash-max-ziplist-entries</code> tokens (half a million with the recommended
+ * 128 entries). This ceiling is deliberate: the bucket is part of every lookup key, so a larger
+ * store raises <code>hash-max-ziplist-entries</code> instead of moving all the lookups. The
+ * {@link RhymeMigrator} warns when a bucket outgrows the server setting.
+ * <p>
+ * Sentences stored with the legacy layout (one URL encoded string key per sentence) are still
+ * readable, and can be moved to the current layout with the {@link RhymeMigrator}.
+ * <p>
+ * Index entries left behind by failed or outdated operations are cleaned up in background by the
+ * {@link IndexSweeper}.
+ * <p>
+ * Each sentence is stored along with a {@link RhymeStamp} that records the rhyme it has been
+ * indexed with, and the parser and rules version that produced it. Stored rhymes are removed from
+ * the index using the stamp, and only the stale ones need to be analyzed again when the parser
+ * changes.
+ * <p>
+ * Optionally, sentences are also indexed by their compound rhyme: the rhyme part of the last two
+ * words, up to the configured number of syllables. Rhymes with a matching compound rhyme are
+ * preferred, since the rhyme part of short or unstressed last words is shared by too many
+ * sentences.
+ * <p>
+ * Rhymes are selected with a probability proportional to their engagement rate, tracked by the
+ * {@link RhymeUsage} of the store.
+ * <p>
+ * The index lives in a versioned namespace. The {@link RhymeIndexer} builds a new version of the
+ * index while the current one keeps serving lookups, and switches to it once it is complete.
  * 
  * @author Enric Ruiz
  * @see Keymaker
@@ -62,49 +105,260 @@ public class RhymeStore
     /** The key used to store the next id value. */
     private static final String NEXT_ID_KEY = "next.id";
 
+    /** The key used to store the version of the index used by readers. */
+    private static final String INDEX_VERSION_KEY = "index.version";
+
+    /** The key used to store the version of the index that is being built. */
+    private static final String INDEX_BUILDING_KEY = "index.building";
+
+    /** The key used to assign the versions of the index. */
+    private static final String INDEX_NEXT_VERSION_KEY = "index.next";
+
+    /** The seconds the index build lock lasts unless the builder renews it. */
+    /* package */static final int INDEX_BUILD_TIMEOUT = 600;
+
+    /** The prefix of the tokens of the compound rhymes, to keep them apart from the rest. */
+    private static final String COMPOUND_TOKEN_PREFIX = "compound:";
+
+    /** The key of the times each sentence has been served. */
+    private static final String SERVED_KEY = "served";
+
+    /** The key of the engagement of each sentence. */
+    private static final String ENGAGED_KEY = "engaged";
+
+    /** The suffix of the keys of the length indexes. */
+    private static final String LENGTH_KEY = "length";
+
+    /** The separator of the words in the compound rhymes. */
+    private static final String TAIL_SEPARATOR = " ";
+
+    /** The separator between the language and the keys of its namespace. */
+    private static final String LANGUAGE_SEPARATOR = ":";
+
+    /** The number of sentences stored in each hash bucket. */
+    /* package */static final int BUCKET_SIZE = 100;
+
+    /** The number of keys to delete at once when removing an old index. */
+    private static final int DROP_BATCH_SIZE = 100;
+
+    /** The length of the sum prefix used to bucket the id lookup hashes. */
+    private static final int ID_BUCKET_PREFIX_LENGTH = 3;
+
+    /** The number of hash buckets used to store the id lookups of each namespace. */
+    /* package */static final int ID_BUCKETS = 1 << 4 * ID_BUCKET_PREFIX_LENGTH;
+
+    /** The recommended <code>hash-max-ziplist-entries</code> of the Redis server. */
+    /* package */static final int MAX_ZIPLIST_ENTRIES = 128;
+
+    /** The language of the sentences in the store. */
+    private final String language;
+
+    /** The key used to store the version of the index used by readers. */
+    private final String indexVersionKey;
+
+    /** The key used to store the version of the index that is being built. */
+    private final String indexBuildingKey;
+
+    /** The key used to assign the versions of the index. */
+    private final String indexNextVersionKey;
+
     /** Redis namespace for sentences. */
-    private final Keymaker sentencens = new Keymaker("sentence");
+    private final Keymaker sentencens;
+
+    /** Redis namespace for the first version of the index. */
+    private final Keymaker baseindexns;
 
-    /** Redis namespace for index. */
-    private final Keymaker indexns = new Keymaker("index");
+    /** Redis namespace for the current version of the index. */
+    private Keymaker indexns;
 
-    /** The character encoding to use. */
+    /** Redis namespace for the version of the index being built, if any. */
+    private Keymaker buildingns;
+
+    /** The character encoding used in the legacy layout. */
     private final String encoding = "UTF-8";
 
-    /** The singleton instance of the store. */
-    private static RhymeStore instance;
+    /** The instances of the store, by language. */
+    private static final ConcurrentMap<String, RhymeStore> instances =
+        new ConcurrentHashMap<String, RhymeStore>();
 
     /** Parses the words to get the part used to rhyme. */
     private final WordParser wordParser;
 
+    /** The parser whose rules are used to analyze the words, recorded in the stamps. */
+    private final WordParser rules;
+
+    /** Analyzes the last word of the sentences. */
+    private final WordAnalyzer analyzer;
+
+    /** Gets the last word of the sentences. */
+    private final WordTokenizer tokenizer;
+
+    /** The maximum syllables of the compound rhymes, or <code>0</code> to disable them. */
+    private final int compoundSyllables;
+
+    /** Tracks how often the rhymes are served and how often they get engagement. */
+    private final RhymeUsage usage;
+
+    /** Used to select the rhymes. */
+    private final Random random = new Random();
+
     /** The Redis database API. */
     protected final Jedis redis;
 
     /**
-     * Gets the singleton instance of the store.
+     * Gets the instance of the store for the primary language.
      * 
-     * @return The singleton instance of the store.
+     * @return The instance of the store for the primary language.
      */
     public static RhymeStore getInstance()
     {
+        return getInstance(WordParserRegistry.getRegistry().getPrimaryLanguage());
+    }
+
+    /**
+     * Gets the instance of the store for the given language.
+     * 
+     * @param language The language of the sentences.
+     * @return The instance of the store for the given language.
+     */
+    public static RhymeStore getInstance(final String language)
+    {
+        RhymeStore instance = instances.get(language);
+
         if (instance == null)
         {
-            instance = new RhymeStore();
+            RhymeStore created = new RhymeStore(language);
+            instance = instances.putIfAbsent(language, created);
+
+            if (instance == null)
+            {
+                instance = created;
+            }
         }
 
         return instance;
     }
 
     /**
-     * Creates a new <code>RhymeStore</code> connecting to the configured Redis database.
+     * Replaces the instance of the store for its language.
+     * <p>
+     * Used to run the bot against a store that does not need a Redis database, such as the stand-in
+     * stores used to replay mention streams.
+     * 
+     * @param store The store to use for its language.
+     * @return The replaced instance, or <code>null</code> if there was none.
+     */
+    public static RhymeStore setInstance(final RhymeStore store)
+    {
+        return instances.put(store.getLanguage(), store);
+    }
+
+    /**
+     * Creates a new <code>RhymeStore</code> for the primary language connecting to the configured
+     * Redis database.
      */
     protected RhymeStore()
     {
-        String host = Configuration.getRequiredConfigValue(Configuration.REDIS_HOST_PROPERTY);
-        String port = Configuration.getRequiredConfigValue(Configuration.REDIS_PORT_PROPERTY);
+        this(WordParserRegistry.getRegistry().getPrimaryLanguage());
+    }
+
+    /**
+     * Creates a new <code>RhymeStore</code> for the given language connecting to the configured
+     * Redis database.
+     * <p>
+     * The keys of the primary language are not prefixed, so existing stores are still readable.
+     * The keys of the other languages are prefixed with the language code.
+     * 
+     * @param language The language of the sentences.
+     */
+    protected RhymeStore(final String language)
+    {
+        this(language, getCompoundSyllables());
+    }
+
+    /**
+     * Creates a new <code>RhymeStore</code> for the given language connecting to the configured
+     * Redis database.
+     * 
+     * @param language The language of the sentences.
+     * @param compoundSyllables The maximum syllables of the compound rhymes, or <code>0</code> to
+     *            disable them.
+     */
+    protected RhymeStore(final String language, final int compoundSyllables)
+    {
+        WordParserRegistry registry = WordParserRegistry.getRegistry();
+        String prefix =
+            language.equals(registry.getPrimaryLanguage()) ? "" : language + LANGUAGE_SEPARATOR;
+
+        this.language = language;
+        indexVersionKey = prefix + INDEX_VERSION_KEY;
+        indexBuildingKey = prefix + INDEX_BUILDING_KEY;
+        indexNextVersionKey = prefix + INDEX_NEXT_VERSION_KEY;
+        sentencens = new Keymaker(prefix + "sentence");
+        baseindexns = new Keymaker(prefix + "index");
+        indexns = baseindexns;
+
+        redis = RedisUtils.newConnection();
+        wordParser = registry.getWordParser(language);
+        rules = wordParser instanceof LexiconWordParser ? ((LexiconWordParser) wordParser)
+            .getDelegate() : wordParser;
+        analyzer = new WordAnalyzer(wordParser);
+        tokenizer = WordTokenizer.getTokenizer();
+        this.compoundSyllables = compoundSyllables;
+        usage = new RhymeUsage(this);
+    }
+
+    /**
+     * Creates a new <code>RhymeStore</code> for the language of the given store, with its own
+     * connection to the Redis database.
+     * <p>
+     * The new store shares the usage tracker of the given one, so the rhymes served by both are
+     * tracked and flushed together.
+     * 
+     * @param store The store to read the same rhymes from.
+     * @see #createReader()
+     */
+    protected RhymeStore(final RhymeStore store)
+    {
+        language = store.language;
+        indexVersionKey = store.indexVersionKey;
+        indexBuildingKey = store.indexBuildingKey;
+        indexNextVersionKey = store.indexNextVersionKey;
+        sentencens = store.sentencens;
+        baseindexns = store.baseindexns;
+        indexns = baseindexns;
+
+        redis = RedisUtils.newConnection();
+        wordParser = store.wordParser;
+        rules = store.rules;
+        analyzer = new WordAnalyzer(wordParser);
+        tokenizer = store.tokenizer;
+        compoundSyllables = store.compoundSyllables;
+        usage = store.usage;
+    }
+
+    /**
+     * Creates another instance of this store with its own Redis connection.
+     * <p>
+     * All the operations of a store are serialized on its connection, so the threads that look up
+     * rhymes in parallel use a reader each. The readers share the usage tracker of this store.
+     * 
+     * @return A store that reads the same rhymes with its own connection.
+     */
+    public RhymeStore createReader()
+    {
+        return new RhymeStore(this);
+    }
 
-        redis = new Jedis(host, Integer.valueOf(port));
-        wordParser = WordParserFactory.getWordParser();
+    /**
+     * Gets the configured maximum syllables of the compound rhymes.
+     * 
+     * @return The maximum syllables of the compound rhymes, or <code>0</code> if they are disabled.
+     */
+    private static int getCompoundSyllables()
+    {
+        String compound = Configuration.getConfigValue(Configuration.COMPOUND_SYLLABLES_PROPERTY);
+        return compound == null ? 0 : Integer.parseInt(compound.trim());
     }
 
     /**
@@ -113,9 +367,9 @@ public class RhymeStore
      * @param sentence The rhyme to add.
      * @throws IOException If an error occurs while adding the rhyme.
      */
-    public void add(final String sentence) throws IOException
+    public synchronized void add(final String sentence) throws IOException
     {
-        String word = WordUtils.getLastWord(sentence);
+        String word = tokenizer.lastWord(sentence);
 
         if (word.isEmpty())
         {
@@ -124,28 +378,35 @@ public class RhymeStore
 
         // Get the rhyme and type (and check that the word is valid before
         // adding)
-        String rhyme = normalizeString(wordParser.phoneticRhymePart(word));
-        StressType type = wordParser.stressType(word);
+        RhymeStamp stamp = stamp(sentence);
+        List<String> indexTokens = getIndexTokens(stamp);
 
-        connect();
+        connectIndex();
 
-        String sentenceKey = getUniqueId(sentencens, normalizeString(sentence));
-        sentenceKey = sentencens.build(sentenceKey).toString();
+        String sentenceId = getUniqueId(sentencens, normalizeString(sentence));
+        String bucketKey = getBucketKey(sentenceId);
 
-        if (redis.exists(sentenceKey) == 1)
+        if (redis.hexists(bucketKey, sentenceId) == 1
+            || redis.exists(getLegacySentenceKey(sentenceId)) == 1)
         {
             disconnect();
             return;
         }
 
         // Insert sentence
-        redis.set(sentenceKey, URLEncoder.encode(sentence, encoding));
+        redis.hset(bucketKey, sentenceId, sentence);
+        redis.hset(getStampBucketKey(sentenceId), sentenceId, stamp.toString());
 
         // Index sentence
-        String indexKey = getUniqueId(indexns, buildUniqueToken(rhyme, type));
-        indexKey = indexns.build(indexKey).toString();
+        for (String indexToken : indexTokens)
+        {
+            index(indexns, indexToken, sentenceId, sentence.length());
 
-        redis.sadd(indexKey, sentenceKey);
+            if (buildingns != null)
+            {
+                index(buildingns, indexToken, sentenceId, sentence.length());
+            }
+        }
 
         disconnect();
 
@@ -158,53 +419,49 @@ public class RhymeStore
      * @param sentence The rhyme to delete.
      * @throws IOException If an error occurs while deleting the rhyme.
      */
-    public void delete(final String sentence) throws IOException
+    public synchronized void delete(final String sentence) throws IOException
     {
-        String word = WordUtils.getLastWord(sentence);
+        String word = tokenizer.lastWord(sentence);
 
         if (word.isEmpty())
         {
             return;
         }
 
-        String rhyme = normalizeString(wordParser.phoneticRhymePart(word));
-        StressType type = wordParser.stressType(word);
-
-        connect();
+        connectIndex();
 
-        String sentenceKey = getUniqueIdKey(sentencens, normalizeString(sentence));
+        String sentenceToken = normalizeString(sentence);
+        String sentenceId = getId(sentencens, sentenceToken);
 
-        if (redis.exists(sentenceKey) == 0)
+        if (sentenceId == null)
         {
             disconnect();
             throw new IOException("The element to remove does not exist.");
         }
 
-        String indexKey = getUniqueIdKey(indexns, buildUniqueToken(rhyme, type));
-        String sentenceId = redis.get(sentenceKey);
-        sentenceId = sentencens.build(sentenceId).toString();
+        // Use the rhyme the sentence was indexed with, if known
+        String stampBucketKey = getStampBucketKey(sentenceId);
+        RhymeStamp stamp = RhymeStamp.valueOf(redis.hget(stampBucketKey, sentenceId));
+        List<String> indexTokens = getIndexTokens(stamp != null ? stamp : stamp(sentence));
 
-        // Remove the index
-        if (redis.exists(indexKey) == 1)
+        // Remove the sentence from the index
+        for (String indexToken : indexTokens)
         {
-            String indexId = redis.get(indexKey);
-            indexId = indexns.build(indexId).toString();
-
-            // Remove the sentence from the index
-            if (redis.exists(indexId) == 1)
-            {
-                redis.srem(indexId, sentenceId);
-            }
+            unindex(indexns, indexToken, sentenceId);
 
-            // Remove the index if empty
-            if (redis.smembers(indexId).isEmpty())
+            if (buildingns != null)
             {
-                redis.del(indexId, indexKey);
+                unindex(buildingns, indexToken, sentenceId);
             }
         }
 
-        // Remove the key
-        redis.del(sentenceId, sentenceKey);
+        // Remove the sentence
+        removeId(sentencens, sentenceToken);
+        redis.hdel(getBucketKey(sentenceId), sentenceId);
+        redis.hdel(stampBucketKey, sentenceId);
+        redis.del(getLegacySentenceKey(sentenceId));
+        redis.zrem(sentencens.build(SERVED_KEY).toString(), sentenceId);
+        redis.zrem(sentencens.build(ENGAGED_KEY).toString(), sentenceId);
 
         disconnect();
 
@@ -217,7 +474,7 @@ public class RhymeStore
      * @return A <code>Set</code> with all the stored rhymes.
      * @throws IOException If the rhymes cannot be obtained.
      */
-    public Set<String> findAll() throws IOException
+    public synchronized Set<String> findAll() throws IOException
     {
         Set<String> rhymes = new HashSet<String>();
 
@@ -227,17 +484,8 @@ public class RhymeStore
 
         if (lastId != null)
         {
-            Integer n = Integer.parseInt(getLastId(sentencens));
-
-            for (int i = 1; i <= n; i++)
-            {
-                String id = sentencens.build(String.valueOf(i)).toString();
-
-                if (redis.exists(id) == 1)
-                {
-                    rhymes.add(URLDecoder.decode(redis.get(id), encoding));
-                }
-            }
+            int n = Integer.parseInt(lastId);
+            rhymes.addAll(readBucketRange(0, n / BUCKET_SIZE, n).values());
         }
 
         disconnect();
@@ -253,34 +501,63 @@ public class RhymeStore
      */
     public String getRhyme(final String sentence) throws IOException
     {
-        String lastWord = WordUtils.getLastWord(sentence);
+        return getRhyme(sentence, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets a rhyme for the given sentence, preferring the ones that are not longer than the given
+     * length.
+     * <p>
+     * Rhymes that fit are selected by the server with the length index of each rhyme. If none of
+     * them fits, any rhyme is returned.
+     * 
+     * @param sentence The sentence to rhyme.
+     * @param maxLength The maximum length of the rhyme.
+     * @return The rhyme.
+     */
+    public synchronized String getRhyme(final String sentence, final int maxLength)
+        throws IOException
+    {
+        String lastWord = tokenizer.lastWord(sentence);
 
-        String rhymepart = wordParser.phoneticRhymePart(lastWord);
+        String rhymepart = normalizeString(wordParser.phoneticRhymePart(lastWord));
         StressType type = wordParser.stressType(lastWord);
+        String tail = getTail(sentence, rhymepart);
 
         LOGGER.debug("Finding rhymes for {}", sentence);
 
-        connect();
+        connectIndex();
 
-        Set<String> rhymes = search(rhymepart, type);
+        // Prefer the rhymes that match the last two words
+        Map<String, String> rhymes = tail == null ? new HashMap<String, String>() : search(
+            buildCompoundToken(tail, type), maxLength);
 
-        disconnect();
+        if (rhymes.isEmpty())
+        {
+            rhymes = search(buildUniqueToken(rhymepart, type), maxLength);
+        }
 
         if (rhymes.isEmpty())
         {
             // If no rhyme is found, return null
+            disconnect();
             return null;
         }
-        else
-        {
-            // Otherwise, return a random rhyme
-            List<String> rhymeList = new ArrayList<String>(rhymes);
 
-            Random random = new Random(System.currentTimeMillis());
-            int index = random.nextInt(rhymeList.size());
+        // Otherwise, return a random rhyme weighted by its popularity
+        List<String> members = new ArrayList<String>(rhymes.keySet());
+        double[] weights = getWeights(members);
 
-            return rhymeList.get(index);
+        disconnect();
+
+        String member = members.get(pickWeighted(weights, random));
+
+        if (!isLegacy(member))
+        {
+            usage.served(member);
         }
+
+        return rhymes.get(member);
     }
 
     /**
@@ -291,16 +568,7 @@ public class RhymeStore
      */
     protected void connect() throws UnknownHostException, IOException
     {
-        if (!redis.isConnected())
-        {
-            redis.connect();
-
-            String password = System.getenv("REDISPASS");
-            if (password != null)
-            {
-                redis.auth(password);
-            }
-        }
+        RedisUtils.connect(redis);
     }
 
     /**
@@ -317,134 +585,1531 @@ public class RhymeStore
     }
 
     /**
-     * Search for rhymes for the given sentence.
+     * Gets the last sentence id that has been assigned.
      * 
-     * @param rhyme The rhyme to search.
-     * @param type The <code>StressType</code> of the rhyme to search.
-     * @return A <code>Set</code> of rhymes for the given sentence.
-     * @throws IOException If an error occurs while searching for the rhymes.
+     * @return The last sentence id or <code>0</code> if no sentence has been added yet.
+     * @throws IOException If the last id cannot be read.
      */
-    private Set<String> search(final String rhyme, final StressType type) throws IOException
+    /* package */synchronized int getLastSentenceId() throws IOException
     {
-        Set<String> rhymes = new HashSet<String>();
-        String norm = normalizeString(rhyme);
+        connect();
+        String lastId = getLastId(sentencens);
+        disconnect();
+
+        return lastId == null ? 0 : Integer.parseInt(lastId);
+    }
+
+    /**
+     * Moves the sentence with the given id from the legacy layout to the current one.
+     * <p>
+     * The sentence is copied to its bucket and indexed with its id before removing the legacy
+     * keys, so it can be found during the whole process.
+     * 
+     * @param id The id of the sentence to migrate.
+     * @return Boolean indicating if the sentence has been migrated.
+     * @throws IOException If the sentence cannot be migrated.
+     */
+    /* package */synchronized boolean migrate(final int id) throws IOException
+    {
+        String sentenceId = String.valueOf(id);
+        String legacyKey = getLegacySentenceKey(sentenceId);
+
+        connectIndex();
 
-        String indexKey = getUniqueIdKey(indexns, buildUniqueToken(norm, type));
+        String encoded = redis.get(legacyKey);
 
-        if (redis.exists(indexKey) == 1)
+        if (encoded == null)
         {
-            String indexId = redis.get(indexKey);
-            indexId = indexns.build(indexId).toString();
+            disconnect();
+            return false;
+        }
+
+        String sentence = URLDecoder.decode(encoded, encoding);
+
+        // Copy the sentence and make sure the lookup is migrated too
+        redis.hset(getBucketKey(sentenceId), sentenceId, sentence);
+        getId(sentencens, normalizeString(sentence));
 
-            if (redis.exists(indexId) == 1)
+        // Reference the sentence by id in the index
+        String word = tokenizer.lastWord(sentence);
+
+        if (!word.isEmpty())
+        {
+            RhymeStamp stamp = stamp(sentence);
+            redis.hset(getStampBucketKey(sentenceId), sentenceId, stamp.toString());
+
+            for (String indexToken : getIndexTokens(stamp))
             {
-                for (String sentenceKey : redis.smembers(indexId))
-                {
-                    if (redis.exists(sentenceKey) == 1)
-                    {
-                        rhymes.add(URLDecoder.decode(redis.get(sentenceKey), encoding));
-                    }
-                }
+                String indexId = getUniqueId(indexns, indexToken);
+                String indexKey = indexns.build(indexId).toString();
+                redis.sadd(indexKey, sentenceId);
+                redis.srem(indexKey, legacyKey);
+                redis.zadd(getLengthKey(indexns, indexId), sentence.length(), sentenceId);
             }
         }
 
-        return rhymes;
+        redis.del(legacyKey);
+
+        disconnect();
+
+        return true;
     }
 
     /**
-     * Build a unique token for the given rhyme to be used to index it.
+     * Gets the last index id that has been assigned.
      * 
-     * @param rhyme The rhyme part of the sentence.
-     * @param type The stress type of the rhyme.
-     * @return The unique token for the rhyme.
+     * @return The last index id or <code>0</code> if no sentence has been indexed yet.
+     * @throws IOException If the last id cannot be read.
      */
-    private String buildUniqueToken(final String rhyme, final StressType type)
+    /* package */synchronized int getLastIndexId() throws IOException
     {
-        return sum(type.name().concat(rhyme));
+        connectIndex();
+        String lastId = getLastId(indexns);
+        disconnect();
+
+        return lastId == null ? 0 : Integer.parseInt(lastId);
     }
 
     /**
-     * Get the key of the id for the given token.
+     * Removes the members of the given range of indexes that reference unexisting sentences.
+     * <p>
+     * Indexes that end up empty are removed too.
      * 
-     * @param ns The namespace of the key.
-     * @param token The token which key is requested.
-     * @return The key for the given token.
+     * @param from The first index id to check.
+     * @param to The last index id to check.
+     * @return The number of removed index members.
+     * @throws IOException If the indexes cannot be checked.
      */
-    private String getUniqueIdKey(final Keymaker ns, final String token)
+    /* package */synchronized int sweepIndexes(final int from, final int to) throws IOException
     {
-        String md = sum(token);
-        return ns.build(md, "id").toString();
+        int removed = 0;
+
+        connectIndex();
+
+        for (int id = from; id <= to; id++)
+        {
+            String indexKey = indexns.build(String.valueOf(id)).toString();
+            String lengthKey = getLengthKey(indexns, String.valueOf(id));
+            Set<String> members = redis.smembers(indexKey);
+
+            if (members.isEmpty())
+            {
+                continue;
+            }
+
+            Map<String, String> sentences = readSentences(members);
+
+            for (String member : members)
+            {
+                if (!sentences.containsKey(member))
+                {
+                    redis.srem(indexKey, member);
+                    redis.zrem(lengthKey, member);
+                    removed++;
+                }
+            }
+
+            if (sentences.isEmpty())
+            {
+                redis.del(indexKey, lengthKey);
+            }
+        }
+
+        disconnect();
+
+        return removed;
     }
 
     /**
-     * Get a unique id id for the given token.
+     * Restores the id lookups and the index entries of the sentences in the given range of
+     * buckets.
      * 
-     * @param ns The namespace of the id.
-     * @param token The token which id is requested.
-     * @return The id for the given token.
+     * @param from The first bucket to check.
+     * @param to The last bucket to check.
+     * @return The number of repaired entries.
+     * @throws IOException If the sentences cannot be checked.
      */
-    private String getUniqueId(final Keymaker ns, final String token)
+    /* package */synchronized int sweepSentences(final int from, final int to)
+        throws IOException
     {
-        String key = getUniqueIdKey(ns, token);
-        String id = redis.get(key);
+        int repaired = 0;
 
-        if (id != null)
+        connectIndex();
+
+        for (int bucket = from; bucket <= to; bucket++)
         {
-            return id;
-        }
+            String bucketKey = sentencens.build("bucket", String.valueOf(bucket)).toString();
+            String stampBucketKey = sentencens.build("stamp", String.valueOf(bucket)).toString();
+            Map<String, String> stamps = redis.hgetAll(stampBucketKey);
 
-        Integer next = redis.incr(ns.build(NEXT_ID_KEY).toString());
-        id = next.toString();
+            for (Map.Entry<String, String> sentence : redis.hgetAll(bucketKey).entrySet())
+            {
+                String sentenceId = sentence.getKey();
+                String md = sum(normalizeString(sentence.getValue()));
 
-        if (redis.setnx(key, id) == 0)
-        {
-            id = redis.get(key);
+                if (redis.hsetnx(getIdBucketKey(sentencens, md), md, sentenceId) == 1)
+                {
+                    repaired++;
+                }
+
+                String word = tokenizer.lastWord(sentence.getValue());
+
+                if (word.isEmpty())
+                {
+                    continue;
+                }
+
+                RhymeStamp stamp = RhymeStamp.valueOf(stamps.get(sentenceId));
+
+                if (stamp == null)
+                {
+                    stamp = stamp(sentence.getValue());
+                    redis.hset(stampBucketKey, sentenceId, stamp.toString());
+                    repaired++;
+                }
+
+                for (String indexToken : getIndexTokens(stamp))
+                {
+                    if (index(indexns, indexToken, sentenceId, sentence.getValue().length()))
+                    {
+                        repaired++;
+                    }
+                }
+            }
         }
 
-        return id;
+        disconnect();
+
+        return repaired;
     }
 
     /**
-     * Get the last used id in the given namespace.
+     * Gets the number of lookups in the largest id bucket of the sentences and the index.
      * 
-     * @param ns The namespace.
-     * @return The last used id in the given namespace.
+     * @return The number of lookups in the largest id bucket.
+     * @throws IOException If the buckets cannot be read.
      */
-    private String getLastId(final Keymaker ns)
+    /* package */synchronized int getLargestIdBucket() throws IOException
     {
-        return redis.get(ns.build(NEXT_ID_KEY).toString());
+        int largest = 0;
+
+        connectIndex();
+
+        for (int bucket = 0; bucket < ID_BUCKETS; bucket++)
+        {
+            String prefix = String.format("%0" + ID_BUCKET_PREFIX_LENGTH + "x", bucket);
+            largest = Math.max(largest, redis.hlen(getIdBucketKey(sentencens, prefix)));
+            largest = Math.max(largest, redis.hlen(getIdBucketKey(indexns, prefix)));
+        }
+
+        disconnect();
+
+        return largest;
     }
 
     /**
-     * Makes a md5 sum of the given text.
+     * Gets the maximum entries of the hashes stored compacted by the Redis server.
      * 
-     * @param value The text to sum.
-     * @return The md5 sum of the given text.
+     * @return The <code>hash-max-ziplist-entries</code> of the server, or
+     *         {@link #MAX_ZIPLIST_ENTRIES} if it cannot be read.
+     * @throws IOException If the configuration cannot be read.
      */
-    private String sum(final String value)
+    /* package */synchronized int getMaxZiplistEntries() throws IOException
     {
-        return DigestUtils.md5Hex(value.getBytes());
+        connect();
+        List<String> config = redis.configGet("hash-max-ziplist-entries");
+        disconnect();
+
+        return config == null || config.size() < 2 ? MAX_ZIPLIST_ENTRIES : Integer
+            .parseInt(config.get(1));
     }
 
     /**
-     * Normalizes the given string.
+     * Removes the id lookups in the given range of buckets that point to unexisting sentences or
+     * indexes.
      * 
-     * @param value The string to be normalized.
-     * @return The normalized string.
+     * @param from The first bucket to check.
+     * @param to The last bucket to check.
+     * @return The number of removed lookups.
+     * @throws IOException If the lookups cannot be checked.
      */
-    private String normalizeString(final String value)
+    /* package */synchronized int sweepIds(final int from, final int to) throws IOException
     {
-        // To lower case
-        String token = value.toLowerCase();
+        int removed = 0;
+
+        connectIndex();
+
+        for (int bucket = from; bucket <= to; bucket++)
+        {
+            String prefix = String.format("%0" + ID_BUCKET_PREFIX_LENGTH + "x", bucket);
+
+            // Sentence lookups
+            String bucketKey = getIdBucketKey(sentencens, prefix);
+            Map<String, String> lookups = redis.hgetAll(bucketKey);
+
+            if (!lookups.isEmpty())
+            {
+                Map<String, String> sentences =
+                    readSentences(new HashSet<String>(lookups.values()));
+
+                for (Map.Entry<String, String> lookup : lookups.entrySet())
+                {
+                    if (!sentences.containsKey(lookup.getValue())
+                        && redis.exists(getLegacySentenceKey(lookup.getValue())) == 0)
+                    {
+                        redis.hdel(bucketKey, lookup.getKey());
+                        removed++;
+                    }
+                }
+            }
+
+            // Index lookups
+            bucketKey = getIdBucketKey(indexns, prefix);
+
+            for (Map.Entry<String, String> lookup : redis.hgetAll(bucketKey).entrySet())
+            {
+                if (redis.exists(indexns.build(lookup.getValue()).toString()) == 0)
+                {
+                    redis.hdel(bucketKey, lookup.getKey());
+                    removed++;
+                }
+            }
+        }
 
-        // Remove diacritics
-        token = Normalizer.normalize(token, Form.NFD);
-        token = token.replaceAll("[^\\p{ASCII}]", "");
+        disconnect();
+
+        return removed;
+    }
 
-        // Remove non alphanumeric characters
-        token = token.replaceAll("[^a-zA-Z0-9]", "");
+    /**
+     * Checks if the given index member references a sentence stored with the legacy layout.
+     * 
+     * @param member The index member.
+     * @return Boolean indicating if the member is a legacy sentence key.
+     */
+    /* package */boolean isLegacy(final String member)
+    {
+        return member.startsWith(sentencens.toString());
+    }
 
-        return token;
+    /**
+     * Gets the usage tracker of the rhymes in the store.
+     * 
+     * @return The usage tracker of the rhymes in the store.
+     */
+    public RhymeUsage getUsage()
+    {
+        return usage;
+    }
+
+    /**
+     * Adds the given counters to the usage of the sentences.
+     * <p>
+     * The counters are added in a single pipelined request.
+     * 
+     * @param served The times each sentence has been served, by sentence id.
+     * @param engaged The engagement of each sentence, by sentence.
+     * @throws IOException If the usage cannot be updated.
+     */
+    /* package */synchronized void updateUsage(final Map<String, Integer> served,
+        final Map<String, Integer> engaged) throws IOException
+    {
+        final String servedKey = sentencens.build(SERVED_KEY).toString();
+        final String engagedKey = sentencens.build(ENGAGED_KEY).toString();
+        final Map<String, Integer> engagedIds = new HashMap<String, Integer>();
+
+        connect();
+
+        for (Map.Entry<String, Integer> counter : engaged.entrySet())
+        {
+            String sentenceId = getId(sentencens, normalizeString(counter.getKey()));
+
+            // Ignore the sentences that have been deleted in the meantime
+            if (sentenceId != null)
+            {
+                engagedIds.put(sentenceId, counter.getValue());
+            }
+        }
+
+        if (!served.isEmpty() || !engagedIds.isEmpty())
+        {
+            redis.pipelined(new JedisPipeline()
+            {
+                @Override
+                public void execute()
+                {
+                    for (Map.Entry<String, Integer> counter : served.entrySet())
+                    {
+                        client.zincrby(servedKey, counter.getValue(), counter.getKey());
+                    }
+
+                    for (Map.Entry<String, Integer> counter : engagedIds.entrySet())
+                    {
+                        client.zincrby(engagedKey, counter.getValue(), counter.getKey());
+                    }
+                }
+            });
+        }
+
+        disconnect();
+    }
+
+    /**
+     * Gets the weight of the given sentence.
+     * 
+     * @param sentenceId The id of the sentence.
+     * @return The weight of the sentence.
+     * @throws IOException If the usage cannot be read.
+     */
+    /* package */synchronized double getWeight(final String sentenceId) throws IOException
+    {
+        connect();
+        double[] weights = getWeights(Collections.singletonList(sentenceId));
+        disconnect();
+
+        return weights[0];
+    }
+
+    /**
+     * Gets the language of the sentences in the store.
+     * 
+     * @return The language of the sentences in the store.
+     */
+    public String getLanguage()
+    {
+        return language;
+    }
+
+    /**
+     * Analyzes the given sentence with the current parser.
+     * <p>
+     * This method does not access the database, and can be called concurrently.
+     * 
+     * @param sentence The sentence.
+     * @return The stamp with the result of the analysis.
+     */
+    /* package */RhymeStamp stamp(final String sentence)
+    {
+        WordAnalysis analysis = analyzer.analyze(tokenizer.lastWord(sentence));
+        String rhyme = normalizeString(analysis.getRhyme());
+
+        return stamp(rhyme, analysis.getType(), getTail(sentence, rhyme));
+    }
+
+    /**
+     * Analyzes the given sentences with the current parser, in parallel.
+     * <p>
+     * This method does not access the database, and can be called concurrently.
+     * 
+     * @param sentences The sentences.
+     * @param executor The executor used to analyze the words.
+     * @return The stamps with the result of the analysis of each sentence, in the same order.
+     * @throws InterruptedException If the current thread is interrupted while analyzing.
+     */
+    /* package */List<RhymeStamp> stamp(final List<String> sentences,
+        final ExecutorService executor) throws InterruptedException
+    {
+        List<String> words = new ArrayList<String>(sentences.size());
+        List<String> previousWords = new ArrayList<String>();
+        List<Integer> compound = new ArrayList<Integer>();
+
+        for (int i = 0; i < sentences.size(); i++)
+        {
+            String sentence = sentences.get(i);
+            words.add(tokenizer.lastWord(sentence));
+
+            String previous = getPreviousWord(sentence);
+
+            if (previous != null)
+            {
+                previousWords.add(previous);
+                compound.add(i);
+            }
+        }
+
+        List<WordAnalysis> analyses = analyzer.analyzeAll(words, executor);
+        List<WordAnalysis> previousAnalyses = analyzer.analyzeAll(previousWords, executor);
+        String[] previousRhymes = new String[sentences.size()];
+
+        for (int i = 0; i < compound.size(); i++)
+        {
+            previousRhymes[compound.get(i)] = previousAnalyses.get(i).getRhyme();
+        }
+
+        List<RhymeStamp> stamps = new ArrayList<RhymeStamp>(sentences.size());
+
+        for (int i = 0; i < analyses.size(); i++)
+        {
+            WordAnalysis analysis = analyses.get(i);
+            String rhyme = normalizeString(analysis.getRhyme());
+            String tail = previousRhymes[i] == null ? null : buildTail(normalizeString(
+                previousRhymes[i]), rhyme);
+
+            stamps.add(stamp(rhyme, analysis.getType(), tail));
+        }
+
+        return stamps;
+    }
+
+    /**
+     * Builds the stamp with the given analysis.
+     * 
+     * @param rhyme The normalized rhyme part of the last word of a sentence.
+     * @param type The stress type of the last word of the sentence.
+     * @param tail The compound rhyme of the sentence, if any.
+     * @return The stamp with the result of the analysis.
+     */
+    private RhymeStamp stamp(final String rhyme, final StressType type, final String tail)
+    {
+        return new RhymeStamp(rules.getClass().getName(), rules.getVersion(), rhyme, type, tail);
+    }
+
+    /**
+     * Gets the word before the last word of the given sentence, if the compound rhymes are
+     * enabled and it is a valid word.
+     * 
+     * @param sentence The sentence.
+     * @return The word before the last word, or <code>null</code> if the sentence has no
+     *         compound rhyme.
+     */
+    private String getPreviousWord(final String sentence)
+    {
+        if (compoundSyllables <= 0)
+        {
+            return null;
+        }
+
+        String previous = tokenizer.previousWord(sentence);
+        return previous.isEmpty() || !wordParser.isWord(previous) ? null : previous;
+    }
+
+    /**
+     * Gets the compound rhyme of the given sentence.
+     * 
+     * @param sentence The sentence.
+     * @param rhyme The normalized rhyme part of the last word of the sentence.
+     * @return The compound rhyme, or <code>null</code> if the sentence has none.
+     */
+    private String getTail(final String sentence, final String rhyme)
+    {
+        String previous = getPreviousWord(sentence);
+        return previous == null ? null : buildTail(normalizeString(wordParser
+            .phoneticRhymePart(previous)), rhyme);
+    }
+
+    /**
+     * Builds the compound rhyme with the rhyme parts of the last two words of a sentence.
+     * <p>
+     * The rhyme part of the last word is kept whole, and the syllables left up to the configured
+     * maximum are taken from the end of the rhyme part of the previous word.
+     * 
+     * @param previous The normalized rhyme part of the word before the last one.
+     * @param rhyme The normalized rhyme part of the last word.
+     * @return The compound rhyme, or <code>null</code> if the last word alone has the maximum
+     *         syllables or the previous word has no syllables.
+     */
+    private String buildTail(final String previous, final String rhyme)
+    {
+        int room = compoundSyllables - countSyllables(rhyme);
+
+        if (room <= 0)
+        {
+            return null;
+        }
+
+        // Find the start of the first syllable that fits
+        int start = previous.length();
+        int syllables = 0;
+
+        for (int i = previous.length() - 1; i >= 0 && syllables < room; i--)
+        {
+            if (isVowel(previous.charAt(i)) && (i == 0 || !isVowel(previous.charAt(i - 1))))
+            {
+                start = i;
+                syllables++;
+            }
+        }
+
+        return syllables == 0 ? null : previous.substring(start) + TAIL_SEPARATOR + rhyme;
+    }
+
+    /**
+     * Counts the groups of vowels of the given normalized rhyme part.
+     * 
+     * @param rhyme The normalized rhyme part.
+     * @return The number of syllables.
+     */
+    private static int countSyllables(final String rhyme)
+    {
+        int syllables = 0;
+
+        for (int i = 0; i < rhyme.length(); i++)
+        {
+            if (isVowel(rhyme.charAt(i)) && (i == 0 || !isVowel(rhyme.charAt(i - 1))))
+            {
+                syllables++;
+            }
+        }
+
+        return syllables;
+    }
+
+    /**
+     * Checks if the given character of a normalized rhyme part is a vowel.
+     * 
+     * @param c The character to check.
+     * @return Boolean indicating if the character is a vowel.
+     */
+    private static boolean isVowel(final char c)
+    {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+
+    /**
+     * Checks if the given stamp has been produced by the current parser.
+     * 
+     * @param stamp The stamp to check.
+     * @return Boolean indicating if the stamp is up to date.
+     */
+    /* package */boolean isCurrent(final RhymeStamp stamp)
+    {
+        return stamp != null && stamp.isCurrent(rules);
+    }
+
+    /**
+     * Gets the tokens used to index the sentences with the given stamp.
+     * 
+     * @param stamp The stamp of the sentence.
+     * @return The index token of the rhyme and, if the sentence has one, the index token of the
+     *         compound rhyme.
+     */
+    /* package */List<String> getIndexTokens(final RhymeStamp stamp)
+    {
+        String token = buildUniqueToken(stamp.getRhyme(), stamp.getType());
+
+        if (stamp.getTail() == null)
+        {
+            return Collections.singletonList(token);
+        }
+
+        return Arrays.asList(token, buildCompoundToken(stamp.getTail(), stamp.getType()));
+    }
+
+    /**
+     * Reads the stamps of the sentences stored in the given range of buckets.
+     * 
+     * @param from The first bucket to read.
+     * @param to The last bucket to read.
+     * @return The stamps, by sentence id.
+     * @throws IOException If the stamps cannot be read.
+     */
+    /* package */synchronized Map<String, RhymeStamp> readStamps(final int from, final int to)
+        throws IOException
+    {
+        Map<String, RhymeStamp> stamps = new HashMap<String, RhymeStamp>();
+
+        connect();
+
+        for (int bucket = from; bucket <= to; bucket++)
+        {
+            String stampBucketKey = sentencens.build("stamp", String.valueOf(bucket)).toString();
+
+            for (Map.Entry<String, String> stamp : redis.hgetAll(stampBucketKey).entrySet())
+            {
+                RhymeStamp value = RhymeStamp.valueOf(stamp.getValue());
+
+                if (value != null)
+                {
+                    stamps.put(stamp.getKey(), value);
+                }
+            }
+        }
+
+        disconnect();
+
+        return stamps;
+    }
+
+    /**
+     * Moves the given sentences to the index entries of their new stamps in the current index.
+     * 
+     * @param stamps The new stamps, by sentence id.
+     * @param previous The previous stamps, by sentence id.
+     * @return The number of updated sentences.
+     * @throws IOException If the sentences cannot be updated.
+     */
+    /* package */synchronized int restamp(final Map<String, RhymeStamp> stamps,
+        final Map<String, RhymeStamp> previous) throws IOException
+    {
+        int updated = 0;
+
+        connectIndex();
+
+        for (Map.Entry<String, RhymeStamp> stamp : stamps.entrySet())
+        {
+            String sentenceId = stamp.getKey();
+            List<String> tokens = getIndexTokens(stamp.getValue());
+            RhymeStamp old = previous.get(sentenceId);
+
+            String sentence = redis.hget(getBucketKey(sentenceId), sentenceId);
+
+            // Skip the sentences that have been deleted in the meantime
+            if (sentence == null)
+            {
+                continue;
+            }
+
+            if (old != null)
+            {
+                for (String token : getIndexTokens(old))
+                {
+                    if (!tokens.contains(token))
+                    {
+                        unindex(indexns, token, sentenceId);
+                    }
+                }
+            }
+
+            for (String token : tokens)
+            {
+                index(indexns, token, sentenceId, sentence.length());
+            }
+
+            redis.hset(getStampBucketKey(sentenceId), sentenceId, stamp.getValue().toString());
+            updated++;
+        }
+
+        disconnect();
+
+        return updated;
+    }
+
+    /**
+     * Reads the sentences stored in the given range of buckets.
+     * 
+     * @param from The first bucket to read.
+     * @param to The last bucket to read.
+     * @return The sentences, by index member.
+     * @throws IOException If the sentences cannot be read.
+     */
+    /* package */synchronized Map<String, String> readBuckets(final int from, final int to)
+        throws IOException
+    {
+        connect();
+
+        String lastId = getLastId(sentencens);
+        Map<String, String> sentences =
+            readBucketRange(from, to, lastId == null ? 0 : Integer.parseInt(lastId));
+
+        disconnect();
+
+        return sentences;
+    }
+
+    /**
+     * Starts building a new version of the index.
+     * <p>
+     * From now on, sentences are added to and deleted from both the current and the new version
+     * of the index.
+     * <p>
+     * The build lock expires after {@link #INDEX_BUILD_TIMEOUT} seconds unless it is renewed, so
+     * the build of a process that died is taken over by the next one. Each build uses a new
+     * version, so the leftovers of an abandoned build are never mixed with a new one.
+     * 
+     * @return The version of the index to build.
+     * @throws IOException If a new version of the index is already being built.
+     */
+    /* package */synchronized int startIndex() throws IOException
+    {
+        connect();
+
+        String current = redis.get(indexVersionKey);
+        int first = current == null ? 1 : Integer.parseInt(current) + 1;
+        int version = redis.incr(indexNextVersionKey);
+
+        // Stores whose index was built before the versions were assigned
+        while (version < first)
+        {
+            version = redis.incr(indexNextVersionKey);
+        }
+
+        if (redis.setnx(indexBuildingKey, String.valueOf(version)) == 0)
+        {
+            // Locks without expiration were left by a process that died before setting it
+            if (redis.ttl(indexBuildingKey) >= 0)
+            {
+                disconnect();
+                throw new IOException("The index is already being rebuilt");
+            }
+
+            LOGGER.warn("Taking over the abandoned build of version {} of the index",
+                redis.get(indexBuildingKey));
+            redis.set(indexBuildingKey, String.valueOf(version));
+        }
+
+        redis.expire(indexBuildingKey, INDEX_BUILD_TIMEOUT);
+
+        disconnect();
+
+        return version;
+    }
+
+    /**
+     * Renews the lock of the given version of the index being built.
+     * 
+     * @param version The version of the index being built.
+     * @throws IOException If the lock has expired or has been taken by another build.
+     */
+    /* package */synchronized void renewIndex(final int version) throws IOException
+    {
+        connect();
+
+        if (!String.valueOf(version).equals(redis.get(indexBuildingKey)))
+        {
+            disconnect();
+            throw new IOException("The build of version " + version
+                + " of the index has been aborted");
+        }
+
+        redis.expire(indexBuildingKey, INDEX_BUILD_TIMEOUT);
+
+        disconnect();
+    }
+
+    /**
+     * Gets the version of the index being built.
+     * 
+     * @return The version of the index being built, or <code>0</code> if there is none.
+     * @throws IOException If the version cannot be read.
+     */
+    /* package */synchronized int getBuildingVersion() throws IOException
+    {
+        connect();
+        String building = redis.get(indexBuildingKey);
+        disconnect();
+
+        return building == null ? 0 : Integer.parseInt(building);
+    }
+
+    /**
+     * Adds the given sentences to the given version of the index.
+     * <p>
+     * The sentences are added in a single pipelined request.
+     * 
+     * @param version The version of the index.
+     * @param sentences The sentences, by sentence id.
+     * @param sentenceIds The ids of the sentences, by index token.
+     * @param indexIds The ids already assigned to the index tokens. It will be updated with the
+     *            ids assigned by this call.
+     * @param stamps The new stamps of the sentences that have been analyzed again, by sentence
+     *            id.
+     * @throws IOException If the sentences cannot be indexed.
+     */
+    /* package */synchronized void index(final int version, final Map<String, String> sentences,
+        final Map<String, List<String>> sentenceIds, final Map<String, String> indexIds,
+        final Map<String, RhymeStamp> stamps) throws IOException
+    {
+        final Keymaker ns = getIndexNamespace(version);
+        final List<String[]> members = new ArrayList<String[]>();
+        final List<String[]> lengths = new ArrayList<String[]>();
+        final List<String[]> stampFields = new ArrayList<String[]>();
+
+        connect();
+
+        for (Map.Entry<String, List<String>> entry : sentenceIds.entrySet())
+        {
+            String indexId = indexIds.get(entry.getKey());
+
+            if (indexId == null)
+            {
+                indexId = getUniqueId(ns, entry.getKey());
+                indexIds.put(entry.getKey(), indexId);
+            }
+
+            for (String sentenceId : entry.getValue())
+            {
+                members.add(new String[] {ns.build(indexId).toString(), sentenceId});
+
+                if (!isLegacy(sentenceId))
+                {
+                    lengths.add(new String[] {getLengthKey(ns, indexId), sentenceId,
+                        String.valueOf(sentences.get(sentenceId).length())});
+                }
+            }
+        }
+
+        for (Map.Entry<String, RhymeStamp> stamp : stamps.entrySet())
+        {
+            String sentenceId = stamp.getKey();
+
+            if (!isLegacy(sentenceId))
+            {
+                stampFields.add(new String[] {getStampBucketKey(sentenceId), sentenceId,
+                    stamp.getValue().toString()});
+            }
+        }
+
+        redis.pipelined(new JedisPipeline()
+        {
+            @Override
+            public void execute()
+            {
+                for (String[] member : members)
+                {
+                    client.sadd(member[0], member[1]);
+                }
+
+                for (String[] length : lengths)
+                {
+                    client.zadd(length[0], Double.parseDouble(length[2]), length[1]);
+                }
+
+                for (String[] field : stampFields)
+                {
+                    client.hset(field[0], field[1], field[2]);
+                }
+            }
+        });
+
+        disconnect();
+    }
+
+    /**
+     * Makes readers use the given version of the index.
+     * 
+     * @param version The version of the index to use.
+     * @return The version of the index that was used before.
+     * @throws IOException If the index version cannot be changed.
+     */
+    /* package */synchronized int switchIndex(final int version) throws IOException
+    {
+        connect();
+
+        String previous = redis.getSet(indexVersionKey, String.valueOf(version));
+        redis.del(indexBuildingKey);
+
+        disconnect();
+
+        return previous == null ? 0 : Integer.parseInt(previous);
+    }
+
+    /**
+     * Stops building the given version of the index.
+     * 
+     * @param version The version of the index being built.
+     * @throws IOException If the index cannot be updated.
+     */
+    /* package */synchronized void abortIndex(final int version) throws IOException
+    {
+        connect();
+
+        if (String.valueOf(version).equals(redis.get(indexBuildingKey)))
+        {
+            redis.del(indexBuildingKey);
+        }
+
+        disconnect();
+    }
+
+    /**
+     * Removes the given version of the index.
+     * <p>
+     * Keys are removed in small batches so other store operations are not blocked.
+     * 
+     * @param version The version of the index to remove.
+     * @throws IOException If the index cannot be removed.
+     */
+    /* package */void dropIndex(final int version) throws IOException
+    {
+        Keymaker ns = getIndexNamespace(version);
+        String lastId = null;
+
+        synchronized (this)
+        {
+            connect();
+            lastId = getLastId(ns);
+            disconnect();
+        }
+
+        int n = lastId == null ? 0 : Integer.parseInt(lastId);
+
+        for (int from = 1; from <= n; from += DROP_BATCH_SIZE)
+        {
+            List<String> keys = new ArrayList<String>();
+
+            for (int id = from; id < from + DROP_BATCH_SIZE && id <= n; id++)
+            {
+                keys.add(ns.build(String.valueOf(id)).toString());
+                keys.add(getLengthKey(ns, String.valueOf(id)));
+            }
+
+            del(keys);
+        }
+
+        for (int from = 0; from < ID_BUCKETS; from += DROP_BATCH_SIZE)
+        {
+            List<String> keys = new ArrayList<String>();
+
+            for (int bucket = from; bucket < from + DROP_BATCH_SIZE; bucket++)
+            {
+                String prefix = String.format("%0" + ID_BUCKET_PREFIX_LENGTH + "x", bucket);
+                keys.add(getIdBucketKey(ns, prefix));
+            }
+
+            del(keys);
+        }
+
+        del(Collections.singletonList(ns.build(NEXT_ID_KEY).toString()));
+    }
+
+    /**
+     * Search for rhymes for the given sentence.
+     * 
+     * @param token The index token of the rhyme to search.
+     * @param maxLength The preferred maximum length of the rhymes.
+     * @return The rhymes for the given sentence, by index member.
+     * @throws IOException If an error occurs while searching for the rhymes.
+     */
+    private Map<String, String> search(final String token, final int maxLength)
+        throws IOException
+    {
+        Map<String, String> rhymes = new HashMap<String, String>();
+
+        String indexId = getId(indexns, token);
+
+        if (indexId != null)
+        {
+            // Rhymes that are not in the length index yet, or that are all too long, are still
+            // returned
+            Set<String> members = maxLength == Integer.MAX_VALUE ? new HashSet<String>() : redis
+                .zrangeByScore(getLengthKey(indexns, indexId), 0, maxLength);
+
+            if (members.isEmpty())
+            {
+                members = redis.smembers(indexns.build(indexId).toString());
+            }
+
+            rhymes.putAll(readSentences(members));
+        }
+
+        return rhymes;
+    }
+
+    /**
+     * Reads the usage counters of the given index members and computes their weights.
+     * <p>
+     * Only the counters of the candidate rhymes are read, in a single pipelined request, so the
+     * cost does not depend on the size of the store.
+     * 
+     * @param members The index members.
+     * @return The weight of each member, in the same order.
+     */
+    private double[] getWeights(final List<String> members)
+    {
+        final String servedKey = sentencens.build(SERVED_KEY).toString();
+        final String engagedKey = sentencens.build(ENGAGED_KEY).toString();
+        final List<String> sentenceIds = new ArrayList<String>();
+
+        // Legacy sentences are not tracked
+        for (String member : members)
+        {
+            if (!isLegacy(member))
+            {
+                sentenceIds.add(member);
+            }
+        }
+
+        List<Object> scores = sentenceIds.isEmpty() ? Collections.<Object> emptyList() : redis
+            .pipelined(new JedisPipeline()
+            {
+                @Override
+                public void execute()
+                {
+                    for (String sentenceId : sentenceIds)
+                    {
+                        client.zscore(servedKey, sentenceId);
+                        client.zscore(engagedKey, sentenceId);
+                    }
+                }
+            });
+
+        double[] weights = new double[members.size()];
+
+        for (int i = 0, scored = 0; i < weights.length; i++)
+        {
+            if (isLegacy(members.get(i)))
+            {
+                weights[i] = RhymeUsage.weight(0, 0);
+            }
+            else
+            {
+                weights[i] = RhymeUsage.weight(toScore(scores.get(scored * 2)),
+                    toScore(scores.get(scored * 2 + 1)));
+                scored++;
+            }
+        }
+
+        return weights;
+    }
+
+    /**
+     * Picks a random index with a probability proportional to its weight.
+     * <p>
+     * Each lookup samples its candidates only once, so a single cumulative pass is cheaper than
+     * building any sampling structure.
+     * 
+     * @param weights The weights, which must not be negative.
+     * @param random The source of randomness.
+     * @return The picked index.
+     * @throws IllegalArgumentException If there is no positive weight.
+     */
+    /* package */static int pickWeighted(final double[] weights, final Random random)
+    {
+        double total = 0;
+        for (double weight : weights)
+        {
+            total += weight;
+        }
+
+        if (!(total > 0))
+        {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+
+        double target = random.nextDouble() * total;
+        int last = 0;
+
+        for (int i = 0; i < weights.length; i++)
+        {
+            if (weights[i] > 0)
+            {
+                target -= weights[i];
+                last = i;
+
+                if (target < 0)
+                {
+                    return i;
+                }
+            }
+        }
+
+        // Rounding errors may leave a tiny remainder
+        return last;
+    }
+
+    /**
+     * Parses a score read in a pipelined request.
+     * 
+     * @param reply The reply of the request.
+     * @return The score, or <code>0</code> if the member has no score.
+     */
+    private static double toScore(final Object reply)
+    {
+        return reply == null ? 0 : Double.parseDouble(reply.toString());
+    }
+
+    /**
+     * Connects to the Redis database and loads the versions of the index in use.
+     * 
+     * @throws IOException If an error occurs while connecting.
+     */
+    private void connectIndex() throws IOException
+    {
+        connect();
+
+        List<String> versions = redis.mget(indexVersionKey, indexBuildingKey);
+        String current = versions.get(0);
+        String building = versions.get(1);
+
+        indexns = getIndexNamespace(current == null ? 0 : Integer.parseInt(current));
+        buildingns = building == null ? null : getIndexNamespace(Integer.parseInt(building));
+    }
+
+    /**
+     * Gets the namespace of the given version of the index.
+     * 
+     * @param version The version of the index.
+     * @return The namespace of the index.
+     */
+    private Keymaker getIndexNamespace(final int version)
+    {
+        return version == 0 ? baseindexns : baseindexns.build("v" + version);
+    }
+
+    /**
+     * Adds the given sentence to the given index.
+     * 
+     * @param ns The namespace of the index.
+     * @param token The index token.
+     * @param sentenceId The id of the sentence.
+     * @param length The length of the sentence.
+     * @return Boolean indicating if the sentence was not indexed yet.
+     */
+    private boolean index(final Keymaker ns, final String token, final String sentenceId,
+        final int length)
+    {
+        String indexId = getUniqueId(ns, token);
+        boolean added = redis.sadd(ns.build(indexId).toString(), sentenceId) == 1;
+        return redis.zadd(getLengthKey(ns, indexId), length, sentenceId) == 1 || added;
+    }
+
+    /**
+     * Removes the given sentence from the given index.
+     * <p>
+     * The index is removed if it becomes empty.
+     * 
+     * @param ns The namespace of the index.
+     * @param token The index token.
+     * @param sentenceId The id of the sentence.
+     */
+    private void unindex(final Keymaker ns, final String token, final String sentenceId)
+    {
+        String indexId = getId(ns, token);
+
+        if (indexId != null)
+        {
+            String indexKey = ns.build(indexId).toString();
+            String lengthKey = getLengthKey(ns, indexId);
+            redis.srem(indexKey, sentenceId);
+            redis.srem(indexKey, getLegacySentenceKey(sentenceId));
+            redis.zrem(lengthKey, sentenceId);
+
+            // Remove the index if empty
+            if (redis.scard(indexKey) == 0)
+            {
+                removeId(ns, token);
+                redis.del(indexKey, lengthKey);
+            }
+        }
+    }
+
+    /**
+     * Deletes the given keys.
+     * 
+     * @param keys The keys to delete.
+     * @throws IOException If the keys cannot be deleted.
+     */
+    private synchronized void del(final List<String> keys) throws IOException
+    {
+        connect();
+        redis.del(keys.toArray(new String[keys.size()]));
+        disconnect();
+    }
+
+    /**
+     * Reads the sentences stored in the given range of buckets.
+     * <p>
+     * Sentences that have not been migrated yet are read from the legacy layout and returned by
+     * their legacy key.
+     * 
+     * @param from The first bucket to read.
+     * @param to The last bucket to read.
+     * @param lastId The last assigned sentence id.
+     * @return The sentences, by index member.
+     * @throws IOException If the sentences cannot be read.
+     */
+    private Map<String, String> readBucketRange(final int from, final int to, final int lastId)
+        throws IOException
+    {
+        Map<String, String> sentences = new HashMap<String, String>();
+
+        for (int bucket = from; bucket <= to; bucket++)
+        {
+            Map<String, String> stored =
+                redis.hgetAll(sentencens.build("bucket", String.valueOf(bucket)).toString());
+            sentences.putAll(stored);
+
+            // Look for the sentences of the bucket that have not been migrated yet
+            List<String> legacyKeys = new ArrayList<String>();
+            int first = Math.max(1, bucket * BUCKET_SIZE);
+            int last = Math.min(lastId, (bucket + 1) * BUCKET_SIZE - 1);
+
+            for (int i = first; i <= last; i++)
+            {
+                if (!stored.containsKey(String.valueOf(i)))
+                {
+                    legacyKeys.add(getLegacySentenceKey(String.valueOf(i)));
+                }
+            }
+
+            sentences.putAll(readSentences(legacyKeys));
+        }
+
+        return sentences;
+    }
+
+    /**
+     * Reads the sentences referenced by the given index members.
+     * <p>
+     * Sentences are read with one request for each bucket, and the ones that do not exist are
+     * just not returned.
+     * 
+     * @param members The index members. They may be the ids of the sentences or, for sentences
+     *            that have not been migrated yet, the keys of the legacy sentences.
+     * @return The existing sentences, by index member.
+     * @throws IOException If the sentences cannot be read.
+     */
+    private Map<String, String> readSentences(final Collection<String> members)
+        throws IOException
+    {
+        Map<String, String> sentences = new HashMap<String, String>();
+        Map<String, List<String>> buckets = new HashMap<String, List<String>>();
+        List<String> legacyKeys = new ArrayList<String>();
+
+        for (String member : members)
+        {
+            if (isLegacy(member))
+            {
+                legacyKeys.add(member);
+            }
+            else
+            {
+                String bucketKey = getBucketKey(member);
+                List<String> ids = buckets.get(bucketKey);
+
+                if (ids == null)
+                {
+                    ids = new ArrayList<String>();
+                    buckets.put(bucketKey, ids);
+                }
+
+                ids.add(member);
+            }
+        }
+
+        for (Map.Entry<String, List<String>> bucket : buckets.entrySet())
+        {
+            List<String> ids = bucket.getValue();
+            List<String> values = redis.hmget(bucket.getKey(), ids.toArray(new String[ids.size()]));
+
+            for (int i = 0; i < ids.size(); i++)
+            {
+                if (values.get(i) != null)
+                {
+                    sentences.put(ids.get(i), values.get(i));
+                }
+            }
+        }
+
+        if (!legacyKeys.isEmpty())
+        {
+            List<String> values = redis.mget(legacyKeys.toArray(new String[legacyKeys.size()]));
+
+            for (int i = 0; i < legacyKeys.size(); i++)
+            {
+                if (values.get(i) != null)
+                {
+                    sentences.put(legacyKeys.get(i), URLDecoder.decode(values.get(i), encoding));
+                }
+            }
+        }
+
+        return sentences;
+    }
+
+    /**
+     * Build a unique token for the given rhyme to be used to index it.
+     * 
+     * @param rhyme The rhyme part of the sentence.
+     * @param type The stress type of the rhyme.
+     * @return The unique token for the rhyme.
+     */
+    private String buildUniqueToken(final String rhyme, final StressType type)
+    {
+        return sum(type.name().concat(rhyme));
+    }
+
+    /**
+     * Get the key of the length index of the given index.
+     * <p>
+     * The length index is a sorted set with the same members as the index, scored by the length
+     * of the sentences, so the sentences that fit in a given length are selected in a single
+     * query.
+     * 
+     * @param ns The namespace of the index.
+     * @param indexId The id of the index.
+     * @return The key of the length index.
+     */
+    private static String getLengthKey(final Keymaker ns, final String indexId)
+    {
+        return ns.build(indexId, LENGTH_KEY).toString();
+    }
+
+    /**
+     * Build a unique token for the given compound rhyme to be used to index it.
+     * 
+     * @param tail The compound rhyme of the sentence.
+     * @param type The stress type of the last word of the sentence.
+     * @return The unique token for the compound rhyme.
+     */
+    private String buildCompoundToken(final String tail, final StressType type)
+    {
+        return sum(COMPOUND_TOKEN_PREFIX.concat(type.name()).concat(tail));
+    }
+
+    /**
+     * Get the key of the hash bucket where the given sentence is stored.
+     * 
+     * @param sentenceId The id of the sentence.
+     * @return The key of the bucket.
+     */
+    private String getBucketKey(final String sentenceId)
+    {
+        int bucket = Integer.parseInt(sentenceId) / BUCKET_SIZE;
+        return sentencens.build("bucket", String.valueOf(bucket)).toString();
+    }
+
+    /**
+     * Get the key of the hash bucket where the stamp of the given sentence is stored.
+     * 
+     * @param sentenceId The id of the sentence.
+     * @return The key of the bucket.
+     */
+    private String getStampBucketKey(final String sentenceId)
+    {
+        int bucket = Integer.parseInt(sentenceId) / BUCKET_SIZE;
+        return sentencens.build("stamp", String.valueOf(bucket)).toString();
+    }
+
+    /**
+     * Get the key of the hash bucket that holds the id of the given token sum.
+     * 
+     * @param ns The namespace of the key.
+     * @param md The sum of the token.
+     * @return The key of the bucket.
+     */
+    private String getIdBucketKey(final Keymaker ns, final String md)
+    {
+        return ns.build("ids", md.substring(0, ID_BUCKET_PREFIX_LENGTH)).toString();
+    }
+
+    /**
+     * Get the key of the id for the given token in the legacy layout.
+     * 
+     * @param ns The namespace of the key.
+     * @param md The sum of the token.
+     * @return The legacy key for the given token.
+     */
+    private String getLegacyIdKey(final Keymaker ns, final String md)
+    {
+        return ns.build(md, "id").toString();
+    }
+
+    /**
+     * Get the key of the given sentence in the legacy layout.
+     * 
+     * @param sentenceId The id of the sentence.
+     * @return The legacy key of the sentence.
+     */
+    private String getLegacySentenceKey(final String sentenceId)
+    {
+        return sentencens.build(sentenceId).toString();
+    }
+
+    /**
+     * Get the id for the given token, if it exists.
+     * <p>
+     * Ids found in the legacy layout are moved to the current one.
+     * 
+     * @param ns The namespace of the id.
+     * @param token The token which id is requested.
+     * @return The id for the given token or <code>null</code> if it does not exist.
+     */
+    private String getId(final Keymaker ns, final String token)
+    {
+        String md = sum(token);
+        String bucketKey = getIdBucketKey(ns, md);
+        String id = redis.hget(bucketKey, md);
+
+        if (id == null)
+        {
+            String legacyKey = getLegacyIdKey(ns, md);
+            id = redis.get(legacyKey);
+
+            if (id != null)
+            {
+                redis.hsetnx(bucketKey, md, id);
+                redis.del(legacyKey);
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Get a unique id id for the given token.
+     * 
+     * @param ns The namespace of the id.
+     * @param token The token which id is requested.
+     * @return The id for the given token.
+     */
+    private String getUniqueId(final Keymaker ns, final String token)
+    {
+        String id = getId(ns, token);
+
+        if (id != null)
+        {
+            return id;
+        }
+
+        String md = sum(token);
+        String bucketKey = getIdBucketKey(ns, md);
+
+        Integer next = redis.incr(ns.build(NEXT_ID_KEY).toString());
+        id = next.toString();
+
+        if (redis.hsetnx(bucketKey, md, id) == 0)
+        {
+            id = redis.hget(bucketKey, md);
+        }
+
+        return id;
+    }
+
+    /**
+     * Removes the id of the given token.
+     * 
+     * @param ns The namespace of the id.
+     * @param token The token which id will be removed.
+     */
+    private void removeId(final Keymaker ns, final String token)
+    {
+        String md = sum(token);
+        redis.hdel(getIdBucketKey(ns, md), md);
+        redis.del(getLegacyIdKey(ns, md));
+    }
+
+    /**
+     * Get the last used id in the given namespace.
+     * 
+     * @param ns The namespace.
+     * @return The last used id in the given namespace.
+     */
+    private String getLastId(final Keymaker ns)
+    {
+        return redis.get(ns.build(NEXT_ID_KEY).toString());
+    }
+
+    /**
+     * Makes a md5 sum of the given text.
+     * 
+     * @param value The text to sum.
+     * @return The md5 sum of the given text.
+     */
+    private String sum(final String value)
+    {
+        return DigestUtils.md5Hex(value.getBytes());
+    }
+
+    /**
+     * Normalizes the given string.
+     * 
+     * @param value The string to be normalized.
+     * @return The normalized string.
+     */
+    private String normalizeString(final String value)
+    {
+        return KeyNormalizer.normalize(value);
     }
 
 }
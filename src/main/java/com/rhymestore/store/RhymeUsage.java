@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+
+/**
+ * Tracks how often the rhymes of a store are served and how often the replies with them get
+ * engagement.
+ * <p>
+ * Counters are kept in memory and written to the store in background (write-behind), so
+ * tracking never adds latency to the replies. The store reads the counters of the candidate
+ * rhymes to weight their selection.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeStore
+ */
+public class RhymeUsage implements Runnable
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhymeUsage.class);
+
+    /** The default number of seconds between flushes. */
+    private static final long DEFAULT_INTERVAL = 60;
+
+    /** The number of sent replies remembered to track their engagement. */
+    private static final int MAX_REPLIES = 1000;
+
+    /** The store of the rhymes. */
+    private final RhymeStore store;
+
+    /** The number of seconds between flushes. */
+    private final long interval;
+
+    /** The scheduler service. */
+    private ScheduledExecutorService scheduler;
+
+    /** The times each sentence has been served since the last flush, by sentence id. */
+    private final ConcurrentMap<String, AtomicInteger> served =
+        new ConcurrentHashMap<String, AtomicInteger>();
+
+    /** The engagement of each sentence since the last flush, by sentence. */
+    private final ConcurrentMap<String, AtomicInteger> engaged =
+        new ConcurrentHashMap<String, AtomicInteger>();
+
+    /** The sentence sent in the last replies, by status id. */
+    private final Map<Long, String> replies = new LinkedHashMap<Long, String>()
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, String> eldest)
+        {
+            return size() > MAX_REPLIES;
+        }
+    };
+
+    /**
+     * Creates the usage tracker of the given store using the configured interval.
+     * 
+     * @param store The store of the rhymes.
+     */
+    /* package */RhymeUsage(final RhymeStore store)
+    {
+        this(store, getInterval());
+    }
+
+    /**
+     * Creates the usage tracker of the given store.
+     * 
+     * @param store The store of the rhymes.
+     * @param interval The number of seconds between flushes.
+     */
+    /* package */RhymeUsage(final RhymeStore store, final long interval)
+    {
+        this.store = store;
+        this.interval = interval;
+    }
+
+    /**
+     * Starts flushing the counters in background.
+     */
+    public void start()
+    {
+        LOGGER.info("Flushing the {} rhyme usage every {} seconds", store.getLanguage(),
+            interval);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this, 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops flushing the counters in background and flushes the pending ones.
+     */
+    public void shutdown()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+            run();
+        }
+    }
+
+    /**
+     * Flushes the counters.
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            flush();
+        }
+        catch (Exception ex)
+        {
+            // Keep the flush scheduled
+            LOGGER.error("Could not flush the rhyme usage", ex);
+        }
+    }
+
+    /**
+     * Records that the given sentence has been served.
+     * 
+     * @param sentenceId The id of the sentence.
+     */
+    /* package */void served(final String sentenceId)
+    {
+        increment(served, sentenceId);
+    }
+
+    /**
+     * Records that a reply has been sent with the given sentence, to track its engagement.
+     * 
+     * @param statusId The id of the reply.
+     * @param sentence The sentence sent in the reply.
+     */
+    public void replied(final long statusId, final String sentence)
+    {
+        synchronized (replies)
+        {
+            replies.put(statusId, sentence);
+        }
+    }
+
+    /**
+     * Records an engagement with the given status, if it is a reply sent with a sentence of the
+     * store.
+     * 
+     * @param statusId The id of the status.
+     * @return Boolean indicating if the status is a reply sent with a sentence of the store.
+     */
+    public boolean engaged(final long statusId)
+    {
+        String sentence = null;
+
+        synchronized (replies)
+        {
+            sentence = replies.get(statusId);
+        }
+
+        if (sentence != null)
+        {
+            increment(engaged, sentence);
+        }
+
+        return sentence != null;
+    }
+
+    /**
+     * Writes the pending counters to the store.
+     * <p>
+     * If the counters cannot be written, they are kept to be written in the next flush.
+     * 
+     * @throws IOException If the counters cannot be written.
+     */
+    /* package */synchronized void flush() throws IOException
+    {
+        Map<String, Integer> servedCounts = drain(served);
+        Map<String, Integer> engagedCounts = drain(engaged);
+
+        try
+        {
+            store.updateUsage(servedCounts, engagedCounts);
+
+            LOGGER.debug("Flushed the usage of {} served and {} engaged rhymes",
+                servedCounts.size(), engagedCounts.size());
+        }
+        catch (IOException ex)
+        {
+            restore(served, servedCounts);
+            restore(engaged, engagedCounts);
+            throw ex;
+        }
+    }
+
+    /**
+     * Computes the weight of a sentence.
+     * <p>
+     * The weight is the smoothed engagement rate, so the sentences that are rarely served get a
+     * chance to prove themselves, and the ones that are often served without engagement are
+     * progressively left out.
+     * 
+     * @param served The times the sentence has been served.
+     * @param engaged The engagement of the sentence.
+     * @return The weight of the sentence.
+     */
+    /* package */static double weight(final double served, final double engaged)
+    {
+        return (engaged + 1) / (served + 2);
+    }
+
+    /**
+     * Increments the given counter.
+     * 
+     * @param counters The counters.
+     * @param key The key of the counter to increment.
+     */
+    private static void increment(final ConcurrentMap<String, AtomicInteger> counters,
+        final String key)
+    {
+        AtomicInteger counter = counters.get(key);
+
+        if (counter == null)
+        {
+            AtomicInteger created = new AtomicInteger();
+            counter = counters.putIfAbsent(key, created);
+
+            if (counter == null)
+            {
+                counter = created;
+            }
+        }
+
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Removes the given counters and returns their values.
+     * 
+     * @param counters The counters.
+     * @return The values of the removed counters.
+     */
+    private static Map<String, Integer> drain(final ConcurrentMap<String, AtomicInteger> counters)
+    {
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        Iterator<Map.Entry<String, AtomicInteger>> it = counters.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            Map.Entry<String, AtomicInteger> counter = it.next();
+            it.remove();
+
+            // An increment racing with the removal may be lost, which is fine for weights
+            values.put(counter.getKey(), counter.getValue().getAndSet(0));
+        }
+
+        return values;
+    }
+
+    /**
+     * Adds the given values back to the counters.
+     * 
+     * @param counters The counters.
+     * @param values The values to add.
+     */
+    private static void restore(final ConcurrentMap<String, AtomicInteger> counters,
+        final Map<String, Integer> values)
+    {
+        for (Map.Entry<String, Integer> value : values.entrySet())
+        {
+            AtomicInteger created = new AtomicInteger();
+            AtomicInteger counter = counters.putIfAbsent(value.getKey(), created);
+            (counter == null ? created : counter).addAndGet(value.getValue());
+        }
+    }
+
+    /**
+     * Gets the configured number of seconds between flushes.
+     * 
+     * @return The number of seconds between flushes.
+     */
+    private static long getInterval()
+    {
+        String value = Configuration.getConfigValue(Configuration.USAGE_INTERVAL_PROPERTY);
+        return value == null ? DEFAULT_INTERVAL : Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.User;
+
+/**
+ * The Twitter account of the bot.
+ * <p>
+ * Identities are immutable. Users are matched by their numeric id, which does not change when
+ * the screen name does.
+ * 
+ * @author Ignasi Barrera
+ * @see IdentityCache
+ */
+public final class BotIdentity
+{
+    /** The id of the bot user. */
+    private final long id;
+
+    /** The screen name of the bot user. */
+    private final String screenName;
+
+    /**
+     * Creates an identity.
+     * 
+     * @param id The id of the bot user.
+     * @param screenName The screen name of the bot user.
+     */
+    public BotIdentity(final long id, final String screenName)
+    {
+        this.id = id;
+        this.screenName = screenName;
+    }
+
+    /**
+     * Gets the identity of the authenticated user.
+     * 
+     * @param twitter The Twitter API client.
+     * @return The identity of the authenticated user.
+     * @throws TwitterException If the credentials cannot be verified.
+     */
+    public static BotIdentity resolve(final Twitter twitter) throws TwitterException
+    {
+        User user = twitter.verifyCredentials();
+        return new BotIdentity(user.getId(), user.getScreenName());
+    }
+
+    /**
+     * Checks if the given user id is the bot user.
+     * 
+     * @param userId The id of the user to check.
+     * @return Boolean indicating if the given user is the bot user.
+     */
+    public boolean is(final long userId)
+    {
+        return id == userId;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public String getScreenName()
+    {
+        return screenName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "@" + screenName + " (" + id + ")";
+    }
+}
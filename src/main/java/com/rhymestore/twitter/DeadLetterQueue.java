@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.commands.TwitterCommand;
+
+/**
+ * Keeps the Twitter API calls that could not be executed, to inspect them or execute them again
+ * manually.
+ * <p>
+ * The queue is bounded, and the oldest calls are discarded when it is full.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterScheduler
+ */
+public class DeadLetterQueue
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterQueue.class);
+
+    /** The default maximum number of calls to keep. */
+    private static final int DEFAULT_CAPACITY = 1000;
+
+    /** The maximum number of calls to keep. */
+    private final int capacity;
+
+    /** The failed calls, the oldest first. */
+    private final LinkedList<DeadLetter> deadLetters = new LinkedList<DeadLetter>();
+
+    /**
+     * Creates a dead letter queue with the default capacity.
+     */
+    public DeadLetterQueue()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a dead letter queue.
+     * 
+     * @param capacity The maximum number of calls to keep.
+     */
+    public DeadLetterQueue(final int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a failed call.
+     * 
+     * @param command The call.
+     * @param error The last error returned by the call.
+     * @param attempts The number of times the call has been executed.
+     */
+    public synchronized void add(final TwitterCommand command, final TwitterException error,
+        final int attempts)
+    {
+        LOGGER.warn("Giving up {} after {} attempts: {}", new Object[] {command, attempts,
+            error.getMessage()});
+
+        deadLetters.addLast(new DeadLetter(command, error, attempts));
+
+        if (deadLetters.size() > capacity)
+        {
+            deadLetters.removeFirst();
+        }
+    }
+
+    /**
+     * Removes and returns the failed calls.
+     * 
+     * @return The failed calls, the oldest first.
+     */
+    public synchronized List<DeadLetter> drain()
+    {
+        List<DeadLetter> drained = new ArrayList<DeadLetter>(deadLetters);
+        deadLetters.clear();
+        return drained;
+    }
+
+    /**
+     * Gets the number of failed calls.
+     * 
+     * @return The number of failed calls.
+     */
+    public synchronized int size()
+    {
+        return deadLetters.size();
+    }
+
+    /**
+     * A call that could not be executed.
+     * 
+     * @author Ignasi Barrera
+     */
+    public static class DeadLetter
+    {
+        /** The call. */
+        private final TwitterCommand command;
+
+        /** The last error returned by the call. */
+        private final TwitterException error;
+
+        /** The number of times the call has been executed. */
+        private final int attempts;
+
+        /** The time the call was given up. */
+        private final Date date;
+
+        public DeadLetter(final TwitterCommand command, final TwitterException error,
+            final int attempts)
+        {
+            this.command = command;
+            this.error = error;
+            this.attempts = attempts;
+            this.date = new Date();
+        }
+
+        public TwitterCommand getCommand()
+        {
+            return command;
+        }
+
+        public TwitterException getError()
+        {
+            return error;
+        }
+
+        public int getAttempts()
+        {
+            return attempts;
+        }
+
+        public Date getDate()
+        {
+            return date;
+        }
+    }
+}
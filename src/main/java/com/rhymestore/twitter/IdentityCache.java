@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import com.rhymestore.config.Configuration;
+
+/**
+ * Keeps the {@link BotIdentity} of the authenticated user, so it does not have to be requested
+ * to Twitter each time it is used.
+ * <p>
+ * The identity is resolved when the cache is created and refreshed in background, in case the
+ * screen name changes. If a refresh fails, the last known identity is kept.
+ * 
+ * @author Ignasi Barrera
+ * @see BotIdentity
+ */
+public class IdentityCache implements Runnable
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdentityCache.class);
+
+    /** The default number of seconds between refreshes. */
+    private static final long DEFAULT_INTERVAL = 3600;
+
+    /** The Twitter API client. */
+    private final Twitter twitter;
+
+    /** The number of seconds between refreshes. */
+    private final long interval;
+
+    /** The current identity. */
+    private volatile BotIdentity identity;
+
+    /** The scheduler of the refreshes. */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a cache with the identity of the authenticated user.
+     * 
+     * @param twitter The Twitter API client.
+     * @throws TwitterException If the identity cannot be resolved.
+     */
+    public IdentityCache(final Twitter twitter) throws TwitterException
+    {
+        this(twitter, (String) null);
+    }
+
+    /**
+     * Creates a cache with the identity of the authenticated user of the given account.
+     * 
+     * @param twitter The Twitter API client.
+     * @param account The name of the account, or <code>null</code> for the default account.
+     * @throws TwitterException If the identity cannot be resolved.
+     */
+    public IdentityCache(final Twitter twitter, final String account) throws TwitterException
+    {
+        this(twitter, BotIdentity.resolve(twitter), account);
+    }
+
+    /**
+     * Creates a cache with a known identity.
+     * 
+     * @param twitter The Twitter API client used to refresh the identity.
+     * @param identity The identity of the authenticated user.
+     */
+    public IdentityCache(final Twitter twitter, final BotIdentity identity)
+    {
+        this(twitter, identity, null);
+    }
+
+    /**
+     * Creates a cache with a known identity of the given account.
+     * 
+     * @param twitter The Twitter API client used to refresh the identity.
+     * @param identity The identity of the authenticated user.
+     * @param account The name of the account, or <code>null</code> for the default account.
+     */
+    public IdentityCache(final Twitter twitter, final BotIdentity identity, final String account)
+    {
+        String value =
+            Configuration.getAccountConfigValue(account, Configuration.IDENTITY_INTERVAL_PROPERTY);
+        this.twitter = twitter;
+        this.identity = identity;
+        this.interval = value == null ? DEFAULT_INTERVAL : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Starts refreshing the identity in background.
+     */
+    public void start()
+    {
+        LOGGER.info("Refreshing the identity of {} every {} seconds", identity, interval);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops refreshing the identity.
+     */
+    public void shutdown()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Refreshes the identity.
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            BotIdentity refreshed = BotIdentity.resolve(twitter);
+            if (!refreshed.getScreenName().equals(identity.getScreenName()))
+            {
+                LOGGER.info("Screen name changed from {} to {}", identity, refreshed);
+            }
+
+            identity = refreshed;
+        }
+        catch (Exception ex)
+        {
+            // Keep the refresh scheduled and the last known identity
+            LOGGER.warn("Could not refresh the identity of {}: {}", identity, ex.getMessage());
+        }
+    }
+
+    /**
+     * Gets the current identity. This never accesses the network.
+     * 
+     * @return The current identity.
+     */
+    public BotIdentity get()
+    {
+        return identity;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import twitter4j.TwitterException;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.twitter.util.ErrorType;
+
+/**
+ * Decides if and when the failed Twitter API calls are retried.
+ * <p>
+ * Calls are retried with exponential backoff: the delay doubles on each attempt up to the
+ * maximum, and half of it is random so the retries of the calls that failed together do not run
+ * together again. When the rate limit is exceeded, the delay requested by Twitter is used.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterScheduler
+ */
+public class RetryPolicy
+{
+    /** The default number of attempts to execute a call. */
+    private static final int DEFAULT_ATTEMPTS = 4;
+
+    /** The default number of seconds before the first retry. */
+    private static final long DEFAULT_DELAY = 60;
+
+    /** The default maximum number of seconds between retries. */
+    private static final long DEFAULT_MAX_DELAY = 900;
+
+    /** The maximum number of attempts to execute a call. */
+    private final int maxAttempts;
+
+    /** The delay before the first retry, in milliseconds. */
+    private final long baseDelay;
+
+    /** The maximum delay between retries, in milliseconds. */
+    private final long maxDelay;
+
+    /** Used to add jitter to the delays. */
+    private final Random random;
+
+    /**
+     * Creates the configured retry policy.
+     */
+    public RetryPolicy()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates the retry policy configured for the given account.
+     * 
+     * @param account The name of the account, or <code>null</code> to use the global
+     *            configuration.
+     */
+    public RetryPolicy(final String account)
+    {
+        this((int) getConfigValue(account, Configuration.RETRY_ATTEMPTS_PROPERTY,
+            DEFAULT_ATTEMPTS), TimeUnit.SECONDS.toMillis(getConfigValue(account,
+            Configuration.RETRY_DELAY_PROPERTY, DEFAULT_DELAY)), TimeUnit.SECONDS
+            .toMillis(getConfigValue(account, Configuration.RETRY_MAX_DELAY_PROPERTY,
+                DEFAULT_MAX_DELAY)), new Random());
+    }
+
+    /**
+     * Creates a retry policy.
+     * 
+     * @param maxAttempts The maximum number of attempts to execute a call.
+     * @param baseDelay The delay before the first retry, in milliseconds.
+     * @param maxDelay The maximum delay between retries, in milliseconds.
+     * @param random Used to add jitter to the delays.
+     */
+    public RetryPolicy(final int maxAttempts, final long baseDelay, final long maxDelay,
+        final Random random)
+    {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.random = random;
+    }
+
+    /**
+     * Checks if a call that failed with the given error can be retried.
+     * 
+     * @param error The type of the error.
+     * @param attempts The number of times the call has been executed.
+     * @return Boolean indicating if the call can be retried.
+     */
+    public boolean shouldRetry(final ErrorType error, final int attempts)
+    {
+        return error.isRetriable() && attempts < maxAttempts;
+    }
+
+    /**
+     * Gets the time to wait before retrying a call.
+     * 
+     * @param error The type of the error.
+     * @param ex The error.
+     * @param attempts The number of times the call has been executed.
+     * @return The time to wait before retrying the call, in milliseconds.
+     */
+    public long getDelay(final ErrorType error, final TwitterException ex, final int attempts)
+    {
+        if (error == ErrorType.RATE_LIMITED && ex.getRetryAfter() > 0)
+        {
+            return TimeUnit.SECONDS.toMillis(ex.getRetryAfter());
+        }
+
+        // Double the delay on each attempt without overflowing
+        int exponent = Math.max(attempts - 1, 0);
+        long delay =
+            exponent >= Long.numberOfLeadingZeros(baseDelay) - 1 ? maxDelay : Math.min(maxDelay,
+                baseDelay << exponent);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Gets the value of the given numeric configuration property.
+     * 
+     * @param account The name of the account, or <code>null</code> for the global value.
+     * @param propertyName The name of the property.
+     * @param defaultValue The value to use if the property is not defined.
+     * @return The value of the property.
+     */
+    private static long getConfigValue(final String account, final String propertyName,
+        final long defaultValue)
+    {
+        String value = Configuration.getAccountConfigValue(account, propertyName);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
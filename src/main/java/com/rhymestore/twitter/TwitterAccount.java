@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import twitter4j.Twitter;
+import twitter4j.TwitterFactory;
+import twitter4j.TwitterStream;
+import twitter4j.TwitterStreamFactory;
+import twitter4j.conf.ConfigurationBuilder;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * A Twitter account hosted by the application.
+ * <p>
+ * The accounts are listed in the <code>rhymestore.twitter.accounts</code> property. The
+ * credentials of each account are read from the <code>TWITTER_&lt;ACCOUNT&gt;_*</code>
+ * environment variables. The consumer key and secret fall back to the global
+ * <code>TWITTER_CONSUMERKEY</code> and <code>TWITTER_CONSUMERSECRET</code> ones, since all
+ * accounts usually share the same application. If no accounts are listed, a single default
+ * account is hosted with the global <code>TWITTER_*</code> credentials or, if they are not set,
+ * the ones in the twitter4j properties.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterBot
+ */
+public final class TwitterAccount
+{
+    /** The prefix of the environment variables with the credentials. */
+    private static final String ENV_PREFIX = "TWITTER_";
+
+    /** The name of the account, or <code>null</code> for the default account. */
+    private final String name;
+
+    /** The Twitter client configuration of the account. */
+    private final twitter4j.conf.Configuration configuration;
+
+    /**
+     * Creates an account.
+     * 
+     * @param name The name of the account, or <code>null</code> for the default account.
+     * @param configuration The Twitter client configuration of the account.
+     */
+    /* package */TwitterAccount(final String name,
+        final twitter4j.conf.Configuration configuration)
+    {
+        this.name = name;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Gets the configured accounts.
+     * 
+     * @return The configured accounts.
+     * @throws ConfigurationException If the credentials of an account are not set.
+     */
+    public static List<TwitterAccount> getAccounts()
+    {
+        return getAccounts(Configuration.getConfigValue(Configuration.TWITTER_ACCOUNTS_PROPERTY),
+            System.getenv());
+    }
+
+    /**
+     * Gets the given accounts.
+     * 
+     * @param names The comma separated names of the accounts, or <code>null</code> for the
+     *            default account.
+     * @param env The environment variables with the credentials.
+     * @return The accounts.
+     * @throws ConfigurationException If the credentials of an account are not set.
+     */
+    /* package */static List<TwitterAccount> getAccounts(final String names,
+        final Map<String, String> env)
+    {
+        if (names == null || names.trim().isEmpty())
+        {
+            return Collections.singletonList(create(null, env));
+        }
+
+        List<TwitterAccount> accounts = new ArrayList<TwitterAccount>();
+        for (String name : names.split(","))
+        {
+            if (!name.trim().isEmpty())
+            {
+                accounts.add(create(name.trim(), env));
+            }
+        }
+
+        return accounts;
+    }
+
+    /**
+     * Creates the given account with its credentials.
+     * 
+     * @param name The name of the account, or <code>null</code> for the default account.
+     * @param env The environment variables with the credentials.
+     * @return The account.
+     * @throws ConfigurationException If the credentials of the account are not set.
+     */
+    private static TwitterAccount create(final String name, final Map<String, String> env)
+    {
+        // Unset credentials of the default account are read from the twitter4j properties
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+        String consumerKey = getCredential(name, "CONSUMERKEY", env);
+        String consumerSecret = getCredential(name, "CONSUMERSECRET", env);
+        String accessToken = getCredential(name, "ACCESSTOKEN", env);
+        String accessTokenSecret = getCredential(name, "ACCESSTOKENSECRET", env);
+
+        if (consumerKey != null)
+        {
+            builder.setOAuthConsumerKey(consumerKey);
+        }
+        if (consumerSecret != null)
+        {
+            builder.setOAuthConsumerSecret(consumerSecret);
+        }
+        if (accessToken != null)
+        {
+            builder.setOAuthAccessToken(accessToken);
+        }
+        if (accessTokenSecret != null)
+        {
+            builder.setOAuthAccessTokenSecret(accessTokenSecret);
+        }
+
+        return new TwitterAccount(name, builder.build());
+    }
+
+    /**
+     * Gets the given credential of an account.
+     * 
+     * @param name The name of the account, or <code>null</code> for the default account.
+     * @param credential The name of the credential.
+     * @param env The environment variables with the credentials.
+     * @return The credential, or <code>null</code> if it is not set for the default account.
+     * @throws ConfigurationException If the credential is not set for a named account.
+     */
+    private static String getCredential(final String name, final String credential,
+        final Map<String, String> env)
+    {
+        String global = ENV_PREFIX + credential;
+        if (name == null)
+        {
+            return env.get(global);
+        }
+
+        String variable = ENV_PREFIX + name.toUpperCase() + "_" + credential;
+        String value = env.get(variable);
+
+        // All the accounts usually belong to the same application
+        if (value == null && credential.startsWith("CONSUMER"))
+        {
+            value = env.get(global);
+        }
+
+        if (value == null)
+        {
+            throw new ConfigurationException("The environment variable [" + variable
+                + "] was not set.");
+        }
+
+        return value;
+    }
+
+    /**
+     * Creates a Twitter API client for the account.
+     * 
+     * @return The Twitter API client.
+     */
+    public Twitter createTwitter()
+    {
+        return new TwitterFactory(configuration).getInstance();
+    }
+
+    /**
+     * Creates a Twitter streaming API client for the account.
+     * 
+     * @return The Twitter streaming API client.
+     */
+    public TwitterStream createStream()
+    {
+        return new TwitterStreamFactory(configuration).getInstance();
+    }
+
+    /**
+     * Gets the name of the account.
+     * 
+     * @return The name of the account, or <code>null</code> for the default account.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /* package */twitter4j.conf.Configuration getConfiguration()
+    {
+        return configuration;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name == null ? "default account" : "account " + name;
+    }
+}
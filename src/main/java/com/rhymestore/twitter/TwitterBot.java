@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterStream;
+
+import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.twitter.pipeline.ReplyPipeline;
+import com.rhymestore.twitter.stream.GetMentionsListener;
+import com.rhymestore.twitter.stream.MentionBackfill;
+import com.rhymestore.twitter.stream.MentionCheckpoint;
+import com.rhymestore.twitter.stream.SeenStatuses;
+import com.rhymestore.twitter.stream.UserThrottle;
+
+/**
+ * Replies to the mentions of a {@link TwitterAccount}.
+ * <p>
+ * Each bot has its own Twitter clients, stream, reply pipeline, scheduler, retry policy, user
+ * throttle and record of replied users, so the rate limits and the priorities of each account are
+ * respected independently. The word parsers and the rhyme stores are shared by all the bots in
+ * the process.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterAccount
+ */
+public class TwitterBot
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwitterBot.class);
+
+    /** The account of the bot. */
+    private final TwitterAccount account;
+
+    /** The Twitter API client. */
+    private Twitter twitter;
+
+    /** The Twitter streaming API. */
+    private TwitterStream stream;
+
+    /** The identity of the bot. */
+    private IdentityCache identity;
+
+    /** Sends the replies respecting the rate limit. */
+    private TwitterScheduler scheduler;
+
+    /** Prepares the replies before they are sent. */
+    private ReplyPipeline pipeline;
+
+    /** Recovers the mentions missed while the stream was disconnected. */
+    private MentionBackfill backfill;
+
+    /** The last users replied by the account. */
+    private final Map<Long, Boolean> repliedUsers;
+
+    public TwitterBot(final TwitterAccount account)
+    {
+        super();
+        this.account = account;
+        this.repliedUsers = ReplyCommand.createRepliedUsers();
+    }
+
+    /**
+     * Starts listening to the mentions of the account.
+     * 
+     * @throws TwitterException If the account cannot connect to Twitter.
+     */
+    public void start() throws TwitterException
+    {
+        String name = account.getName();
+
+        twitter = account.createTwitter();
+        stream = account.createStream();
+
+        identity = new IdentityCache(twitter, name);
+        identity.start();
+        LOGGER.info("Connected to Twitter as: {}", identity.get());
+
+        scheduler = new TwitterScheduler(name);
+        scheduler.start();
+
+        pipeline = new ReplyPipeline(scheduler, name);
+        pipeline.start();
+
+        MentionCheckpoint checkpoint = new MentionCheckpoint(name);
+        GetMentionsListener listener =
+            new GetMentionsListener(twitter, scheduler, identity, checkpoint,
+                new SeenStatuses(name), new UserThrottle(name), pipeline, repliedUsers);
+        backfill = new MentionBackfill(twitter, listener, checkpoint);
+
+        LOGGER.info("Starting the Twitter stream listener of {}", identity.get());
+        stream.addListener(listener);
+        stream.addConnectionLifeCycleListener(backfill);
+        stream.user(); // Start reading to user stream
+    }
+
+    /**
+     * Stops listening to the mentions and closes the connections to Twitter.
+     */
+    public void shutdown()
+    {
+        LOGGER.info("Disconnecting {} from the Twitter streaming API", account);
+        if (stream != null)
+        {
+            stream.shutdown();
+        }
+        if (backfill != null)
+        {
+            backfill.shutdown();
+        }
+        if (pipeline != null)
+        {
+            pipeline.shutdown();
+        }
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+        }
+        if (identity != null)
+        {
+            identity.shutdown();
+        }
+
+        LOGGER.info("Disconnecting {} from Twitter", account);
+        if (twitter != null)
+        {
+            twitter.shutdown();
+        }
+    }
+
+    public TwitterAccount getAccount()
+    {
+        return account;
+    }
+}
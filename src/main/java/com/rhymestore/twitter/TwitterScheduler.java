@@ -22,48 +22,212 @@
 
 package com.rhymestore.twitter;
 
-import java.util.Queue;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import twitter4j.TwitterException;
 
+import com.rhymestore.config.Configuration;
+import com.rhymestore.twitter.commands.CoalescingCommand;
+import com.rhymestore.twitter.commands.PrioritizedCommand;
 import com.rhymestore.twitter.commands.TwitterCommand;
+import com.rhymestore.twitter.util.ErrorType;
 import com.rhymestore.twitter.util.TwitterUtils;
+import com.rhymestore.util.LatencyHistogram;
 
 /**
  * Schedules Twitter API calls to execute them in order.
  * <p>
  * This class will enqueue and run all requested API calls when possible, taking care of not passing
  * the Twitter API rate limit.
+ * <p>
+ * The queue is bounded. Commands are executed by priority and, among the ones with the same
+ * priority, the most recent first, since a late reply is worth less than a timely one. Commands
+ * older than the maximum age are discarded, and when the queue is full the configured
+ * {@link ShedPolicy} decides which command is discarded.
+ * <p>
+ * Failed commands are retried as decided by the {@link RetryPolicy}, and the ones that cannot be
+ * retried are kept in the {@link DeadLetterQueue}. Retries are executed in the same slots as the
+ * rest of the commands, and no command is executed while the rate limit is exceeded, so retries
+ * never exceed the rate limit. The maximum age only applies to the commands that have not been
+ * executed yet: the retries are bounded by the retry policy, and the ones discarded to make room
+ * in the queue are kept in the dead letter queue too.
+ * <p>
+ * Pending {@link CoalescingCommand}s with the same key whose events happened within the coalesce
+ * window are collapsed into the most recent one, so they take a single API call.
  * 
  * @author Ignasi Barrera
  * @see TwitterCommand
+ * @see PrioritizedCommand
+ * @see CoalescingCommand
  */
 public class TwitterScheduler implements Runnable
 {
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(TwitterScheduler.class);
 
+    /** The default maximum number of pending commands. */
+    private static final int DEFAULT_CAPACITY = 100;
+
+    /** The default number of seconds a command can wait. */
+    private static final long DEFAULT_MAX_AGE = 600;
+
     /** The scheduler service. */
     private ScheduledExecutorService scheduler;
 
     /** The queue with the pending commands. */
-    private Queue<TwitterCommand> commandQueue;
+    private final PriorityQueue<QueuedCommand> commandQueue;
+
+    /** The maximum number of pending commands. */
+    private final int capacity;
+
+    /** The maximum age of the commands, in milliseconds. */
+    private final long maxAge;
+
+    /** The policy to make room when the queue is full. */
+    private final ShedPolicy shedPolicy;
+
+    /** The time within which the commands with the same key are collapsed, in milliseconds. */
+    private final long coalesceWindow;
+
+    /** The pending commands that can be collapsed, by key. */
+    private final Map<String, QueuedCommand> coalescing = new HashMap<String, QueuedCommand>();
+
+    /** Decides if and when the failed commands are retried. */
+    private final RetryPolicy retryPolicy;
+
+    /** Keeps the commands that could not be executed. */
+    private final DeadLetterQueue deadLetters;
+
+    /** The commands waiting to be retried, the first to retry first. */
+    private final PriorityQueue<QueuedCommand> retryQueue;
+
+    /** The time until no command can be executed because the rate limit has been exceeded. */
+    private long pausedUntil = 0;
+
+    /** The number of commands added to the queue, used to keep the arrival order. */
+    private long sequence = 0;
+
+    /** The number of executed commands. */
+    private final AtomicLong executed = new AtomicLong();
+
+    /** The number of commands discarded because the queue was full. */
+    private final AtomicLong shed = new AtomicLong();
+
+    /** The number of commands discarded because they were too old. */
+    private final AtomicLong expired = new AtomicLong();
+
+    /** The number of commands collapsed into a more recent one. */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /** The number of failed commands scheduled to be retried. */
+    private final AtomicLong retried = new AtomicLong();
+
+    /** The number of commands given up. */
+    private final AtomicLong failed = new AtomicLong();
+
+    /** The time spent executing each command. */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Creates a new {@link TwitterScheduler} with the configured queue limits and retry policy.
+     */
+    public TwitterScheduler()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a new {@link TwitterScheduler} with the queue limits and retry policy configured
+     * for the given account.
+     * 
+     * @param account The name of the account, or <code>null</code> to use the global
+     *            configuration.
+     */
+    public TwitterScheduler(final String account)
+    {
+        this(getConfigValue(account, Configuration.QUEUE_CAPACITY_PROPERTY, DEFAULT_CAPACITY),
+            TimeUnit.SECONDS.toMillis(getConfigValue(account,
+                Configuration.QUEUE_MAX_AGE_PROPERTY, DEFAULT_MAX_AGE)), getShedPolicy(account),
+            new RetryPolicy(account), new DeadLetterQueue(), TimeUnit.SECONDS
+                .toMillis(getConfigValue(account, Configuration.QUEUE_COALESCE_WINDOW_PROPERTY,
+                    0L)));
+    }
 
     /**
      * Creates a new {@link TwitterScheduler}.
      * 
-     * @param twitter The Twitter account where the API calls will be performed.
+     * @param capacity The maximum number of pending commands.
+     * @param maxAge The maximum age of the commands, in milliseconds.
+     * @param shedPolicy The policy to make room when the queue is full.
      */
-    public TwitterScheduler()
+    /* package */TwitterScheduler(final int capacity, final long maxAge,
+        final ShedPolicy shedPolicy)
     {
-        this.commandQueue = new LinkedBlockingDeque<TwitterCommand>(); // Thread-safe
+        this(capacity, maxAge, shedPolicy, new RetryPolicy(), new DeadLetterQueue());
+    }
+
+    /**
+     * Creates a new {@link TwitterScheduler}.
+     * 
+     * @param capacity The maximum number of pending commands.
+     * @param maxAge The maximum age of the commands, in milliseconds.
+     * @param shedPolicy The policy to make room when the queue is full.
+     * @param retryPolicy Decides if and when the failed commands are retried.
+     * @param deadLetters Keeps the commands that could not be executed.
+     */
+    /* package */TwitterScheduler(final int capacity, final long maxAge,
+        final ShedPolicy shedPolicy, final RetryPolicy retryPolicy,
+        final DeadLetterQueue deadLetters)
+    {
+        this(capacity, maxAge, shedPolicy, retryPolicy, deadLetters, 0);
+    }
+
+    /**
+     * Creates a new {@link TwitterScheduler}.
+     * 
+     * @param capacity The maximum number of pending commands.
+     * @param maxAge The maximum age of the commands, in milliseconds.
+     * @param shedPolicy The policy to make room when the queue is full.
+     * @param retryPolicy Decides if and when the failed commands are retried.
+     * @param deadLetters Keeps the commands that could not be executed.
+     * @param coalesceWindow The time within which the commands with the same key are collapsed,
+     *            in milliseconds, or <code>0</code> to execute all of them.
+     */
+    /* package */TwitterScheduler(final int capacity, final long maxAge,
+        final ShedPolicy shedPolicy, final RetryPolicy retryPolicy,
+        final DeadLetterQueue deadLetters, final long coalesceWindow)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("The queue capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+        this.shedPolicy = shedPolicy;
+        this.retryPolicy = retryPolicy;
+        this.deadLetters = deadLetters;
+        this.coalesceWindow = coalesceWindow;
+        this.commandQueue = new PriorityQueue<QueuedCommand>(capacity);
+        this.retryQueue = new PriorityQueue<QueuedCommand>(capacity, new Comparator<QueuedCommand>()
+        {
+            @Override
+            public int compare(final QueuedCommand o1, final QueuedCommand o2)
+            {
+                return o1.notBefore < o2.notBefore ? -1 : o1.notBefore > o2.notBefore ? 1 : 0;
+            }
+        });
         this.scheduler = Executors.newSingleThreadScheduledExecutor();
     }
 
@@ -78,6 +242,14 @@ public class TwitterScheduler implements Runnable
         long interval = (long) Math.floor(60 / callsPerMinute);
 
         LOGGER.info("Twitter scheduler running every {} seconds", interval);
+        LOGGER.info("Queueing up to {} commands for {} seconds, shedding with {}",
+            new Object[] {capacity, TimeUnit.MILLISECONDS.toSeconds(maxAge), shedPolicy});
+
+        if (coalesceWindow > 0)
+        {
+            LOGGER.info("Collapsing the commands with the same key within {} seconds",
+                TimeUnit.MILLISECONDS.toSeconds(coalesceWindow));
+        }
 
         scheduler.scheduleAtFixedRate(this, 0, interval, TimeUnit.SECONDS);
     }
@@ -92,12 +264,123 @@ public class TwitterScheduler implements Runnable
 
     /**
      * Adds a command to the command queue.
+     * <p>
+     * If the queue is full, the configured {@link ShedPolicy} decides which command is discarded.
+     * If there is a pending command with the same coalescing key, only the most recent of them is
+     * kept.
      * 
      * @param command The command to add to the queue.
+     * @return Boolean indicating if the command has been queued.
      */
-    public void addCommand(final TwitterCommand command)
+    public synchronized boolean addCommand(final TwitterCommand command)
     {
-        commandQueue.add(command);
+        long now = currentTime();
+        return admit(new QueuedCommand(command, now, sequence++), now);
+    }
+
+    /**
+     * Adds a command to the command queue, making room for it if the queue is full.
+     * 
+     * @param queued The command to add to the queue.
+     * @param now The current time.
+     * @return Boolean indicating if the command has been queued.
+     */
+    private boolean admit(final QueuedCommand queued, final long now)
+    {
+        TwitterCommand command = queued.command;
+
+        if (isExpired(queued, now))
+        {
+            expired.incrementAndGet();
+            LOGGER.debug("Discarding expired command {}", command);
+            return false;
+        }
+
+        if (coalesce(queued))
+        {
+            return true;
+        }
+
+        if (commandQueue.size() >= capacity)
+        {
+            removeExpired(now);
+        }
+
+        if (commandQueue.size() >= capacity)
+        {
+            QueuedCommand victim = selectVictim(queued);
+            shed.incrementAndGet();
+
+            if (victim == queued)
+            {
+                LOGGER.debug("Queue full. Discarding new command {}", command);
+                giveUp(queued);
+                return false;
+            }
+
+            LOGGER.debug("Queue full. Discarding command {}", victim.command);
+            commandQueue.remove(victim);
+            forget(victim);
+            giveUp(victim);
+        }
+
+        commandQueue.add(queued);
+
+        if (queued.key != null)
+        {
+            coalescing.put(queued.key, queued);
+        }
+
+        return true;
+    }
+
+    /**
+     * Collapses the given command with the pending one with the same key, if their events happened
+     * within the coalesce window. The most recent of them is kept in the queue.
+     * 
+     * @param queued The command to add to the queue.
+     * @return Boolean indicating if the command has been collapsed.
+     */
+    private boolean coalesce(final QueuedCommand queued)
+    {
+        if (coalesceWindow <= 0 || queued.key == null)
+        {
+            return false;
+        }
+
+        QueuedCommand pending = coalescing.get(queued.key);
+
+        if (pending == null || Math.abs(queued.timestamp - pending.timestamp) > coalesceWindow)
+        {
+            return false;
+        }
+
+        coalesced.incrementAndGet();
+
+        if (queued.isOlderThan(pending))
+        {
+            LOGGER.debug("Collapsing command {} into {}", queued.command, pending.command);
+            return true;
+        }
+
+        LOGGER.debug("Collapsing command {} into {}", pending.command, queued.command);
+        commandQueue.remove(pending);
+        commandQueue.add(queued);
+        coalescing.put(queued.key, queued);
+        return true;
+    }
+
+    /**
+     * Forgets the coalescing key of the given command, once it has left the queue.
+     * 
+     * @param queued The command that has left the queue.
+     */
+    private void forget(final QueuedCommand queued)
+    {
+        if (queued.key != null && coalescing.get(queued.key) == queued)
+        {
+            coalescing.remove(queued.key);
+        }
     }
 
     /**
@@ -106,19 +389,437 @@ public class TwitterScheduler implements Runnable
     @Override
     public void run()
     {
-        try
+        QueuedCommand queued = nextQueued();
+
+        if (queued != null)
+        {
+            LOGGER.trace("Running command from queue...");
+
+            executed.incrementAndGet();
+            queued.attempts++;
+            long start = System.nanoTime();
+
+            try
+            {
+                queued.command.execute();
+            }
+            catch (TwitterException ex)
+            {
+                failed(queued, ex);
+            }
+            catch (RuntimeException ex)
+            {
+                // Keep the scheduler running
+                LOGGER.error("Could not execute " + queued.command, ex);
+            }
+            finally
+            {
+                latency.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Retries the given failed command or gives it up, depending on the error.
+     * 
+     * @param queued The failed command.
+     * @param ex The error.
+     */
+    private synchronized void failed(final QueuedCommand queued, final TwitterException ex)
+    {
+        ErrorType error = TwitterUtils.getErrorType(ex);
+
+        if (error == ErrorType.DUPLICATE)
+        {
+            LOGGER.info("Ignoring duplicate {}", queued.command);
+            return;
+        }
+
+        queued.error = ex;
+
+        if (!retryPolicy.shouldRetry(error, queued.attempts))
+        {
+            failed.incrementAndGet();
+            deadLetters.add(queued.command, ex, queued.attempts);
+            return;
+        }
+
+        long now = currentTime();
+        long delay = retryPolicy.getDelay(error, ex, queued.attempts);
+        queued.notBefore = now + delay;
+
+        // Stop executing commands until the rate limit is reset
+        if (error == ErrorType.RATE_LIMITED)
+        {
+            pausedUntil = Math.max(pausedUntil, queued.notBefore);
+        }
+
+        LOGGER.debug("Retrying {} in {} ms after {} error: {}", new Object[] {queued.command,
+            delay, error, ex.getMessage()});
+
+        retried.incrementAndGet();
+        retryQueue.add(queued);
+    }
+
+    /**
+     * Gets the next command to execute, discarding the ones that are too old.
+     * 
+     * @return The next command to execute, or <code>null</code> if the queue is empty.
+     */
+    /* package */TwitterCommand nextCommand()
+    {
+        QueuedCommand queued = nextQueued();
+        return queued == null ? null : queued.command;
+    }
+
+    /**
+     * Gets the next command to execute, discarding the ones that are too old.
+     * <p>
+     * The commands to retry are moved to the queue when their delay expires, and no command is
+     * returned while the rate limit is exceeded.
+     * 
+     * @return The next command to execute, or <code>null</code> if there is none or the rate
+     *         limit is exceeded.
+     */
+    private synchronized QueuedCommand nextQueued()
+    {
+        long now = currentTime();
+
+        if (now < pausedUntil)
+        {
+            return null;
+        }
+
+        while (!retryQueue.isEmpty() && retryQueue.peek().notBefore <= now)
+        {
+            admit(retryQueue.poll(), now);
+        }
+
+        QueuedCommand queued = poll();
+
+        while (queued != null && isExpired(queued, now))
+        {
+            expired.incrementAndGet();
+            LOGGER.debug("Discarding expired command {}", queued.command);
+            queued = poll();
+        }
+
+        return queued;
+    }
+
+    /**
+     * Removes the first command from the queue.
+     * 
+     * @return The first command, or <code>null</code> if the queue is empty.
+     */
+    private QueuedCommand poll()
+    {
+        QueuedCommand queued = commandQueue.poll();
+
+        if (queued != null)
+        {
+            forget(queued);
+        }
+
+        return queued;
+    }
+
+    /**
+     * Gets the current time.
+     * 
+     * @return The current time in milliseconds.
+     */
+    /* package */long currentTime()
+    {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Selects the command to discard to make room for the given one.
+     * 
+     * @param candidate The command to add.
+     * @return The command to discard. It may be the given one.
+     */
+    private QueuedCommand selectVictim(final QueuedCommand candidate)
+    {
+        if (shedPolicy == ShedPolicy.REJECT_NEW)
         {
-            if (!commandQueue.isEmpty())
+            return candidate;
+        }
+
+        QueuedCommand victim = candidate;
+
+        for (QueuedCommand queued : commandQueue)
+        {
+            boolean worse =
+                shedPolicy == ShedPolicy.DROP_OLDEST ? queued.isOlderThan(victim) : queued
+                    .compareTo(victim) > 0;
+
+            if (worse)
             {
-                LOGGER.trace("Running command from queue...");
+                victim = queued;
+            }
+        }
 
-                TwitterCommand cmd = commandQueue.poll();
-                cmd.execute();
+        return victim;
+    }
+
+    /**
+     * Removes the commands that are too old.
+     * 
+     * @param now The current time.
+     */
+    private void removeExpired(final long now)
+    {
+        Iterator<QueuedCommand> it = commandQueue.iterator();
+
+        while (it.hasNext())
+        {
+            QueuedCommand queued = it.next();
+
+            if (isExpired(queued, now))
+            {
+                it.remove();
+                forget(queued);
+                expired.incrementAndGet();
             }
         }
-        catch (TwitterException ex)
+    }
+
+    /**
+     * Keeps the given discarded command in the dead letter queue if it has failed before.
+     * 
+     * @param queued The discarded command.
+     */
+    private void giveUp(final QueuedCommand queued)
+    {
+        if (queued.attempts > 0)
         {
-            LOGGER.error("Could not execute the Twitter API call", ex);
+            failed.incrementAndGet();
+            deadLetters.add(queued.command, queued.error, queued.attempts);
         }
     }
+
+    /**
+     * Checks if the given command is too old to be executed.
+     * <p>
+     * Commands being retried never expire, since their retry delays and the rate limit pauses
+     * may well exceed the maximum age.
+     * 
+     * @param queued The command.
+     * @param now The current time.
+     * @return Boolean indicating if the command is too old to be executed.
+     */
+    private boolean isExpired(final QueuedCommand queued, final long now)
+    {
+        return maxAge > 0 && queued.attempts == 0 && now - queued.timestamp > maxAge;
+    }
+
+    /**
+     * Gets the value of the given numeric configuration property.
+     * 
+     * @param account The name of the account, or <code>null</code> for the global value.
+     * @param propertyName The name of the property.
+     * @param defaultValue The value to use if the property is not defined.
+     * @return The value of the property.
+     */
+    private static int getConfigValue(final String account, final String propertyName,
+        final int defaultValue)
+    {
+        String value = Configuration.getAccountConfigValue(account, propertyName);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Gets the value of the given numeric configuration property.
+     * 
+     * @param account The name of the account, or <code>null</code> for the global value.
+     * @param propertyName The name of the property.
+     * @param defaultValue The value to use if the property is not defined.
+     * @return The value of the property.
+     */
+    private static long getConfigValue(final String account, final String propertyName,
+        final long defaultValue)
+    {
+        String value = Configuration.getAccountConfigValue(account, propertyName);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Gets the configured policy to make room when the queue is full.
+     * 
+     * @param account The name of the account, or <code>null</code> for the global value.
+     * @return The policy to make room when the queue is full.
+     */
+    private static ShedPolicy getShedPolicy(final String account)
+    {
+        String value =
+            Configuration.getAccountConfigValue(account, Configuration.QUEUE_SHED_POLICY_PROPERTY);
+        return value == null ? ShedPolicy.DROP_LOWEST : ShedPolicy.valueOf(value.trim()
+            .toUpperCase());
+    }
+
+    /**
+     * A command in the queue.
+     * <p>
+     * Commands are sorted by priority and, among the ones with the same priority, the most recent
+     * first.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class QueuedCommand implements Comparable<QueuedCommand>
+    {
+        /** The command. */
+        private final TwitterCommand command;
+
+        /** The priority of the command. */
+        private final int priority;
+
+        /** The time of the event that triggered the command. */
+        private final long timestamp;
+
+        /** The arrival order of the command. */
+        private final long sequence;
+
+        /** The key to collapse the command with the pending ones, or <code>null</code>. */
+        private final String key;
+
+        /** The number of times the command has been executed. */
+        private int attempts = 0;
+
+        /** The time before which the command must not be retried. */
+        private long notBefore = 0;
+
+        /** The last error of the command, if it has failed. */
+        private TwitterException error;
+
+        public QueuedCommand(final TwitterCommand command, final long now, final long sequence)
+        {
+            this.command = command;
+            this.sequence = sequence;
+            this.key =
+                command instanceof CoalescingCommand ? ((CoalescingCommand) command)
+                    .getCoalescingKey() : null;
+
+            if (command instanceof PrioritizedCommand)
+            {
+                PrioritizedCommand prioritized = (PrioritizedCommand) command;
+                long time = prioritized.getTimestamp();
+
+                this.priority = prioritized.getPriority();
+                this.timestamp = time > 0 ? time : now;
+            }
+            else
+            {
+                this.priority = PrioritizedCommand.NORMAL_PRIORITY;
+                this.timestamp = now;
+            }
+        }
+
+        /**
+         * Checks if this command is older than the given one.
+         * 
+         * @param other The command to compare with.
+         * @return Boolean indicating if this command is older than the given one.
+         */
+        public boolean isOlderThan(final QueuedCommand other)
+        {
+            return timestamp < other.timestamp || timestamp == other.timestamp
+                && sequence < other.sequence;
+        }
+
+        @Override
+        public int compareTo(final QueuedCommand other)
+        {
+            if (priority != other.priority)
+            {
+                return priority > other.priority ? -1 : 1;
+            }
+
+            return isOlderThan(other) ? 1 : other.isOlderThan(this) ? -1 : 0;
+        }
+    }
+
+    // Metrics
+
+    /**
+     * Gets the number of pending commands.
+     * 
+     * @return The number of pending commands.
+     */
+    public synchronized int getQueueDepth()
+    {
+        return commandQueue.size();
+    }
+
+    /**
+     * Gets the age of the oldest pending command.
+     * 
+     * @return The age of the oldest pending command in milliseconds, or <code>0</code> if the
+     *         queue is empty.
+     */
+    public synchronized long getOldestAge()
+    {
+        QueuedCommand oldest = null;
+
+        for (QueuedCommand queued : commandQueue)
+        {
+            if (oldest == null || queued.isOlderThan(oldest))
+            {
+                oldest = queued;
+            }
+        }
+
+        return oldest == null ? 0 : currentTime() - oldest.timestamp;
+    }
+
+    /**
+     * Gets the number of commands waiting to be retried.
+     * 
+     * @return The number of commands waiting to be retried.
+     */
+    public synchronized int getRetryDepth()
+    {
+        return retryQueue.size();
+    }
+
+    public DeadLetterQueue getDeadLetters()
+    {
+        return deadLetters;
+    }
+
+    public long getExecuted()
+    {
+        return executed.get();
+    }
+
+    public long getShed()
+    {
+        return shed.get();
+    }
+
+    public long getExpired()
+    {
+        return expired.get();
+    }
+
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+
+    public long getRetried()
+    {
+        return retried.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
 }
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.commands;
+
+import com.rhymestore.twitter.TwitterScheduler;
+
+/**
+ * A command that tells the {@link TwitterScheduler} how urgent it is and when the event that
+ * triggered it happened.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterScheduler
+ */
+public interface PrioritizedCommand extends TwitterCommand
+{
+    /** The priority of the commands that do not define it. */
+    public static final int NORMAL_PRIORITY = 0;
+
+    /** The priority of the commands that should be executed first. */
+    public static final int HIGH_PRIORITY = 10;
+
+    /**
+     * Gets the priority of the command. Commands with higher priority are executed first.
+     * 
+     * @return The priority of the command.
+     */
+    public int getPriority();
+
+    /**
+     * Gets the time of the event that triggered the command, used to discard the commands that
+     * are too old.
+     * 
+     * @return The time of the event in milliseconds, or <code>0</code> if it is not known.
+     */
+    public long getTimestamp();
+}
@@ -23,6 +23,9 @@
 package com.rhymestore.twitter.commands;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,9 +34,10 @@ import twitter4j.Status;
 import twitter4j.StatusUpdate;
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
+import twitter4j.User;
 
 import com.rhymestore.lang.WordParser;
-import com.rhymestore.lang.WordParserFactory;
+import com.rhymestore.lang.WordParserRegistry;
 import com.rhymestore.store.RhymeStore;
 import com.rhymestore.twitter.TwitterScheduler;
 import com.rhymestore.twitter.util.TwitterUtils;
@@ -45,82 +49,290 @@ import com.rhymestore.twitter.util.TwitterUtils;
  * @see Twitter
  * @see TwitterScheduler
  */
-public class ReplyCommand extends AbstracTwitterCommand
+public class ReplyCommand extends AbstracTwitterCommand implements PrioritizedCommand,
+    CoalescingCommand
 {
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(ReplyCommand.class);
 
+    /** The number of users remembered to tell the first-time users apart. */
+    private static final int MAX_REPLIED_USERS = 10000;
+
     /** The status to reply. */
     private final Status status;
 
+    /** The last users replied by the account. */
+    private final Map<Long, Boolean> repliedUsers;
+
     /** The {@link WordParser} used to get the default rhyme if none is found. */
-    private final WordParser wordParser;
+    private WordParser wordParser;
 
     /** The Rhyme Store. */
     /* package */RhymeStore rhymeStore;
 
+    /** The screen name of the user to reply. */
+    private String targetUser;
+
+    /** The maximum length of the rhyme to fit in the reply. */
+    private int maxLength;
+
+    /** Indicates if the status has been analyzed. */
+    private boolean analyzed = false;
+
+    /** Indicates if the rhyme has been looked up in the store. */
+    private boolean lookedUp = false;
+
+    /** The rhyme to reply with, once it has been selected. */
+    private String rhyme;
+
+    /** Indicates if the rhyme has been selected from the store. */
+    private boolean stored = false;
+
+    /** The reply, once it has been composed. */
+    private String tweet;
+
     /**
      * Creates a new {@link ReplyCommand} for the given status.
      * 
      * @param twitter The Twitter sync API.
      * @param status The status to reply.
+     * @param repliedUsers The last users replied by the account, created with
+     *            {@link #createRepliedUsers()}.
      */
-    public ReplyCommand(final Twitter twitter, final Status status)
+    public ReplyCommand(final Twitter twitter, final Status status,
+        final Map<Long, Boolean> repliedUsers)
     {
         super(twitter);
         this.status = status;
-        this.rhymeStore = RhymeStore.getInstance();
-        this.wordParser = WordParserFactory.getWordParser();
+        this.repliedUsers = repliedUsers;
+    }
+
+    /**
+     * Creates the record of the last users replied by an account, used to tell the first-time
+     * users apart.
+     * <p>
+     * Each account has its own record, so a reply from one account does not change the priority
+     * of the mentions to another one.
+     * 
+     * @return The record of the last replied users.
+     */
+    public static Map<Long, Boolean> createRepliedUsers()
+    {
+        return Collections.synchronizedMap(new LinkedHashMap<Long, Boolean>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Boolean> eldest)
+            {
+                return size() > MAX_REPLIED_USERS;
+            }
+        });
+    }
+
+    /**
+     * Verified and first-time users are replied first.
+     */
+    @Override
+    public int getPriority()
+    {
+        User user = status.getUser();
+        return user.isVerified() || !repliedUsers.containsKey(user.getId()) ? HIGH_PRIORITY
+            : NORMAL_PRIORITY;
+    }
+
+    @Override
+    public long getTimestamp()
+    {
+        return status.getCreatedAt() == null ? 0 : status.getCreatedAt().getTime();
     }
 
+    /**
+     * The mentions of the same user are collapsed, so only the last one is replied.
+     */
+    @Override
+    public String getCoalescingKey()
+    {
+        return "reply:" + status.getUser().getId();
+    }
+
+    /**
+     * Sends the reply.
+     * <p>
+     * The reply is prepared the first time, unless it has already been prepared by the stages of
+     * a {@link com.rhymestore.twitter.pipeline.ReplyPipeline}, and the same reply is sent if the
+     * command is executed again after a failure.
+     * 
+     * @throws TwitterException If the reply cannot be sent.
+     */
     @Override
     public void execute() throws TwitterException
     {
-        String rhyme = null;
-        String targetUser = status.getUser().getScreenName();
+        compose();
 
-        try
+        LOGGER.info("Replying to {} with: {}", targetUser, tweet);
+
+        // Reply to the user
+        StatusUpdate newStatus = new StatusUpdate(tweet);
+        newStatus.setInReplyToStatusId(status.getId());
+        Status sent = twitter.updateStatus(newStatus);
+
+        if (stored && sent != null)
         {
-            rhyme = rhymeStore.getRhyme(status.getText());
+            rhymeStore.getUsage().replied(sent.getId(), rhyme);
+        }
 
-            if (rhyme == null)
-            {
-                // Try to rhyme with the user screen name
-                if (wordParser.isWord(targetUser))
-                {
-                    LOGGER.info("Trying to rhyme with the screen name: {}", targetUser);
-                    rhyme = rhymeStore.getRhyme(targetUser);
-                }
-            }
+        repliedUsers.put(status.getUser().getId(), Boolean.TRUE);
+    }
 
-            if (rhyme == null)
-            {
-                rhyme = wordParser.getDefaultRhyme();
+    /**
+     * Selects the language of the reply and the length of the rhymes that fit in it.
+     */
+    public void analyze()
+    {
+        if (analyzed)
+        {
+            return;
+        }
 
-                LOGGER.info("No rhyme found. Using default rhyme: {}", rhyme);
-            }
+        // Reply in the language of the status, using the rhymes of that language
+        WordParserRegistry registry = WordParserRegistry.getRegistry();
+        String language = registry.identify(status.getUser().getLang(), status.getText());
+
+        if (rhymeStore == null)
+        {
+            rhymeStore = RhymeStore.getInstance(language);
         }
-        catch (IOException ex)
+
+        wordParser = registry.getWordParser(language);
+        targetUser = status.getUser().getScreenName();
+        maxLength = TwitterUtils.replyLength(targetUser);
+        analyzed = true;
+    }
+
+    /**
+     * Looks up a rhyme for the status in the store.
+     */
+    public void lookup()
+    {
+        analyze();
+        lookup(rhymeStore);
+    }
+
+    /**
+     * Looks up a rhyme for the status in the given reader of the store.
+     * 
+     * @param reader The store to read the rhymes from, created with
+     *            {@link RhymeStore#createReader()} from the {@link #getRhymeStore() store} of
+     *            the reply.
+     */
+    public void lookup(final RhymeStore reader)
+    {
+        analyze();
+
+        if (lookedUp)
         {
-            LOGGER.error(
-                "An error occured while connecting to the rhyme store. Could not reply to {}",
-                targetUser, ex);
+            return;
         }
 
-        try
+        // Prefer the rhymes that fit in the reply without being truncated
+        rhyme = getRhyme(reader, status.getText());
+        stored = rhyme != null;
+        lookedUp = true;
+    }
+
+    /**
+     * Selects a rhyme with the screen name of the user, or the default rhyme, if there is no
+     * rhyme for the status.
+     */
+    public void fallback()
+    {
+        analyze();
+        fallback(rhymeStore);
+    }
+
+    /**
+     * Selects a rhyme with the screen name of the user, or the default rhyme, if there is no
+     * rhyme for the status, reading the rhymes from the given reader of the store.
+     * 
+     * @param reader The store to read the rhymes from, created with
+     *            {@link RhymeStore#createReader()} from the {@link #getRhymeStore() store} of
+     *            the reply.
+     */
+    public void fallback(final RhymeStore reader)
+    {
+        lookup(reader);
+
+        if (rhyme != null)
         {
-            String tweet = TwitterUtils.reply(targetUser, rhyme);
+            return;
+        }
 
-            LOGGER.info("Replying to {} with: {}", targetUser, tweet);
+        // Try to rhyme with the user screen name
+        if (wordParser.isWord(targetUser))
+        {
+            LOGGER.info("Trying to rhyme with the screen name: {}", targetUser);
+            rhyme = getRhyme(reader, targetUser);
+        }
+
+        // Track the engagement of the rhymes of the store
+        stored = rhyme != null;
+
+        if (rhyme == null)
+        {
+            rhyme = wordParser.getDefaultRhyme();
 
-            // Reply to the user
-            StatusUpdate newStatus = new StatusUpdate(tweet);
-            newStatus.setInReplyToStatusId(status.getId());
-            twitter.updateStatus(newStatus);
+            LOGGER.info("No rhyme found. Using default rhyme: {}", rhyme);
         }
-        catch (TwitterException ex)
+    }
+
+    /**
+     * Composes the reply with the selected rhyme.
+     */
+    public void compose()
+    {
+        fallback();
+
+        if (tweet == null)
+        {
+            tweet = TwitterUtils.reply(targetUser, rhyme);
+        }
+    }
+
+    /**
+     * Gets the store with the rhymes in the language of the reply.
+     * 
+     * @return The store, or <code>null</code> if the reply has not been analyzed yet.
+     */
+    public RhymeStore getRhymeStore()
+    {
+        return rhymeStore;
+    }
+
+    /**
+     * Gets a rhyme for the given text that fits in the reply.
+     * 
+     * @param reader The store to read the rhymes from.
+     * @param text The text to rhyme with.
+     * @return The rhyme, or <code>null</code> if there is none or the store is not available.
+     */
+    private String getRhyme(final RhymeStore reader, final String text)
+    {
+        try
         {
-            LOGGER.error("Could not send reply to tweet " + status.getId(), ex);
+            return reader.getRhyme(text, maxLength);
         }
+        catch (IOException ex)
+        {
+            LOGGER.error("An error occured while connecting to the rhyme store. "
+                + "Could not find a rhyme for {}", targetUser, ex);
+            return null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "reply to tweet " + status.getId();
     }
 }
@@ -0,0 +1,332 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.TwitterScheduler;
+import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.util.LatencyHistogram;
+
+/**
+ * Prepares the replies in stages before they are sent.
+ * <p>
+ * The mentions are filtered by the stream listener, and then each reply goes through the
+ * following stages, each one with its own queue and workers:
+ * <ol>
+ * <li><b>analyze</b>: selects the language of the reply.</li>
+ * <li><b>lookup</b>: looks up a rhyme in the store.</li>
+ * <li><b>fallback</b>: rhymes with the screen name or selects the default rhyme.</li>
+ * <li><b>compose</b>: formats the reply and queues it in the {@link TwitterScheduler}.</li>
+ * </ol>
+ * The scheduler is the only sender, so the Twitter rate limit is respected regardless of the
+ * number of workers of the other stages. The number of workers of each stage is configured in
+ * the <code>rhymestore.twitter.pipeline.&lt;stage&gt;.workers</code> property, and the latencies
+ * of all the stages are logged periodically.
+ * <p>
+ * Each {@link RhymeStore} serializes its operations on a single Redis connection, so each worker
+ * of the lookup and fallback stages reads the rhymes with its own
+ * {@link RhymeStore#createReader() reader} of the store, and the workers look up rhymes in
+ * parallel.
+ * 
+ * @author Ignasi Barrera
+ * @see Stage
+ */
+public class ReplyPipeline implements Runnable
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplyPipeline.class);
+
+    /** The name of the stage that selects the language of the reply. */
+    public static final String ANALYZE = "analyze";
+
+    /** The name of the stage that looks up a rhyme in the store. */
+    public static final String LOOKUP = "lookup";
+
+    /** The name of the stage that selects a rhyme when there is none in the store. */
+    public static final String FALLBACK = "fallback";
+
+    /** The name of the stage that formats the reply. */
+    public static final String COMPOSE = "compose";
+
+    /** The default maximum number of replies waiting in each stage. */
+    private static final int DEFAULT_CAPACITY = 100;
+
+    /** The default number of seconds between latency reports. */
+    private static final long DEFAULT_REPORT_INTERVAL = 300;
+
+    /** The time spent filtering each mention in the stream listener. */
+    private final LatencyHistogram filterLatency = new LatencyHistogram();
+
+    /** The stages, in order. */
+    private final List<Stage> stages;
+
+    /** Sends the replies respecting the rate limit. */
+    private final TwitterScheduler sender;
+
+    /** The number of seconds between latency reports. */
+    private final long reportInterval;
+
+    /** The scheduler of the latency reports. */
+    private ScheduledExecutorService reporter;
+
+    /** The readers of the stores used by each worker, by store. */
+    private final ThreadLocal<Map<RhymeStore, RhymeStore>> readers =
+        new ThreadLocal<Map<RhymeStore, RhymeStore>>()
+        {
+            @Override
+            protected Map<RhymeStore, RhymeStore> initialValue()
+            {
+                return new HashMap<RhymeStore, RhymeStore>();
+            }
+        };
+
+    /**
+     * Creates the pipeline configured for the given account.
+     * 
+     * @param sender Sends the replies respecting the rate limit.
+     * @param account The name of the account, or <code>null</code> for the default account.
+     */
+    public ReplyPipeline(final TwitterScheduler sender, final String account)
+    {
+        this(sender, getWorkers(account, ANALYZE, 1), getWorkers(account, LOOKUP, 4), getWorkers(
+            account, FALLBACK, 2), getWorkers(account, COMPOSE, 1), (int) getConfigValue(account,
+            Configuration.PIPELINE_CAPACITY_PROPERTY, DEFAULT_CAPACITY), getConfigValue(account,
+            Configuration.PIPELINE_REPORT_PROPERTY, DEFAULT_REPORT_INTERVAL));
+    }
+
+    /**
+     * Creates a pipeline.
+     * 
+     * @param sender Sends the replies respecting the rate limit.
+     * @param analyzeWorkers The number of workers of the analyze stage.
+     * @param lookupWorkers The number of workers of the lookup stage.
+     * @param fallbackWorkers The number of workers of the fallback stage.
+     * @param composeWorkers The number of workers of the compose stage.
+     * @param capacity The maximum number of replies waiting in each stage.
+     * @param reportInterval The number of seconds between latency reports.
+     */
+    /* package */ReplyPipeline(final TwitterScheduler sender, final int analyzeWorkers,
+        final int lookupWorkers, final int fallbackWorkers, final int composeWorkers,
+        final int capacity, final long reportInterval)
+    {
+        this.sender = sender;
+        this.reportInterval = reportInterval;
+
+        List<Stage> pipeline = new ArrayList<Stage>();
+        pipeline.add(new Stage(ANALYZE, analyzeWorkers, capacity)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                reply.analyze();
+            }
+        });
+        pipeline.add(new Stage(LOOKUP, lookupWorkers, capacity)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                reply.lookup(getReader(reply));
+            }
+        });
+        pipeline.add(new Stage(FALLBACK, fallbackWorkers, capacity)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                reply.fallback(getReader(reply));
+            }
+        });
+        pipeline.add(new Stage(COMPOSE, composeWorkers, capacity)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                reply.compose();
+
+                if (!ReplyPipeline.this.sender.addCommand(reply))
+                {
+                    LOGGER.debug("Reply queue full. Dropping {}", reply);
+                }
+            }
+        });
+
+        for (int i = 0; i < pipeline.size() - 1; i++)
+        {
+            pipeline.get(i).setNext(pipeline.get(i + 1));
+        }
+
+        this.stages = Collections.unmodifiableList(pipeline);
+    }
+
+    /**
+     * Gets the reader of the store of the given reply used by the current worker.
+     * 
+     * @param reply The reply.
+     * @return The reader of the store of the reply.
+     */
+    private RhymeStore getReader(final ReplyCommand reply)
+    {
+        reply.analyze();
+
+        Map<RhymeStore, RhymeStore> workerReaders = readers.get();
+        RhymeStore reader = workerReaders.get(reply.getRhymeStore());
+
+        if (reader == null)
+        {
+            reader = reply.getRhymeStore().createReader();
+            workerReaders.put(reply.getRhymeStore(), reader);
+        }
+
+        return reader;
+    }
+
+    /**
+     * Starts reporting the latencies of the stages.
+     */
+    public void start()
+    {
+        if (reportInterval > 0)
+        {
+            reporter = Executors.newSingleThreadScheduledExecutor();
+            reporter.scheduleWithFixedDelay(this, reportInterval, reportInterval,
+                TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the stages and reports the latencies.
+     */
+    public void shutdown()
+    {
+        if (reporter != null)
+        {
+            reporter.shutdown();
+        }
+
+        for (Stage stage : stages)
+        {
+            stage.shutdown();
+        }
+
+        run();
+    }
+
+    /**
+     * Queues the given reply in the first stage.
+     * 
+     * @param reply The reply to prepare and send.
+     * @return Boolean indicating if the reply has been queued.
+     */
+    public boolean submit(final ReplyCommand reply)
+    {
+        return stages.get(0).submit(reply);
+    }
+
+    /**
+     * Reports the latencies of the stages.
+     */
+    @Override
+    public void run()
+    {
+        LOGGER.info("Reply pipeline latencies:");
+        LOGGER.info("  filter: {}", filterLatency);
+        for (Stage stage : stages)
+        {
+            LOGGER.info("  {}", stage);
+        }
+        LOGGER.info("  send: queued={} {}", sender.getQueueDepth(), sender.getLatency());
+    }
+
+    /**
+     * Gets the given stage.
+     * 
+     * @param name The name of the stage.
+     * @return The stage, or <code>null</code> if it does not exist.
+     */
+    public Stage getStage(final String name)
+    {
+        for (Stage stage : stages)
+        {
+            if (stage.getName().equals(name))
+            {
+                return stage;
+            }
+        }
+
+        return null;
+    }
+
+    public List<Stage> getStages()
+    {
+        return stages;
+    }
+
+    public LatencyHistogram getFilterLatency()
+    {
+        return filterLatency;
+    }
+
+    /**
+     * Gets the configured number of workers of the given stage.
+     * 
+     * @param account The name of the account, or <code>null</code> for the default account.
+     * @param stage The name of the stage.
+     * @param defaultValue The number of workers if it is not configured.
+     * @return The number of workers of the stage.
+     */
+    private static int getWorkers(final String account, final String stage,
+        final int defaultValue)
+    {
+        return (int) getConfigValue(account, Configuration.PIPELINE_PREFIX + stage + ".workers",
+            defaultValue);
+    }
+
+    /**
+     * Gets the value of the given numeric configuration property.
+     * 
+     * @param account The name of the account, or <code>null</code> for the global value.
+     * @param propertyName The name of the property.
+     * @param defaultValue The value to use if the property is not set.
+     * @return The value of the property.
+     */
+    private static long getConfigValue(final String account, final String propertyName,
+        final long defaultValue)
+    {
+        String value = Configuration.getAccountConfigValue(account, propertyName);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.pipeline;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.util.LatencyHistogram;
+
+/**
+ * A stage of the {@link ReplyPipeline}.
+ * <p>
+ * Each stage has its own bounded queue and workers, and passes the replies to the next stage
+ * when they have been processed. Replies are discarded when the queue is full.
+ * 
+ * @author Ignasi Barrera
+ * @see ReplyPipeline
+ */
+public abstract class Stage
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Stage.class);
+
+    /** The name of the stage. */
+    private final String name;
+
+    /** The workers of the stage. */
+    private final ThreadPoolExecutor executor;
+
+    /** The time spent processing each reply. */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** The number of replies discarded because the queue was full. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** The number of replies that could not be processed. */
+    private final AtomicLong failed = new AtomicLong();
+
+    /** The next stage, or <code>null</code> if this is the last one. */
+    private Stage next;
+
+    /**
+     * Creates a stage.
+     * 
+     * @param name The name of the stage.
+     * @param workers The number of workers.
+     * @param capacity The maximum number of replies waiting in the queue.
+     */
+    public Stage(final String name, final int workers, final int capacity)
+    {
+        if (workers <= 0 || capacity <= 0)
+        {
+            throw new IllegalArgumentException("Workers and capacity must be positive");
+        }
+
+        this.name = name;
+        this.executor =
+            new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(capacity), new StageThreadFactory(name));
+    }
+
+    /**
+     * Processes the given reply.
+     * 
+     * @param reply The reply to process.
+     * @throws Exception If the reply cannot be processed. It will be discarded.
+     */
+    protected abstract void process(ReplyCommand reply) throws Exception;
+
+    /**
+     * Queues the given reply to be processed by the stage.
+     * 
+     * @param reply The reply to process.
+     * @return Boolean indicating if the reply has been queued.
+     */
+    public boolean submit(final ReplyCommand reply)
+    {
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    handle(reply);
+                }
+            });
+
+            return true;
+        }
+        catch (RejectedExecutionException ex)
+        {
+            rejected.incrementAndGet();
+            LOGGER.debug("The {} stage is full. Discarding {}", name, reply);
+            return false;
+        }
+    }
+
+    /**
+     * Processes the given reply and passes it to the next stage.
+     * 
+     * @param reply The reply to process.
+     */
+    private void handle(final ReplyCommand reply)
+    {
+        long start = System.nanoTime();
+
+        try
+        {
+            process(reply);
+        }
+        catch (Exception ex)
+        {
+            failed.incrementAndGet();
+            LOGGER.error("Could not " + name + " " + reply, ex);
+            return;
+        }
+        finally
+        {
+            latency.record(System.nanoTime() - start);
+        }
+
+        if (next != null)
+        {
+            next.submit(reply);
+        }
+    }
+
+    /**
+     * Stops the workers of the stage. The queued replies are discarded.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /* package */void setNext(final Stage next)
+    {
+        this.next = next;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getWorkers()
+    {
+        return executor.getCorePoolSize();
+    }
+
+    public int getQueueDepth()
+    {
+        return executor.getQueue().size();
+    }
+
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
+
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + ": workers=" + getWorkers() + " queued=" + getQueueDepth() + " rejected="
+            + getRejected() + " failed=" + getFailed() + " " + latency;
+    }
+
+    /**
+     * Names the workers after the stage.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class StageThreadFactory implements ThreadFactory
+    {
+        /** The name of the stage. */
+        private final String name;
+
+        /** The number of created workers. */
+        private final AtomicInteger count = new AtomicInteger();
+
+        public StageThreadFactory(final String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "reply-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -22,20 +22,27 @@
 
 package com.rhymestore.twitter.stream;
 
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import twitter4j.Status;
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
+import twitter4j.User;
 import twitter4j.UserMentionEntity;
 import twitter4j.UserStreamAdapter;
 
 import com.rhymestore.lang.WordParser;
-import com.rhymestore.lang.WordParserFactory;
-import com.rhymestore.lang.WordUtils;
+import com.rhymestore.lang.WordParserRegistry;
+import com.rhymestore.lang.WordTokenizer;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.BotIdentity;
+import com.rhymestore.twitter.IdentityCache;
 import com.rhymestore.twitter.TwitterScheduler;
 import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.twitter.pipeline.ReplyPipeline;
 
 /**
  * Read the mentions from the stream API and enqueue the replies.
@@ -48,81 +55,247 @@ public class GetMentionsListener extends UserStreamAdapter
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(GetMentionsListener.class);
 
-    /** The {@link WordParser} to use to check if the mention is well written. */
-    private final WordParser wordParser;
+    /** The {@link WordParser} of each language, to check if the mention is well written. */
+    private final WordParserRegistry registry;
+
+    /** The {@link WordTokenizer} used to get the last word of the mention. */
+    private final WordTokenizer tokenizer;
 
     /** The Twitter sync api. */
     private final Twitter twitter;
 
-    public GetMentionsListener(final Twitter twitter)
+    /** The scheduler of the replies, or <code>null</code> to reply immediately. */
+    private final TwitterScheduler scheduler;
+
+    /** The identity of the bot, to find the mentions to it. */
+    private final IdentityCache identity;
+
+    /** The last processed mention, or <code>null</code> if it is not persisted. */
+    private final MentionCheckpoint checkpoint;
+
+    /** The statuses already processed, to ignore the ones delivered again. */
+    private final SeenStatuses seen;
+
+    /** Limits the replies to each user, or <code>null</code> to reply to all the mentions. */
+    private final UserThrottle throttle;
+
+    /** Prepares the replies before queueing them, or <code>null</code> to queue them directly. */
+    private final ReplyPipeline pipeline;
+
+    /** The last users replied by the account. */
+    private final Map<Long, Boolean> repliedUsers;
+
+    public GetMentionsListener(final Twitter twitter) throws TwitterException
+    {
+        this(twitter, null);
+    }
+
+    public GetMentionsListener(final Twitter twitter, final TwitterScheduler scheduler)
+        throws TwitterException
+    {
+        this(twitter, scheduler, new IdentityCache(twitter));
+    }
+
+    public GetMentionsListener(final Twitter twitter, final TwitterScheduler scheduler,
+        final IdentityCache identity)
+    {
+        this(twitter, scheduler, identity, null);
+    }
+
+    public GetMentionsListener(final Twitter twitter, final TwitterScheduler scheduler,
+        final IdentityCache identity, final MentionCheckpoint checkpoint)
+    {
+        this(twitter, scheduler, identity, checkpoint, new SeenStatuses(), new UserThrottle(null));
+    }
+
+    public GetMentionsListener(final Twitter twitter, final TwitterScheduler scheduler,
+        final IdentityCache identity, final MentionCheckpoint checkpoint,
+        final SeenStatuses seen, final UserThrottle throttle)
+    {
+        this(twitter, scheduler, identity, checkpoint, seen, throttle, null);
+    }
+
+    public GetMentionsListener(final Twitter twitter, final TwitterScheduler scheduler,
+        final IdentityCache identity, final MentionCheckpoint checkpoint,
+        final SeenStatuses seen, final UserThrottle throttle, final ReplyPipeline pipeline)
+    {
+        this(twitter, scheduler, identity, checkpoint, seen, throttle, pipeline, ReplyCommand
+            .createRepliedUsers());
+    }
+
+    public GetMentionsListener(final Twitter twitter, final TwitterScheduler scheduler,
+        final IdentityCache identity, final MentionCheckpoint checkpoint,
+        final SeenStatuses seen, final UserThrottle throttle, final ReplyPipeline pipeline,
+        final Map<Long, Boolean> repliedUsers)
     {
         super();
-        this.wordParser = WordParserFactory.getWordParser();
+        this.registry = WordParserRegistry.getRegistry();
+        this.tokenizer = WordTokenizer.getTokenizer();
         this.twitter = twitter;
+        this.scheduler = scheduler;
+        this.identity = identity;
+        this.checkpoint = checkpoint;
+        this.seen = seen;
+        this.throttle = throttle;
+        this.pipeline = pipeline;
+        this.repliedUsers = repliedUsers;
     }
 
     @Override
     public void onStatus(final Status status)
     {
-        UserMentionEntity[] mentions = status.getUserMentionEntities();
-        if (mentions != null)
+        long start = System.nanoTime();
+        BotIdentity bot = identity.get();
+
+        // Only the mentions and the engagement with our statuses are processed
+        boolean mentioned = isMentioned(status, bot);
+        long repliedId =
+            status.getInReplyToStatusId() > 0 && bot.is(status.getInReplyToUserId()) ? status
+                .getInReplyToStatusId() : 0;
+        Status retweeted = status.isRetweet() ? status.getRetweetedStatus() : null;
+        long retweetedId =
+            retweeted != null && retweeted.getUser() != null
+                && bot.is(retweeted.getUser().getId()) ? retweeted.getId() : 0;
+
+        if (!mentioned && repliedId == 0 && retweetedId == 0)
         {
-            for (UserMentionEntity mention : mentions)
+            return;
+        }
+
+        // Stream reconnects may deliver the same status again
+        if (!seen.markSeen(status.getId()))
+        {
+            LOGGER.debug("Ignoring already processed status {}", status.getId());
+            return;
+        }
+
+        // Replies and retweets of our replies count as engagement
+        if (repliedId > 0)
+        {
+            engaged(repliedId);
+        }
+
+        if (retweetedId > 0)
+        {
+            engaged(retweetedId);
+        }
+
+        if (!mentioned)
+        {
+            return;
+        }
+
+        try
+        {
+            // Only reply if it is a valid mention
+            if (bot.is(status.getUser().getId()) || !isValidMention(status))
+            {
+                LOGGER.debug("Ignoring mention: {}", status.getText());
+            }
+            else if (throttle != null && !throttle.tryAcquire(status.getUser().getId()))
+            {
+                LOGGER.debug("Too many mentions from {}. Ignoring tweet {}", status.getUser()
+                    .getScreenName(), status.getId());
+            }
+            else
             {
-                try
+                LOGGER.debug("Processing tweet {} from {}", status.getId(), status.getUser()
+                    .getScreenName());
+
+                ReplyCommand reply = new ReplyCommand(twitter, status, repliedUsers);
+
+                if (pipeline != null)
                 {
-                    // Check if there is any mention to us
-                    if (isCurrentUser(twitter, mention.getScreenName()))
+                    if (!pipeline.submit(reply))
                     {
-                        // Only reply if it is a valid mention
-                        if (isValidMention(status)
-                            && !isCurrentUser(twitter, status.getUser().getScreenName()))
-                        {
-                            LOGGER.debug("Processing tweet {} from {}", status.getId(), status
-                                .getUser().getScreenName());
-
-                            ReplyCommand reply = new ReplyCommand(twitter, status);
-                            reply.execute();
-                        }
-                        else
-                        {
-                            LOGGER.debug("Ignoring mention: {}", status.getText());
-                        }
-
-                        // Do not process the same tweet more than once
-                        break;
+                        LOGGER.debug("Reply pipeline full. Dropping tweet {}", status.getId());
                     }
                 }
-                catch (TwitterException ex)
+                else if (scheduler == null)
+                {
+                    reply.execute();
+                }
+                else if (!scheduler.addCommand(reply))
                 {
-                    LOGGER.error("Could not process status: {}", status.getText());
+                    LOGGER.debug("Reply queue full. Dropping tweet {}", status.getId());
                 }
             }
+
+            if (pipeline != null)
+            {
+                pipeline.getFilterLatency().record(System.nanoTime() - start);
+            }
+
+            if (checkpoint != null)
+            {
+                checkpoint.update(status.getId());
+            }
+        }
+        catch (TwitterException ex)
+        {
+            LOGGER.error("Could not process status: {}", status.getText());
         }
     }
 
+    @Override
+    public void onFavorite(final User source, final User target, final Status favoritedStatus)
+    {
+        engaged(favoritedStatus.getId());
+    }
+
     /**
-     * Checks if the given mention is a valid mention according to the {@link WordParser} rules.
+     * Records an engagement with the given status in the store of the rhyme it was sent with, if
+     * it is one of our replies.
      * 
-     * @param mention The mention to check.
-     * @return Boolean indicating if the given mention is a valid mention.
+     * @param statusId The id of the status.
      */
-    private boolean isValidMention(final Status mention)
+    private void engaged(final long statusId)
+    {
+        for (String language : registry.getLanguages())
+        {
+            if (RhymeStore.getInstance(language).getUsage().engaged(statusId))
+            {
+                LOGGER.debug("Engagement with reply {}", statusId);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Checks if the given status mentions the bot.
+     * 
+     * @param status The status to check.
+     * @param bot The identity of the bot.
+     * @return Boolean indicating if the status mentions the bot.
+     */
+    private static boolean isMentioned(final Status status, final BotIdentity bot)
     {
-        String lastWord = WordUtils.getLastWord(mention.getText());
-        return wordParser.isWord(lastWord);
+        UserMentionEntity[] mentions = status.getUserMentionEntities();
+
+        if (mentions != null)
+        {
+            for (UserMentionEntity mention : mentions)
+            {
+                if (bot.is(mention.getId()))
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
     }
 
     /**
-     * Checks if the given user is the current Twitter user.
+     * Checks if the given mention is a valid mention according to the {@link WordParser} rules.
      * 
-     * @param twitter The current Twitter connection data.
-     * @param user The user to check.
-     * @return Boolean indicating if the given user is the current Twitter user.
-     * @throws TwitterException If an error occurs while checking user name.
+     * @param mention The mention to check.
+     * @return Boolean indicating if the given mention is a valid mention.
      */
-    private boolean isCurrentUser(final Twitter twitter, final String user) throws TwitterException
+    private boolean isValidMention(final Status mention)
     {
-        return user.equalsIgnoreCase(twitter.getScreenName());
+        String lastWord = tokenizer.lastWord(mention.getText());
+        String language = registry.identify(mention.getUser().getLang(), mention.getText());
+        return registry.getWordParser(language).isWord(lastWord);
     }
 }
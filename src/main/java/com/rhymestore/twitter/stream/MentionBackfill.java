@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.ConnectionLifeCycleListener;
+import twitter4j.Paging;
+import twitter4j.RateLimitStatus;
+import twitter4j.ResponseList;
+import twitter4j.Status;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.twitter.util.ErrorType;
+import com.rhymestore.twitter.util.TwitterUtils;
+
+/**
+ * Recovers the mentions posted while the stream was disconnected.
+ * <p>
+ * Each time the stream connects, the mentions newer than the {@link MentionCheckpoint} are read
+ * in pages from the mentions timeline and passed to the {@link GetMentionsListener}, oldest
+ * first. Mentions that were also delivered by the stream are ignored by the listener. When the
+ * rate limit of the mentions timeline is exhausted, the backfill waits until it is reset.
+ * 
+ * @author Ignasi Barrera
+ * @see MentionCheckpoint
+ */
+public class MentionBackfill implements ConnectionLifeCycleListener
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MentionBackfill.class);
+
+    /** The maximum number of mentions in each page. */
+    /* package */static final int PAGE_SIZE = 200;
+
+    /** The seconds to wait when the rate limit is exceeded and its reset time is unknown. */
+    /* package */static final long RATE_LIMIT_WINDOW = 900;
+
+    /** The default maximum number of pages read on each backfill. */
+    private static final int DEFAULT_MAX_PAGES = 4;
+
+    /** Orders the statuses by id. */
+    private static final Comparator<Status> BY_ID = new Comparator<Status>()
+    {
+        @Override
+        public int compare(final Status s1, final Status s2)
+        {
+            return s1.getId() < s2.getId() ? -1 : s1.getId() == s2.getId() ? 0 : 1;
+        }
+    };
+
+    /** The Twitter API client. */
+    private final Twitter twitter;
+
+    /** The listener that processes the recovered mentions. */
+    private final GetMentionsListener listener;
+
+    /** The id of the last processed mention. */
+    private final MentionCheckpoint checkpoint;
+
+    /** The maximum number of pages read on each backfill. */
+    private final int maxPages;
+
+    /** Runs the backfills out of the stream thread. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public MentionBackfill(final Twitter twitter, final GetMentionsListener listener,
+        final MentionCheckpoint checkpoint)
+    {
+        this(twitter, listener, checkpoint, getMaxPages());
+    }
+
+    /* package */MentionBackfill(final Twitter twitter, final GetMentionsListener listener,
+        final MentionCheckpoint checkpoint, final int maxPages)
+    {
+        this.twitter = twitter;
+        this.listener = listener;
+        this.checkpoint = checkpoint;
+        this.maxPages = maxPages;
+    }
+
+    @Override
+    public void onConnect()
+    {
+        // Read it now, before the stream delivers newer mentions
+        final long sinceId = checkpoint.get();
+
+        if (sinceId > 0)
+        {
+            executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    backfill(sinceId);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onDisconnect()
+    {
+        LOGGER.warn("Disconnected from the stream after mention {}", checkpoint.get());
+    }
+
+    @Override
+    public void onCleanUp()
+    {
+        // Nothing to clean up
+    }
+
+    /**
+     * Stops the pending backfills.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Recovers the mentions newer than the given one.
+     * 
+     * @param sinceId The id of the last processed mention.
+     * @return The number of recovered mentions.
+     */
+    /* package */int backfill(final long sinceId)
+    {
+        List<Status> mentions = new ArrayList<Status>();
+        long maxId = 0;
+
+        try
+        {
+            for (int page = 0; page < maxPages; page++)
+            {
+                Paging paging = new Paging().count(PAGE_SIZE).sinceId(sinceId);
+                if (maxId > 0)
+                {
+                    paging.maxId(maxId);
+                }
+
+                ResponseList<Status> statuses = getMentions(paging);
+                if (statuses == null || statuses.isEmpty())
+                {
+                    break;
+                }
+
+                mentions.addAll(statuses);
+                maxId = Collections.min(statuses, BY_ID).getId() - 1;
+
+                if (page + 1 < maxPages)
+                {
+                    waitForRateLimit(statuses.getRateLimitStatus());
+                }
+            }
+        }
+        catch (TwitterException ex)
+        {
+            LOGGER.error("Could not read the mentions after {}: {}", sinceId, ex.getMessage());
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+
+        if (!mentions.isEmpty())
+        {
+            LOGGER.info("Recovered {} mentions after {}", mentions.size(), sinceId);
+
+            Collections.sort(mentions, BY_ID);
+            for (Status mention : mentions)
+            {
+                listener.onStatus(mention);
+            }
+        }
+
+        return mentions.size();
+    }
+
+    /**
+     * Gets a page of the mentions timeline, waiting and trying again once if the rate limit is
+     * exceeded.
+     * 
+     * @param paging The page to read.
+     * @return The mentions in the page.
+     * @throws TwitterException If the mentions cannot be read.
+     * @throws InterruptedException If interrupted while waiting for the rate limit.
+     */
+    private ResponseList<Status> getMentions(final Paging paging) throws TwitterException,
+        InterruptedException
+    {
+        try
+        {
+            return twitter.getMentionsTimeline(paging);
+        }
+        catch (TwitterException ex)
+        {
+            if (TwitterUtils.getErrorType(ex) != ErrorType.RATE_LIMITED)
+            {
+                throw ex;
+            }
+
+            RateLimitStatus status = ex.getRateLimitStatus();
+            long seconds = status != null ? status.getSecondsUntilReset() : RATE_LIMIT_WINDOW;
+
+            LOGGER.info("Mentions rate limit exceeded. Waiting {} seconds", seconds);
+            sleep(TimeUnit.SECONDS.toMillis(Math.max(0, seconds)));
+            return twitter.getMentionsTimeline(paging);
+        }
+    }
+
+    /**
+     * Waits until the rate limit is reset, if it has been exhausted.
+     * 
+     * @param status The rate limit status.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void waitForRateLimit(final RateLimitStatus status) throws InterruptedException
+    {
+        if (status != null && status.getRemaining() <= 0)
+        {
+            LOGGER.info("Mentions rate limit exhausted. Waiting {} seconds",
+                status.getSecondsUntilReset());
+            sleep(TimeUnit.SECONDS.toMillis(Math.max(0, status.getSecondsUntilReset())));
+        }
+    }
+
+    /**
+     * Waits the given time.
+     * 
+     * @param millis The time to wait, in milliseconds.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    /* package */void sleep(final long millis) throws InterruptedException
+    {
+        Thread.sleep(millis);
+    }
+
+    /**
+     * Gets the configured maximum number of pages read on each backfill.
+     * 
+     * @return The maximum number of pages.
+     */
+    private static int getMaxPages()
+    {
+        String value = Configuration.getConfigValue(Configuration.BACKFILL_PAGES_PROPERTY);
+        return value == null ? DEFAULT_MAX_PAGES : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+
+import com.rhymestore.store.Keymaker;
+import com.rhymestore.store.RedisUtils;
+
+/**
+ * Persists the id of the last processed mention, so the mentions posted while the stream is
+ * disconnected or the listener is stopped can be recovered.
+ * <p>
+ * Only ids greater than the current one are written, so the checkpoint never goes back.
+ * 
+ * @author Ignasi Barrera
+ * @see MentionBackfill
+ */
+public class MentionCheckpoint
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MentionCheckpoint.class);
+
+    /** The key where the id of the last processed mention is stored. */
+    /* package */static final String LAST_MENTION_KEY = "twitter:lastmention";
+
+    /** The Redis connection. */
+    private final Jedis redis;
+
+    /** The key where the id of the last processed mention of the account is stored. */
+    private final String key;
+
+    /** The id of the last processed mention, or <code>-1</code> if it has not been read yet. */
+    private long lastId = -1;
+
+    /**
+     * Creates a checkpoint in the configured Redis database.
+     */
+    public MentionCheckpoint()
+    {
+        this((String) null);
+    }
+
+    /**
+     * Creates a checkpoint for the given account in the configured Redis database.
+     * 
+     * @param account The name of the account, or <code>null</code> for the default account.
+     */
+    public MentionCheckpoint(final String account)
+    {
+        this(RedisUtils.newConnection(), account);
+    }
+
+    /**
+     * Creates a checkpoint for the given account in the given Redis database.
+     * 
+     * @param redis The Redis connection.
+     * @param account The name of the account, or <code>null</code> for the default account.
+     */
+    /* package */MentionCheckpoint(final Jedis redis, final String account)
+    {
+        this.redis = redis;
+        this.key =
+            account == null ? LAST_MENTION_KEY : new Keymaker("twitter").build(account,
+                "lastmention").toString();
+    }
+
+    /**
+     * Gets the id of the last processed mention.
+     * 
+     * @return The id of the last processed mention, or <code>0</code> if it is unknown.
+     */
+    public synchronized long get()
+    {
+        if (lastId < 0)
+        {
+            try
+            {
+                RedisUtils.connect(redis);
+                String value = redis.get(key);
+                lastId = value == null ? 0 : Long.parseLong(value);
+            }
+            catch (Exception ex)
+            {
+                LOGGER.warn("Could not read the last processed mention: {}", ex.getMessage());
+                return 0;
+            }
+        }
+
+        return lastId;
+    }
+
+    /**
+     * Records that the given mention has been processed.
+     * 
+     * @param statusId The id of the mention.
+     */
+    public synchronized void update(final long statusId)
+    {
+        if (statusId <= get())
+        {
+            return;
+        }
+
+        lastId = statusId;
+
+        try
+        {
+            RedisUtils.connect(redis);
+            redis.set(key, String.valueOf(statusId));
+        }
+        catch (Exception ex)
+        {
+            // The next mention will write it
+            LOGGER.warn("Could not write the last processed mention: {}", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.TransactionBlock;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.store.Keymaker;
+import com.rhymestore.store.RedisUtils;
+
+/**
+ * Remembers the statuses that have already been processed, so the duplicates delivered by the
+ * stream API after a reconnect are ignored before any work is done.
+ * <p>
+ * The ids are kept in two Bloom filters: one for the current time window and one for the
+ * previous one. When a window ends, the previous filter is cleared and reused for the next
+ * window, so memory is constant and ids are remembered for at least one window. A Bloom filter
+ * may report an unseen status as seen, so the filters are sized to keep that below
+ * {@link #FALSE_POSITIVE_RATE} for the configured number of statuses per window.
+ * <p>
+ * Optionally, the ids can also be shared through Redis, so several listeners do not process the
+ * same status. Redis is only checked for the statuses that are not in the local filters.
+ * 
+ * @author Ignasi Barrera
+ * @see GetMentionsListener
+ */
+public class SeenStatuses
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeenStatuses.class);
+
+    /** The probability to report an unseen status as seen. */
+    /* package */static final double FALSE_POSITIVE_RATE = 0.001;
+
+    /** The default number of statuses expected in each window. */
+    private static final int DEFAULT_CAPACITY = 100000;
+
+    /** The default number of seconds of each window. */
+    private static final long DEFAULT_WINDOW = 3600;
+
+    /** The number of bits in each filter. */
+    private final int size;
+
+    /** The number of bits set for each status. */
+    private final int hashes;
+
+    /** The length of each window, in milliseconds. */
+    private final long window;
+
+    /** The filter of the current window. */
+    private long[] current;
+
+    /** The filter of the previous window. */
+    private long[] previous;
+
+    /** The time the current window started. */
+    private long windowStart;
+
+    /** The namespace of the shared ids in Redis. */
+    private final Keymaker seenns;
+
+    /** The Redis connection used to share the ids, or <code>null</code> if they are not shared. */
+    private final Jedis redis;
+
+    /**
+     * Creates the configured set of seen statuses.
+     */
+    public SeenStatuses()
+    {
+        this((String) null);
+    }
+
+    /**
+     * Creates the configured set of seen statuses of the given account.
+     * 
+     * @param account The name of the account, or <code>null</code> for the default account.
+     */
+    public SeenStatuses(final String account)
+    {
+        this((int) getConfigValue(account, Configuration.SEEN_CAPACITY_PROPERTY,
+            DEFAULT_CAPACITY), TimeUnit.SECONDS.toMillis(getConfigValue(account,
+            Configuration.SEEN_WINDOW_PROPERTY, DEFAULT_WINDOW)),
+            isShared(account) ? RedisUtils.newConnection() : null, account);
+    }
+
+    /**
+     * Creates a set of seen statuses.
+     * 
+     * @param capacity The number of statuses expected in each window.
+     * @param window The length of each window, in milliseconds.
+     * @param redis The Redis connection used to share the ids, or <code>null</code> to keep them
+     *            only in memory.
+     */
+    /* package */SeenStatuses(final int capacity, final long window, final Jedis redis)
+    {
+        this(capacity, window, redis, null);
+    }
+
+    /**
+     * Creates a set of seen statuses.
+     * 
+     * @param capacity The number of statuses expected in each window.
+     * @param window The length of each window, in milliseconds.
+     * @param redis The Redis connection used to share the ids, or <code>null</code> to keep them
+     *            only in memory.
+     * @param account The name of the account, or <code>null</code> for the default account.
+     *            Each account processes the statuses that mention it.
+     */
+    /* package */SeenStatuses(final int capacity, final long window, final Jedis redis,
+        final String account)
+    {
+        if (capacity <= 0 || window <= 0)
+        {
+            throw new IllegalArgumentException("Capacity and window must be positive");
+        }
+
+        // Optimal Bloom filter size and number of hash functions for the expected capacity
+        double bits = -capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2));
+        this.size = (int) Math.min(Integer.MAX_VALUE - 63, Math.ceil(bits));
+        this.hashes = Math.max(1, (int) Math.round(size / (double) capacity * Math.log(2)));
+        this.window = window;
+        this.redis = redis;
+        this.seenns = account == null ? new Keymaker("seen") : new Keymaker("seen").build(account);
+
+        current = new long[(size + 63) / 64];
+        previous = new long[current.length];
+        windowStart = currentTime();
+    }
+
+    /**
+     * Marks the given status as seen.
+     * <p>
+     * The local filters are checked first, and Redis is only checked for the statuses that are not
+     * in them, without holding the lock of the filters.
+     * 
+     * @param statusId The id of the status.
+     * @return Boolean indicating if the status had not been seen before.
+     */
+    public boolean markSeen(final long statusId)
+    {
+        return markLocal(statusId) && (redis == null || markShared(statusId));
+    }
+
+    /**
+     * Marks the given status as seen in the local filters.
+     * 
+     * @param statusId The id of the status.
+     * @return Boolean indicating if the status was not in the local filters.
+     */
+    private synchronized boolean markLocal(final long statusId)
+    {
+        if (isSeen(statusId))
+        {
+            return false;
+        }
+
+        long hash = mix(statusId);
+        for (int i = 0; i < hashes; i++)
+        {
+            int bit = getBit(hash, i);
+            current[bit >>> 6] |= 1L << bit;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if the given status has been seen in the current or the previous window.
+     * 
+     * @param statusId The id of the status.
+     * @return Boolean indicating if the status has been seen.
+     */
+    /* package */synchronized boolean isSeen(final long statusId)
+    {
+        rotate();
+
+        long hash = mix(statusId);
+        boolean inCurrent = true;
+        boolean inPrevious = true;
+        for (int i = 0; i < hashes && (inCurrent || inPrevious); i++)
+        {
+            int bit = getBit(hash, i);
+            inCurrent &= isSet(current, bit);
+            inPrevious &= isSet(previous, bit);
+        }
+
+        return inCurrent || inPrevious;
+    }
+
+    /**
+     * Marks the given status as seen in Redis.
+     * <p>
+     * The key and its expiration are set in the same transaction, so a key is never left without
+     * expiration.
+     * 
+     * @param statusId The id of the status.
+     * @return Boolean indicating if no other listener has seen the status.
+     */
+    private boolean markShared(final long statusId)
+    {
+        final String key = seenns.build(String.valueOf(statusId)).toString();
+
+        // The connection is not thread safe
+        synchronized (redis)
+        {
+            try
+            {
+                RedisUtils.connect(redis);
+
+                List<Object> replies = redis.multi(new TransactionBlock()
+                {
+                    @Override
+                    public void execute()
+                    {
+                        setnx(key, "1");
+
+                        // Shared ids are remembered as long as the local ones
+                        expire(key, (int) TimeUnit.MILLISECONDS.toSeconds(2 * window));
+                    }
+                });
+
+                return ((Number) replies.get(0)).intValue() == 1;
+            }
+            catch (Exception ex)
+            {
+                // Better to risk a duplicate reply than to miss the mention
+                LOGGER.warn("Could not check the shared seen statuses: {}", ex.getMessage());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Starts a new window if the current one has ended.
+     */
+    private void rotate()
+    {
+        long now = currentTime();
+        if (now - windowStart >= window)
+        {
+            long[] cleared = previous;
+            Arrays.fill(cleared, 0L);
+
+            // After more than one window, the current ids are too old as well
+            if (now - windowStart >= 2 * window)
+            {
+                Arrays.fill(current, 0L);
+            }
+
+            previous = current;
+            current = cleared;
+            windowStart = now;
+        }
+    }
+
+    /**
+     * Gets the current time, in milliseconds.
+     * 
+     * @return The current time.
+     */
+    /* package */long currentTime()
+    {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the bit set by the given hash function, combining the two halves of the hash.
+     * 
+     * @param hash The hash of the status id.
+     * @param index The index of the hash function.
+     * @return The bit of the filter.
+     */
+    private int getBit(final long hash, final int index)
+    {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return ((h1 + index * h2) & Integer.MAX_VALUE) % size;
+    }
+
+    /**
+     * Checks if the given bit is set in the filter.
+     * 
+     * @param filter The filter.
+     * @param bit The bit to check.
+     * @return Boolean indicating if the bit is set.
+     */
+    private static boolean isSet(final long[] filter, final int bit)
+    {
+        return (filter[bit >>> 6] & 1L << bit) != 0;
+    }
+
+    /**
+     * Spreads the bits of the status id, since consecutive ids only differ in their lower bits.
+     * 
+     * @param value The value to mix.
+     * @return The mixed value.
+     */
+    private static long mix(final long value)
+    {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Checks if the seen statuses of the given account are shared through Redis.
+     * 
+     * @param account The name of the account, or <code>null</code> for the default account.
+     * @return Boolean indicating if the seen statuses are shared.
+     */
+    private static boolean isShared(final String account)
+    {
+        return Boolean.parseBoolean(Configuration.getAccountConfigValue(account,
+            Configuration.SEEN_SHARED_PROPERTY));
+    }
+
+    /**
+     * Gets the value of the given numeric configuration property.
+     * 
+     * @param account The name of the account, or <code>null</code> for the global value.
+     * @param propertyName The name of the property.
+     * @param defaultValue The value to use if the property is not set.
+     * @return The value of the property.
+     */
+    private static long getConfigValue(final String account, final String propertyName,
+        final long defaultValue)
+    {
+        String value = Configuration.getAccountConfigValue(account, propertyName);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.store.Keymaker;
+import com.rhymestore.store.RedisUtils;
+
+/**
+ * Limits the number of replies to each user in a sliding time window, so a few users cannot use
+ * the whole Twitter budget.
+ * <p>
+ * The sliding window is approximated with the counts of the current and the previous fixed
+ * windows, weighting the previous one by the part of it that is still inside the sliding
+ * window. Every mention is counted, including the ones that are not answered, so users that keep
+ * mentioning the bot stay throttled.
+ * <p>
+ * In memory, the counts are kept in a Count-Min sketch for each window, so memory does not
+ * depend on the number of users. The sketch may overestimate the count of a user, but never
+ * underestimates it. When the counts are shared through Redis, each user has an exact counter
+ * for each window that expires with it.
+ * 
+ * @author Ignasi Barrera
+ * @see GetMentionsListener
+ */
+public class UserThrottle
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserThrottle.class);
+
+    /** The number of rows of the sketches. */
+    /* package */static final int DEPTH = 4;
+
+    /** The default number of replies to each user in each window. */
+    private static final int DEFAULT_LIMIT = 5;
+
+    /** The default number of seconds of each window. */
+    private static final long DEFAULT_WINDOW = 3600;
+
+    /** The default number of counters in each row of the sketches. */
+    private static final int DEFAULT_WIDTH = 65536;
+
+    /** The maximum number of replies to each user in each window. */
+    private final int limit;
+
+    /** The length of each window, in milliseconds. */
+    private final long window;
+
+    /** The number of counters in each row of the sketches. */
+    private final int width;
+
+    /** The counts of the current window. */
+    private int[][] current;
+
+    /** The counts of the previous window. */
+    private int[][] previous;
+
+    /** The index of the current window since the epoch. */
+    private long windowIndex;
+
+    /** The namespace of the shared counters in Redis. */
+    private final Keymaker throttlens;
+
+    /** The Redis connection used to share the counts, or <code>null</code> if not shared. */
+    private final Jedis redis;
+
+    /**
+     * Creates the throttle configured for the given account.
+     * 
+     * @param account The name of the account, or <code>null</code> for the default account.
+     */
+    public UserThrottle(final String account)
+    {
+        this((int) getConfigValue(account, Configuration.THROTTLE_LIMIT_PROPERTY, DEFAULT_LIMIT),
+            TimeUnit.SECONDS.toMillis(getConfigValue(account,
+                Configuration.THROTTLE_WINDOW_PROPERTY, DEFAULT_WINDOW)), (int) getConfigValue(
+                account, Configuration.THROTTLE_WIDTH_PROPERTY, DEFAULT_WIDTH),
+            isShared(account) ? RedisUtils.newConnection() : null, account);
+    }
+
+    /**
+     * Creates a throttle.
+     * 
+     * @param limit The maximum number of replies to each user in each window.
+     * @param window The length of each window, in milliseconds.
+     * @param width The number of counters in each row of the sketches.
+     * @param redis The Redis connection used to share the counts, or <code>null</code> to keep
+     *            them in memory.
+     * @param account The name of the account, or <code>null</code> for the default account.
+     */
+    /* package */UserThrottle(final int limit, final long window, final int width,
+        final Jedis redis, final String account)
+    {
+        if (limit <= 0 || window <= 0 || width <= 0)
+        {
+            throw new IllegalArgumentException("Limit, window and width must be positive");
+        }
+
+        this.limit = limit;
+        this.window = window;
+        this.width = width;
+        this.redis = redis;
+        this.throttlens =
+            account == null ? new Keymaker("throttle") : new Keymaker("throttle").build(account);
+
+        // Sketches are only needed when the counts are kept in memory
+        current = redis == null ? new int[DEPTH][width] : null;
+        previous = redis == null ? new int[DEPTH][width] : null;
+        windowIndex = currentTime() / window;
+    }
+
+    /**
+     * Counts a mention of the given user and checks if it can be answered.
+     * 
+     * @param userId The id of the user.
+     * @return Boolean indicating if the mention can be answered.
+     */
+    public boolean tryAcquire(final long userId)
+    {
+        long now = currentTime();
+        double weight = 1.0 - (double) (now % window) / window;
+
+        double count =
+            redis == null ? countLocal(userId, now, weight) : countShared(userId, now, weight);
+        return count <= limit;
+    }
+
+    /**
+     * Counts a mention of the given user in the sketches.
+     * 
+     * @param userId The id of the user.
+     * @param now The current time.
+     * @param weight The weight of the previous window.
+     * @return The estimated number of mentions in the sliding window, including this one.
+     */
+    private synchronized double countLocal(final long userId, final long now, final double weight)
+    {
+        rotate(now / window);
+
+        int inCurrent = Integer.MAX_VALUE;
+        int inPrevious = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++)
+        {
+            int column = getColumn(userId, row);
+
+            // Saturate instead of overflowing
+            if (current[row][column] < Integer.MAX_VALUE)
+            {
+                current[row][column]++;
+            }
+
+            inCurrent = Math.min(inCurrent, current[row][column]);
+            inPrevious = Math.min(inPrevious, previous[row][column]);
+        }
+
+        return inPrevious * weight + inCurrent;
+    }
+
+    /**
+     * Counts a mention of the given user in Redis.
+     * 
+     * @param userId The id of the user.
+     * @param now The current time.
+     * @param weight The weight of the previous window.
+     * @return The number of mentions in the sliding window, including this one.
+     */
+    private synchronized double countShared(final long userId, final long now,
+        final double weight)
+    {
+        long index = now / window;
+        String user = String.valueOf(userId);
+
+        try
+        {
+            RedisUtils.connect(redis);
+
+            String currentKey = throttlens.build(user, String.valueOf(index)).toString();
+            int inCurrent = redis.incr(currentKey);
+            if (inCurrent == 1)
+            {
+                // Still needed as the previous window of the next one
+                redis.expire(currentKey, (int) TimeUnit.MILLISECONDS.toSeconds(2 * window));
+            }
+
+            String inPrevious = redis.get(throttlens.build(user, String.valueOf(index - 1))
+                .toString());
+            return (inPrevious == null ? 0 : Integer.parseInt(inPrevious)) * weight + inCurrent;
+        }
+        catch (Exception ex)
+        {
+            // Do not stop replying because the counts are not available
+            LOGGER.warn("Could not read the shared reply counts: {}", ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Moves the sketches to the given window.
+     * 
+     * @param index The index of the current window.
+     */
+    private void rotate(final long index)
+    {
+        if (index == windowIndex)
+        {
+            return;
+        }
+
+        int[][] cleared = previous;
+        clear(cleared);
+
+        if (index == windowIndex + 1)
+        {
+            previous = current;
+        }
+        else
+        {
+            // More than one window has passed, so the current counts are too old as well
+            clear(current);
+            previous = current;
+        }
+
+        current = cleared;
+        windowIndex = index;
+    }
+
+    /**
+     * Gets the counter of the given user in a row of the sketches.
+     * 
+     * @param userId The id of the user.
+     * @param row The row of the sketch.
+     * @return The column of the counter.
+     */
+    private int getColumn(final long userId, final int row)
+    {
+        // A different seed for each row
+        long hash = userId + (row + 1) * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) ((hash & Long.MAX_VALUE) % width);
+    }
+
+    /**
+     * Resets all the counters of the given sketch.
+     * 
+     * @param sketch The sketch to reset.
+     */
+    private static void clear(final int[][] sketch)
+    {
+        for (int[] row : sketch)
+        {
+            Arrays.fill(row, 0);
+        }
+    }
+
+    /**
+     * Gets the current time, in milliseconds.
+     * 
+     * @return The current time.
+     */
+    /* package */long currentTime()
+    {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Checks if the reply counts of the given account are shared through Redis.
+     * 
+     * @param account The name of the account, or <code>null</code> for the default account.
+     * @return Boolean indicating if the reply counts are shared.
+     */
+    private static boolean isShared(final String account)
+    {
+        return Boolean.parseBoolean(Configuration.getAccountConfigValue(account,
+            Configuration.THROTTLE_SHARED_PROPERTY));
+    }
+
+    /**
+     * Gets the value of the given numeric configuration property.
+     * 
+     * @param account The name of the account, or <code>null</code> for the global value.
+     * @param propertyName The name of the property.
+     * @param defaultValue The value to use if the property is not set.
+     * @return The value of the property.
+     */
+    private static long getConfigValue(final String account, final String propertyName,
+        final long defaultValue)
+    {
+        String value = Configuration.getAccountConfigValue(account, propertyName);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
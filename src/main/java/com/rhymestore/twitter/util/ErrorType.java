@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.util;
+
+/**
+ * The types of errors returned by the Twitter API.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterUtils#getErrorType(twitter4j.TwitterException)
+ */
+public enum ErrorType
+{
+    /** The status has already been sent. There is nothing left to do. */
+    DUPLICATE(false),
+
+    /** The rate limit has been exceeded. The call can be retried later. */
+    RATE_LIMITED(true),
+
+    /** Twitter could not process the call. The call can be retried later. */
+    SERVER(true),
+
+    /** Twitter could not be reached. The call can be retried later. */
+    NETWORK(true),
+
+    /** The call is not valid. Retrying it will fail again. */
+    CLIENT(false);
+
+    /** Indicates if the calls that fail with this error can be retried. */
+    private final boolean retriable;
+
+    private ErrorType(final boolean retriable)
+    {
+        this.retriable = retriable;
+    }
+
+    /**
+     * Checks if the calls that fail with this error can be retried.
+     * 
+     * @return Boolean indicating if the calls that fail with this error can be retried.
+     */
+    public boolean isRetriable()
+    {
+        return retriable;
+    }
+}
@@ -68,6 +68,18 @@ public class TwitterUtils
         return tweet(user(user) + " " + tweet);
     }
 
+    /**
+     * Gets the maximum length of a tweet that can be sent in a reply to the given user without
+     * being truncated.
+     * 
+     * @param user The user to reply.
+     * @return The maximum length of the tweet.
+     */
+    public static int replyLength(final String user)
+    {
+        return MAX_TWEET_LENGTH - user(user).length() - 1;
+    }
+
     /**
      * Builds Twitter user name.
      * 
@@ -90,4 +102,35 @@ public class TwitterUtils
         return ex.getStatusCode() == HttpResponseCode.FORBIDDEN
             && ex.getMessage().contains(DUPLICATE_TWEET_ERROR);
     }
+
+    /**
+     * Classifies the error returned by the Twitter API.
+     * 
+     * @param ex The exception to classify.
+     * @return The type of the error.
+     */
+    public static ErrorType getErrorType(final TwitterException ex)
+    {
+        if (isDuplicateTweetError(ex))
+        {
+            return ErrorType.DUPLICATE;
+        }
+
+        if (ex.exceededRateLimitation() || ex.getStatusCode() == HttpResponseCode.TOO_MANY_REQUESTS)
+        {
+            return ErrorType.RATE_LIMITED;
+        }
+
+        if (ex.getStatusCode() >= HttpResponseCode.INTERNAL_SERVER_ERROR)
+        {
+            return ErrorType.SERVER;
+        }
+
+        if (ex.isCausedByNetworkIssue() || ex.getStatusCode() <= 0)
+        {
+            return ErrorType.NETWORK;
+        }
+
+        return ErrorType.CLIENT;
+    }
 }
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with buckets of increasing powers of two microseconds.
+ * <p>
+ * Recording is lock free and takes constant time and memory. Percentiles are approximated by
+ * the upper bound of their bucket, so they are at most twice the real value.
+ * 
+ * @author Ignasi Barrera
+ */
+public class LatencyHistogram
+{
+    /** The number of buckets; the last one holds the latencies over 2^30 microseconds. */
+    /* package */static final int BUCKETS = 32;
+
+    /** The number of latencies in each bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /** The number of recorded latencies. */
+    private final AtomicLong count = new AtomicLong();
+
+    /** The sum of the recorded latencies, in microseconds. */
+    private final AtomicLong total = new AtomicLong();
+
+    /** The maximum recorded latency, in microseconds. */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     * 
+     * @param nanos The latency, in nanoseconds.
+     */
+    public void record(final long nanos)
+    {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        buckets.incrementAndGet(getBucket(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros))
+        {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Gets the given percentile of the recorded latencies.
+     * 
+     * @param percentile The percentile, between <code>0</code> and <code>100</code>.
+     * @return The upper bound of the bucket of the percentile, in microseconds, or
+     *         <code>0</code> if no latency has been recorded.
+     */
+    public long getPercentile(final double percentile)
+    {
+        long recorded = count.get();
+        if (recorded == 0)
+        {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(recorded * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += buckets.get(i);
+            if (seen >= rank)
+            {
+                return Math.min(getUpperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     * 
+     * @return The mean latency, in microseconds.
+     */
+    public long getMean()
+    {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : total.get() / recorded;
+    }
+
+    /**
+     * Gets the maximum recorded latency.
+     * 
+     * @return The maximum latency, in microseconds.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Gets the bucket of the given latency.
+     * 
+     * @param micros The latency, in microseconds.
+     * @return The bucket of the latency.
+     */
+    /* package */static int getBucket(final long micros)
+    {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Gets the maximum latency of the given bucket.
+     * 
+     * @param bucket The bucket.
+     * @return The maximum latency of the bucket, in microseconds.
+     */
+    private static long getUpperBound(final int bucket)
+    {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount() + " mean=" + getMean() + "us p50=" + getPercentile(50)
+            + "us p99=" + getPercentile(99) + "us max=" + getMax() + "us";
+    }
+}
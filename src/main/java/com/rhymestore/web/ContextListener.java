@@ -24,6 +24,8 @@ package com.rhymestore.web;
 
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -33,10 +35,14 @@ import org.slf4j.LoggerFactory;
 
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
-import twitter4j.TwitterFactory;
 
-import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationReloader;
+import com.rhymestore.lang.WordParserRegistry;
+import com.rhymestore.store.IndexSweeper;
 import com.rhymestore.store.RhymeLoader;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.BotIdentity;
+import com.rhymestore.twitter.TwitterAccount;
 import com.rhymestore.util.SSLUtils;
 
 /**
@@ -56,26 +62,31 @@ public class ContextListener implements ServletContextListener
 	/** Context parameter name used to enable or disable twitter communication. */
 	private static final String TWITTER_ENABLE_PARAM_NAME = "TWITTER_ENABLED";
 
+	/** Clean up the rhyme index of each language in background. */
+	private final List<IndexSweeper> sweepers = new ArrayList<IndexSweeper>();
+
+	/** Reloads the configuration file when it changes. */
+	private final ConfigurationReloader configReloader = new ConfigurationReloader();
+
 	@Override
 	public void contextInitialized(final ServletContextEvent sce)
 	{
 		// Starts the Twitter scheduler
 		if (twitterEnabled(sce))
 		{
-			Configuration.loadTwitterConfig();
-
-			// Connects to Twitter
-			Twitter twitter = new TwitterFactory().getInstance();
+			// Connects to Twitter with the primary account
+			Twitter twitter = TwitterAccount.getAccounts().get(0)
+					.createTwitter();
 
 			try
 			{
-				LOGGER.info("Connected to Twitter as: {}",
-						twitter.getScreenName());
+				BotIdentity identity = BotIdentity.resolve(twitter);
+				LOGGER.info("Connected to Twitter as: {}", identity);
 
 				// Store the user name in the servlet context to make it
 				// available to Controllers
 				sce.getServletContext().setAttribute(TWITTER_USER_NAME,
-						twitter.getScreenName());
+						identity.getScreenName());
 			}
 			catch (TwitterException ex)
 			{
@@ -93,12 +104,37 @@ public class ContextListener implements ServletContextListener
 
 		// Load the default rhymes
 		loadDefaultRhymes();
+
+		// Start the index sweepers and the usage trackers
+		for (String language : WordParserRegistry.getRegistry().getLanguages())
+		{
+			IndexSweeper sweeper = new IndexSweeper(
+					RhymeStore.getInstance(language));
+			sweeper.start();
+			sweepers.add(sweeper);
+
+			RhymeStore.getInstance(language).getUsage().start();
+		}
+
+		// Watch the configuration file to reload the default rhymes
+		configReloader.start();
 	}
 
 	@Override
 	public void contextDestroyed(final ServletContextEvent sce)
 	{
+		configReloader.shutdown();
+
+		for (IndexSweeper sweeper : sweepers)
+		{
+			sweeper.shutdown();
+		}
 
+		// Write the pending usage counters
+		for (String language : WordParserRegistry.getRegistry().getLanguages())
+		{
+			RhymeStore.getInstance(language).getUsage().shutdown();
+		}
 	}
 
 	/**
@@ -22,7 +22,9 @@
 
 package com.rhymestore.config;
 
+import static com.rhymestore.config.Configuration.QUEUE_CAPACITY_PROPERTY;
 import static com.rhymestore.config.Configuration.REDIS_HOST_PROPERTY;
+import static com.rhymestore.config.Configuration.getAccountConfigValue;
 import static com.rhymestore.config.Configuration.getConfigValue;
 import static com.rhymestore.config.Configuration.getRequiredConfigValue;
 import static org.testng.Assert.assertEquals;
@@ -55,4 +57,13 @@ public class ConfigurationTest
     {
         getRequiredConfigValue("unexisting");
     }
+
+    @Test
+    public void testGetAccountConfigValue()
+    {
+        assertEquals(getAccountConfigValue(null, QUEUE_CAPACITY_PROPERTY), "100");
+        assertEquals(getAccountConfigValue("rimas", QUEUE_CAPACITY_PROPERTY), "10");
+        assertEquals(getAccountConfigValue("other", QUEUE_CAPACITY_PROPERTY), "100");
+        assertEquals(getAccountConfigValue("rimas", REDIS_HOST_PROPERTY), "localhost");
+    }
 }
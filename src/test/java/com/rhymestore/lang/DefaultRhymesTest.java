@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * Unit tests for the {@link DefaultRhymes} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class DefaultRhymesTest
+{
+    /** The number of threads used in the concurrency tests. */
+    private static final int THREADS = 16;
+
+    /** The number of rhymes requested by each thread. */
+    private static final int REQUESTS = 10000;
+
+    @AfterMethod
+    public void tearDown()
+    {
+        Configuration.reload();
+    }
+
+    @Test
+    public void testRotation()
+    {
+        DefaultRhymes rhymes = new DefaultRhymes(Configuration.DEFAULT_RHYME_PROPERTY);
+
+        assertEquals(rhymes.size(), 2);
+        assertEquals(rhymes.next(), rhymes.get(0));
+        assertEquals(rhymes.next(), rhymes.get(1));
+        assertEquals(rhymes.next(), rhymes.get(0));
+    }
+
+    @Test
+    public void testLanguagePools()
+    {
+        DefaultRhymes spanish = new DefaultRhymes(Configuration.DEFAULT_RHYME_PROPERTY);
+        DefaultRhymes english = new DefaultRhymes(Configuration.ENGLISH_DEFAULT_RHYME_PROPERTY);
+
+        assertEquals(spanish.get(0), "Complicado me lo pones; patada en los cojones");
+        assertEquals(english.get(0), "Nothing rhymes with that; I'm talking through my hat");
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testNoRhymes()
+    {
+        new DefaultRhymes("rhymestore.unexisting").next();
+    }
+
+    @Test
+    public void testReload()
+    {
+        DefaultRhymes rhymes = new DefaultRhymes(Configuration.DEFAULT_RHYME_PROPERTY);
+        assertEquals(rhymes.size(), 2);
+
+        // Changes in the loaded configuration are not seen until it is reloaded
+        Configuration.getConfiguration().setProperty("rhymestore.wordparser.default3", "Nueva");
+        assertEquals(rhymes.size(), 2);
+
+        Configuration.reload();
+        Configuration.getConfiguration().setProperty("rhymestore.wordparser.default3", "Nueva");
+        assertEquals(rhymes.size(), 3);
+        assertEquals(rhymes.get(2), "Nueva");
+    }
+
+    @Test
+    public void testEvenDistributionUnderContention() throws InterruptedException
+    {
+        final DefaultRhymes rhymes = new DefaultRhymes(Configuration.DEFAULT_RHYME_PROPERTY);
+        final ConcurrentMap<String, AtomicInteger> counts =
+            new ConcurrentHashMap<String, AtomicInteger>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+
+        counts.put(rhymes.get(0), new AtomicInteger());
+        counts.put(rhymes.get(1), new AtomicInteger());
+
+        for (int i = 0; i < THREADS; i++)
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        return;
+                    }
+
+                    for (int j = 0; j < REQUESTS; j++)
+                    {
+                        counts.get(rhymes.next()).incrementAndGet();
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(counts.get(rhymes.get(0)).get(), THREADS * REQUESTS / 2);
+        assertEquals(counts.get(rhymes.get(1)).get(), THREADS * REQUESTS / 2);
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.es.SpanishWordParser;
+
+/**
+ * Unit tests for the {@link LexiconWordParser} and {@link Lexicon} classes.
+ * 
+ * @author Ignasi Barrera
+ */
+public class LexiconWordParserTest
+{
+    /** The words in the dictionary. */
+    private static final List<String> WORDS = Arrays.asList("canción", "camión", "árbol",
+        "murciélago", "pingüino", "ñandú", "veintidós", "comportéis", "ves");
+
+    /** The parser used to build the lexicon. */
+    private SpanishWordParser spanish;
+
+    /** The dictionary file. */
+    private File dictionary;
+
+    /** The lexicon file. */
+    private File lexicon;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        spanish = new SpanishWordParser();
+        dictionary = File.createTempFile("dictionary", ".txt");
+        lexicon = File.createTempFile("lexicon", ".lex");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(dictionary), "UTF-8");
+
+        try
+        {
+            writer.write("# Test dictionary\n");
+
+            for (String word : WORDS)
+            {
+                writer.write(word + "\n");
+            }
+
+            writer.write("canción\n");
+            writer.write("dos palabras\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        dictionary.delete();
+        lexicon.delete();
+    }
+
+    @Test
+    public void testBuild() throws IOException
+    {
+        assertEquals(new LexiconBuilder(spanish).build(dictionary, lexicon), WORDS.size());
+
+        Lexicon lex = Lexicon.open(lexicon);
+        assertEquals(lex.size(), WORDS.size());
+        assertEquals(lex.getParser(), SpanishWordParser.class.getName());
+        assertEquals(lex.getVersion(), SpanishWordParser.VERSION);
+
+        for (String word : WORDS)
+        {
+            int entry = lex.find(word);
+
+            assertTrue(entry >= 0, word);
+            assertEquals(lex.getRhyme(entry), spanish.phoneticRhymePart(word));
+            assertEquals(lex.getStressType(entry), spanish.stressType(word));
+        }
+
+        assertEquals(lex.find("palabra"), -1);
+        assertEquals(lex.find("cancion"), -1);
+        assertEquals(lex.find("canció"), -1);
+        assertEquals(lex.find(""), -1);
+    }
+
+    @Test
+    public void testBuildLargeLexicon() throws IOException
+    {
+        String[] syllables = {"ca", "me", "lo", "ción", "tra", "bus", "dor", "ría", "pe", "zo"};
+        List<String> words = new ArrayList<String>();
+
+        for (String s1 : syllables)
+        {
+            for (String s2 : syllables)
+            {
+                for (String s3 : syllables)
+                {
+                    for (String s4 : syllables)
+                    {
+                        words.add(s1 + s2 + s3 + s4);
+                    }
+                }
+            }
+        }
+
+        assertEquals(Lexicon.write(spanish, words, lexicon), words.size());
+
+        Lexicon lex = Lexicon.open(lexicon);
+
+        for (String word : words)
+        {
+            int entry = lex.find(word);
+
+            assertTrue(entry >= 0, word);
+            assertEquals(lex.getRhyme(entry), spanish.phoneticRhymePart(word));
+        }
+    }
+
+    @Test
+    public void testParseKnownAndUnknownWords() throws IOException
+    {
+        new LexiconBuilder(spanish).build(dictionary, lexicon);
+        WordParser wordParser = new LexiconWordParser(spanish, lexicon);
+
+        for (String word : Arrays.asList("canción", "árbol", "palabra", "comportéis!!", "25"))
+        {
+            assertEquals(wordParser.phoneticRhymePart(word), spanish.phoneticRhymePart(word));
+            assertEquals(wordParser.stressType(word), spanish.stressType(word));
+        }
+
+        assertEquals(wordParser.getVersion(), spanish.getVersion());
+    }
+
+    @Test
+    public void testIgnoreOutdatedLexicon() throws IOException
+    {
+        new LexiconBuilder(new OutdatedWordParser()).build(dictionary, lexicon);
+        WordParser wordParser = new LexiconWordParser(spanish, lexicon);
+
+        assertEquals(wordParser.phoneticRhymePart("canción"), "on");
+    }
+
+    @Test
+    public void testIgnoreMissingLexicon()
+    {
+        lexicon.delete();
+        WordParser wordParser = new LexiconWordParser(spanish, lexicon);
+
+        assertEquals(wordParser.phoneticRhymePart("canción"), "on");
+        assertEquals(wordParser.stressType("canción"), StressType.LAST);
+    }
+
+    /**
+     * A parser with an older version of the rules that produces wrong rhymes.
+     */
+    private static class OutdatedWordParser extends SpanishWordParser
+    {
+        @Override
+        public String phoneticRhymePart(final String word)
+        {
+            return "wrong";
+        }
+
+        @Override
+        public int getVersion()
+        {
+            return VERSION - 1;
+        }
+    }
+}
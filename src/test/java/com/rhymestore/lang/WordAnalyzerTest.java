@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.es.SpanishWordParser;
+
+/**
+ * Unit tests for the {@link WordAnalyzer} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class WordAnalyzerTest
+{
+    /** The parser that counts the analyzed words. */
+    private CountingWordParser wordParser;
+
+    /** The analyzer to test. */
+    private WordAnalyzer analyzer;
+
+    /** The executor used to analyze in parallel. */
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        wordParser = new CountingWordParser();
+        analyzer = new WordAnalyzer(wordParser, 2);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAnalyze()
+    {
+        WordAnalysis analysis = analyzer.analyze(new StringBuilder("canción"));
+
+        assertEquals(analysis.getWord(), "canción");
+        assertEquals(analysis.getRhyme(), "on");
+        assertEquals(analysis.getType(), StressType.LAST);
+    }
+
+    @Test
+    public void testAnalyzeAllDeduplicates()
+    {
+        List<String> words = Arrays.asList("dos", "tres", "dos", "ves", "dos", "tres");
+        List<WordAnalysis> analyzed = analyzer.analyzeAll(words);
+
+        assertEquals(analyzed.size(), words.size());
+        assertEquals(wordParser.count.get(), 3);
+        assertSame(analyzed.get(0), analyzed.get(2));
+        assertSame(analyzed.get(1), analyzed.get(5));
+
+        for (int i = 0; i < words.size(); i++)
+        {
+            assertEquals(analyzed.get(i).getWord(), words.get(i));
+        }
+    }
+
+    @Test
+    public void testAnalyzeAllInParallel() throws InterruptedException
+    {
+        List<CharSequence> words = new ArrayList<CharSequence>();
+
+        for (int i = 0; i < 1000; i++)
+        {
+            words.add(String.valueOf(i % 300));
+            words.add(new StringBuilder("palabra").append(i % 7));
+        }
+
+        List<WordAnalysis> parallel = analyzer.analyzeAll(words, executor);
+        assertEquals(wordParser.count.get(), 307);
+
+        List<WordAnalysis> sequential = analyzer.analyzeAll(words);
+        assertEquals(parallel.size(), sequential.size());
+
+        for (int i = 0; i < words.size(); i++)
+        {
+            assertEquals(parallel.get(i).getWord(), words.get(i).toString());
+            assertEquals(parallel.get(i).getRhyme(), sequential.get(i).getRhyme());
+            assertEquals(parallel.get(i).getType(), sequential.get(i).getType());
+        }
+    }
+
+    @Test
+    public void testAnalyzeAllEmpty() throws InterruptedException
+    {
+        List<String> words = Collections.emptyList();
+
+        assertEquals(analyzer.analyzeAll(words).size(), 0);
+        assertEquals(analyzer.analyzeAll(words, executor).size(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAnalyzeAllPropagatesErrors() throws InterruptedException
+    {
+        analyzer.analyzeAll(Arrays.asList("dos", "fail", "tres"), executor);
+    }
+
+    /**
+     * A {@link WordParser} that counts the analyzed words.
+     */
+    private static class CountingWordParser extends SpanishWordParser
+    {
+        /** The number of analyzed words. */
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public String phoneticRhymePart(final String word)
+        {
+            if ("fail".equals(word))
+            {
+                throw new IllegalArgumentException("Could not analyze the word");
+            }
+
+            count.incrementAndGet();
+            return super.phoneticRhymePart(word);
+        }
+    }
+}
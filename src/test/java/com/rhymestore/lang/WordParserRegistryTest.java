@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.es.SpanishWordParser;
+
+/**
+ * Unit tests for the {@link WordParserRegistry} and {@link LanguageIdentifier} classes.
+ * 
+ * @author Ignasi Barrera
+ */
+public class WordParserRegistryTest
+{
+    private WordParser spanish;
+
+    private WordParser catalan;
+
+    private WordParserRegistry registry;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        spanish = new SpanishWordParser();
+        catalan = new SpanishWordParser();
+
+        Map<String, WordParser> parsers = new LinkedHashMap<String, WordParser>();
+        parsers.put("es", spanish);
+        parsers.put("ca", catalan);
+        registry = new WordParserRegistry(parsers);
+    }
+
+    @Test
+    public void testGetRegistry()
+    {
+        WordParserRegistry configured = WordParserRegistry.getRegistry();
+
+        assertTrue(configured == WordParserRegistry.getRegistry());
+        assertEquals(configured.getPrimaryLanguage(), WordParserRegistry.DEFAULT_LANGUAGE);
+        assertTrue(configured.getWordParser("es") == WordParserFactory.getWordParser());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptyRegistry()
+    {
+        new WordParserRegistry(new LinkedHashMap<String, WordParser>());
+    }
+
+    @Test
+    public void testGetWordParser()
+    {
+        assertEquals(registry.getPrimaryLanguage(), "es");
+        assertEquals(registry.getLanguages(), new LinkedHashSet<String>(Arrays
+            .asList("es", "ca")));
+        assertTrue(registry.getWordParser("es") == spanish);
+        assertTrue(registry.getWordParser("ca") == catalan);
+        assertTrue(registry.getWordParser("en") == spanish);
+        assertTrue(registry.getWordParser(null) == spanish);
+    }
+
+    @Test
+    public void testIdentifyDeclaredLanguage()
+    {
+        assertEquals(registry.identify("ca", "hola"), "ca");
+        assertEquals(registry.identify("ca-ES", "hola"), "ca");
+        assertEquals(registry.identify("ES_es", "hola"), "es");
+    }
+
+    @Test
+    public void testIdentifyText()
+    {
+        assertEquals(registry.identify(null, "¿Qué vas a hacer esta noche después de cenar?"),
+            "es");
+        assertEquals(registry.identify("en", "Ayer fuimos a la playa con mis hermanos"), "es");
+        assertEquals(registry.identify(null, "Què faràs aquest vespre després de sopar?"), "ca");
+        assertEquals(registry.identify("en", "Ahir vam anar a la platja amb els meus germans"),
+            "ca");
+    }
+
+    @Test
+    public void testIdentifyWithoutText()
+    {
+        assertEquals(registry.identify(null, null), "es");
+        assertEquals(registry.identify(null, ""), "es");
+        assertEquals(registry.identify(null, "123 !!"), "es");
+    }
+
+    @Test
+    public void testIdentifySingleLanguage()
+    {
+        Map<String, WordParser> parsers = new LinkedHashMap<String, WordParser>();
+        parsers.put("es", spanish);
+        WordParserRegistry single = new WordParserRegistry(parsers);
+
+        assertEquals(single.identify("ca", "Què faràs aquest vespre després de sopar?"), "es");
+    }
+}
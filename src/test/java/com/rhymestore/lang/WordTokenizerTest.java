@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.EnumSet;
+
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.WordTokenizer.Rule;
+
+/**
+ * Unit tests for the {@link WordTokenizer} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class WordTokenizerTest
+{
+    /** The tokenizer that skips all the trailing tokens. */
+    private WordTokenizer tokenizer = new WordTokenizer(EnumSet.allOf(Rule.class));
+
+    /** The tokenizer that does not skip any trailing token. */
+    private WordTokenizer plain = new WordTokenizer(EnumSet.noneOf(Rule.class));
+
+    @Test
+    public void testLastWord()
+    {
+        assertEquals(tokenizer.lastWord(""), "");
+        assertEquals(tokenizer.lastWord("   "), "");
+        assertEquals(tokenizer.lastWord("hola"), "hola");
+        assertEquals(tokenizer.lastWord("hola adios"), "adios");
+        assertEquals(tokenizer.lastWord("hola adios!!"), "adios!!");
+        assertEquals(tokenizer.lastWord("hola\tadios\r\n"), "adios");
+        assertEquals(tokenizer.lastWord("hola adios"), "adios");
+    }
+
+    @Test
+    public void testPreviousWord()
+    {
+        assertEquals(tokenizer.previousWord(""), "");
+        assertEquals(tokenizer.previousWord("hola"), "");
+        assertEquals(tokenizer.previousWord("hola adios"), "hola");
+        assertEquals(tokenizer.previousWord("ya lo ves, @rhymestore"), "lo");
+    }
+
+    @Test
+    public void testSkipTrailingTokens()
+    {
+        assertEquals(tokenizer.lastWord("hola http://t.co/abc"), "hola");
+        assertEquals(tokenizer.lastWord("hola HTTPS://t.co/abc www.rhymestore.com"), "hola");
+        assertEquals(tokenizer.lastWord("rima con esto @rhymestore @nacx"), "esto");
+        assertEquals(tokenizer.lastWord("rima con esto #FF"), "esto");
+        assertEquals(tokenizer.lastWord("rima con esto :) ..."), "esto");
+        assertEquals(tokenizer.lastWord("rima con esto 😀 👍🏽 ❤️"), "esto");
+        assertEquals(tokenizer.lastWord("@rhymestore http://t.co/abc"), "");
+    }
+
+    @Test
+    public void testKeepTokensWithoutRules()
+    {
+        assertEquals(plain.lastWord("hola http://t.co/abc"), "http://t.co/abc");
+        assertEquals(plain.lastWord("hola @nacx"), "@nacx");
+        assertEquals(plain.lastWord("hola :)"), ":)");
+        assertEquals(plain.lastWord("hola 😀"), "😀");
+
+        WordTokenizer emoji = new WordTokenizer(EnumSet.of(Rule.EMOJI));
+        assertEquals(emoji.lastWord("hola :) 😀"), ":)");
+
+        WordTokenizer punctuation = new WordTokenizer(EnumSet.of(Rule.PUNCTUATION));
+        assertEquals(punctuation.lastWord("hola 😀 :)"), "😀");
+    }
+
+    @Test
+    public void testOffsets()
+    {
+        String text = "Me escondo y no me ves  http://t.co/abc ";
+        int end = tokenizer.lastWordEnd(text);
+
+        assertEquals(end, 22);
+        assertEquals(tokenizer.wordStart(text, end), 19);
+        assertEquals(tokenizer.lastWordEnd("@nacx"), -1);
+    }
+}
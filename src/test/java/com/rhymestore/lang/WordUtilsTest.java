@@ -54,7 +54,8 @@ public class WordUtilsTest
         assertEquals(getLastWord(""), "");
         assertEquals(getLastWord("hola"), "hola");
         assertEquals(getLastWord("hola adios"), "adios");
-        assertEquals(getLastWord("hola ."), ".");
+        assertEquals(getLastWord("hola ."), "hola");
+        assertEquals(getLastWord("hola\tadios\n"), "adios");
     }
 
     @Test
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.en;
+
+import static com.rhymestore.lang.en.EnglishNumber.getBaseSound;
+import static com.rhymestore.lang.en.EnglishNumber.isNumber;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link EnglishNumber} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class EnglishNumberTest
+{
+    @Test
+    public void testGetBaseSound()
+    {
+        assertEquals(getBaseSound("0"), "zero");
+        assertEquals(getBaseSound("7"), "seven");
+        assertEquals(getBaseSound("13"), "thirteen");
+        assertEquals(getBaseSound("40"), "forty");
+        assertEquals(getBaseSound("42"), "two");
+        assertEquals(getBaseSound("100"), "hundred");
+        assertEquals(getBaseSound("315"), "fifteen");
+        assertEquals(getBaseSound("1000"), "thousand");
+        assertEquals(getBaseSound("1,000"), "thousand");
+        assertEquals(getBaseSound("2001"), "one");
+        assertEquals(getBaseSound("-12"), "twelve");
+        assertEquals(getBaseSound("5000000"), "million");
+        assertEquals(getBaseSound("1,200,000"), "thousand");
+        assertEquals(getBaseSound("000"), "zero");
+    }
+
+    @Test
+    public void testGetBaseSoundOfDecimals()
+    {
+        assertEquals(getBaseSound("3.14"), "four");
+        assertEquals(getBaseSound("2.0"), "zero");
+        assertEquals(getBaseSound("1,000.5"), "five");
+    }
+
+    @Test
+    public void testGetBaseSoundOfOrdinals()
+    {
+        assertEquals(getBaseSound("1st"), "first");
+        assertEquals(getBaseSound("2nd"), "second");
+        assertEquals(getBaseSound("3rd"), "third");
+        assertEquals(getBaseSound("11th"), "eleventh");
+        assertEquals(getBaseSound("12th"), "twelfth");
+        assertEquals(getBaseSound("21st"), "first");
+        assertEquals(getBaseSound("30th"), "thirtieth");
+        assertEquals(getBaseSound("100th"), "hundredth");
+        assertEquals(getBaseSound("1000th"), "thousandth");
+    }
+
+    @Test
+    public void testIsNumber()
+    {
+        assertTrue(isNumber("0"));
+        assertTrue(isNumber("-25"));
+        assertTrue(isNumber("12,345,678"));
+        assertTrue(isNumber("3.14"));
+        assertTrue(isNumber("101st"));
+
+        assertFalse(isNumber(null));
+        assertFalse(isNumber(""));
+        assertFalse(isNumber("-"));
+        assertFalse(isNumber("1,23"));
+        assertFalse(isNumber(",123"));
+        assertFalse(isNumber("1.2.3"));
+        assertFalse(isNumber("3."));
+        assertFalse(isNumber("1th"));
+        assertFalse(isNumber("11st"));
+        assertFalse(isNumber("-1st"));
+        assertFalse(isNumber("2.5th"));
+        assertFalse(isNumber("abc"));
+        assertFalse(isNumber("1234567890123456789012345678901234567"));
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void testGetBaseSoundOfInvalidNumber()
+    {
+        getBaseSound("12a");
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.en;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.AbstractWordParserTest;
+import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordParser;
+
+/**
+ * Unit tests for the {@link EnglishWordParser}.
+ * 
+ * @author Ignasi Barrera
+ */
+public class EnglishWordParserTest extends AbstractWordParserTest
+{
+    @Override
+    protected WordParser getWordParser()
+    {
+        return new EnglishWordParser();
+    }
+
+    @Override
+    public void testPhoneticRhymePart()
+    {
+        assertEquals(wordParser.phoneticRhymePart(""), "");
+
+        // Words in the dictionary
+        assertEquals(wordParser.phoneticRhymePart("cat"), "aet");
+        assertEquals(wordParser.phoneticRhymePart("Night"), "ayt");
+        assertEquals(wordParser.phoneticRhymePart("happy"), "aepiy");
+        assertEquals(wordParser.phoneticRhymePart("computer"), "uwter");
+        assertEquals(wordParser.phoneticRhymePart("education"), "eyshahn");
+        assertEquals(wordParser.phoneticRhymePart("tomorrow"), "aarow");
+        assertEquals(wordParser.phoneticRhymePart("don't"), "ownt");
+        assertEquals(wordParser.phoneticRhymePart("don’t"), "ownt");
+
+        // Inflections of words in the dictionary
+        assertEquals(wordParser.phoneticRhymePart("cats"), "aets");
+        assertEquals(wordParser.phoneticRhymePart("dogs"), "aogz");
+        assertEquals(wordParser.phoneticRhymePart("houses"), "awsihz");
+        assertEquals(wordParser.phoneticRhymePart("cities"), "ihtiyz");
+        assertEquals(wordParser.phoneticRhymePart("king's"), "ihngz");
+        assertEquals(wordParser.phoneticRhymePart("waited"), "eytihd");
+        assertEquals(wordParser.phoneticRhymePart("walked"), "aokt");
+        assertEquals(wordParser.phoneticRhymePart("played"), "eyd");
+        assertEquals(wordParser.phoneticRhymePart("making"), "eykihng");
+        assertEquals(wordParser.phoneticRhymePart("running"), "ahnihng");
+        assertEquals(wordParser.phoneticRhymePart("tweeting"), "iytihng");
+
+        // Words that are not in the dictionary
+        assertEquals(wordParser.phoneticRhymePart("bat"), "aet");
+        assertEquals(wordParser.phoneticRhymePart("plight"), "ayt");
+        assertEquals(wordParser.phoneticRhymePart("skate"), "eyt");
+        assertEquals(wordParser.phoneticRhymePart("fishing"), "ihshihng");
+        assertEquals(wordParser.phoneticRhymePart("jumped"), "ahmpt");
+        assertEquals(wordParser.phoneticRhymePart("station"), "eyshahn");
+        assertEquals(wordParser.phoneticRhymePart("table"), "eybahl");
+
+        // Numbers
+        assertEquals(wordParser.phoneticRhymePart("42"), "uw");
+        assertEquals(wordParser.phoneticRhymePart("1st"), "erst");
+    }
+
+    @Override
+    public void testStressType()
+    {
+        assertEquals(wordParser.stressType("cat"), StressType.LAST);
+        assertEquals(wordParser.stressType("hello"), StressType.LAST);
+        assertEquals(wordParser.stressType("happy"), StressType.SECOND_LAST);
+        assertEquals(wordParser.stressType("beautiful"), StressType.THIRD_LAST);
+        assertEquals(wordParser.stressType("family"), StressType.THIRD_LAST);
+        assertEquals(wordParser.stressType("making"), StressType.SECOND_LAST);
+        assertEquals(wordParser.stressType("fishing"), StressType.SECOND_LAST);
+        assertEquals(wordParser.stressType("station"), StressType.SECOND_LAST);
+    }
+
+    @Override
+    public void testRhyme()
+    {
+        assertTrue(wordParser.rhyme("", ""));
+        assertTrue(wordParser.rhyme("cat", "hat"));
+        assertTrue(wordParser.rhyme("night", "light"));
+        assertTrue(wordParser.rhyme("light", "plight"));
+        assertTrue(wordParser.rhyme("through", "blue"));
+        assertTrue(wordParser.rhyme("nation", "station"));
+        assertTrue(wordParser.rhyme("eight", "late"));
+        assertTrue(wordParser.rhyme("2", "true"));
+        assertFalse(wordParser.rhyme("cat", "cut"));
+        assertFalse(wordParser.rhyme("though", "through"));
+
+        // Rhymes with punctuation
+        assertTrue(wordParser.rhyme("cat.", "hat"));
+        assertTrue(wordParser.rhyme("night!", "light?"));
+        assertTrue(wordParser.rhyme("#night", "@light"));
+    }
+
+    @Override
+    public void testIsLetter()
+    {
+        assertTrue(wordParser.isLetter('a'));
+        assertTrue(wordParser.isLetter('Z'));
+
+        assertFalse(wordParser.isLetter('ñ'));
+        assertFalse(wordParser.isLetter('\''));
+        assertFalse(wordParser.isLetter(' '));
+        assertFalse(wordParser.isLetter('-'));
+    }
+
+    @Override
+    public void testIsWord()
+    {
+        assertTrue(wordParser.isWord("hello"));
+        assertTrue(wordParser.isWord("Hello!"));
+        assertTrue(wordParser.isWord("don't"));
+        assertTrue(wordParser.isWord("#word"));
+        assertTrue(wordParser.isWord("@word"));
+        assertTrue(wordParser.isWord("42"));
+        assertTrue(wordParser.isWord("-42"));
+        assertTrue(wordParser.isWord("3rd"));
+
+        assertFalse(wordParser.isWord(""));
+        assertFalse(wordParser.isWord("'"));
+        assertFalse(wordParser.isWord("-abc"));
+        assertFalse(wordParser.isWord("hello.bye"));
+        assertFalse(wordParser.isWord("ab23cd"));
+        assertFalse(wordParser.isWord("##word"));
+    }
+
+    @Override
+    public void testGetDefaultRhyme()
+    {
+        String rhyme0 = ((EnglishWordParser) wordParser).defaultRhymes.get(0);
+        String rhyme1 = ((EnglishWordParser) wordParser).defaultRhymes.get(1);
+
+        assertEquals(wordParser.getDefaultRhyme(), rhyme0);
+        assertEquals(wordParser.getDefaultRhyme(), rhyme1);
+        assertEquals(wordParser.getDefaultRhyme(), rhyme0);
+    }
+
+    @Test
+    public void testDictionary() throws IOException
+    {
+        String entries = ";;; Comment\n" + "CAT  K AE1 T\n" + "CATS  K AE1 T S\n"
+            + "CATALOG  K AE1 T AH0 L AO2 G\n" + "CAR  K AA1 R\n" + "CAR(1)  K AA1 R Z\n"
+            + "INVALID  IH1 N V AE0 L IH0 D X\n" + "HMM  HH M\n";
+        PhonemeDictionary dictionary =
+            PhonemeDictionary.load(new ByteArrayInputStream(entries.getBytes("UTF-8")));
+
+        assertEquals(dictionary.size(), 5);
+        assertEquals(dictionary.getRhyme(dictionary.find("cat")), "aet");
+        assertEquals(dictionary.getRhyme(dictionary.find("CATS")), "aets");
+        assertEquals(dictionary.getRhyme(dictionary.find("catalog")), "aetahlaog");
+        assertEquals(dictionary.getTrailingSyllables(dictionary.find("catalog")), 2);
+        assertEquals(dictionary.getRhyme(dictionary.find("car")), "aar");
+        assertEquals(dictionary.getRhyme(dictionary.find("hmm")), "hhm");
+        assertEquals(dictionary.getLastPhoneme(dictionary.find("catalog")), "G");
+
+        assertEquals(dictionary.find("ca"), -1);
+        assertEquals(dictionary.find("cata"), -1);
+        assertEquals(dictionary.find("catalogs"), -1);
+        assertEquals(dictionary.find("dog"), -1);
+        assertEquals(dictionary.find("invalid"), -1);
+        assertEquals(dictionary.find(""), -1);
+    }
+}
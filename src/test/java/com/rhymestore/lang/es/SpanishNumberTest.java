@@ -23,7 +23,13 @@
 package com.rhymestore.lang.es;
 
 import static com.rhymestore.lang.es.SpanishNumber.getBaseSound;
+import static com.rhymestore.lang.es.SpanishNumber.isNumber;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Random;
 
 import org.testng.annotations.Test;
 
@@ -96,4 +102,108 @@ public class SpanishNumberTest
             assertEquals(getBaseSound(i), "millones");
         }
     }
+
+    @Test
+    public void testGetBaseSoundOfLongNumbers()
+    {
+        assertEquals(getBaseSound("123456789012345678901234567890"), "enta");
+        assertEquals(getBaseSound("100000000000000000000000000000"), "millones");
+        assertEquals(getBaseSound(Long.MAX_VALUE), "siete");
+        assertEquals(getBaseSound(Long.MIN_VALUE), "ocho");
+        assertEquals(getBaseSound(new BigDecimal("1e40")), "millones");
+    }
+
+    @Test
+    public void testGetBaseSoundOfDecimalsAndTimes()
+    {
+        assertEquals(getBaseSound("3,14"), "catorce");
+        assertEquals(getBaseSound("2.5"), "cinco");
+        assertEquals(getBaseSound("+2.5"), "cinco");
+        assertEquals(getBaseSound("1.000"), "mil");
+        assertEquals(getBaseSound("2.000.000"), "millones");
+        assertEquals(getBaseSound("1.000,5"), "cinco");
+        assertEquals(getBaseSound("10:30"), "enta");
+        assertEquals(getBaseSound("10:00"), "diez");
+        assertEquals(getBaseSound("9:05"), "cinco");
+    }
+
+    @Test
+    public void testGetBaseSoundOfOrdinals()
+    {
+        assertEquals(getBaseSound("1º"), "primero");
+        assertEquals(getBaseSound("1.ª"), "primera");
+        assertEquals(getBaseSound("1er"), "primer");
+        assertEquals(getBaseSound("3er"), "tercer");
+        assertEquals(getBaseSound("7º"), "séptimo");
+        assertEquals(getBaseSound("20ª"), "vigésima");
+        assertEquals(getBaseSound("300º"), "tricentésimo");
+        assertEquals(getBaseSound("2000º"), "milésimo");
+        assertEquals(getBaseSound("1000000º"), "millonésimo");
+    }
+
+    @Test
+    public void testIsNumber()
+    {
+        assertTrue(isNumber("0"));
+        assertTrue(isNumber("-15"));
+        assertTrue(isNumber("1.000.000"));
+        assertTrue(isNumber("3,14"));
+        assertTrue(isNumber("10:30"));
+        assertTrue(isNumber("2ª"));
+
+        assertFalse(isNumber(null));
+        assertFalse(isNumber(""));
+        assertFalse(isNumber("-"));
+        assertFalse(isNumber("-1-2"));
+        assertFalse(isNumber("1."));
+        assertFalse(isNumber(".5"));
+        assertFalse(isNumber("1..5"));
+        assertFalse(isNumber("3,14º"));
+        assertFalse(isNumber("12a"));
+        assertFalse(isNumber("er"));
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void testGetBaseSoundOfInvalidNumber()
+    {
+        getBaseSound("12a");
+    }
+
+    @Test
+    public void testGetBaseSoundMatchesReference()
+    {
+        for (int i = 0; i < 1100000; i++)
+        {
+            assertBaseSound(String.valueOf(i));
+        }
+
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++)
+        {
+            StringBuilder sb = new StringBuilder(random.nextBoolean() ? "-" : "");
+            int length = 1 + random.nextInt(30);
+
+            for (int j = 0; j < length; j++)
+            {
+                // Favour zeros to get round numbers
+                sb.append(random.nextInt(3) == 0 ? 0 : random.nextInt(10));
+            }
+
+            String number = sb.toString();
+            assertBaseSound(number);
+
+            // Decimals and times that are not read as thousands
+            String decimals = String.valueOf(random.nextInt(100));
+            assertBaseSound(number + "," + decimals);
+            assertBaseSound(number + "." + decimals);
+
+            assertBaseSound(number + ":" + (random.nextInt(59) + 1));
+        }
+    }
+
+    private static void assertBaseSound(final String number)
+    {
+        assertEquals(getBaseSound(number), ReferenceSpanishNumber.getBaseSound(number), number);
+    }
 }
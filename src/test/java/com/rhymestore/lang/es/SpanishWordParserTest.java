@@ -189,6 +189,10 @@ public class SpanishWordParserTest extends AbstractWordParserTest
 		assertTrue(wordParser.isWord("123456789"));
 		assertTrue(wordParser.isWord("#123456789"));
 		assertTrue(wordParser.isWord("@123456789"));
+		assertTrue(wordParser.isWord("3,14"));
+		assertTrue(wordParser.isWord("10:30!"));
+		assertTrue(wordParser.isWord("1º"));
+		assertTrue(wordParser.isWord("3er"));
 		
 		// Invalid words
 		assertFalse(wordParser.isWord("-1-2"));
@@ -222,5 +226,10 @@ public class SpanishWordParserTest extends AbstractWordParserTest
 		assertEquals(wordParser.phoneticRhymePart("3521637"), "ete");
 		assertEquals(wordParser.phoneticRhymePart("350000"), "il");
 		assertEquals(wordParser.phoneticRhymePart("5000000"), "ones");
+		assertEquals(wordParser.phoneticRhymePart("1.000.000!"), "on");
+		assertEquals(wordParser.phoneticRhymePart("3,14"), "orce");
+		assertEquals(wordParser.phoneticRhymePart("10:30"), "enta");
+		assertEquals(wordParser.phoneticRhymePart("2ª."), "unda");
+		assertEquals(wordParser.stressType("7º"), StressType.THIRD_LAST);
 	}
 }
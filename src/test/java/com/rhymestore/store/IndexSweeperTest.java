@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link IndexSweeper} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class IndexSweeperTest
+{
+    /** The store to sweep. */
+    private TestRhymeStore store;
+
+    /** The sweeper to test. */
+    private IndexSweeper sweeper;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        store = new TestRhymeStore();
+        store.add("Ya son veintidós!!");
+        store.add("Me escondo y no me ves");
+
+        sweeper = new IndexSweeper(store, 1, 1000);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        store.cleanDB();
+    }
+
+    @Test
+    public void testSweepCleanStore() throws IOException
+    {
+        sweepAll();
+
+        assertEquals(sweeper.getPasses(), 1);
+        assertEquals(sweeper.getRemoved(), 0);
+        assertEquals(sweeper.getRepaired(), 0);
+        assertTrue(sweeper.getChecked() > 0);
+        assertEquals(store.findAll().size(), 2);
+    }
+
+    @Test
+    public void testRemoveOrphans() throws IOException
+    {
+        store.connect();
+        store.redis.sadd("index:1", "42");
+        store.redis.sadd("index:1", "sentence:43");
+        store.redis.sadd("index:2", "44");
+        store.redis.set("index:next.id", "3");
+        store.redis.sadd("index:3", "45");
+        store.redis.hset("sentence:ids:abc", "abc", "46");
+        store.redis.hset("index:ids:abc", "abc", "47");
+        store.disconnect();
+
+        sweepAll();
+
+        store.connect();
+        assertEquals(store.redis.scard("index:1").intValue(), 1);
+        assertEquals(store.redis.scard("index:2").intValue(), 1);
+        assertEquals(store.redis.exists("index:3").intValue(), 0);
+        assertEquals(store.redis.hexists("sentence:ids:abc", "abc").intValue(), 0);
+        assertEquals(store.redis.hexists("index:ids:abc", "abc").intValue(), 0);
+        store.disconnect();
+
+        assertEquals(sweeper.getRemoved(), 6);
+        assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
+    }
+
+    @Test
+    public void testRepairUnindexedSentences() throws IOException
+    {
+        store.connect();
+        store.redis.del("index:1");
+        store.disconnect();
+
+        assertEquals(store.getRhyme("Nada rima con dos"), null);
+
+        sweepAll();
+
+        assertEquals(sweeper.getRepaired(), 1);
+        assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
+    }
+
+    @Test
+    public void testSweepInBatches() throws IOException
+    {
+        sweeper = new IndexSweeper(store, 1, 1);
+
+        assertFalse(sweeper.sweep());
+        assertEquals(sweeper.getChecked(), 1);
+        sweepAll();
+        assertEquals(sweeper.getPasses(), 1);
+    }
+
+    private void sweepAll() throws IOException
+    {
+        while (!sweeper.sweep())
+        {
+            // Keep sweeping until the pass is completed
+        }
+    }
+}
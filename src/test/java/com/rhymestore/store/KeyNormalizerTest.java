@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static com.rhymestore.store.KeyNormalizer.normalize;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link KeyNormalizer} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class KeyNormalizerTest
+{
+    /** The characters used to build the random strings. */
+    private static final String ALPHABET = "aZ09 .,;!?¿¡-_'\""
+        + "áéíóúàèìòùäëïöüâêîôûñçÁÉÍÓÚÑÇÜ"
+        + "ßæøåÆØÅðþÐÞªºµ¹²³½×÷ÿ " + "ĀāĞğİıŁłŒœŠšŸŽž"
+        + "̀́̃̈̇" + "ΣσςΑάΩώ" + "ЖжЁё" + "ﬁﬀＡａ１" + "KΩ" + "𝐀";
+
+    @Test
+    public void testNormalize()
+    {
+        assertEquals(normalize(""), "");
+        assertEquals(normalize("hola"), "hola");
+        assertEquals(normalize("Canción"), "cancion");
+        assertEquals(normalize("¿Qué tal, Señor?"), "quetalsenor");
+        assertEquals(normalize("Ya son veintidós!!"), "yasonveintidos");
+        assertEquals(normalize("ÀÉÎÕÜÇ"), "aeiouc");
+        assertEquals(normalize("ß æ ø"), "");
+    }
+
+    @Test
+    public void testNormalizedStringsAreNotCopied()
+    {
+        String value = "yasonveintidos22";
+        assertSame(normalize(value), value);
+    }
+
+    @Test
+    public void testNormalizeLongStrings()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++)
+        {
+            sb.append("Ñandú ");
+        }
+
+        String value = sb.toString();
+        assertEquals(normalize(value), reference(value));
+    }
+
+    @Test
+    public void testNormalizeAllCharacters()
+    {
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++)
+        {
+            String value = "Á" + (char) c + "b";
+            assertEquals(normalize(value), reference(value), "Character " + c);
+        }
+    }
+
+    @Test
+    public void testNormalizeRandomStrings()
+    {
+        Random random = new Random(42);
+        int[] codePoints = new int[ALPHABET.codePointCount(0, ALPHABET.length())];
+
+        for (int i = 0, offset = 0; i < codePoints.length; i++)
+        {
+            codePoints[i] = ALPHABET.codePointAt(offset);
+            offset += Character.charCount(codePoints[i]);
+        }
+
+        for (int i = 0; i < 100000; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(20);
+
+            for (int j = 0; j < length; j++)
+            {
+                sb.appendCodePoint(codePoints[random.nextInt(codePoints.length)]);
+            }
+
+            String value = sb.toString();
+            assertEquals(normalize(value), reference(value), "String '" + value + "'");
+        }
+    }
+
+    /**
+     * The original normalization, using the full Unicode decomposition.
+     * 
+     * @param value The string to normalize.
+     * @return The normalized string.
+     */
+    private static String reference(final String value)
+    {
+        String token = value.toLowerCase();
+        token = Normalizer.normalize(token, Form.NFD);
+        token = token.replaceAll("[^\\p{ASCII}]", "");
+        return token.replaceAll("[^a-zA-Z0-9]", "");
+    }
+}
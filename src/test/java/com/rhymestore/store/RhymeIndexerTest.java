@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.StressType;
+
+/**
+ * Unit tests for the {@link RhymeIndexer} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeIndexerTest
+{
+    /** The store to reindex. */
+    private TestRhymeStore store;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        store = new TestRhymeStore();
+        store.add("Ya son veintidós!!");
+        store.add("Me escondo y no me ves");
+        store.add("Os digo que os comportéis");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        store.cleanDB();
+    }
+
+    @Test
+    public void testReindex() throws IOException
+    {
+        assertEquals(new RhymeIndexer(store, 2).reindex(), 3);
+
+        store.connect();
+        assertEquals(store.redis.get("index.version"), "1");
+        assertEquals(store.redis.exists("index.building").intValue(), 0);
+        assertEquals(store.redis.exists("index:1").intValue(), 0);
+        assertEquals(store.redis.exists("index:next.id").intValue(), 0);
+        assertTrue(store.redis.keys("index:ids:*").isEmpty());
+        assertEquals(store.redis.get("index:v1:next.id"), "3");
+        store.disconnect();
+
+        assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
+        assertEquals(store.getRhyme("Nada rima con 6"), "Os digo que os comportéis");
+
+        assertEquals(new RhymeIndexer(store, 1).reindex(), 3);
+        assertEquals(store.getRhyme("¿Hay algo que rime con tres?"), "Me escondo y no me ves");
+    }
+
+    @Test
+    public void testUpdatesWhileReindexing() throws IOException
+    {
+        int version = store.startIndex();
+
+        store.add("Me apetece un montón");
+        store.delete("Ya son veintidós!!");
+
+        // Readers still use the current index
+        assertEquals(store.getRhyme("Nada rima con 1000000"), "Me apetece un montón");
+
+        store.switchIndex(version);
+
+        assertEquals(store.getRhyme("Nada rima con 1000000"), "Me apetece un montón");
+        assertEquals(store.getRhyme("Nada rima con dos"), null);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testConcurrentReindex() throws IOException
+    {
+        store.startIndex();
+        new RhymeIndexer(store, 1).reindex();
+    }
+
+    @Test
+    public void testBuildLockExpires() throws IOException
+    {
+        store.startIndex();
+
+        store.connect();
+        int ttl = store.redis.ttl("index.building");
+        store.disconnect();
+
+        assertTrue(ttl > 0 && ttl <= RhymeStore.INDEX_BUILD_TIMEOUT);
+    }
+
+    @Test
+    public void testAbort() throws IOException
+    {
+        int version = store.startIndex();
+        RhymeIndexer indexer = new RhymeIndexer(store, 1);
+
+        assertEquals(indexer.abort(), version);
+        assertEquals(indexer.abort(), 0);
+        assertEquals(indexer.reindex(), 3);
+    }
+
+    @Test
+    public void testRestartAfterCrash() throws IOException
+    {
+        // A build that died before its lock was set to expire
+        int crashed = store.startIndex();
+        store.add("Me apetece un montón");
+        store.connect();
+        store.redis.persist("index.building");
+        store.disconnect();
+
+        assertEquals(new RhymeIndexer(store, 1).reindex(), 4);
+
+        store.connect();
+        assertEquals(store.redis.exists("index.building").intValue(), 0);
+        assertEquals(Integer.parseInt(store.redis.get("index.version")), crashed + 1);
+        assertTrue(store.redis.keys("index:v" + crashed + ":*").isEmpty());
+        store.disconnect();
+
+        assertEquals(store.getRhyme("Nada rima con 1000000"), "Me apetece un montón");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testAbortedBuildStops() throws IOException
+    {
+        int version = store.startIndex();
+        new RhymeIndexer(store, 1).abort();
+        store.renewIndex(version);
+    }
+
+    @Test
+    public void testUpdateStale() throws IOException
+    {
+        Map<String, RhymeStamp> stamps = store.readStamps(0, 0);
+        RhymeStamp current = stamps.get("1");
+
+        assertTrue(store.isCurrent(current));
+        assertEquals(new RhymeIndexer(store, 2).update(), 0);
+
+        // Simulate a sentence analyzed with an older version of the parser
+        store.connect();
+        store.redis.hset("sentence:stamp:0", "1", new RhymeStamp(current.getParser(),
+            current.getVersion() - 1, "zz", StressType.LAST).toString());
+        store.disconnect();
+
+        assertEquals(new RhymeIndexer(store, 2).update(), 1);
+        assertEquals(store.readStamps(0, 0).get("1").toString(), current.toString());
+        assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
+        assertEquals(new RhymeIndexer(store, 2).update(), 0);
+    }
+
+    @Test
+    public void testDeleteUsesStoredStamp() throws IOException
+    {
+        RhymeStamp current = store.readStamps(0, 0).get("1");
+        RhymeStamp moved = new RhymeStamp(current.getParser(), current.getVersion(), "zz",
+            StressType.LAST);
+
+        store.restamp(Collections.singletonMap("1", moved), store.readStamps(0, 0));
+        assertEquals(store.getRhyme("Nada rima con dos"), null);
+
+        store.delete("Ya son veintidós!!");
+
+        store.connect();
+        assertEquals(store.redis.hexists("sentence:stamp:0", "1").intValue(), 0);
+        for (String indexKey : store.redis.keys("index:[0-9]*"))
+        {
+            if (indexKey.endsWith(":length"))
+            {
+                assertNull(store.redis.zscore(indexKey, "1"));
+            }
+            else
+            {
+                assertEquals(store.redis.sismember(indexKey, "1").intValue(), 0);
+            }
+        }
+        store.disconnect();
+
+        assertEquals(store.findAll().size(), 2);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.WordParser;
+import com.rhymestore.lang.WordParserFactory;
+import com.rhymestore.lang.WordUtils;
+
+/**
+ * Unit tests for the {@link RhymeMigrator} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeMigratorTest
+{
+    /** The store to migrate. */
+    private TestRhymeStore store;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        store = new TestRhymeStore();
+        store.connect();
+        addLegacy("Ya son veintidós!!");
+        addLegacy("Me escondo y no me ves");
+        store.disconnect();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        store.cleanDB();
+    }
+
+    @Test
+    public void testLegacyRhymesAreReadable() throws IOException
+    {
+        assertEquals(store.findAll().size(), 2);
+        assertEquals(store.getRhyme("¿Hay algo que rime con tres?"), "Me escondo y no me ves");
+    }
+
+    @Test
+    public void testMigrate() throws IOException
+    {
+        store.add("Os digo que os comportéis");
+
+        assertEquals(new RhymeMigrator(store).migrate(), 2);
+        assertEquals(new RhymeMigrator(store).migrate(), 0);
+
+        store.connect();
+        assertTrue(store.redis.keys("sentence:*:id").isEmpty());
+        assertTrue(store.redis.keys("index:*:id").isEmpty());
+        assertNull(store.redis.get("sentence:1"));
+        store.disconnect();
+
+        assertEquals(store.findAll().size(), 3);
+        assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
+
+        store.delete("Ya son veintidós!!");
+        store.delete("Me escondo y no me ves");
+        store.delete("Os digo que os comportéis");
+        assertTrue(store.findAll().isEmpty());
+    }
+
+    @Test
+    public void testCheckIdBuckets() throws IOException
+    {
+        store.add("Os digo que os comportéis");
+        new RhymeMigrator(store).migrate();
+        assertTrue(new RhymeMigrator(store).checkIdBuckets());
+
+        // Fill a bucket above the compacted size
+        int maxEntries = store.getMaxZiplistEntries();
+        store.connect();
+        for (int i = 0; i <= maxEntries; i++)
+        {
+            store.redis.hset("sentence:ids:fff", "token" + i, String.valueOf(i));
+        }
+        store.disconnect();
+
+        assertEquals(store.getLargestIdBucket(), maxEntries + 1);
+        assertFalse(new RhymeMigrator(store).checkIdBuckets());
+    }
+
+    /**
+     * Adds the given sentence using the legacy layout.
+     * 
+     * @param sentence The sentence to add.
+     * @throws IOException If the sentence cannot be added.
+     */
+    private void addLegacy(final String sentence) throws IOException
+    {
+        WordParser wordParser = WordParserFactory.getWordParser();
+        String word = WordUtils.getLastWord(sentence);
+        String rhyme = normalize(wordParser.phoneticRhymePart(word));
+        String token = DigestUtils.md5Hex(wordParser.stressType(word).name().concat(rhyme));
+
+        String sentenceId = String.valueOf(store.redis.incr("sentence:next.id"));
+        store.redis.set("sentence:" + DigestUtils.md5Hex(normalize(sentence)) + ":id", sentenceId);
+        store.redis.set("sentence:" + sentenceId, URLEncoder.encode(sentence, "UTF-8"));
+
+        String indexIdKey = "index:" + DigestUtils.md5Hex(token) + ":id";
+        store.redis.setnx(indexIdKey, String.valueOf(store.redis.incr("index:next.id")));
+        store.redis.sadd("index:" + store.redis.get(indexIdKey), "sentence:" + sentenceId);
+    }
+
+    private static String normalize(final String value)
+    {
+        String token = Normalizer.normalize(value.toLowerCase(), Form.NFD);
+        return token.replaceAll("[^\\p{ASCII}]", "").replaceAll("[^a-zA-Z0-9]", "");
+    }
+}
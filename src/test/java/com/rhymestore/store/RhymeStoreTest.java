@@ -27,6 +27,7 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Random;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -108,4 +109,130 @@ public class RhymeStoreTest
         assertEquals(store.getRhyme("Nada rima con 1000000"), "Me apetece un montón");
         assertEquals(store.getRhyme("Nada rima con 7!"), "Dile que apriete");
     }
+
+    @Test
+    public void testGetRhymePrefersCompoundRhyme() throws IOException
+    {
+        store = new TestRhymeStore("es", 3);
+        store.add("Ya son veintidós!!");
+        store.add("Me escondo y no me ves");
+        store.add("Ya lo ves");
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(store.getRhyme("Nunca lo ves"), "Ya lo ves");
+        }
+
+        // Fall back to the last word when there is no compound rhyme
+        assertEquals(store.getRhyme("Dame dos"), "Ya son veintidós!!");
+    }
+
+    @Test
+    public void testGetIndexTokens()
+    {
+        store = new TestRhymeStore("es", 3);
+        RhymeStamp single = store.stamp("Ves");
+        RhymeStamp compound = store.stamp("Ya lo ves");
+
+        assertNull(single.getTail());
+        assertEquals(compound.getTail(), "o es");
+        assertEquals(store.getIndexTokens(single).size(), 1);
+        assertEquals(store.getIndexTokens(compound).size(), 2);
+        assertEquals(store.getIndexTokens(compound).get(0), store.getIndexTokens(single).get(0));
+    }
+
+    @Test
+    public void testGetRhymeWithMaxLength() throws IOException
+    {
+        store.add("Ahora me ves");
+        store.add("Ya lo ves");
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(store.getRhyme("Nada rima con tres", 9), "Ya lo ves");
+            assertTrue(store.getRhyme("Nada rima con tres", 12).length() <= 12);
+        }
+
+        // Return any rhyme if none of them fits
+        assertEquals(store.getRhyme("Nada rima con dos", 5), "Ya son veintidós!!");
+
+        store.delete("Ya lo ves");
+        assertTrue(store.getRhyme("Nada rima con tres", 9).length() > 9);
+    }
+
+    @Test
+    public void testLanguageNamespaces() throws IOException
+    {
+        TestRhymeStore catalan = new TestRhymeStore("ca");
+
+        assertEquals(store.getLanguage(), "es");
+        assertEquals(catalan.getLanguage(), "ca");
+
+        catalan.add("Ara no em ve res al cap");
+        assertEquals(catalan.findAll().size(), 1);
+        assertEquals(store.findAll().size(), 2);
+
+        assertNull(catalan.getRhyme("Nada rima con dos"));
+        assertEquals(catalan.getRhyme("Qui sap"), "Ara no em ve res al cap");
+        assertNull(store.getRhyme("Qui sap"));
+
+        store.delete("Ya son veintidós!!");
+        assertEquals(catalan.findAll().size(), 1);
+    }
+
+    @Test
+    public void testReadersShareTheStore() throws IOException
+    {
+        RhymeStore reader = store.createReader();
+
+        assertTrue(reader != store);
+        assertTrue(reader.getUsage() == store.getUsage());
+        assertEquals(reader.getLanguage(), store.getLanguage());
+        assertEquals(reader.getRhyme("¿Hay algo que rime con tres?"), "Me escondo y no me ves");
+    }
+
+    @Test
+    public void testGetInstance()
+    {
+        assertTrue(RhymeStore.getInstance() == RhymeStore.getInstance("es"));
+        assertTrue(RhymeStore.getInstance("ca") == RhymeStore.getInstance("ca"));
+        assertTrue(RhymeStore.getInstance("ca") != RhymeStore.getInstance("es"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPickWeightedWithoutWeights()
+    {
+        RhymeStore.pickWeighted(new double[] {0, 0}, new Random(1));
+    }
+
+    @Test
+    public void testPickWeightedSkipsZeroWeights()
+    {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(RhymeStore.pickWeighted(new double[] {0, 2, 0}, random), 1);
+        }
+    }
+
+    @Test
+    public void testPickWeightedDistribution()
+    {
+        double[] weights = {1, 2, 3, 4};
+        Random random = new Random(1);
+        int[] counts = new int[weights.length];
+        int samples = 100000;
+
+        for (int i = 0; i < samples; i++)
+        {
+            counts[RhymeStore.pickWeighted(weights, random)]++;
+        }
+
+        for (int i = 0; i < weights.length; i++)
+        {
+            double expected = weights[i] / 10;
+            assertTrue(Math.abs((double) counts[i] / samples - expected) < 0.01);
+        }
+    }
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link RhymeUsage} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeUsageTest
+{
+    /** The store of the rhymes. */
+    private TestRhymeStore store;
+
+    /** The usage tracker to test. */
+    private RhymeUsage usage;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        store = new TestRhymeStore();
+        store.add("Ya son veintidós!!");
+        store.add("Me escondo y no me ves");
+        store.add("Ya lo ves");
+
+        usage = store.getUsage();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        store.cleanDB();
+    }
+
+    @Test
+    public void testCountersAreWrittenOnFlush() throws IOException
+    {
+        assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
+        assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
+
+        store.connect();
+        assertEquals(store.redis.exists("sentence:served").intValue(), 0);
+        store.disconnect();
+
+        usage.flush();
+
+        store.connect();
+        assertEquals(store.redis.zscore("sentence:served", "1"), 2.0);
+        store.disconnect();
+
+        // Served without engagement
+        assertTrue(store.getWeight("1") < store.getWeight("2"));
+    }
+
+    @Test
+    public void testEngagement() throws IOException
+    {
+        usage.replied(10, "Ya lo ves");
+
+        assertFalse(usage.engaged(11));
+        assertTrue(usage.engaged(10));
+        assertTrue(usage.engaged(10));
+
+        usage.flush();
+
+        store.connect();
+        assertEquals(store.redis.zscore("sentence:engaged", "3"), 2.0);
+        store.disconnect();
+
+        assertTrue(store.getWeight("3") > store.getWeight("2"));
+    }
+
+    @Test
+    public void testWeightsUseTheCountersOfOtherProcesses() throws IOException
+    {
+        store.connect();
+        store.redis.zincrby("sentence:engaged", 5, "3");
+        store.disconnect();
+
+        // No flush is needed to read them
+        assertTrue(store.getWeight("3") > store.getWeight("2"));
+    }
+
+    @Test
+    public void testEngagedRhymesArePreferred() throws IOException
+    {
+        usage.replied(10, "Ya lo ves");
+
+        for (int i = 0; i < 50; i++)
+        {
+            usage.engaged(10);
+        }
+
+        usage.flush();
+
+        int engaged = 0;
+
+        for (int i = 0; i < 100; i++)
+        {
+            if (store.getRhyme("Nada rima con tres").equals("Ya lo ves"))
+            {
+                engaged++;
+            }
+        }
+
+        assertTrue(engaged > 80);
+    }
+
+    @Test
+    public void testDeleteRemovesCounters() throws IOException
+    {
+        store.getRhyme("Nada rima con dos");
+        usage.flush();
+
+        store.delete("Ya son veintidós!!");
+
+        store.connect();
+        assertEquals(store.redis.exists("sentence:served").intValue(), 0);
+        store.disconnect();
+    }
+}
@@ -35,6 +35,51 @@ public class TestRhymeStore extends RhymeStore
     /** The Redis test database. */
     public static final int TEST_DATABASE = 1;
 
+    /**
+     * Creates a store for the primary language.
+     */
+    public TestRhymeStore()
+    {
+        super();
+    }
+
+    /**
+     * Creates a store for the given language.
+     * 
+     * @param language The language of the sentences.
+     */
+    public TestRhymeStore(final String language)
+    {
+        super(language);
+    }
+
+    /**
+     * Creates a store for the given language with the given compound rhymes.
+     * 
+     * @param language The language of the sentences.
+     * @param compoundSyllables The maximum syllables of the compound rhymes.
+     */
+    public TestRhymeStore(final String language, final int compoundSyllables)
+    {
+        super(language, compoundSyllables);
+    }
+
+    /**
+     * Creates a store that reads the same rhymes as the given one.
+     * 
+     * @param store The store to read the same rhymes from.
+     */
+    protected TestRhymeStore(final TestRhymeStore store)
+    {
+        super(store);
+    }
+
+    @Override
+    public RhymeStore createReader()
+    {
+        return new TestRhymeStore(this);
+    }
+
     @Override
     protected void connect() throws UnknownHostException, IOException
     {
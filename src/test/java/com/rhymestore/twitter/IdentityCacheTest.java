@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import twitter4j.TwitterException;
+import twitter4j.User;
+
+import com.rhymestore.twitter.mock.MockTwitter;
+import com.rhymestore.twitter.mock.MockUser;
+
+/**
+ * Unit tests for the {@link IdentityCache} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class IdentityCacheTest
+{
+    @Test
+    public void testIdentityIsResolvedOnCreation() throws TwitterException
+    {
+        IdentityCache cache = new IdentityCache(new IdentityTwitter("rhymestore"));
+
+        assertEquals(cache.get().getId(), 1L);
+        assertEquals(cache.get().getScreenName(), "rhymestore");
+        assertTrue(cache.get().is(1L));
+        assertFalse(cache.get().is(2L));
+    }
+
+    @Test
+    public void testRefreshUpdatesTheIdentity() throws TwitterException
+    {
+        IdentityTwitter twitter = new IdentityTwitter("rhymestore");
+        IdentityCache cache = new IdentityCache(twitter);
+
+        twitter.screenName = "rimas";
+        cache.run();
+
+        assertEquals(cache.get().getScreenName(), "rimas");
+        assertEquals(cache.get().getId(), 1L);
+    }
+
+    @Test
+    public void testFailedRefreshKeepsTheIdentity() throws TwitterException
+    {
+        IdentityTwitter twitter = new IdentityTwitter("rhymestore");
+        IdentityCache cache = new IdentityCache(twitter);
+
+        twitter.screenName = null;
+        cache.run();
+
+        assertEquals(cache.get().getScreenName(), "rhymestore");
+    }
+
+    private static class IdentityTwitter extends MockTwitter
+    {
+        private static final long serialVersionUID = 1L;
+
+        private String screenName;
+
+        public IdentityTwitter(final String screenName)
+        {
+            super();
+            this.screenName = screenName;
+        }
+
+        @Override
+        public User verifyCredentials() throws TwitterException
+        {
+            if (screenName == null)
+            {
+                throw new TwitterException("Could not verify credentials");
+            }
+
+            final String name = screenName;
+            return new MockUser()
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public long getId()
+                {
+                    return 1L;
+                }
+
+                @Override
+                public String getScreenName()
+                {
+                    return name;
+                }
+            };
+        }
+    }
+}
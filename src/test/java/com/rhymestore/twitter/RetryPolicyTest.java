@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.util.ErrorType;
+
+/**
+ * Unit tests for the {@link RetryPolicy} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RetryPolicyTest
+{
+    /** The error used in the tests. */
+    private static final TwitterException ERROR = new TwitterException("Error", null, 503);
+
+    @Test
+    public void testShouldRetry()
+    {
+        RetryPolicy policy = new RetryPolicy(3, 1000, 10000, new Random());
+
+        assertTrue(policy.shouldRetry(ErrorType.SERVER, 1));
+        assertTrue(policy.shouldRetry(ErrorType.RATE_LIMITED, 2));
+        assertTrue(policy.shouldRetry(ErrorType.NETWORK, 2));
+        assertFalse(policy.shouldRetry(ErrorType.SERVER, 3));
+        assertFalse(policy.shouldRetry(ErrorType.CLIENT, 1));
+        assertFalse(policy.shouldRetry(ErrorType.DUPLICATE, 1));
+    }
+
+    @Test
+    public void testExponentialBackoffWithJitter()
+    {
+        RetryPolicy policy = new RetryPolicy(10, 1000, 10000, new Random(1));
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertInRange(policy.getDelay(ErrorType.SERVER, ERROR, 1), 500, 1000);
+            assertInRange(policy.getDelay(ErrorType.SERVER, ERROR, 2), 1000, 2000);
+            assertInRange(policy.getDelay(ErrorType.SERVER, ERROR, 3), 2000, 4000);
+            assertInRange(policy.getDelay(ErrorType.SERVER, ERROR, 5), 5000, 10000);
+            assertInRange(policy.getDelay(ErrorType.SERVER, ERROR, 100), 5000, 10000);
+        }
+    }
+
+    @Test
+    public void testJitterSpreadsRetries()
+    {
+        RetryPolicy policy = new RetryPolicy(10, 1000, 10000, new Random(1));
+        long first = policy.getDelay(ErrorType.SERVER, ERROR, 3);
+        boolean spread = false;
+
+        for (int i = 0; i < 10 && !spread; i++)
+        {
+            spread = policy.getDelay(ErrorType.SERVER, ERROR, 3) != first;
+        }
+
+        assertTrue(spread);
+    }
+
+    @Test
+    public void testNoDelay()
+    {
+        RetryPolicy policy = new RetryPolicy(10, 0, 0, new Random(1));
+        assertEquals(policy.getDelay(ErrorType.SERVER, ERROR, 3), 0);
+    }
+
+    private static void assertInRange(final long value, final long min, final long max)
+    {
+        assertTrue(value >= min && value <= max, value + " not in [" + min + ", " + max + "]");
+    }
+}
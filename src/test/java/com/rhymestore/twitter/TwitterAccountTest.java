@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import twitter4j.conf.Configuration;
+
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * Unit tests for the {@link TwitterAccount} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class TwitterAccountTest
+{
+    /** The environment variables with the credentials. */
+    private Map<String, String> env;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        env = new HashMap<String, String>();
+        env.put("TWITTER_CONSUMERKEY", "key");
+        env.put("TWITTER_CONSUMERSECRET", "secret");
+        env.put("TWITTER_ACCESSTOKEN", "token");
+        env.put("TWITTER_ACCESSTOKENSECRET", "tokensecret");
+    }
+
+    @Test
+    public void testDefaultAccount()
+    {
+        List<TwitterAccount> accounts = TwitterAccount.getAccounts(null, env);
+
+        assertEquals(accounts.size(), 1);
+        assertNull(accounts.get(0).getName());
+        assertCredentials(accounts.get(0), "key", "secret", "token", "tokensecret");
+    }
+
+    @Test
+    public void testNamedAccounts()
+    {
+        env.put("TWITTER_RIMAS_CONSUMERKEY", "rimaskey");
+        env.put("TWITTER_RIMAS_CONSUMERSECRET", "rimassecret");
+        env.put("TWITTER_RIMAS_ACCESSTOKEN", "rimastoken");
+        env.put("TWITTER_RIMAS_ACCESSTOKENSECRET", "rimastokensecret");
+        env.put("TWITTER_RHYMES_ACCESSTOKEN", "rhymestoken");
+        env.put("TWITTER_RHYMES_ACCESSTOKENSECRET", "rhymestokensecret");
+
+        List<TwitterAccount> accounts = TwitterAccount.getAccounts("rimas, rhymes,", env);
+
+        assertEquals(accounts.size(), 2);
+        assertEquals(accounts.get(0).getName(), "rimas");
+        assertCredentials(accounts.get(0), "rimaskey", "rimassecret", "rimastoken",
+            "rimastokensecret");
+
+        // The consumer credentials are shared
+        assertEquals(accounts.get(1).getName(), "rhymes");
+        assertCredentials(accounts.get(1), "key", "secret", "rhymestoken", "rhymestokensecret");
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testAccessTokenIsRequired()
+    {
+        TwitterAccount.getAccounts("rimas", env);
+    }
+
+    private static void assertCredentials(final TwitterAccount account, final String consumerKey,
+        final String consumerSecret, final String accessToken, final String accessTokenSecret)
+    {
+        Configuration configuration = account.getConfiguration();
+        assertEquals(configuration.getOAuthConsumerKey(), consumerKey);
+        assertEquals(configuration.getOAuthConsumerSecret(), consumerSecret);
+        assertEquals(configuration.getOAuthAccessToken(), accessToken);
+        assertEquals(configuration.getOAuthAccessTokenSecret(), accessTokenSecret);
+    }
+}
@@ -0,0 +1,529 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.commands.CoalescingCommand;
+import com.rhymestore.twitter.commands.PrioritizedCommand;
+import com.rhymestore.twitter.commands.TwitterCommand;
+import com.rhymestore.twitter.util.TwitterUtils;
+
+/**
+ * Unit tests for the {@link TwitterScheduler} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class TwitterSchedulerTest
+{
+    /** The maximum age of the commands in the tests. */
+    private static final long MAX_AGE = 60000;
+
+    @Test
+    public void testPriorityAndFreshness()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(10, MAX_AGE, ShedPolicy.DROP_LOWEST);
+        TestCommand old = command(PrioritizedCommand.NORMAL_PRIORITY, 2000);
+        TestCommand recent = command(PrioritizedCommand.NORMAL_PRIORITY, 1000);
+        TestCommand urgent = command(PrioritizedCommand.HIGH_PRIORITY, 3000);
+
+        assertTrue(scheduler.addCommand(old));
+        assertTrue(scheduler.addCommand(recent));
+        assertTrue(scheduler.addCommand(urgent));
+        assertEquals(scheduler.getQueueDepth(), 3);
+        assertTrue(scheduler.getOldestAge() >= 3000);
+
+        assertEquals(scheduler.nextCommand(), urgent);
+        assertEquals(scheduler.nextCommand(), recent);
+        assertEquals(scheduler.nextCommand(), old);
+        assertNull(scheduler.nextCommand());
+        assertEquals(scheduler.getOldestAge(), 0);
+    }
+
+    @Test
+    public void testExpiredCommandsAreDiscarded()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(10, MAX_AGE, ShedPolicy.DROP_LOWEST);
+
+        assertFalse(scheduler.addCommand(command(PrioritizedCommand.HIGH_PRIORITY, MAX_AGE * 2)));
+        assertEquals(scheduler.getExpired(), 1);
+        assertEquals(scheduler.getQueueDepth(), 0);
+    }
+
+    @Test
+    public void testCommandsWithoutPriority()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(10, MAX_AGE, ShedPolicy.DROP_LOWEST);
+        TwitterCommand plain = new TwitterCommand()
+        {
+            @Override
+            public void execute() throws TwitterException
+            {
+                // Nothing to do
+            }
+        };
+        TestCommand urgent = command(PrioritizedCommand.HIGH_PRIORITY, 0);
+
+        scheduler.addCommand(plain);
+        scheduler.addCommand(urgent);
+
+        assertEquals(scheduler.nextCommand(), urgent);
+        assertEquals(scheduler.nextCommand(), plain);
+    }
+
+    @Test
+    public void testDropLowest()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(2, MAX_AGE, ShedPolicy.DROP_LOWEST);
+        TestCommand low = command(PrioritizedCommand.NORMAL_PRIORITY, 0);
+        TestCommand high = command(PrioritizedCommand.HIGH_PRIORITY, 2000);
+        TestCommand newer = command(PrioritizedCommand.HIGH_PRIORITY, 1000);
+
+        scheduler.addCommand(low);
+        scheduler.addCommand(high);
+
+        assertTrue(scheduler.addCommand(newer));
+        assertFalse(scheduler.addCommand(command(PrioritizedCommand.NORMAL_PRIORITY, 0)));
+        assertEquals(scheduler.getShed(), 2);
+
+        assertEquals(scheduler.nextCommand(), newer);
+        assertEquals(scheduler.nextCommand(), high);
+        assertNull(scheduler.nextCommand());
+    }
+
+    @Test
+    public void testDropOldest()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(2, MAX_AGE, ShedPolicy.DROP_OLDEST);
+        TestCommand oldest = command(PrioritizedCommand.HIGH_PRIORITY, 3000);
+        TestCommand old = command(PrioritizedCommand.NORMAL_PRIORITY, 2000);
+        TestCommand recent = command(PrioritizedCommand.NORMAL_PRIORITY, 1000);
+
+        scheduler.addCommand(oldest);
+        scheduler.addCommand(old);
+
+        assertTrue(scheduler.addCommand(recent));
+        assertEquals(scheduler.getShed(), 1);
+
+        assertEquals(scheduler.nextCommand(), recent);
+        assertEquals(scheduler.nextCommand(), old);
+    }
+
+    @Test
+    public void testRejectNew()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(1, MAX_AGE, ShedPolicy.REJECT_NEW);
+        TestCommand first = command(PrioritizedCommand.NORMAL_PRIORITY, 1000);
+
+        assertTrue(scheduler.addCommand(first));
+        assertFalse(scheduler.addCommand(command(PrioritizedCommand.HIGH_PRIORITY, 0)));
+        assertEquals(scheduler.getShed(), 1);
+        assertEquals(scheduler.nextCommand(), first);
+    }
+
+    @Test
+    public void testRun()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(10, MAX_AGE, ShedPolicy.DROP_LOWEST);
+        TestCommand command = command(PrioritizedCommand.NORMAL_PRIORITY, 0);
+
+        scheduler.run();
+        scheduler.addCommand(command);
+        scheduler.run();
+
+        assertTrue(command.executed);
+        assertEquals(scheduler.getExecuted(), 1);
+        assertEquals(scheduler.getQueueDepth(), 0);
+    }
+
+    @Test
+    public void testRetryWithBackoff()
+    {
+        TestScheduler scheduler = new TestScheduler(new RetryPolicy(3, 1000, 10000, new Random()));
+        FailingCommand command = new FailingCommand(2, 503);
+
+        scheduler.addCommand(command);
+        scheduler.run();
+        assertEquals(command.attempts, 1);
+        assertEquals(scheduler.getRetryDepth(), 1);
+
+        // Not retried before the delay
+        scheduler.run();
+        assertEquals(command.attempts, 1);
+
+        scheduler.time += 1000;
+        scheduler.run();
+        assertEquals(command.attempts, 2);
+
+        // The second delay is longer
+        scheduler.time += 1000;
+        scheduler.run();
+        assertEquals(command.attempts, 2);
+
+        scheduler.time += 1000;
+        scheduler.run();
+        assertEquals(command.attempts, 3);
+        assertTrue(command.sent);
+        assertEquals(scheduler.getRetried(), 2);
+        assertEquals(scheduler.getRetryDepth(), 0);
+    }
+
+    @Test
+    public void testExhaustedCommandsAreDeadLettered()
+    {
+        TestScheduler scheduler = new TestScheduler(new RetryPolicy(2, 0, 0, new Random()));
+        FailingCommand command = new FailingCommand(5, 500);
+
+        scheduler.addCommand(command);
+        scheduler.run();
+        scheduler.run();
+        scheduler.run();
+
+        assertEquals(command.attempts, 2);
+        assertEquals(scheduler.getFailed(), 1);
+        assertEquals(scheduler.getDeadLetters().size(), 1);
+        assertEquals(scheduler.getDeadLetters().drain().get(0).getCommand(), command);
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried()
+    {
+        TestScheduler scheduler = new TestScheduler(new RetryPolicy(5, 0, 0, new Random()));
+        FailingCommand command = new FailingCommand(1, 401);
+
+        scheduler.addCommand(command);
+        scheduler.run();
+        scheduler.run();
+
+        assertEquals(command.attempts, 1);
+        assertEquals(scheduler.getDeadLetters().size(), 1);
+    }
+
+    @Test
+    public void testDuplicatesAreNotRetried()
+    {
+        TestScheduler scheduler = new TestScheduler(new RetryPolicy(5, 0, 0, new Random()));
+        FailingCommand command =
+            new FailingCommand(1, 403, TwitterUtils.DUPLICATE_TWEET_ERROR);
+
+        scheduler.addCommand(command);
+        scheduler.run();
+        scheduler.run();
+
+        assertEquals(command.attempts, 1);
+        assertEquals(scheduler.getRetried(), 0);
+        assertEquals(scheduler.getDeadLetters().size(), 0);
+    }
+
+    @Test
+    public void testRateLimitPausesTheQueue()
+    {
+        TestScheduler scheduler = new TestScheduler(new RetryPolicy(3, 5000, 5000, new Random()));
+        FailingCommand limited = new FailingCommand(1, 429);
+        TestCommand other = command(PrioritizedCommand.NORMAL_PRIORITY, 0);
+
+        scheduler.addCommand(limited);
+        scheduler.run();
+        scheduler.addCommand(other);
+
+        // No command is executed until the rate limit is reset
+        scheduler.run();
+        assertFalse(other.executed);
+
+        scheduler.time += 5000;
+        scheduler.run();
+        scheduler.run();
+        assertTrue(limited.sent);
+        assertTrue(other.executed);
+    }
+
+        @Test
+    public void testRetriesOutliveTheMaxAgeWithTheDefaultTimings()
+    {
+        TestScheduler scheduler = defaultScheduler();
+        FailingCommand command = new FailingCommand(3, 503);
+
+        scheduler.addCommand(command);
+        for (int i = 0; i < 4; i++)
+        {
+            scheduler.run();
+            scheduler.time += TimeUnit.SECONDS.toMillis(900);
+        }
+
+        assertEquals(command.attempts, 4);
+        assertTrue(command.sent);
+        assertEquals(scheduler.getExpired(), 0);
+    }
+
+    @Test
+    public void testRateLimitedCommandsOutliveTheMaxAge()
+    {
+        TestScheduler scheduler = defaultScheduler();
+        FailingCommand command = new FailingCommand(1, 429);
+
+        scheduler.addCommand(command);
+        scheduler.run();
+        scheduler.time += TimeUnit.MINUTES.toMillis(15);
+        scheduler.run();
+
+        assertTrue(command.sent);
+        assertEquals(scheduler.getExpired(), 0);
+    }
+
+    @Test
+    public void testExhaustedRetriesAreDeadLetteredWithTheDefaultTimings()
+    {
+        TestScheduler scheduler = defaultScheduler();
+        FailingCommand command = new FailingCommand(10, 503);
+
+        scheduler.addCommand(command);
+        for (int i = 0; i < 10; i++)
+        {
+            scheduler.run();
+            scheduler.time += TimeUnit.SECONDS.toMillis(900);
+        }
+
+        assertEquals(command.attempts, 4);
+        assertEquals(scheduler.getDeadLetters().size(), 1);
+        assertEquals(scheduler.getExpired(), 0);
+    }
+
+    @Test
+    public void testShedRetriesAreDeadLettered()
+    {
+        TwitterScheduler scheduler =
+            new TwitterScheduler(1, MAX_AGE, ShedPolicy.DROP_OLDEST, new RetryPolicy(3, 0, 0,
+                new Random()), new DeadLetterQueue());
+        FailingCommand failing = new FailingCommand(5, 503);
+
+        scheduler.addCommand(failing);
+        scheduler.run();
+        scheduler.addCommand(command(PrioritizedCommand.NORMAL_PRIORITY, 0));
+
+        // The retry does not fit in the queue any more
+        scheduler.run();
+        assertEquals(scheduler.getDeadLetters().size(), 1);
+        assertEquals(scheduler.getDeadLetters().drain().get(0).getCommand(), failing);
+    }
+
+    @Test
+    public void testCommandsWithTheSameKeyAreCoalesced()
+    {
+        TwitterScheduler scheduler = coalescingScheduler(MAX_AGE);
+        TestCommand old = new KeyedCommand("user1", 2000);
+        TestCommand recent = new KeyedCommand("user1", 1000);
+        TestCommand other = new KeyedCommand("user2", 3000);
+
+        assertTrue(scheduler.addCommand(recent));
+        assertTrue(scheduler.addCommand(other));
+        assertTrue(scheduler.addCommand(old));
+        assertEquals(scheduler.getQueueDepth(), 2);
+        assertEquals(scheduler.getCoalesced(), 1);
+
+        scheduler.run();
+        scheduler.run();
+        scheduler.run();
+
+        // Only the most recent command of each key is executed
+        assertTrue(recent.executed);
+        assertTrue(other.executed);
+        assertFalse(old.executed);
+        assertEquals(scheduler.getExecuted(), 2);
+    }
+
+    @Test
+    public void testCommandsOutsideTheWindowAreNotCoalesced()
+    {
+        TwitterScheduler scheduler = coalescingScheduler(1000);
+
+        assertTrue(scheduler.addCommand(new KeyedCommand("user1", 5000)));
+        assertTrue(scheduler.addCommand(new KeyedCommand("user1", 0)));
+        assertEquals(scheduler.getQueueDepth(), 2);
+        assertEquals(scheduler.getCoalesced(), 0);
+    }
+
+    @Test
+    public void testExecutedCommandsAreNotCoalesced()
+    {
+        TwitterScheduler scheduler = coalescingScheduler(MAX_AGE);
+        TestCommand first = new KeyedCommand("user1", 1000);
+        TestCommand second = new KeyedCommand("user1", 0);
+
+        scheduler.addCommand(first);
+        scheduler.run();
+        scheduler.addCommand(second);
+        scheduler.run();
+
+        assertTrue(first.executed);
+        assertTrue(second.executed);
+        assertEquals(scheduler.getCoalesced(), 0);
+    }
+
+    @Test
+    public void testCoalescingIsDisabledByDefault()
+    {
+        TwitterScheduler scheduler = new TwitterScheduler(10, MAX_AGE, ShedPolicy.DROP_LOWEST);
+
+        scheduler.addCommand(new KeyedCommand("user1", 1000));
+        scheduler.addCommand(new KeyedCommand("user1", 0));
+        assertEquals(scheduler.getQueueDepth(), 2);
+        assertEquals(scheduler.getCoalesced(), 0);
+    }
+
+    /**
+     * Creates a scheduler with the default queue age and retry policy timings.
+     */
+    private static TestScheduler defaultScheduler()
+    {
+        return new TestScheduler(TimeUnit.SECONDS.toMillis(600), new RetryPolicy(4, TimeUnit.SECONDS
+            .toMillis(60), TimeUnit.SECONDS.toMillis(900), new Random()));
+    }
+
+    private static TwitterScheduler coalescingScheduler(final long window)
+    {
+        return new TwitterScheduler(10, MAX_AGE, ShedPolicy.DROP_LOWEST, new RetryPolicy(),
+            new DeadLetterQueue(), window);
+    }
+
+    private static TestCommand command(final int priority, final long age)
+    {
+        return new TestCommand(priority, System.currentTimeMillis() - age);
+    }
+
+    private static class TestCommand implements PrioritizedCommand
+    {
+        private final int priority;
+
+        private final long timestamp;
+
+        private boolean executed = false;
+
+        public TestCommand(final int priority, final long timestamp)
+        {
+            this.priority = priority;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public void execute() throws TwitterException
+        {
+            executed = true;
+        }
+
+        @Override
+        public int getPriority()
+        {
+            return priority;
+        }
+
+        @Override
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+    }
+
+    private static class KeyedCommand extends TestCommand implements CoalescingCommand
+    {
+        private final String key;
+
+        public KeyedCommand(final String key, final long age)
+        {
+            super(PrioritizedCommand.NORMAL_PRIORITY, System.currentTimeMillis() - age);
+            this.key = key;
+        }
+
+        @Override
+        public String getCoalescingKey()
+        {
+            return key;
+        }
+    }
+
+    private static class FailingCommand implements TwitterCommand
+    {
+        private final int failures;
+
+        private final int statusCode;
+
+        private final String message;
+
+        private int attempts = 0;
+
+        private boolean sent = false;
+
+        public FailingCommand(final int failures, final int statusCode)
+        {
+            this(failures, statusCode, "Error");
+        }
+
+        public FailingCommand(final int failures, final int statusCode, final String message)
+        {
+            this.failures = failures;
+            this.statusCode = statusCode;
+            this.message = message;
+        }
+
+        @Override
+        public void execute() throws TwitterException
+        {
+            if (attempts++ < failures)
+            {
+                throw new TwitterException(message, null, statusCode);
+            }
+
+            sent = true;
+        }
+    }
+
+    private static class TestScheduler extends TwitterScheduler
+    {
+        private long time = System.currentTimeMillis();
+
+        public TestScheduler(final RetryPolicy retryPolicy)
+        {
+            this(MAX_AGE, retryPolicy);
+        }
+
+        public TestScheduler(final long maxAge, final RetryPolicy retryPolicy)
+        {
+            super(10, maxAge, ShedPolicy.DROP_LOWEST, retryPolicy, new DeadLetterQueue());
+        }
+
+        @Override
+        long currentTime()
+        {
+            return time;
+        }
+    }
+}
@@ -22,13 +22,21 @@
 
 package com.rhymestore.twitter;
 
+import static com.rhymestore.twitter.util.TwitterUtils.DUPLICATE_TWEET_ERROR;
+import static com.rhymestore.twitter.util.TwitterUtils.getErrorType;
 import static com.rhymestore.twitter.util.TwitterUtils.reply;
+import static com.rhymestore.twitter.util.TwitterUtils.replyLength;
 import static com.rhymestore.twitter.util.TwitterUtils.tweet;
 import static com.rhymestore.twitter.util.TwitterUtils.user;
 import static org.testng.Assert.assertEquals;
 
+import java.io.IOException;
+
 import org.testng.annotations.Test;
 
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.util.ErrorType;
 import com.rhymestore.twitter.util.TwitterUtils;
 
 /**
@@ -72,4 +80,32 @@ public class TwitterUtilsTest
             "@rimamelo esto es un tweet de prueba para ver si funciona el test unitario."
                 + " El tweet tiene más de 140 carácteres, será recortado por la a...");
     }
+
+    @Test
+    public void testReplyLength()
+    {
+        assertEquals(replyLength(""), 138);
+        assertEquals(replyLength("rimamelo"), 130);
+
+        String tweet = "esto es un tweet de prueba para ver si funciona el test unitario."
+            + " El tweet tiene más de 140 carácteres, será recortado por la aplicación";
+        assertEquals(reply("rimamelo", tweet.substring(0, replyLength("rimamelo"))).length(),
+            140);
+    }
+
+    @Test
+    public void testGetErrorType()
+    {
+        assertEquals(getErrorType(new TwitterException(DUPLICATE_TWEET_ERROR, null, 403)),
+            ErrorType.DUPLICATE);
+        assertEquals(getErrorType(new TwitterException("Limit", null, 429)),
+            ErrorType.RATE_LIMITED);
+        assertEquals(getErrorType(new TwitterException("Calm", null, 420)),
+            ErrorType.RATE_LIMITED);
+        assertEquals(getErrorType(new TwitterException("Down", null, 503)), ErrorType.SERVER);
+        assertEquals(getErrorType(new TwitterException(new IOException("Timeout"))),
+            ErrorType.NETWORK);
+        assertEquals(getErrorType(new TwitterException("Forbidden", null, 403)),
+            ErrorType.CLIENT);
+    }
 }
@@ -22,9 +22,11 @@
 
 package com.rhymestore.twitter.commands;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -87,9 +89,32 @@ public class ReplyCommandTest
         assertTrue(twitter.getLastUpdatedStatus().contains("Esta rima es infame"));
     }
 
+    @Test
+    public void testRepliedUsersOfEachAccount() throws TwitterException
+    {
+        Map<Long, Boolean> rimas = ReplyCommand.createRepliedUsers();
+        Map<Long, Boolean> rhymes = ReplyCommand.createRepliedUsers();
+
+        ReplyCommand first = createReplyCommand(twitter, "Este test es casi perfecto", rimas);
+        assertEquals(first.getPriority(), PrioritizedCommand.HIGH_PRIORITY);
+        first.execute();
+
+        // Only the account that replied knows the user
+        assertEquals(createReplyCommand(twitter, "Otra vez", rimas).getPriority(),
+            PrioritizedCommand.NORMAL_PRIORITY);
+        assertEquals(createReplyCommand(twitter, "Otra vez", rhymes).getPriority(),
+            PrioritizedCommand.HIGH_PRIORITY);
+    }
+
     private ReplyCommand createReplyCommand(final Twitter twitter, final String status)
     {
-        ReplyCommand replyCommand = new ReplyCommand(twitter, new MockStatus(status));
+        return createReplyCommand(twitter, status, ReplyCommand.createRepliedUsers());
+    }
+
+    private ReplyCommand createReplyCommand(final Twitter twitter, final String status,
+        final Map<Long, Boolean> repliedUsers)
+    {
+        ReplyCommand replyCommand = new ReplyCommand(twitter, new MockStatus(status), repliedUsers);
         replyCommand.rhymeStore = store;
         return replyCommand;
     }
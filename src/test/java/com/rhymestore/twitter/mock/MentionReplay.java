@@ -0,0 +1,696 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.mock;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import twitter4j.Status;
+import twitter4j.StatusUpdate;
+import twitter4j.TwitterException;
+import twitter4j.User;
+import twitter4j.UserMentionEntity;
+
+import com.rhymestore.lang.WordParserRegistry;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.BotIdentity;
+import com.rhymestore.twitter.IdentityCache;
+import com.rhymestore.twitter.TwitterScheduler;
+import com.rhymestore.twitter.pipeline.ReplyPipeline;
+import com.rhymestore.twitter.pipeline.Stage;
+import com.rhymestore.twitter.stream.GetMentionsListener;
+import com.rhymestore.twitter.stream.SeenStatuses;
+import com.rhymestore.twitter.stream.UserThrottle;
+import com.rhymestore.util.LatencyHistogram;
+
+/**
+ * Replays a mention stream into the {@link GetMentionsListener} at a fixed rate, to measure the
+ * capacity of the bot without connecting to Twitter.
+ * <p>
+ * The mentions go through the configured seen-status set, user throttle, reply pipeline and
+ * scheduler. The rhymes are served by an in-memory stand-in of the store, with an optional
+ * lookup delay, and the replies are sent to a {@link MockTwitter} as fast as the scheduler
+ * queues them, instead of at the Twitter rate limit.
+ * <p>
+ * The end-to-end latency goes from the delivery of each mention to the delivery of its reply.
+ * Mentions that are not replied are dropped: filtered by the listener, rejected by a full
+ * pipeline stage, or shed, expired or collapsed by the scheduler.
+ * <p>
+ * Run it from the test classpath:
+ * 
+ * <pre>
+ * MentionReplay &lt;rate&gt; &lt;count&gt; [users] [store delay micros] [mentions file]
+ * </pre>
+ * 
+ * The mentions file has the text of a mention in each line. If it is not given, a few synthetic
+ * mentions are used. Lower the log level to WARN for high rates, since every reply is logged.
+ * 
+ * @author Ignasi Barrera
+ */
+public class MentionReplay
+{
+    /** The id of the bot account. */
+    private static final long BOT_ID = Long.MAX_VALUE;
+
+    /** The screen name of the bot account. */
+    private static final String BOT_NAME = "rhymestore";
+
+    /** The mentions used when no recorded stream is given. */
+    private static final List<String> SYNTHETIC_MENTIONS = Arrays.asList("Me gusta el pan",
+        "Vamos a la playa", "Esta es mi casa", "Dime la verdad", "Ven a mi fiesta");
+
+    /** The rhyme served by the stand-in store. */
+    private static final String RHYME = "Eres un pan";
+
+    /** The time between queue depth samples, in milliseconds. */
+    private static final long SAMPLE_INTERVAL = 10;
+
+    /** The time without progress after which the pending replies are given up, in milliseconds. */
+    private static final long DRAIN_TIMEOUT = 5000;
+
+    /** The text of the mentions to replay, in a loop. */
+    private final List<String> mentions;
+
+    /** The number of mentions per second. */
+    private final int rate;
+
+    /** The number of mentions to replay. */
+    private final int count;
+
+    /** The number of users that send the mentions. */
+    private final int users;
+
+    /** The time the stand-in store takes to find each rhyme, in nanoseconds. */
+    private final long storeDelay;
+
+    /**
+     * Creates a replay of synthetic mentions.
+     * 
+     * @param rate The number of mentions per second.
+     * @param count The number of mentions to replay.
+     * @param users The number of users that send the mentions.
+     * @param storeDelay The time the store takes to find each rhyme, in microseconds.
+     */
+    public MentionReplay(final int rate, final int count, final int users, final long storeDelay)
+    {
+        this(SYNTHETIC_MENTIONS, rate, count, users, storeDelay);
+    }
+
+    /**
+     * Creates a replay of the given mentions.
+     * 
+     * @param mentions The text of the mentions to replay, in a loop.
+     * @param rate The number of mentions per second.
+     * @param count The number of mentions to replay.
+     * @param users The number of users that send the mentions.
+     * @param storeDelay The time the store takes to find each rhyme, in microseconds.
+     */
+    public MentionReplay(final List<String> mentions, final int rate, final int count,
+        final int users, final long storeDelay)
+    {
+        if (mentions.isEmpty() || rate <= 0 || count <= 0 || users <= 0)
+        {
+            throw new IllegalArgumentException("There must be mentions, rate, count and users");
+        }
+
+        this.mentions = mentions;
+        this.rate = rate;
+        this.count = count;
+        this.users = users;
+        this.storeDelay = TimeUnit.MICROSECONDS.toNanos(storeDelay);
+    }
+
+    /**
+     * Replays the mentions and waits for their replies.
+     * 
+     * @return The measures of the replay.
+     * @throws InterruptedException If the replay is interrupted.
+     */
+    public Result run() throws InterruptedException
+    {
+        WordParserRegistry registry = WordParserRegistry.getRegistry();
+        Map<String, RhymeStore> stores = new HashMap<String, RhymeStore>();
+        for (String language : registry.getLanguages())
+        {
+            stores.put(language, RhymeStore.getInstance(language));
+            RhymeStore.setInstance(new ReplayStore(language, storeDelay));
+        }
+
+        final long[] delivered = new long[count];
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong replied = new AtomicLong();
+
+        MockTwitter twitter = new MockTwitter()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Status updateStatus(final StatusUpdate latestStatus) throws TwitterException
+            {
+                int index = (int) latestStatus.getInReplyToStatusId() - 1;
+                latency.record(System.nanoTime() - delivered[index]);
+                replied.incrementAndGet();
+                return null;
+            }
+        };
+
+        final TwitterScheduler scheduler = new TwitterScheduler();
+        final ReplyPipeline pipeline = new ReplyPipeline(scheduler, null);
+        GetMentionsListener listener =
+            new GetMentionsListener(twitter, scheduler, new IdentityCache(twitter,
+                new BotIdentity(BOT_ID, BOT_NAME)), null, new SeenStatuses(),
+                new UserThrottle(null), pipeline);
+
+        // Send the replies as soon as they are queued
+        final AtomicInteger maxQueueDepth = new AtomicInteger();
+        ScheduledExecutorService workers = Executors.newScheduledThreadPool(2);
+        workers.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                while (scheduler.getQueueDepth() > 0)
+                {
+                    scheduler.run();
+                }
+            }
+        }, 0, 100, TimeUnit.MICROSECONDS);
+        workers.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                int depth = getQueueDepth(pipeline, scheduler);
+                if (depth > maxQueueDepth.get())
+                {
+                    maxQueueDepth.set(depth);
+                }
+            }
+        }, 0, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+
+        long gcCount = getGcCount();
+        long gcTime = getGcTime();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                long wait = start + i * interval - System.nanoTime();
+                if (wait > 0)
+                {
+                    LockSupport.parkNanos(wait);
+                }
+
+                delivered[i] = System.nanoTime();
+                listener.onStatus(new ReplayStatus(i + 1, i % users + 1, mentions.get(i
+                    % mentions.size())));
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            // Wait until all the mentions are replied or dropped, while the replies keep coming
+            long progress = System.currentTimeMillis();
+            long last = 0;
+            while (true)
+            {
+                Result result =
+                    new Result(count, elapsed, replied.get(), pipeline, scheduler, latency,
+                        maxQueueDepth.get(), getGcCount() - gcCount, getGcTime() - gcTime);
+
+                if (result.getReplied() + result.getDropped() >= count)
+                {
+                    return result;
+                }
+
+                if (result.getReplied() != last)
+                {
+                    last = result.getReplied();
+                    progress = System.currentTimeMillis();
+                }
+                else if (System.currentTimeMillis() - progress > DRAIN_TIMEOUT)
+                {
+                    return result;
+                }
+
+                Thread.sleep(SAMPLE_INTERVAL);
+            }
+        }
+        finally
+        {
+            workers.shutdownNow();
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+            pipeline.shutdown();
+            scheduler.shutdown();
+
+            for (RhymeStore store : stores.values())
+            {
+                RhymeStore.setInstance(store);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of replies waiting in the pipeline and the scheduler.
+     * 
+     * @param pipeline The pipeline that prepares the replies.
+     * @param scheduler The scheduler that sends the replies.
+     * @return The number of pending replies.
+     */
+    private static int getQueueDepth(final ReplyPipeline pipeline,
+        final TwitterScheduler scheduler)
+    {
+        int depth = scheduler.getQueueDepth();
+        for (Stage stage : pipeline.getStages())
+        {
+            depth += stage.getQueueDepth();
+        }
+        return depth;
+    }
+
+    private static long getGcCount()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(gc.getCollectionCount(), 0);
+        }
+        return total;
+    }
+
+    private static long getGcTime()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    /**
+     * Reads the text of the mentions of a recorded stream, one mention per line.
+     * 
+     * @param file The file with the mentions.
+     * @return The text of the mentions.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<String> readMentions(final String file) throws IOException
+    {
+        List<String> mentions = new ArrayList<String>();
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.trim().length() > 0)
+                {
+                    mentions.add(line.trim());
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return mentions;
+    }
+
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: MentionReplay <rate> <count> [users] "
+                + "[store delay micros] [mentions file]");
+            System.exit(1);
+        }
+
+        int rate = Integer.parseInt(args[0]);
+        int count = Integer.parseInt(args[1]);
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : count;
+        long storeDelay = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        List<String> mentions = args.length > 4 ? readMentions(args[4]) : SYNTHETIC_MENTIONS;
+
+        System.out.println(new MentionReplay(mentions, rate, count, users, storeDelay).run());
+        System.exit(0);
+    }
+
+    /**
+     * The measures of a replay.
+     * 
+     * @author Ignasi Barrera
+     */
+    public static class Result
+    {
+        /** The number of replayed mentions. */
+        private final long offered;
+
+        /** The time spent replaying the mentions, in nanoseconds. */
+        private final long elapsed;
+
+        /** The number of replies sent. */
+        private final long replied;
+
+        /** The number of mentions that did not get to the pipeline. */
+        private final long filtered;
+
+        /** The number of replies discarded by a full pipeline stage. */
+        private final long rejected;
+
+        /** The number of replies that failed in the pipeline. */
+        private final long failed;
+
+        /** The number of replies discarded by a full scheduler queue. */
+        private final long shed;
+
+        /** The number of replies discarded by the scheduler because they were too old. */
+        private final long expired;
+
+        /** The number of replies collapsed by the scheduler into a more recent one. */
+        private final long coalesced;
+
+        /** The time from the delivery of each mention to the delivery of its reply. */
+        private final LatencyHistogram latency;
+
+        /** The maximum number of pending replies. */
+        private final int maxQueueDepth;
+
+        /** The number of garbage collections during the replay. */
+        private final long gcCount;
+
+        /** The time spent in garbage collections during the replay, in milliseconds. */
+        private final long gcTime;
+
+        /* package */Result(final long offered, final long elapsed, final long replied,
+            final ReplyPipeline pipeline, final TwitterScheduler scheduler,
+            final LatencyHistogram latency, final int maxQueueDepth, final long gcCount,
+            final long gcTime)
+        {
+            Stage first = pipeline.getStage(ReplyPipeline.ANALYZE);
+            long rejected = 0;
+            long failed = 0;
+            for (Stage stage : pipeline.getStages())
+            {
+                rejected += stage.getRejected();
+                failed += stage.getFailed();
+            }
+
+            this.offered = offered;
+            this.elapsed = elapsed;
+            this.replied = replied;
+            this.filtered = offered - first.getLatency().getCount() - first.getRejected();
+            this.rejected = rejected;
+            this.failed = failed;
+            this.shed = scheduler.getShed();
+            this.expired = scheduler.getExpired();
+            this.coalesced = scheduler.getCoalesced();
+            this.latency = latency;
+            this.maxQueueDepth = maxQueueDepth;
+            this.gcCount = gcCount;
+            this.gcTime = gcTime;
+        }
+
+        public long getOffered()
+        {
+            return offered;
+        }
+
+        /**
+         * Gets the achieved replay rate.
+         * 
+         * @return The number of mentions replayed per second.
+         */
+        public double getRate()
+        {
+            return offered * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(elapsed, 1);
+        }
+
+        public long getReplied()
+        {
+            return replied;
+        }
+
+        public long getFiltered()
+        {
+            return filtered;
+        }
+
+        public long getRejected()
+        {
+            return rejected;
+        }
+
+        public long getFailed()
+        {
+            return failed;
+        }
+
+        public long getShed()
+        {
+            return shed;
+        }
+
+        public long getExpired()
+        {
+            return expired;
+        }
+
+        public long getCoalesced()
+        {
+            return coalesced;
+        }
+
+        /**
+         * Gets the number of mentions known to be discarded.
+         * 
+         * @return The number of filtered, rejected, failed, shed, expired and coalesced mentions.
+         */
+        public long getDropped()
+        {
+            return filtered + rejected + failed + shed + expired + coalesced;
+        }
+
+        /**
+         * Gets the rate of mentions that were not replied, filtered ones included.
+         * 
+         * @return The ratio of the mentions that were not replied.
+         */
+        public double getDropRate()
+        {
+            return (double) (offered - replied) / offered;
+        }
+
+        public LatencyHistogram getLatency()
+        {
+            return latency;
+        }
+
+        public int getMaxQueueDepth()
+        {
+            return maxQueueDepth;
+        }
+
+        public long getGcCount()
+        {
+            return gcCount;
+        }
+
+        public long getGcTime()
+        {
+            return gcTime;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("offered:   %d mentions at %.0f/s%n", offered, getRate()));
+            sb.append(String.format("replied:   %d (drop rate %.2f%%)%n", replied,
+                getDropRate() * 100));
+            sb.append(String.format("dropped:   filtered=%d rejected=%d failed=%d shed=%d "
+                + "expired=%d coalesced=%d%n", filtered, rejected, failed, shed, expired,
+                coalesced));
+            sb.append(String.format("latency:   %s%n", latency));
+            sb.append(String.format("queue:     max depth %d%n", maxQueueDepth));
+            sb.append(String.format("gc:        %d collections in %d ms", gcCount, gcTime));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Stand-in of the store that serves the same rhyme for all the sentences.
+     * <p>
+     * The lookups hold the lock of the store like the real one, and each worker of the pipeline
+     * gets its own reader, so the replay runs the lookups with the same parallelism.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class ReplayStore extends RhymeStore
+    {
+        /** The time to find each rhyme, in nanoseconds. */
+        private final long delay;
+
+        public ReplayStore(final String language, final long delay)
+        {
+            super(language);
+            this.delay = delay;
+        }
+
+        private ReplayStore(final ReplayStore store)
+        {
+            super(store);
+            this.delay = store.delay;
+        }
+
+        @Override
+        public RhymeStore createReader()
+        {
+            return new ReplayStore(this);
+        }
+
+        @Override
+        public synchronized String getRhyme(final String sentence, final int maxLength)
+        {
+            if (delay > 0)
+            {
+                LockSupport.parkNanos(delay);
+            }
+
+            return RHYME;
+        }
+    }
+
+    /**
+     * A replayed mention to the bot.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class ReplayStatus extends MockStatus
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+
+        private final long userId;
+
+        public ReplayStatus(final long id, final long userId, final String text)
+        {
+            super("@" + BOT_NAME + " " + text);
+            this.id = id;
+            this.userId = userId;
+        }
+
+        @Override
+        public long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public User getUser()
+        {
+            return new MockUser()
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public long getId()
+                {
+                    return userId;
+                }
+
+                @Override
+                public String getScreenName()
+                {
+                    return "user" + userId;
+                }
+            };
+        }
+
+        @Override
+        public UserMentionEntity[] getUserMentionEntities()
+        {
+            return new UserMentionEntity[] {new BotMention()};
+        }
+    }
+
+    /**
+     * The mention of the bot in the replayed mentions.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class BotMention implements UserMentionEntity
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public long getId()
+        {
+            return BOT_ID;
+        }
+
+        @Override
+        public String getScreenName()
+        {
+            return BOT_NAME;
+        }
+
+        @Override
+        public String getName()
+        {
+            return BOT_NAME;
+        }
+
+        @Override
+        public int getStart()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getEnd()
+        {
+            return BOT_NAME.length() + 1;
+        }
+    }
+}
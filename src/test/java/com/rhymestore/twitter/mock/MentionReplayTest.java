@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.mock;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link MentionReplay} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class MentionReplayTest
+{
+    @Test
+    public void testAllMentionsAreAccountedFor() throws Exception
+    {
+        MentionReplay.Result result = new MentionReplay(1000, 500, 500, 0).run();
+
+        assertEquals(result.getOffered(), 500);
+        assertEquals(result.getFiltered(), 0);
+        assertEquals(result.getReplied() + result.getDropped(), 500);
+        assertEquals(result.getLatency().getCount(), result.getReplied());
+        assertTrue(result.getReplied() > 0);
+    }
+
+    @Test
+    public void testMentionsOfTheSameUsersAreThrottled() throws Exception
+    {
+        // Each user can get up to 5 replies in the window
+        MentionReplay.Result result = new MentionReplay(1000, 100, 10, 0).run();
+
+        assertTrue(result.getReplied() <= 50);
+        assertTrue(result.getFiltered() >= 50);
+        assertEquals(result.getReplied() + result.getDropped(), 100);
+    }
+}
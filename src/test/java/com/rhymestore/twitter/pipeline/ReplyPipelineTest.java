@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.pipeline;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.WordParserRegistry;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.TwitterScheduler;
+import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.twitter.mock.MockStatus;
+import com.rhymestore.twitter.mock.MockTwitter;
+
+/**
+ * Unit tests for the {@link ReplyPipeline} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class ReplyPipelineTest
+{
+    /** The mocked Twitter API client. */
+    private MockTwitter twitter;
+
+    /** The scheduler that sends the replies. */
+    private TwitterScheduler scheduler;
+
+    /** The pipeline to test. */
+    private ReplyPipeline pipeline;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        twitter = new MockTwitter();
+        scheduler = new TwitterScheduler();
+        pipeline = new ReplyPipeline(scheduler, 1, 2, 1, 1, 10, 0);
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        pipeline.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testRepliesGoThroughAllStages() throws Exception
+    {
+        assertTrue(pipeline.submit(new ReplyCommand(twitter, new MockStatus("Me gusta el pan"),
+            ReplyCommand.createRepliedUsers())));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        Stage last = pipeline.getStage(ReplyPipeline.COMPOSE);
+        while (last.getLatency().getCount() == 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        assertEquals(scheduler.getQueueDepth(), 1);
+        for (Stage stage : pipeline.getStages())
+        {
+            assertEquals(stage.getLatency().getCount(), 1, stage.getName());
+        }
+
+        // The reply is prepared, so the scheduler only sends it
+        scheduler.run();
+        assertNotNull(twitter.getLastUpdatedStatus());
+        assertTrue(twitter.getLastUpdatedStatus().startsWith("@MockName"));
+        assertEquals(scheduler.getLatency().getCount(), 1);
+    }
+
+    @Test
+    public void testLookupWorkersUseTheirOwnReaders() throws Exception
+    {
+        String text = "Me gusta el pan";
+        String language = WordParserRegistry.getRegistry().identify(null, text);
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        RhymeStore.getInstance(language);
+        RhymeStore previous =
+            RhymeStore.setInstance(new BlockingStore(language, entered, release));
+
+        try
+        {
+            pipeline.submit(new ReplyCommand(twitter, new MockStatus(text), ReplyCommand
+                .createRepliedUsers()));
+            pipeline.submit(new ReplyCommand(twitter, new MockStatus(text), ReplyCommand
+                .createRepliedUsers()));
+
+            // Both lookup workers are in the store at the same time
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            release.countDown();
+            RhymeStore.setInstance(previous);
+        }
+    }
+
+    @Test
+    public void testStagesAreConfigured()
+    {
+        assertEquals(pipeline.getStages().size(), 4);
+        assertEquals(pipeline.getStage(ReplyPipeline.ANALYZE).getWorkers(), 1);
+        assertEquals(pipeline.getStage(ReplyPipeline.LOOKUP).getWorkers(), 2);
+        assertEquals(pipeline.getStage(ReplyPipeline.FALLBACK).getWorkers(), 1);
+        assertEquals(pipeline.getStage(ReplyPipeline.COMPOSE).getWorkers(), 1);
+    }
+
+    /**
+     * Store that waits in each lookup until it is released.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class BlockingStore extends RhymeStore
+    {
+        /** Counts the lookups that have started. */
+        private final CountDownLatch entered;
+
+        /** Releases the waiting lookups. */
+        private final CountDownLatch release;
+
+        public BlockingStore(final String language, final CountDownLatch entered,
+            final CountDownLatch release)
+        {
+            super(language);
+            this.entered = entered;
+            this.release = release;
+        }
+
+        private BlockingStore(final BlockingStore store)
+        {
+            super(store);
+            this.entered = store.entered;
+            this.release = store.release;
+        }
+
+        @Override
+        public RhymeStore createReader()
+        {
+            return new BlockingStore(this);
+        }
+
+        @Override
+        public synchronized String getRhyme(final String sentence, final int maxLength)
+        {
+            entered.countDown();
+
+            try
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            return "Rima de prueba";
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.pipeline;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.twitter.mock.MockStatus;
+import com.rhymestore.twitter.mock.MockTwitter;
+
+/**
+ * Unit tests for the {@link Stage} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class StageTest
+{
+    @Test
+    public void testRepliesArePassedToTheNextStage() throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        Stage first = new Stage("first", 1, 10)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                // Nothing to do
+            }
+        };
+        Stage second = new Stage("second", 1, 10)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                done.countDown();
+            }
+        };
+        first.setNext(second);
+
+        try
+        {
+            assertTrue(first.submit(reply()));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(first.getLatency().getCount(), 1);
+        }
+        finally
+        {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void testRepliesAreRejectedWhenFull() throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Stage stage = new Stage("blocking", 1, 1)
+        {
+            @Override
+            protected void process(final ReplyCommand reply) throws InterruptedException
+            {
+                started.countDown();
+                release.await();
+            }
+        };
+
+        try
+        {
+            assertTrue(stage.submit(reply()));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // One in the worker and one in the queue
+            assertTrue(stage.submit(reply()));
+            assertFalse(stage.submit(reply()));
+            assertEquals(stage.getRejected(), 1);
+            assertEquals(stage.getQueueDepth(), 1);
+        }
+        finally
+        {
+            release.countDown();
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedRepliesAreNotPassed() throws InterruptedException
+    {
+        final CountDownLatch passed = new CountDownLatch(1);
+        Stage failing = new Stage("failing", 1, 10)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                throw new IllegalStateException("Failed");
+            }
+        };
+        Stage next = new Stage("next", 1, 10)
+        {
+            @Override
+            protected void process(final ReplyCommand reply)
+            {
+                passed.countDown();
+            }
+        };
+        failing.setNext(next);
+
+        try
+        {
+            failing.submit(reply());
+            assertFalse(passed.await(200, TimeUnit.MILLISECONDS));
+            assertEquals(failing.getFailed(), 1);
+        }
+        finally
+        {
+            failing.shutdown();
+            next.shutdown();
+        }
+    }
+
+    private static ReplyCommand reply()
+    {
+        return new ReplyCommand(new MockTwitter(), new MockStatus("Me gusta el pan"), ReplyCommand
+            .createRepliedUsers());
+    }
+}
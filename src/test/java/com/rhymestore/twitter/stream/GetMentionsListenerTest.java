@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import twitter4j.TwitterException;
+import twitter4j.User;
+import twitter4j.UserMentionEntity;
+
+import com.rhymestore.twitter.BotIdentity;
+import com.rhymestore.twitter.IdentityCache;
+import com.rhymestore.twitter.TwitterScheduler;
+import com.rhymestore.twitter.mock.MockStatus;
+import com.rhymestore.twitter.mock.MockTwitter;
+import com.rhymestore.twitter.mock.MockUser;
+
+/**
+ * Unit tests for the {@link GetMentionsListener} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class GetMentionsListenerTest
+{
+    /** The id of the bot user. */
+    private static final long BOT_ID = 1L;
+
+    /** The scheduler where the replies are queued. */
+    private TwitterScheduler scheduler;
+
+    /** The statuses already processed. */
+    private SeenStatuses seen;
+
+    /** The listener to test. */
+    private GetMentionsListener listener;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        // Fails if the mentions are checked against the Twitter API
+        MockTwitter twitter = new MockTwitter()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getScreenName() throws TwitterException
+            {
+                throw new TwitterException("Network access in the mentions hot path");
+            }
+
+            @Override
+            public User verifyCredentials() throws TwitterException
+            {
+                throw new TwitterException("Network access in the mentions hot path");
+            }
+        };
+
+        scheduler = new TwitterScheduler();
+        seen = new SeenStatuses(100, 60000, null);
+        listener =
+            new GetMentionsListener(twitter, scheduler, new IdentityCache(twitter,
+                new BotIdentity(BOT_ID, "rhymestore")), null, seen,
+                new UserThrottle(2, 60000, 1024, null, null));
+    }
+
+    @Test
+    public void testMentionsAreMatchedById()
+    {
+        // The screen name does not matter, only the id
+        listener.onStatus(new TestStatus(1L, 2L, new TestMention(BOT_ID, "OldName")));
+        assertEquals(scheduler.getQueueDepth(), 1);
+
+        listener.onStatus(new TestStatus(2L, 2L, new TestMention(3L, "rhymestore")));
+        assertEquals(scheduler.getQueueDepth(), 1);
+    }
+
+    @Test
+    public void testOwnStatusesAreIgnored()
+    {
+        listener.onStatus(new TestStatus(1L, BOT_ID, new TestMention(BOT_ID, "rhymestore")));
+        assertEquals(scheduler.getQueueDepth(), 0);
+    }
+
+    @Test
+    public void testDuplicateStatusesAreIgnored()
+    {
+        TestStatus status = new TestStatus(1L, 2L, new TestMention(BOT_ID, "rhymestore"));
+
+        listener.onStatus(status);
+        listener.onStatus(status);
+        assertEquals(scheduler.getQueueDepth(), 1);
+    }
+
+    @Test
+    public void testMentionsAreThrottledByUser()
+    {
+        listener.onStatus(new TestStatus(1L, 2L, new TestMention(BOT_ID, "rhymestore")));
+        listener.onStatus(new TestStatus(2L, 2L, new TestMention(BOT_ID, "rhymestore")));
+        listener.onStatus(new TestStatus(3L, 2L, new TestMention(BOT_ID, "rhymestore")));
+        assertEquals(scheduler.getQueueDepth(), 2);
+
+        listener.onStatus(new TestStatus(4L, 3L, new TestMention(BOT_ID, "rhymestore")));
+        assertEquals(scheduler.getQueueDepth(), 3);
+    }
+
+    @Test
+    public void testStatusesWithoutMentions()
+    {
+        listener.onStatus(new TestStatus(1L, 2L));
+        assertEquals(scheduler.getQueueDepth(), 0);
+    }
+
+    @Test
+    public void testOnlyRelevantStatusesAreMarkedAsSeen()
+    {
+        listener.onStatus(new TestStatus(1L, 2L, new TestMention(3L, "someone")));
+        listener.onStatus(new TestStatus(2L, 2L));
+        assertFalse(seen.isSeen(1L));
+        assertFalse(seen.isSeen(2L));
+
+        listener.onStatus(new TestStatus(3L, 2L, new TestMention(BOT_ID, "rhymestore")));
+        assertTrue(seen.isSeen(3L));
+        assertEquals(scheduler.getQueueDepth(), 1);
+    }
+
+    private static class TestStatus extends MockStatus
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+
+        private final long userId;
+
+        private final UserMentionEntity[] mentions;
+
+        public TestStatus(final long id, final long userId, final UserMentionEntity... mentions)
+        {
+            super("@rhymestore Me gusta el pan");
+            this.id = id;
+            this.userId = userId;
+            this.mentions = mentions;
+        }
+
+        @Override
+        public long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public User getUser()
+        {
+            return new MockUser()
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public long getId()
+                {
+                    return userId;
+                }
+            };
+        }
+
+        @Override
+        public UserMentionEntity[] getUserMentionEntities()
+        {
+            return mentions;
+        }
+    }
+
+    private static class TestMention implements UserMentionEntity
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+
+        private final String screenName;
+
+        public TestMention(final long id, final String screenName)
+        {
+            this.id = id;
+            this.screenName = screenName;
+        }
+
+        @Override
+        public long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public String getScreenName()
+        {
+            return screenName;
+        }
+
+        @Override
+        public String getName()
+        {
+            return screenName;
+        }
+
+        @Override
+        public int getStart()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getEnd()
+        {
+            return 0;
+        }
+    }
+}
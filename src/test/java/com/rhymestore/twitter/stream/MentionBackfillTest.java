@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import twitter4j.Paging;
+import twitter4j.RateLimitStatus;
+import twitter4j.ResponseList;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.BotIdentity;
+import com.rhymestore.twitter.IdentityCache;
+import com.rhymestore.twitter.mock.MockStatus;
+import com.rhymestore.twitter.mock.MockTwitter;
+
+/**
+ * Unit tests for the {@link MentionBackfill} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class MentionBackfillTest
+{
+    /** The mocked Twitter API client. */
+    private TimelineTwitter twitter;
+
+    /** The statuses passed to the listener. */
+    private List<Long> processed;
+
+    /** The milliseconds waited for the rate limit. */
+    private List<Long> waits;
+
+    /** The listener of the recovered mentions. */
+    private GetMentionsListener listener;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        twitter = new TimelineTwitter();
+        processed = new ArrayList<Long>();
+        waits = new ArrayList<Long>();
+        listener = new GetMentionsListener(twitter, null, new IdentityCache(twitter,
+            new BotIdentity(1L, "rhymestore")), null, new SeenStatuses(100, 60000, null), null)
+        {
+            @Override
+            public void onStatus(final Status status)
+            {
+                processed.add(status.getId());
+            }
+        };
+    }
+
+    @Test
+    public void testMentionsAreRecoveredOldestFirst()
+    {
+        twitter.addMentions(5, 10, 11, 12, 13, 14);
+
+        assertEquals(backfill(4).backfill(10L), 4);
+        assertEquals(processed, ids(11, 12, 13, 14));
+        assertEquals(twitter.pages, 3);
+    }
+
+    @Test
+    public void testPagesAreLimited()
+    {
+        twitter.addMentions(11, 12, 13, 14, 15, 16);
+
+        assertEquals(backfill(2).backfill(10L), 4);
+        assertEquals(processed, ids(13, 14, 15, 16));
+    }
+
+    @Test
+    public void testNothingToRecover()
+    {
+        twitter.addMentions(8, 9, 10);
+
+        assertEquals(backfill(4).backfill(10L), 0);
+        assertTrue(processed.isEmpty());
+        assertEquals(twitter.pages, 1);
+    }
+
+    @Test
+    public void testWaitsForTheRateLimit()
+    {
+        twitter.addMentions(11, 12, 13);
+        twitter.remaining = 0;
+
+        assertEquals(backfill(4).backfill(10L), 3);
+        assertEquals(waits.get(0).longValue(), 30000L);
+    }
+
+    @Test
+    public void testRecoversAfterRateLimitError()
+    {
+        twitter.addMentions(11, 12);
+        twitter.limited = true;
+
+        assertEquals(backfill(4).backfill(10L), 2);
+        assertEquals(waits.get(0).longValue(), MentionBackfill.RATE_LIMIT_WINDOW * 1000);
+        assertEquals(processed, ids(11, 12));
+    }
+
+    private MentionBackfill backfill(final int maxPages)
+    {
+        return new MentionBackfill(twitter, listener, null, maxPages)
+        {
+            @Override
+            void sleep(final long millis)
+            {
+                waits.add(millis);
+            }
+        };
+    }
+
+    private static List<Long> ids(final long... ids)
+    {
+        List<Long> list = new ArrayList<Long>();
+        for (long id : ids)
+        {
+            list.add(id);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the mentions two at a time, newest first.
+     */
+    private static class TimelineTwitter extends MockTwitter
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Long> mentions = new ArrayList<Long>();
+
+        private int pages = 0;
+
+        private int remaining = 15;
+
+        private boolean limited = false;
+
+        public void addMentions(final long... ids)
+        {
+            for (long id : ids)
+            {
+                mentions.add(0, id);
+            }
+        }
+
+        @Override
+        public ResponseList<Status> getMentionsTimeline(final Paging paging)
+            throws TwitterException
+        {
+            pages++;
+
+            if (limited)
+            {
+                limited = false;
+                throw new TwitterException("Rate limit exceeded", null, 429);
+            }
+
+            TestResponseList page = new TestResponseList(remaining);
+            for (final Long id : mentions)
+            {
+                if (id > paging.getSinceId() && (paging.getMaxId() <= 0 || id <= paging.getMaxId())
+                    && page.size() < 2)
+                {
+                    page.add(new MockStatus("Hola @rhymestore")
+                    {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        public long getId()
+                        {
+                            return id;
+                        }
+                    });
+                }
+            }
+
+            return page;
+        }
+    }
+
+    private static class TestResponseList extends ArrayList<Status> implements
+        ResponseList<Status>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int remaining;
+
+        public TestResponseList(final int remaining)
+        {
+            super();
+            this.remaining = remaining;
+        }
+
+        @Override
+        public RateLimitStatus getRateLimitStatus()
+        {
+            return new RateLimitStatus()
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public int getRemaining()
+                {
+                    return remaining;
+                }
+
+                // Required by the interface; the backfill only reads getRemaining()
+                @Override
+                @Deprecated
+                public int getRemainingHits()
+                {
+                    return getRemaining();
+                }
+
+                @Override
+                public int getLimit()
+                {
+                    return 15;
+                }
+
+                @Override
+                public int getResetTimeInSeconds()
+                {
+                    return 0;
+                }
+
+                @Override
+                public int getSecondsUntilReset()
+                {
+                    return 30;
+                }
+            };
+        }
+
+        @Override
+        public int getAccessLevel()
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Unit tests for the {@link MentionCheckpoint} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class MentionCheckpointTest
+{
+    /** The Redis connection. */
+    private Jedis redis;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        redis = new Jedis("localhost", 6379);
+        redis.del(MentionCheckpoint.LAST_MENTION_KEY);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        redis.del(MentionCheckpoint.LAST_MENTION_KEY, "twitter:rimas:lastmention");
+        redis.disconnect();
+    }
+
+    @Test
+    public void testUnknownCheckpoint()
+    {
+        assertEquals(new MentionCheckpoint(redis, null).get(), 0L);
+    }
+
+    @Test
+    public void testCheckpointIsPersisted()
+    {
+        new MentionCheckpoint(redis, null).update(42L);
+
+        assertEquals(redis.get(MentionCheckpoint.LAST_MENTION_KEY), "42");
+        assertEquals(new MentionCheckpoint(redis, null).get(), 42L);
+    }
+
+    @Test
+    public void testCheckpointNeverGoesBack()
+    {
+        MentionCheckpoint checkpoint = new MentionCheckpoint(redis, null);
+        checkpoint.update(42L);
+        checkpoint.update(7L);
+
+        assertEquals(checkpoint.get(), 42L);
+        assertEquals(redis.get(MentionCheckpoint.LAST_MENTION_KEY), "42");
+    }
+
+    @Test
+    public void testCheckpointsOfEachAccount()
+    {
+        new MentionCheckpoint(redis, null).update(42L);
+        new MentionCheckpoint(redis, "rimas").update(7L);
+
+        assertEquals(new MentionCheckpoint(redis, null).get(), 42L);
+        assertEquals(new MentionCheckpoint(redis, "rimas").get(), 7L);
+        assertEquals(redis.get("twitter:rimas:lastmention"), "7");
+    }
+}
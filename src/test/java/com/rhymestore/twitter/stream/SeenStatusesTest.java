@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Unit tests for the {@link SeenStatuses} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class SeenStatusesTest
+{
+    /** The length of the windows used in the tests. */
+    private static final long WINDOW = 1000;
+
+    @Test
+    public void testDuplicatesAreDetected()
+    {
+        TestSeenStatuses seen = new TestSeenStatuses(null);
+
+        assertTrue(seen.markSeen(1L));
+        assertTrue(seen.markSeen(2L));
+        assertFalse(seen.markSeen(1L));
+        assertFalse(seen.markSeen(2L));
+        assertTrue(seen.markSeen(3L));
+    }
+
+    @Test
+    public void testStatusesAreRememberedForAWindow()
+    {
+        TestSeenStatuses seen = new TestSeenStatuses(null);
+        assertTrue(seen.markSeen(1L));
+
+        seen.time += WINDOW;
+        assertFalse(seen.markSeen(1L));
+        assertTrue(seen.markSeen(2L));
+
+        // Statuses seen in the previous window are forgotten after the next one
+        seen.time += WINDOW;
+        assertTrue(seen.markSeen(1L));
+        assertFalse(seen.markSeen(2L));
+    }
+
+    @Test
+    public void testStatusesAreForgottenAfterTwoWindows()
+    {
+        TestSeenStatuses seen = new TestSeenStatuses(null);
+        assertTrue(seen.markSeen(1L));
+
+        seen.time += 2 * WINDOW;
+        assertTrue(seen.markSeen(1L));
+    }
+
+    @Test
+    public void testFalsePositiveRate()
+    {
+        int capacity = 10000;
+        TestSeenStatuses seen = new TestSeenStatuses(capacity, null);
+        long base = 300000000000000000L;
+
+        for (int i = 0; i < capacity; i++)
+        {
+            seen.markSeen(base + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = capacity; i < 2 * capacity; i++)
+        {
+            if (seen.isSeen(base + i))
+            {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < capacity * SeenStatuses.FALSE_POSITIVE_RATE * 3,
+            falsePositives + " false positives");
+    }
+
+    @Test
+    public void testSharedStatuses() throws IOException
+    {
+        Jedis redis = new Jedis("localhost", 6379);
+        String key = "seen:42";
+
+        try
+        {
+            TestSeenStatuses first = new TestSeenStatuses(redis);
+            TestSeenStatuses second = new TestSeenStatuses(redis);
+
+            assertTrue(first.markSeen(42L));
+            assertFalse(second.markSeen(42L));
+            assertTrue(redis.ttl(key) > 0);
+        }
+        finally
+        {
+            redis.del(key);
+            redis.disconnect();
+        }
+    }
+
+    @Test
+    public void testSharedStatusesOfEachAccount() throws IOException
+    {
+        Jedis redis = new Jedis("localhost", 6379);
+
+        try
+        {
+            // A status mentioning several accounts is processed by each one
+            assertTrue(new SeenStatuses(100, WINDOW, redis, "rimas").markSeen(42L));
+            assertTrue(new SeenStatuses(100, WINDOW, redis, "rhymes").markSeen(42L));
+            assertFalse(new SeenStatuses(100, WINDOW, redis, "rimas").markSeen(42L));
+        }
+        finally
+        {
+            redis.del("seen:rimas:42", "seen:rhymes:42");
+            redis.disconnect();
+        }
+    }
+
+    @Test
+    public void testLocalDuplicatesDoNotWaitForRedis() throws Exception
+    {
+        Jedis redis = new Jedis("localhost", 6379);
+        final TestSeenStatuses seen = new TestSeenStatuses(redis);
+        final boolean[] result = {true};
+
+        try
+        {
+            assertTrue(seen.markSeen(42L));
+
+            Thread duplicate = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    result[0] = seen.markSeen(42L);
+                }
+            };
+
+            // The shared check holds the connection while it waits for Redis
+            synchronized (redis)
+            {
+                duplicate.start();
+                duplicate.join(5000);
+                assertFalse(duplicate.isAlive());
+            }
+
+            assertFalse(result[0]);
+        }
+        finally
+        {
+            redis.del("seen:42");
+            redis.disconnect();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity()
+    {
+        new SeenStatuses(0, WINDOW, null);
+    }
+
+    private static class TestSeenStatuses extends SeenStatuses
+    {
+        private long time;
+
+        public TestSeenStatuses(final Jedis redis)
+        {
+            this(100, redis);
+        }
+
+        public TestSeenStatuses(final int capacity, final Jedis redis)
+        {
+            super(capacity, WINDOW, redis);
+        }
+
+        @Override
+        long currentTime()
+        {
+            return time;
+        }
+    }
+}
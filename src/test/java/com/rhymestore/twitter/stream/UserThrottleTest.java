@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Unit tests for the {@link UserThrottle} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class UserThrottleTest
+{
+    /** The length of the windows used in the tests. */
+    private static final long WINDOW = 1000;
+
+    @Test
+    public void testRepliesAreLimitedByUser()
+    {
+        TestUserThrottle throttle = new TestUserThrottle(null);
+
+        assertTrue(throttle.tryAcquire(1L));
+        assertTrue(throttle.tryAcquire(1L));
+        assertFalse(throttle.tryAcquire(1L));
+        assertTrue(throttle.tryAcquire(2L));
+    }
+
+    @Test
+    public void testSlidingWindow()
+    {
+        TestUserThrottle throttle = new TestUserThrottle(null);
+        assertTrue(throttle.tryAcquire(1L));
+        assertTrue(throttle.tryAcquire(1L));
+
+        // Half of the previous window is still in the sliding window
+        throttle.time += WINDOW + WINDOW / 2;
+        assertTrue(throttle.tryAcquire(1L));
+        assertFalse(throttle.tryAcquire(1L));
+
+        // The rejected mentions are counted too
+        throttle.time += WINDOW / 2;
+        assertFalse(throttle.tryAcquire(1L));
+
+        throttle.time += 2 * WINDOW;
+        assertTrue(throttle.tryAcquire(1L));
+    }
+
+    @Test
+    public void testManyUsersInSmallSketch()
+    {
+        // Overestimates never let a user exceed the limit
+        UserThrottle throttle = new UserThrottle(2, WINDOW, 16, null, null);
+        int allowed = 0;
+
+        for (long user = 0; user < 1000; user++)
+        {
+            if (throttle.tryAcquire(user))
+            {
+                allowed++;
+            }
+        }
+
+        assertTrue(allowed <= 2 * 16 * UserThrottle.DEPTH);
+        assertFalse(throttle.tryAcquire(0L) && throttle.tryAcquire(0L) && throttle.tryAcquire(0L));
+    }
+
+    @Test
+    public void testSharedCounts() throws IOException
+    {
+        Jedis redis = new Jedis("localhost", 6379);
+        TestUserThrottle first = new TestUserThrottle(redis);
+        TestUserThrottle second = new TestUserThrottle(redis);
+
+        try
+        {
+            assertTrue(first.tryAcquire(1L));
+            assertTrue(second.tryAcquire(1L));
+            assertFalse(first.tryAcquire(1L));
+            assertFalse(second.tryAcquire(1L));
+            assertTrue(first.tryAcquire(2L));
+        }
+        finally
+        {
+            redis.del("throttle:rimas:1:0", "throttle:rimas:2:0");
+            redis.disconnect();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLimit()
+    {
+        new UserThrottle(0, WINDOW, 16, null, null);
+    }
+
+    private static class TestUserThrottle extends UserThrottle
+    {
+        private long time;
+
+        public TestUserThrottle(final Jedis redis)
+        {
+            super(2, WINDOW, 1024, redis, "rimas");
+        }
+
+        @Override
+        long currentTime()
+        {
+            return time;
+        }
+    }
+}
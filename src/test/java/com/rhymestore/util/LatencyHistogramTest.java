@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link LatencyHistogram} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class LatencyHistogramTest
+{
+    @Test
+    public void testEmptyHistogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getMean(), 0);
+        assertEquals(histogram.getPercentile(99), 0);
+    }
+
+    @Test
+    public void testGetBucket()
+    {
+        assertEquals(LatencyHistogram.getBucket(0), 0);
+        assertEquals(LatencyHistogram.getBucket(1), 1);
+        assertEquals(LatencyHistogram.getBucket(3), 2);
+        assertEquals(LatencyHistogram.getBucket(4), 3);
+        assertEquals(LatencyHistogram.getBucket(Long.MAX_VALUE), LatencyHistogram.BUCKETS - 1);
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < 99; i++)
+        {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(histogram.getCount(), 100);
+        assertEquals(histogram.getMax(), 50000);
+        assertEquals(histogram.getMean(), (99 * 100 + 50000) / 100);
+
+        // Percentiles are at most twice the real value
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 100 && p50 < 200, "p50 " + p50);
+        assertEquals(histogram.getPercentile(100), 50000);
+    }
+}